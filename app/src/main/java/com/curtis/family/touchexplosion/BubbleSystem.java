@@ -0,0 +1,332 @@
+package com.curtis.family.touchexplosion;
+
+import android.content.Context;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bubbles; touching the screen releases bubbles which rise, swirl and work their way around the
+ * obstacles (drawn as large flowers) in their path. While the finger stays down, it draws the
+ * nearby bubbles towards it.
+ *
+ * Unlike the other systems, the bubbles do not follow closed-form trajectories: they are simulated
+ * by a ParticleIntegrator under buoyancy, drag, a slow vortex, the touch's attractor and the
+ * obstacles' push. The bubbles move in a plane of constant depth, so the obstacles are baked into a
+ * flat ObstacleField over that plane (cached on disk when the system has a context).
+ */
+public class BubbleSystem extends ParticleSystem {
+    static final String TAG = BubbleSystem.class.getSimpleName();
+
+    /** The depth of the bubbles' plane (0 at the near plane, 1 at the far plane). */
+    private static final float BUBBLE_DEPTH = 0.35f;
+    /** The obstacles: their centers (in canonical coordinates) and radii (as fractions of the
+     view's half-height). */
+    private static final float sObstacles[] = {
+            -0.45f, 0.15f, 0.2f,
+            0.4f, 0.45f, 0.16f,
+            0.1f, -0.35f, 0.22f,
+    };
+    /** The number of grid points along each side of the obstacle field. */
+    private static final int FIELD_SIZE = 64;
+    /** The upward acceleration of a bubble (in m/ms^2) and its drag (in 1/ms); together they give
+     a rising speed of 2 m/s. */
+    private static final float BUOYANCY = 6e-6f;
+    private static final float DRAG = 0.003f;
+    /** The swirl about the middle of the view: its radius (as a fraction of the view's
+     half-height) and its strength (in m^2/ms^2). */
+    private static final float VORTEX_RADIUS = 0.5f;
+    private static final float VORTEX_STRENGTH = 5e-6f;
+    /** The pull of a touch (in m^2/ms^2), its softening distance (in meters), and how long (in
+     milliseconds) it lasts after the last touch. */
+    private static final float ATTRACT_STRENGTH = 1.7e-5f;
+    private static final float ATTRACT_SOFTENING = 0.5f;
+    private static final long ATTRACT_MS = 600;
+    /** The distance (in meters) from the obstacles at which bubbles are pushed away, and the push
+     (in m/ms^2) at their surfaces. */
+    private static final float AVOID_MARGIN = 0.6f;
+    private static final float AVOID_STRENGTH = 3e-5f;
+    /** The duration of a simulation step (in milliseconds) and the most steps in a frame. */
+    private static final float STEP_MS = 8;
+    private static final int MAX_STEPS = 6;
+    /** The number of bubbles released by a touch and the minimum duration (in milliseconds)
+     between releases. */
+    private static final int SPAWN_COUNT = 3;
+    private static final long SPAWN_PERIOD = 50;
+    /** The radius (in meters) bubbles are released within, and their largest initial speed (in
+     m/ms). */
+    private static final float SPAWN_RADIUS = 0.2f;
+    private static final float SPAWN_SPEED = 0.002f;
+    /** The range of bubble sizes (half-widths, in meters). */
+    private static final float MIN_SIZE = 0.08f;
+    private static final float SIZE_RANGE = 0.12f;
+    /** The lifetime of a bubble (in milliseconds), the last part of which it fades over. */
+    private static final long LIFE_MS = 10000;
+    private static final long FADE_MS = 1000;
+    /** The number of bytes of state stored for each bubble beyond the integrator's. */
+    private static final int BUBBLE_BYTES = 4 + 8;
+    private static final float sBubbleColor[] = {0.7f, 0.9f, 1.0f, 0.8f};
+    private static final float sPetalColor[] = {0.15f, 0.35f, 0.2f, 1.0f};
+    private static final float sCenterColor[] = {0.6f, 0.5f, 0.15f, 1.0f};
+    private static final float sBgColor[] = {0.02f, 0.06f, 0.1f};
+
+    private SpriteBatch mBatch;
+    private SpriteBatch mObstacleBatch;
+    /** The directory the obstacle field is cached in; null if there is no context yet. */
+    private File mCacheDir;
+    /** The obstacles in the world frame (x, y, z, radius each); set with the frustum. */
+    private float mObstacles[];
+    private ParticleIntegrator mParticles;
+    private final ForceField.Vortex mVortex;
+    private final ForceField.Attractor mAttractor;
+    private final ForceField.Avoidance mAvoidance;
+    /** The time stamp of the last release of bubbles and of the last touch (in milliseconds);
+     negative if there has been none. */
+    private long mLastSpawn;
+    private long mLastTouch;
+    /** The time stamp of the last frame (in milliseconds); negative before the first. */
+    private long mLastDraw;
+    private XorShiftRandom mRandom;
+    private Vector3 mScratch;
+    /** The color of the bubble being drawn. */
+    private float mTint[];
+    private Object mSync;
+
+    // Bubble columns beyond the integrator's; the live bubbles occupy the first mCount entries.
+    /** The number of live bubbles. */
+    private int mCount;
+    /** The half-width of each bubble (in meters). */
+    private float mSize[];
+    /** The time stamp of each bubble's release (in milliseconds). */
+    private long mBirth[];
+
+    public BubbleSystem() {
+        this(System.nanoTime());
+    }
+
+    /** Constructor.
+     * @param seed  The seed of the system's random numbers.
+     */
+    public BubbleSystem(long seed) {
+        super();
+        mRandom = new XorShiftRandom(seed);
+        mScratch = new Vector3();
+        mTint = new float[4];
+        mSync = new Object();
+        mObstacles = new float[sObstacles.length / 3 * 4];
+        mVortex = new ForceField.Vortex(0, 0, 1, 0);
+        mAttractor = new ForceField.Attractor(ATTRACT_SOFTENING);
+        mAvoidance = new ForceField.Avoidance(null, AVOID_MARGIN, AVOID_STRENGTH);
+        mLastSpawn = -1;
+        mLastTouch = -1;
+        mLastDraw = -1;
+        allocate(0);
+    }
+
+    @Override
+    public void initMaterials(Scene scene) {
+        Material bubble = scene.getMaterial(Material.SHADE_TINT, R.raw.target, 0);
+        mBatch = scene.getBatch(bubble, mParticleBudget);
+        Material flower = scene.getMaterial(Material.SHADE_MASKED, R.raw.flower, R.raw.flower_mask);
+        mObstacleBatch = scene.getBatch(flower, sObstacles.length / 3);
+        allocate(Math.min(mParticleBudget, mBatch.getCapacity()));
+    }
+
+    /** Keeps the context's cache directory for the obstacle field. */
+    @Override
+    public void initGL(Context context) {
+        mCacheDir = context.getCacheDir();
+    }
+
+    /** Sizes the bubble columns to hold the given number of bubbles; any bubbles are lost. */
+    private void allocate(int capacity) {
+        mCount = 0;
+        mParticles = new ParticleIntegrator(capacity);
+        mParticles.addField(new ForceField.Gravity(0, BUOYANCY, 0));
+        mParticles.addField(new ForceField.Damping(DRAG));
+        mParticles.addField(mVortex);
+        mParticles.addField(mAttractor);
+        mParticles.addField(mAvoidance);
+        mParticles.setFixedStep(STEP_MS, MAX_STEPS);
+        mSize = new float[capacity];
+        mBirth = new long[capacity];
+    }
+
+    /** Places the obstacles and the vortex in the bubbles' plane and bakes the obstacle field. */
+    @Override
+    public void setFrustum(Frustum f) {
+        super.setFrustum(f);
+        f.pointInFrustum(-1, -1, BUBBLE_DEPTH, mScratch);
+        float min[] = {mScratch.x, mScratch.y, mScratch.z};
+        f.pointInFrustum(1, 1, BUBBLE_DEPTH, mScratch);
+        float max[] = {mScratch.x, mScratch.y, mScratch.z};
+        float halfHeight = (max[1] - min[1]) * 0.5f;
+        List<Obstacle> obstacles = new ArrayList<>();
+        for (int o = 0; o * 3 < sObstacles.length; ++o) {
+            f.pointInFrustum(sObstacles[o * 3], sObstacles[o * 3 + 1], BUBBLE_DEPTH, mScratch);
+            float radius = sObstacles[o * 3 + 2] * halfHeight;
+            obstacles.add(new Obstacle.Sphere(mScratch, radius));
+            mObstacles[o * 4] = mScratch.x;
+            mObstacles[o * 4 + 1] = mScratch.y;
+            mObstacles[o * 4 + 2] = mScratch.z;
+            mObstacles[o * 4 + 3] = radius;
+        }
+        int threads = Math.min(2, Runtime.getRuntime().availableProcessors());
+        ObstacleField field = mCacheDir == null
+                ? ObstacleField.bake(obstacles, min, max, FIELD_SIZE, FIELD_SIZE, 1, threads)
+                : ObstacleField.load(mCacheDir, obstacles, min, max, FIELD_SIZE, FIELD_SIZE, 1,
+                        threads);
+        synchronized (mSync) {
+            mVortex.setCenter((min[0] + max[0]) * 0.5f, (min[1] + max[1]) * 0.5f);
+            mVortex.set(VORTEX_RADIUS * halfHeight, VORTEX_STRENGTH);
+            mAvoidance.setField(field);
+        }
+    }
+
+    @Override
+    public void draw(long globalT) {
+        int originalSize = mCount;
+        synchronized (mSync) {
+            if (mLastTouch >= 0 && globalT - mLastTouch > ATTRACT_MS) {
+                mAttractor.setStrength(0);
+            }
+            long dt = mLastDraw < 0 ? 0 : globalT - mLastDraw;
+            mParticles.advance(dt);
+            int count = mCount;
+            for (int i = 0; i < count; ) {
+                if (drawBubble(i, globalT)) {
+                    ++i;
+                } else {
+                    --count;
+                    moveBubble(count, i);
+                }
+            }
+            mCount = count;
+            mParticles.setCount(count);
+            if (count > 0) drawObstacles();
+            mLastDraw = globalT;
+        }
+        if (originalSize > 0 && mCount == 0) notifyActivityStop();
+    }
+
+    /** Draws the i-th bubble -- indicates true if it is still alive, false if not. */
+    private boolean drawBubble(int i, long globalT) {
+        long age = globalT - mBirth[i];
+        if (age >= LIFE_MS) return false;
+        ParticleIntegrator p = mParticles;
+        mScratch.set(p.mX[i], p.mY[i], p.mZ[i]);
+        if (mFrustum.farthestOut(mScratch, 1.0f) > 1.0f) return false;
+
+        float fade = Math.min(1.0f, (LIFE_MS - age) / (float)FADE_MS);
+        mTint[0] = sBubbleColor[0];
+        mTint[1] = sBubbleColor[1];
+        mTint[2] = sBubbleColor[2];
+        mTint[3] = sBubbleColor[3] * fade;
+        mBatch.add(mScratch.x, mScratch.y, mScratch.z, 0, mSize[i], mTint, mTint);
+        return true;
+    }
+
+    /** Draws the obstacles (they are only shown while there are bubbles to avoid them). */
+    private void drawObstacles() {
+        for (int o = 0; o < mObstacles.length; o += 4) {
+            mObstacleBatch.add(mObstacles[o], mObstacles[o + 1], mObstacles[o + 2], o * 10,
+                    mObstacles[o + 3], sPetalColor, sCenterColor);
+        }
+    }
+
+    /** Copies the bubble in slot `from` into slot `to`. */
+    private void moveBubble(int from, int to) {
+        if (from == to) return;
+        mParticles.move(from, to);
+        mSize[to] = mSize[from];
+        mBirth[to] = mBirth[from];
+    }
+
+    @Override
+    public void reportTouch(float x, float y, Frustum frustum, long globalT) {
+        boolean wasActive = mCount > 0;
+        synchronized (mSync) {
+            mFrustum.pointInFrustum(x, y, BUBBLE_DEPTH, mScratch);
+            mAttractor.setPosition(mScratch.x, mScratch.y, mScratch.z);
+            mAttractor.setStrength(ATTRACT_STRENGTH);
+            mLastTouch = globalT;
+            // The first bubbles after a quiet spell start moving from now, not the last frame.
+            if (mCount == 0) mLastDraw = globalT;
+            if (mLastSpawn >= 0 && globalT - mLastSpawn <= SPAWN_PERIOD) return;
+            int count = Math.min(SPAWN_COUNT, Math.min(mParticles.getCapacity(), mParticleBudget)
+                    - mCount);
+            for (int s = 0; s < count; ++s) {
+                float r = SPAWN_RADIUS * (float)Math.sqrt(mRandom.nextFloat());
+                double theta = mRandom.nextFloat() * 2 * Math.PI;
+                float c = (float)Math.cos(theta), sn = (float)Math.sin(theta);
+                float speed = SPAWN_SPEED * mRandom.nextFloat();
+                int i = mParticles.add(mScratch.x + r * c, mScratch.y + r * sn, mScratch.z,
+                        speed * c, speed * sn, 0);
+                mSize[i] = MIN_SIZE + SIZE_RANGE * mRandom.nextFloat();
+                mBirth[i] = globalT;
+            }
+            mCount = mParticles.getCount();
+            mLastSpawn = globalT;
+        }
+        if (!wasActive && mCount > 0) notifyActivityStart();
+    }
+
+    /** Returns the bubbles' simulation. */
+    public ParticleIntegrator getParticles() { return mParticles; }
+
+    @Override
+    public int getParticleCount() { return mCount; }
+
+    /** Bubbles are always rising; the system only comes to rest once they have all gone. */
+    @Override
+    public long nextVisibleChange(long globalT) { return mCount > 0 ? globalT : NEVER; }
+
+    @Override
+    public float[] getBgColor() { return sBgColor; }
+
+    /** State: the last release and touch times, the random state, the integrator's particles, then
+     each bubble column in turn. The touch's pull is not kept. */
+    @Override
+    public int getStateSize() {
+        return 8 + 8 + 8 + mParticles.getStateSize() + mCount * BUBBLE_BYTES;
+    }
+
+    @Override
+    public void writeState(ByteBuffer out) {
+        synchronized (mSync) {
+            out.putLong(mLastSpawn);
+            out.putLong(mLastTouch);
+            out.putLong(mRandom.getState());
+            mParticles.write(out);
+            SceneSnapshot.putFloats(out, mSize, mCount);
+            SceneSnapshot.putLongs(out, mBirth, mCount);
+        }
+    }
+
+    @Override
+    public void readState(ByteBuffer in, long shift) {
+        boolean wasActive = mCount > 0;
+        synchronized (mSync) {
+            long lastSpawn = in.getLong();
+            mLastSpawn = lastSpawn < 0 ? lastSpawn : lastSpawn + shift;
+            long lastTouch = in.getLong();
+            mLastTouch = lastTouch < 0 ? lastTouch : lastTouch + shift;
+            mRandom.setState(in.getLong());
+            // A smaller budget drops the bubbles beyond it.
+            int stored = mParticles.read(in);
+            int count = mParticles.getCount();
+            SceneSnapshot.getFloats(in, mSize, count, stored);
+            SceneSnapshot.getLongs(in, mBirth, count, stored);
+            for (int i = 0; i < count; ++i) {
+                mBirth[i] += shift;
+            }
+            mCount = count;
+            mAttractor.setStrength(0);
+            mLastDraw = -1;
+        }
+        if (!wasActive && mCount > 0) notifyActivityStart();
+        if (wasActive && mCount == 0) notifyActivityStop();
+    }
+}
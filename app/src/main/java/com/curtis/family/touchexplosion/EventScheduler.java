@@ -0,0 +1,168 @@
+package com.curtis.family.touchexplosion;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Events scheduled to fire at future times -- e.g., the burst a particle system spawns when a
+ * rocket arrives. Each event has a type and a fixed number of float arguments, both interpreted by
+ * the system which scheduled it.
+ *
+ * The pending events are a binary min-heap of slot indices keyed by fire time; the slots hold the
+ * events' times, types and arguments. Scheduling and firing an event each cost O(log n), and a
+ * frame in which nothing is due costs a single comparison -- pending events are never polled.
+ *
+ * All storage is allocated at construction.
+ */
+class EventScheduler {
+    /** Receives the events as they fire. */
+    interface Handler {
+        /** Called for each due event, in order of fire time.
+         * @param type      The event's type.
+         * @param args      The array holding the event's arguments.
+         * @param offset    The index of the event's first argument in args.
+         * @param fireT     The time (in milliseconds) the event was scheduled for; this may be
+         *                  earlier than the frame which fires it.
+         */
+        void fire(int type, float[] args, int offset, long fireT);
+    }
+
+    /** The number of arguments each event has. */
+    private final int mArgCount;
+    /** The fire time of the event in each slot. */
+    private final long[] mFireT;
+    /** The type of the event in each slot. */
+    private final int[] mType;
+    /** The arguments of the events, slot by slot: slot s occupies [s * mArgCount, (s + 1) *
+     mArgCount). */
+    private final float[] mArgs;
+    /** The heap of pending events' slots; the earliest event is at the root. */
+    private final int[] mHeap;
+    /** The number of pending events. */
+    private int mSize;
+    /** A stack of the unused slots. */
+    private final int[] mFree;
+    /** The number of unused slots. */
+    private int mFreeCount;
+
+    /** Constructor.
+     * @param capacity  The largest number of events which can be pending at once.
+     * @param argCount  The number of arguments each event has.
+     */
+    EventScheduler(int capacity, int argCount) {
+        mArgCount = argCount;
+        mFireT = new long[capacity];
+        mType = new int[capacity];
+        mArgs = new float[capacity * argCount];
+        mHeap = new int[capacity];
+        mFree = new int[capacity];
+        clear();
+    }
+
+    /** Schedules an event. The caller sets the event's arguments with setArg().
+     * @param fireT     The time at which the event fires (in milliseconds).
+     * @param type      The event's type.
+     * @return The slot holding the event, or -1 if the scheduler is full.
+     */
+    int schedule(long fireT, int type) {
+        if (mFreeCount == 0) return -1;
+        int slot = mFree[--mFreeCount];
+        mFireT[slot] = fireT;
+        mType[slot] = type;
+        siftUp(mSize++, slot);
+        return slot;
+    }
+
+    /** Sets the i-th argument of the event in the given slot. */
+    void setArg(int slot, int i, float value) { mArgs[slot * mArgCount + i] = value; }
+
+    /** Fires, in order, every event which is due by the given time. The handler may schedule
+     further events; any which are also due are fired in the same call.
+     * @return The number of events fired.
+     */
+    int fireDue(long globalT, Handler handler) {
+        int fired = 0;
+        while (mSize > 0 && mFireT[mHeap[0]] <= globalT) {
+            int slot = mHeap[0];
+            int last = mHeap[--mSize];
+            if (mSize > 0) siftDown(0, last);
+            handler.fire(mType[slot], mArgs, slot * mArgCount, mFireT[slot]);
+            // The slot is only released once the handler is done with its arguments.
+            mFree[mFreeCount++] = slot;
+            ++fired;
+        }
+        return fired;
+    }
+
+    /** Reports the time of the earliest pending event; Long.MAX_VALUE if there are none. */
+    long getNextFireTime() { return mSize > 0 ? mFireT[mHeap[0]] : Long.MAX_VALUE; }
+
+    /** Reports the number of pending events. */
+    int size() { return mSize; }
+
+    /** Discards every pending event. */
+    void clear() {
+        mSize = 0;
+        mFreeCount = mFree.length;
+        for (int i = 0; i < mFree.length; ++i) {
+            // Hand out the low slots first.
+            mFree[i] = mFree.length - 1 - i;
+        }
+    }
+
+    /** Reports the number of bytes write() stores. */
+    int getStateSize() { return 4 + mSize * (8 + 4 + 4 * mArgCount); }
+
+    /** Writes the pending events: their count, then each event's time, type and arguments. */
+    void write(ByteBuffer out) {
+        out.putInt(mSize);
+        for (int i = 0; i < mSize; ++i) {
+            int slot = mHeap[i];
+            out.putLong(mFireT[slot]).putInt(mType[slot]);
+            for (int a = 0; a < mArgCount; ++a) {
+                out.putFloat(mArgs[slot * mArgCount + a]);
+            }
+        }
+    }
+
+    /** Replaces the pending events with those stored by write(), moving their fire times by the
+     given shift (in milliseconds). Events beyond the capacity are dropped. */
+    void read(ByteBuffer in, long shift) {
+        clear();
+        int count = in.getInt();
+        for (int i = 0; i < count; ++i) {
+            long fireT = in.getLong() + shift;
+            int slot = schedule(fireT, in.getInt());
+            for (int a = 0; a < mArgCount; ++a) {
+                float value = in.getFloat();
+                if (slot >= 0) setArg(slot, a, value);
+            }
+        }
+    }
+
+    /** Moves the hole at heap index i up until the slot can be placed there. */
+    private void siftUp(int i, int slot) {
+        long t = mFireT[slot];
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (mFireT[mHeap[parent]] <= t) break;
+            mHeap[i] = mHeap[parent];
+            i = parent;
+        }
+        mHeap[i] = slot;
+    }
+
+    /** Moves the hole at heap index i down until the slot can be placed there. */
+    private void siftDown(int i, int slot) {
+        long t = mFireT[slot];
+        int half = mSize >> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < mSize && mFireT[mHeap[right]] < mFireT[mHeap[child]]) child = right;
+            if (t <= mFireT[mHeap[child]]) break;
+            mHeap[i] = mHeap[child];
+            i = child;
+        }
+        mHeap[i] = slot;
+    }
+}
@@ -0,0 +1,91 @@
+package com.curtis.family.touchexplosion;
+
+/**
+ * Float sine and cosine from a table, for the per-frame angles of spinning and bobbing particles,
+ * where Math.sin()'s full double precision costs far more than the result is worth.
+ *
+ * The table holds one period of the sine at TABLE_SIZE evenly spaced points (exact at the
+ * quadrants); values in between are interpolated linearly. The interpolation error is at most
+ * (2 pi / TABLE_SIZE)^2 / 8, about 3e-7. The angle is converted to turns and reduced to one turn
+ * in double precision, so with the table's rounding the result is within MAX_ERROR of the exact
+ * sine of the float argument, however many turns it is (see FastTrigTest).
+ */
+public class FastTrig {
+    /** The largest difference from the exact sine or cosine. */
+    public static final float MAX_ERROR = 5e-7f;
+    /** The number of entries in one period; a power of two. */
+    private static final int TABLE_SIZE = 4096;
+    private static final int MASK = TABLE_SIZE - 1;
+    private static final double TURNS_PER_RADIAN = 0.5 / Math.PI;
+    private static final double TURNS_PER_DEGREE = 1 / 360.0;
+    /** The sine at each step, plus the first repeated so interpolation needn't wrap. */
+    private static final float sTable[] = new float[TABLE_SIZE + 1];
+
+    static {
+        // One quadrant, mirrored, so the table is exactly symmetric.
+        for (int i = 0; i <= TABLE_SIZE / 4; ++i) {
+            float sin = (float)Math.sin(i * 2 * Math.PI / TABLE_SIZE);
+            sTable[i] = sin;
+            sTable[TABLE_SIZE / 2 - i] = sin;
+            sTable[TABLE_SIZE / 2 + i] = -sin;
+            sTable[TABLE_SIZE - i] = -sin;
+        }
+    }
+
+    private FastTrig() {}
+
+    /** Reports the position of an angle in the table, in [0, TABLE_SIZE]. */
+    private static double position(double turns) {
+        double t = (turns - (long)turns) * TABLE_SIZE;
+        return t < 0 ? t + TABLE_SIZE : t;
+    }
+
+    /** Reports the sine of an angle given in turns (1 is a full circle). */
+    public static float sinTurns(double turns) {
+        double t = position(turns);
+        int i = (int)t;
+        float frac = (float)(t - i);
+        i &= MASK;
+        return sTable[i] + (sTable[i + 1] - sTable[i]) * frac;
+    }
+
+    /** Reports the cosine of an angle given in turns. */
+    public static float cosTurns(double turns) {
+        double t = position(turns);
+        int i = (int)t;
+        float frac = (float)(t - i);
+        i = (i + TABLE_SIZE / 4) & MASK;
+        return sTable[i] + (sTable[i + 1] - sTable[i]) * frac;
+    }
+
+    /** Reports the cosine and the sine of an angle given in turns, sharing their lookup.
+     * @param turns     The angle.
+     * @param out       Receives the cosine and the sine (in that order).
+     * @param offset    The index in `out` of the cosine.
+     */
+    public static void cosSinTurns(double turns, float[] out, int offset) {
+        double t = position(turns);
+        int i = (int)t;
+        float frac = (float)(t - i);
+        int c = (i + TABLE_SIZE / 4) & MASK;
+        i &= MASK;
+        out[offset] = sTable[c] + (sTable[c + 1] - sTable[c]) * frac;
+        out[offset + 1] = sTable[i] + (sTable[i + 1] - sTable[i]) * frac;
+    }
+
+    /** Reports the sine of an angle given in radians. */
+    public static float sin(float radians) { return sinTurns(radians * TURNS_PER_RADIAN); }
+
+    /** Reports the cosine of an angle given in radians. */
+    public static float cos(float radians) { return cosTurns(radians * TURNS_PER_RADIAN); }
+
+    /** Reports the cosine and the sine of an angle given in radians (see cosSinTurns()). */
+    public static void cosSin(float radians, float[] out, int offset) {
+        cosSinTurns(radians * TURNS_PER_RADIAN, out, offset);
+    }
+
+    /** Reports the cosine and the sine of an angle given in degrees (see cosSinTurns()). */
+    public static void cosSinDegrees(float degrees, float[] out, int offset) {
+        cosSinTurns(degrees * TURNS_PER_DEGREE, out, offset);
+    }
+}
@@ -0,0 +1,306 @@
+package com.curtis.family.touchexplosion;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Feeding pool; touching the screen sprinkles food onto the surface of a pool of water. Each
+ * pellet that lands sends out ripples; the pellets float on the surface, bobbing on the ripples
+ * and drifting down their slopes, then sink out of sight.
+ *
+ * The pool fills the view at a fixed depth and is simulated as a WaterSurface. The simulation only
+ * runs while the water is moving or food is floating on it; a calm, empty pool costs nothing.
+ */
+public class FeedingPoolSystem extends ParticleSystem {
+    static final String TAG = FeedingPoolSystem.class.getSimpleName();
+
+    /** The number of grid cells along each side of the pool. */
+    private static final int GRID_SIZE = 256;
+    /** The depth of the pool's surface (0 at the near plane, 1 at the far plane). */
+    private static final float POOL_DEPTH = 0.3f;
+    /** The speed of the ripples (in m/ms) and the fraction of their motion lost each step. */
+    private static final float WAVE_SPEED = 0.001f;
+    private static final float WAVE_DAMPING = 0.01f;
+    /** The height (in meters) below which the water counts as calm. */
+    private static final float CALM_PEAK = 1e-3f;
+    /** The number of pellets sprinkled by a touch, and the radius (in meters) they land within. */
+    private static final int SPRINKLE_COUNT = 6;
+    private static final float SPRINKLE_RADIUS = 0.3f;
+    /** The minimum duration (in milliseconds) between sprinkles. */
+    private static final long SPRINKLE_PERIOD = 100;
+    /** The radius and depth (in meters) of the dent a landing pellet makes in the surface. */
+    private static final float SPLASH_RADIUS = 0.12f;
+    private static final float SPLASH_DEPTH = 0.04f;
+    /** The time (in milliseconds) a pellet floats, and then takes to sink out of sight. */
+    private static final long FLOAT_MS = 4000;
+    private static final long SINK_MS = 1500;
+    /** The depth (in meters) a pellet sinks to before it disappears. */
+    private static final float SINK_DEPTH = 0.5f;
+    /** The speed (in m/ms) at which a pellet drifts down a slope of 1. */
+    private static final float DRIFT = 0.002f;
+    /** The exaggeration of the surface's height applied to the pellets. */
+    private static final float HEIGHT_SCALE = 4.0f;
+    /** The change in a pellet's brightness per unit of slope towards the light. */
+    private static final float SHADE_GAIN = 2.0f;
+    /** The direction (in the surface plane) the light comes from. */
+    private static final float LIGHT_X = -0.6f;
+    private static final float LIGHT_Y = 0.8f;
+    /** The longest frame (in milliseconds) over which the pellets drift. */
+    private static final long MAX_DRIFT_MS = 50;
+    private static final float PELLET_SCALE = 0.06f;
+    private static final float sPelletColor[] = {0.8f, 0.55f, 0.2f, 1.0f};
+    private static final float sBgColor[] = {0.0f, 0.08f, 0.12f};
+
+    private SpriteBatch mBatch;
+    private WaterSurface mWater;
+    /** The z-coordinate of the pool's (calm) surface. */
+    private float mSurfaceZ;
+    /** Reports if the water is calm (and no longer simulated). */
+    private boolean mCalm;
+    /** The time stamp of the last sprinkle (in milliseconds); negative if there has been none. */
+    private long mLastSprinkle;
+    /** The time stamp of the last frame (in milliseconds); negative before the first. */
+    private long mLastDraw;
+    private XorShiftRandom mRandom;
+    private Vector3 mScratch;
+    private Vector3 mSlope;
+    /** The color of the pellet being drawn, shaded by the surface's slope. */
+    private float mTint[];
+    private Object mSync;
+    /** The number of threads which step the water. */
+    private final int mThreads;
+
+    // Pellet columns; the live pellets occupy the first mCount entries.
+    /** The number of pellets the columns can hold. */
+    private int mCapacity;
+    /** The number of live pellets. */
+    private int mCount;
+    /** The position of each pellet on the surface: x, y. */
+    private float mPosition[];
+    /** The orientation of each pellet (in degrees). */
+    private float mAngle[];
+    /** The time stamp at which each pellet landed (in milliseconds). */
+    private long mBirth[];
+
+    /** The number of bytes of state stored for each pellet. */
+    private static final int PELLET_BYTES = (2 + 1) * 4 + 8;
+
+    public FeedingPoolSystem() {
+        this(System.nanoTime());
+    }
+
+    /** Constructor.
+     * @param seed  The seed of the system's random numbers.
+     */
+    public FeedingPoolSystem(long seed) {
+        this(seed, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /** Constructor.
+     * @param seed      The seed of the system's random numbers.
+     * @param threads   The number of threads which step the water (including the drawing thread).
+     */
+    public FeedingPoolSystem(long seed, int threads) {
+        super();
+        mThreads = threads;
+        mRandom = new XorShiftRandom(seed);
+        mScratch = new Vector3();
+        mSlope = new Vector3();
+        mTint = new float[4];
+        mSync = new Object();
+        mCalm = true;
+        mLastSprinkle = -1;
+        mLastDraw = -1;
+        allocate(0);
+    }
+
+    @Override
+    public void initMaterials(Scene scene) {
+        Material pellet = scene.getMaterial(Material.SHADE_TINT, R.raw.star, 0);
+        mBatch = scene.getBatch(pellet, mParticleBudget);
+        allocate(Math.min(mParticleBudget, mBatch.getCapacity()));
+    }
+
+    /** Sizes the pellet columns to hold the given number of pellets; any pellets are lost. */
+    private void allocate(int capacity) {
+        mCapacity = capacity;
+        mCount = 0;
+        mPosition = new float[capacity * 2];
+        mAngle = new float[capacity];
+        mBirth = new long[capacity];
+    }
+
+    /** Places the pool so that it fills the view at its depth; the water is calmed. */
+    @Override
+    public void setFrustum(Frustum f) {
+        super.setFrustum(f);
+        synchronized (mSync) {
+            f.pointInFrustum(-1, -1, POOL_DEPTH, mScratch);
+            float x0 = mScratch.x, y0 = mScratch.y;
+            f.pointInFrustum(1, 1, POOL_DEPTH, mScratch);
+            float size = Math.max(mScratch.x - x0, mScratch.y - y0);
+            float cellSize = size / (GRID_SIZE - 1);
+            float cx = (x0 + mScratch.x) * 0.5f, cy = (y0 + mScratch.y) * 0.5f;
+            mSurfaceZ = mScratch.z;
+            if (mWater != null) mWater.shutdown();
+            mWater = new WaterSurface(GRID_SIZE, GRID_SIZE, cellSize, cx - size * 0.5f,
+                    cy - size * 0.5f, WAVE_SPEED, WAVE_DAMPING, mThreads);
+            mCalm = true;
+        }
+    }
+
+    /** Stops the water's threads. */
+    @Override
+    public void release() {
+        synchronized (mSync) {
+            if (mWater != null) mWater.shutdown();
+        }
+    }
+
+    @Override
+    public void draw(long globalT) {
+        int originalSize = mCount;
+        boolean wasCalm = mCalm;
+        synchronized (mSync) {
+            if (!mCalm) {
+                mWater.advance(globalT);
+                if (mCount == 0 && mWater.getPeak() < CALM_PEAK) {
+                    mWater.clear();
+                    mCalm = true;
+                }
+            }
+            long dt = mLastDraw < 0 ? 0 : Math.min(MAX_DRIFT_MS, globalT - mLastDraw);
+            int count = mCount;
+            for (int i = 0; i < count; ) {
+                if (drawPellet(i, globalT, dt)) {
+                    ++i;
+                } else {
+                    --count;
+                    movePellet(count, i);
+                }
+            }
+            mCount = count;
+        }
+        mLastDraw = globalT;
+        if ((originalSize > 0 || !wasCalm) && mCount == 0 && mCalm) notifyActivityStop();
+    }
+
+    /** Drifts and draws the i-th pellet -- indicates true if it is still alive, false if not. */
+    private boolean drawPellet(int i, long globalT, long dt) {
+        long age = globalT - mBirth[i];
+        if (age >= FLOAT_MS + SINK_MS) return false;
+        int p = i * 2;
+        float x = mPosition[p];
+        float y = mPosition[p + 1];
+        mWater.sampleSlope(x, y, mSlope);
+        x -= mSlope.x * DRIFT * dt;
+        y -= mSlope.y * DRIFT * dt;
+        mPosition[p] = x;
+        mPosition[p + 1] = y;
+
+        float sunk = age <= FLOAT_MS ? 0 : (age - FLOAT_MS) / (float)SINK_MS;
+        float z = mSurfaceZ + mWater.sampleHeight(x, y) * HEIGHT_SCALE - sunk * SINK_DEPTH;
+        mScratch.set(x, y, z);
+        if (mFrustum.farthestOut(mScratch, 1.0f) > 1.0f) return false;
+
+        // Slopes facing the light are brighter.
+        float light = mSlope.x * LIGHT_X + mSlope.y * LIGHT_Y;
+        float shade = Math.max(0.25f, Math.min(1.5f, 1.0f - light * SHADE_GAIN));
+        mTint[0] = Math.min(1.0f, sPelletColor[0] * shade);
+        mTint[1] = Math.min(1.0f, sPelletColor[1] * shade);
+        mTint[2] = Math.min(1.0f, sPelletColor[2] * shade);
+        mTint[3] = sPelletColor[3] * (1.0f - sunk);
+        mBatch.add(x, y, z, mAngle[i], PELLET_SCALE, mTint, mTint);
+        return true;
+    }
+
+    /** Copies the pellet in slot `from` into slot `to`. */
+    private void movePellet(int from, int to) {
+        if (from == to) return;
+        mPosition[to * 2] = mPosition[from * 2];
+        mPosition[to * 2 + 1] = mPosition[from * 2 + 1];
+        mAngle[to] = mAngle[from];
+        mBirth[to] = mBirth[from];
+    }
+
+    @Override
+    public void reportTouch(float x, float y, Frustum frustum, long globalT) {
+        if (mLastSprinkle >= 0 && globalT - mLastSprinkle <= SPRINKLE_PERIOD) return;
+        boolean wasActive = mCount > 0 || !mCalm;
+        synchronized (mSync) {
+            mFrustum.pointInFrustum(x, y, POOL_DEPTH, mScratch);
+            int count = Math.min(SPRINKLE_COUNT, Math.min(mCapacity, mParticleBudget) - mCount);
+            for (int s = 0; s < count; ++s) {
+                float r = SPRINKLE_RADIUS * (float)Math.sqrt(mRandom.nextFloat());
+                double theta = mRandom.nextFloat() * 2 * Math.PI;
+                float px = mScratch.x + r * (float)Math.cos(theta);
+                float py = mScratch.y + r * (float)Math.sin(theta);
+                int i = mCount++;
+                mPosition[i * 2] = px;
+                mPosition[i * 2 + 1] = py;
+                mAngle[i] = mRandom.nextFloat() * 360;
+                mBirth[i] = globalT;
+                mWater.disturb(px, py, SPLASH_RADIUS, SPLASH_DEPTH);
+            }
+            mCalm = false;
+        }
+        mLastSprinkle = globalT;
+        if (!wasActive) notifyActivityStart();
+    }
+
+    /** Returns the simulated water surface. */
+    public WaterSurface getWater() { return mWater; }
+
+    @Override
+    public int getParticleCount() { return mCount; }
+
+    /** The water and pellets move until the pool is calm and empty. */
+    @Override
+    public long nextVisibleChange(long globalT) {
+        return mCount > 0 || !mCalm ? globalT : NEVER;
+    }
+
+    @Override
+    public float[] getBgColor() { return sBgColor; }
+
+    /** State: the pellet count, the last sprinkle time, the random state, then each pellet
+     column in turn. The ripples are not kept; the pool is restored calm. */
+    @Override
+    public int getStateSize() { return 4 + 8 + 8 + mCount * PELLET_BYTES; }
+
+    @Override
+    public void writeState(ByteBuffer out) {
+        synchronized (mSync) {
+            out.putInt(mCount);
+            out.putLong(mLastSprinkle);
+            out.putLong(mRandom.getState());
+            SceneSnapshot.putFloats(out, mPosition, mCount * 2);
+            SceneSnapshot.putFloats(out, mAngle, mCount);
+            SceneSnapshot.putLongs(out, mBirth, mCount);
+        }
+    }
+
+    @Override
+    public void readState(ByteBuffer in, long shift) {
+        boolean wasActive = mCount > 0 || !mCalm;
+        synchronized (mSync) {
+            int stored = in.getInt();
+            long lastSprinkle = in.getLong();
+            mLastSprinkle = lastSprinkle < 0 ? lastSprinkle : lastSprinkle + shift;
+            mRandom.setState(in.getLong());
+            // A smaller budget drops the pellets beyond it.
+            int count = Math.min(stored, mCapacity);
+            SceneSnapshot.getFloats(in, mPosition, count * 2, stored * 2);
+            SceneSnapshot.getFloats(in, mAngle, count, stored);
+            SceneSnapshot.getLongs(in, mBirth, count, stored);
+            for (int i = 0; i < count; ++i) {
+                mBirth[i] += shift;
+            }
+            mCount = count;
+            if (mWater != null) mWater.clear();
+            mCalm = mCount == 0;
+        }
+        boolean active = mCount > 0;
+        if (!wasActive && active) notifyActivityStart();
+        if (wasActive && !active) notifyActivityStop();
+    }
+}
@@ -0,0 +1,538 @@
+package com.curtis.family.touchexplosion;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fireworks; each tap fires a rocket from a bottom corner of the screen to the tap location. When
+ * the rocket arrives it bursts into a shell of sparks, followed shortly after by a second, smaller
+ * shell in the complementary color. The sparks fade out as they fall.
+ *
+ * The bursts are spawned by events queued in an EventScheduler when the rocket is launched, so a
+ * frame only handles the events which are due, however many rockets and shells are in flight.
+ * Sparks are born at the time their event was due (not the time of the frame which handles it), so
+ * a late frame does not bunch them up.
+ *
+ * Rockets and sparks both follow closed-form ballistic trajectories; they are stored as columns of
+ * their state at birth, with the live particles packed at the front.
+ *
+ * The rockets and the fast sparks leave trails (see Trails). A trajectory is a pure function of
+ * time, so rather than following particles which are packed down every frame, the trails are
+ * sampled afresh along the trajectories each frame; they are handed out in particle order until
+ * they run out. A spark's trail fades in with its speed above FAST_SPARK_SPEED, so it disappears
+ * smoothly as the spark slows.
+ *
+ * A frame appends a sprite slot to the batch for every live particle, then updates the particles
+ * in chunks of CHUNK_SIZE: each particle is evaluated, culled, and, if it survives, written to its
+ * own slot. The chunks touch disjoint particles and slots, so a WorkerPool runs them in parallel
+ * once there are enough particles (fewer are updated on the drawing thread, where handing out the
+ * work would cost more than it saves). The pool's threads are only started if the system's budget
+ * can reach PARALLEL_MIN particles; tapping steadily keeps several hundred sparks in the air, so
+ * PARALLEL_MIN is set well below that. A serial pass then packs the surviving particles and their
+ * sprites down in order, so the frame does not depend on the number of threads.
+ */
+public class FireworksSystem extends ParticleSystem {
+    static final String TAG = FireworksSystem.class.getSimpleName();
+
+    /** Half the gravitational acceleration (in m/ms^2); lighter than real gravity so the sparks
+     hang in the air. */
+    private static final float HALF_GRAVITY = -2.0e-6f;
+    /** The event fired when a rocket arrives: args x, y, z, hue. */
+    private static final int EVENT_BURST = 0;
+    /** The event fired for the second shell of a burst: args x, y, z, hue. */
+    private static final int EVENT_ECHO = 1;
+    private static final int EVENT_ARGS = 4;
+    /** The largest number of pending events. */
+    private static final int MAX_EVENTS = 256;
+    /** The minimum duration (in milliseconds) between rocket launches. */
+    private static final long LAUNCH_PERIOD = 150;
+    /** The range of a rocket's flight time (in milliseconds). */
+    private static final long MIN_FLIGHT = 800;
+    private static final long FLIGHT_RANGE = 400;
+    /** The canonical x-coordinate of the launch points (one on each side). */
+    private static final float LAUNCH_X = 0.8f;
+    /** The delay (in milliseconds) between a burst and its second shell. */
+    private static final long ECHO_DELAY = 250;
+    /** The number of sparks in a burst and in its second shell. */
+    private static final int BURST_SPARKS = 48;
+    private static final int ECHO_SPARKS = 24;
+    /** The largest initial speed of a spark (in m/ms) in a burst and in its second shell. */
+    private static final float BURST_SPEED = 0.0025f;
+    private static final float ECHO_SPEED = 0.0015f;
+    /** The range of a spark's lifespan (in milliseconds). */
+    private static final long MIN_SPARK_LIFE = 900;
+    private static final long SPARK_LIFE_RANGE = 600;
+    /** The half-widths of the sprites. */
+    private static final float ROCKET_SCALE = 0.15f;
+    private static final float SPARK_SCALE = 0.1f;
+    /** The range of depths (0 at the near plane, 1 at the far plane) the targets are placed at. */
+    private static final float MIN_DEPTH = 0.2f;
+    private static final float DEPTH_RANGE = 0.4f;
+    /** The number of particles updated as one piece of work. */
+    static final int CHUNK_SIZE = 128;
+    /** The fewest particles which are updated in parallel. */
+    static final int PARALLEL_MIN = 2 * CHUNK_SIZE;
+    /** The floats of scratch space each chunk has: a tint (r, g, b, a), then a rotation's cosine
+     and sine. */
+    private static final int CHUNK_SCRATCH = 6;
+    /** The number of trails, shared by the rockets and the fast sparks. */
+    private static final int MAX_TRAILS = 64;
+    /** The number of positions in a trail, and the time (in milliseconds) between them. */
+    private static final int TRAIL_LENGTH = 8;
+    private static final long TRAIL_PERIOD = 20;
+    /** The half-widths of the rockets' and the sparks' trails. */
+    private static final float ROCKET_TRAIL_WIDTH = 0.03f;
+    private static final float SPARK_TRAIL_WIDTH = 0.015f;
+    /** The alpha of a rocket's trail. */
+    private static final float ROCKET_TRAIL_ALPHA = 0.6f;
+    /** The speed (in m/ms) above which a spark has a trail, and the speed above that at which its
+     trail is fully opaque. */
+    private static final float FAST_SPARK_SPEED = 0.0018f;
+    private static final float FAST_SPARK_RAMP = 0.0004f;
+    private static final float sRocketColor[] = {1.0f, 0.9f, 0.6f, 1.0f};
+    private static final float sBgColor[] = {0.0f, 0.0f, 0.05f};
+
+    private SpriteBatch mBatch;
+    /** The trails of the rockets and the fast sparks, sampled afresh each frame. */
+    private final Trails mTrails;
+    /** The pending bursts. */
+    private EventScheduler mEvents;
+    /** Spawns the sparks of the events as they fire. */
+    private EventScheduler.Handler mSpawner;
+    /** The time stamp of the last launch (in milliseconds); negative if there has been none. */
+    private long mLastLaunch;
+    /** The side the next rocket is launched from: -1 (left) or 1 (right). */
+    private int mLaunchSide;
+    private XorShiftRandom mRandom;
+    private Vector3 mTarget;
+    private Vector3 mScratch;
+    private Object mSync;
+    /** Reports if the system has particles or pending events (as last reported to the listeners). */
+    private boolean mActive;
+    /** The number of threads which may update a frame (including the drawing thread). */
+    private final int mThreads;
+    /** Runs the chunks of a frame's update; null unless the system can hold PARALLEL_MIN
+     particles. */
+    private WorkerPool mPool;
+    private final WorkerPool.Task mUpdateTask;
+    // The frame being updated (see updateChunk()).
+    private long mDrawT;
+    /** The batch slot of the first particle's sprite. */
+    private int mFirstSprite;
+    /** The number of particles with a slot; the rest are alive but not drawn (the batch is
+     full). */
+    private int mSlots;
+
+    // Particle columns; the live particles occupy the first mCount entries.
+    /** The number of particles the columns can hold. */
+    private int mCapacity;
+    /** The number of live particles. */
+    private int mCount;
+    /** The position of each particle at its birth: x, y, z. */
+    private float mStart[];
+    /** The velocity of each particle at its birth: x, y, z (in m/ms). */
+    private float mVelocity[];
+    /** The color of each particle: r, g, b, a. */
+    private float mColors[];
+    /** The sprite of each particle: angle (in degrees), scale, and the amount it fades over its
+     life, which is also its additivity (0 for rockets, 1 for sparks). */
+    private float mShape[];
+    /** The time stamp of each particle's birth and death (in milliseconds). */
+    private long mBirth[];
+    private long mDeath[];
+    /** Whether each particle survived the current frame's update. */
+    private boolean mAlive[];
+    /** Each chunk's position and scratch space (CHUNK_SCRATCH floats per chunk). */
+    private Vector3 mChunkPosition[];
+    private float mChunkScratch[];
+
+    /** The number of bytes of state stored for each particle. */
+    private static final int PARTICLE_BYTES = (3 + 3 + 4 + 3) * 4 + 8 + 8;
+
+    public FireworksSystem() {
+        this(System.nanoTime());
+    }
+
+    /** Constructor -- large frames are updated on up to four threads (see PARALLEL_MIN).
+     * @param seed  The seed of the system's random numbers; systems with the same seed and the
+     *              same touches produce the same fireworks.
+     */
+    public FireworksSystem(long seed) {
+        this(seed, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /** Constructor.
+     * @param seed      The seed of the system's random numbers; systems with the same seed and the
+     *                  same touches produce the same fireworks.
+     * @param threads   The number of threads which update large frames (including the drawing
+     *                  thread).
+     */
+    public FireworksSystem(long seed, int threads) {
+        super();
+        mThreads = threads;
+        mUpdateTask = new WorkerPool.Task() {
+            @Override
+            public void run(int chunk) {
+                updateChunk(chunk);
+            }
+        };
+        mTrails = new Trails(MAX_TRAILS, TRAIL_LENGTH);
+        mRandom = new XorShiftRandom(seed);
+        mEvents = new EventScheduler(MAX_EVENTS, EVENT_ARGS);
+        mSpawner = new EventScheduler.Handler() {
+            @Override
+            public void fire(int type, float[] args, int offset, long fireT) {
+                onEvent(type, args, offset, fireT);
+            }
+        };
+        mTarget = new Vector3();
+        mScratch = new Vector3();
+        mSync = new Object();
+        mLastLaunch = -1;
+        mLaunchSide = -1;
+        mActive = false;
+        allocate(0);
+    }
+
+    @Override
+    public void initMaterials(Scene scene) {
+        Material star = scene.getMaterial(Material.SHADE_TINT, R.raw.star, 0);
+        mBatch = scene.getBatch(star, mParticleBudget);
+        allocate(Math.min(mParticleBudget, mBatch.getCapacity()));
+        mTrails.initMaterials(scene);
+    }
+
+    /** Sizes the particle columns to hold the given number of particles; any particles are lost. */
+    private void allocate(int capacity) {
+        mCapacity = capacity;
+        mCount = 0;
+        mStart = new float[capacity * 3];
+        mVelocity = new float[capacity * 3];
+        mColors = new float[capacity * 4];
+        mShape = new float[capacity * 3];
+        mBirth = new long[capacity];
+        mDeath = new long[capacity];
+        mAlive = new boolean[capacity];
+        int chunks = (capacity + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        mChunkPosition = new Vector3[chunks];
+        for (int c = 0; c < chunks; ++c) {
+            mChunkPosition[c] = new Vector3();
+        }
+        mChunkScratch = new float[chunks * CHUNK_SCRATCH];
+        if (mPool == null && mThreads > 1 && capacity >= PARALLEL_MIN) {
+            mPool = new WorkerPool(mThreads, "fireworks");
+        }
+    }
+
+    /** Reports the number of threads which update large frames (including the drawing thread). */
+    int getThreadCount() { return mPool != null ? mPool.getThreadCount() : 1; }
+
+    /** Stops the threads which update large frames, if any were started. */
+    public void shutdown() {
+        if (mPool != null) mPool.shutdown();
+    }
+
+    /** Stops the threads which update large frames, once no frame is being drawn. */
+    @Override
+    public void release() {
+        synchronized (mSync) {
+            shutdown();
+        }
+    }
+
+    @Override
+    public void draw(long globalT) {
+        synchronized (mSync) {
+            mEvents.fireDue(globalT, mSpawner);
+            mDrawT = globalT;
+            mFirstSprite = mBatch.append(mCount);
+            mSlots = mBatch.getCount() - mFirstSprite;
+            int chunks = (mCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            if (mPool != null && mCount >= PARALLEL_MIN) {
+                mPool.run(mUpdateTask, chunks);
+            } else {
+                for (int c = 0; c < chunks; ++c) updateChunk(c);
+            }
+            compact();
+            drawTrails(globalT);
+        }
+        updateActivity();
+    }
+
+    /** Updates a chunk of the particles of the current frame; see updateParticle(). */
+    private void updateChunk(int chunk) {
+        int end = Math.min(mCount, (chunk + 1) * CHUNK_SIZE);
+        Vector3 position = mChunkPosition[chunk];
+        int scratch = chunk * CHUNK_SCRATCH;
+        for (int i = chunk * CHUNK_SIZE; i < end; ++i) {
+            mAlive[i] = updateParticle(i, mDrawT, position, scratch);
+        }
+    }
+
+    /** Evaluates the i-th particle and writes its sprite into its slot, if it has one -- indicates
+     true if it is still alive, false if not. It writes only the particle's own entries and its
+     chunk's scratch space.
+     * @param position  The chunk's position.
+     * @param scratch   The index of the chunk's scratch space in mChunkScratch.
+     */
+    private boolean updateParticle(int i, long globalT, Vector3 position, int scratch) {
+        if (globalT >= mDeath[i]) return false;
+        float t = globalT - mBirth[i];
+        int p = i * 3;
+        float x = mStart[p] + mVelocity[p] * t;
+        float y = mStart[p + 1] + (mVelocity[p + 1] + HALF_GRAVITY * t) * t;
+        float z = mStart[p + 2] + mVelocity[p + 2] * t;
+        position.set(x, y, z);
+        if (mFrustum.farthestOut(position, 1.0f) > 1.0f) return false;
+        if (i >= mSlots) return true;
+
+        int c = i * 4;
+        float fade = mShape[p + 2] * t / (mDeath[i] - mBirth[i]);
+        float tint[] = mChunkScratch;
+        tint[scratch] = mColors[c];
+        tint[scratch + 1] = mColors[c + 1];
+        tint[scratch + 2] = mColors[c + 2];
+        tint[scratch + 3] = mColors[c + 3] * (1.0f - fade);
+        FastTrig.cosSinDegrees(mShape[p], tint, scratch + 4);
+        float scale = mShape[p + 1];
+        // The sparks glow, adding their light to the sky; the rockets are drawn over it. Both are
+        // in the same batch: the additivity is the same 0 (rocket) or 1 (spark) as the fade.
+        mBatch.set(mFirstSprite + i, x, y, z, tint[scratch + 4] * scale, tint[scratch + 5] * scale,
+                tint, scratch, tint, scratch, mShape[p + 2]);
+        return true;
+    }
+
+    /** Packs the particles which survived the update, and their sprites, down in order. */
+    private void compact() {
+        int kept = 0;
+        int drawn = 0;
+        for (int i = 0; i < mCount; ++i) {
+            if (!mAlive[i]) continue;
+            if (i < mSlots) mBatch.moveSprite(mFirstSprite + i, mFirstSprite + drawn++);
+            moveParticle(i, kept++);
+        }
+        mBatch.setCount(mFirstSprite + drawn);
+        mCount = kept;
+    }
+
+    /** Samples the trails of the rockets and of the sparks faster than FAST_SPARK_SPEED along their
+     trajectories, back to their births, and draws them. */
+    private void drawTrails(long globalT) {
+        int trails = 0;
+        for (int i = 0; i < mCount && trails < MAX_TRAILS; ++i) {
+            int p = i * 3;
+            int c = i * 4;
+            float t = globalT - mBirth[i];
+            float width, alpha;
+            if (mShape[p + 2] == 0) {
+                width = ROCKET_TRAIL_WIDTH;
+                alpha = ROCKET_TRAIL_ALPHA;
+            } else {
+                float vx = mVelocity[p], vz = mVelocity[p + 2];
+                float vy = mVelocity[p + 1] + 2 * HALF_GRAVITY * t;
+                float speed = (float)Math.sqrt(vx * vx + vy * vy + vz * vz);
+                if (speed <= FAST_SPARK_SPEED) continue;
+                float fade = t / (mDeath[i] - mBirth[i]);
+                width = SPARK_TRAIL_WIDTH;
+                alpha = mColors[c + 3] * (1.0f - fade)
+                        * Math.min(1.0f, (speed - FAST_SPARK_SPEED) / FAST_SPARK_RAMP);
+            }
+            mTrails.setStyle(trails, width, mColors[c], mColors[c + 1], mColors[c + 2], alpha);
+            mTrails.clear(trails);
+            // A young particle's trail starts at its birth.
+            int samples = (int)Math.min(TRAIL_LENGTH - 1, t / TRAIL_PERIOD);
+            if (samples < TRAIL_LENGTH - 1 && t > samples * TRAIL_PERIOD) {
+                pushPosition(trails, i, 0);
+            }
+            for (int j = samples; j >= 0; --j) {
+                pushPosition(trails, i, t - j * TRAIL_PERIOD);
+            }
+            ++trails;
+        }
+        for (int e = trails; e < MAX_TRAILS; ++e) {
+            mTrails.clear(e);
+        }
+        mTrails.draw(mFrustum.getEye());
+    }
+
+    /** Appends the position of the i-th particle at the given age (in milliseconds) to a trail. */
+    private void pushPosition(int trail, int i, float t) {
+        int p = i * 3;
+        mTrails.push(trail, mStart[p] + mVelocity[p] * t,
+                mStart[p + 1] + (mVelocity[p + 1] + HALF_GRAVITY * t) * t,
+                mStart[p + 2] + mVelocity[p + 2] * t);
+    }
+
+    /** Copies the particle in slot `from` into slot `to`. */
+    private void moveParticle(int from, int to) {
+        if (from == to) return;
+        System.arraycopy(mStart, from * 3, mStart, to * 3, 3);
+        System.arraycopy(mVelocity, from * 3, mVelocity, to * 3, 3);
+        System.arraycopy(mColors, from * 4, mColors, to * 4, 4);
+        System.arraycopy(mShape, from * 3, mShape, to * 3, 3);
+        mBirth[to] = mBirth[from];
+        mDeath[to] = mDeath[from];
+    }
+
+    /** Notifies the listeners when the system starts or stops having particles or pending events. */
+    private void updateActivity() {
+        boolean active = mCount > 0 || mEvents.size() > 0;
+        if (active == mActive) return;
+        mActive = active;
+        if (active) {
+            notifyActivityStart();
+        } else {
+            notifyActivityStop();
+        }
+    }
+
+    @Override
+    public void reportTouch(float x, float y, Frustum frustum, long globalT) {
+        if (mLastLaunch >= 0 && globalT - mLastLaunch <= LAUNCH_PERIOD) return;
+        synchronized (mSync) {
+            if (mCount >= Math.min(mCapacity, mParticleBudget)) return;
+            float depth = MIN_DEPTH + DEPTH_RANGE * mRandom.nextFloat();
+            long flight = MIN_FLIGHT + mRandom.nextInt((int)FLIGHT_RANGE + 1);
+            int slot = mEvents.schedule(globalT + flight, EVENT_BURST);
+            if (slot < 0) return;
+            mFrustum.pointInFrustum(x, y, depth, mTarget);
+            mEvents.setArg(slot, 0, mTarget.x);
+            mEvents.setArg(slot, 1, mTarget.y);
+            mEvents.setArg(slot, 2, mTarget.z);
+            mEvents.setArg(slot, 3, mRandom.nextFloat() * 360);
+            launch(mTarget, depth, flight, globalT);
+            mLastLaunch = globalT;
+        }
+        updateActivity();
+    }
+
+    /** Adds a rocket which leaves the bottom corner of the screen (alternating sides) at the given
+     time and reaches the target, at the given depth, after the given flight time. */
+    private void launch(Vector3 target, float depth, long flight, long globalT) {
+        mFrustum.pointInFrustum(mLaunchSide * LAUNCH_X, -1.0f, depth, mScratch);
+        mLaunchSide = -mLaunchSide;
+        float t = flight;
+        int i = mCount++;
+        int p = i * 3;
+        mStart[p] = mScratch.x;
+        mStart[p + 1] = mScratch.y;
+        mStart[p + 2] = mScratch.z;
+        // The velocity which reaches the target after the flight time, despite gravity.
+        mVelocity[p] = (target.x - mScratch.x) / t;
+        mVelocity[p + 1] = (target.y - mScratch.y) / t - HALF_GRAVITY * t;
+        mVelocity[p + 2] = (target.z - mScratch.z) / t;
+        System.arraycopy(sRocketColor, 0, mColors, i * 4, 4);
+        mShape[p] = 0;
+        mShape[p + 1] = ROCKET_SCALE;
+        mShape[p + 2] = 0;
+        mBirth[i] = globalT;
+        mDeath[i] = globalT + flight;
+    }
+
+    /** Handles a due event. */
+    private void onEvent(int type, float[] args, int offset, long fireT) {
+        float x = args[offset], y = args[offset + 1], z = args[offset + 2];
+        float hue = args[offset + 3];
+        if (type == EVENT_BURST) {
+            burst(x, y, z, hue, BURST_SPARKS, BURST_SPEED, fireT);
+            int slot = mEvents.schedule(fireT + ECHO_DELAY, EVENT_ECHO);
+            if (slot >= 0) {
+                mEvents.setArg(slot, 0, x);
+                mEvents.setArg(slot, 1, y);
+                mEvents.setArg(slot, 2, z);
+                mEvents.setArg(slot, 3, hue >= 180 ? hue - 180 : hue + 180);
+            }
+        } else if (type == EVENT_ECHO) {
+            burst(x, y, z, hue, ECHO_SPARKS, ECHO_SPEED, fireT);
+        }
+    }
+
+    /** Adds a shell of sparks, born at the given time, flying out from the given position in
+     uniformly random directions. Sparks which do not fit in the budget are dropped. */
+    private void burst(float x, float y, float z, float hue, int sparks, float speed, long globalT) {
+        int count = Math.min(sparks, Math.min(mCapacity, mParticleBudget) - mCount);
+        for (int s = 0; s < count; ++s) {
+            int i = mCount++;
+            int p = i * 3;
+            mStart[p] = x;
+            mStart[p + 1] = y;
+            mStart[p + 2] = z;
+            // A uniformly distributed direction: a random height and a random azimuth.
+            float cosPhi = mRandom.nextFloat() * 2 - 1;
+            float sinPhi = (float)Math.sqrt(1 - cosPhi * cosPhi);
+            double theta = mRandom.nextFloat() * 2 * Math.PI;
+            float v = speed * (0.8f + 0.2f * mRandom.nextFloat());
+            mVelocity[p] = v * sinPhi * (float)Math.cos(theta);
+            mVelocity[p + 1] = v * cosPhi;
+            mVelocity[p + 2] = v * sinPhi * (float)Math.sin(theta);
+            SimpleParticleSystem.setHue(hue, mColors, i * 4);
+            mShape[p] = mRandom.nextFloat() * 360;
+            mShape[p + 1] = SPARK_SCALE;
+            mShape[p + 2] = 1;
+            mBirth[i] = globalT;
+            mDeath[i] = globalT + MIN_SPARK_LIFE + mRandom.nextInt((int)SPARK_LIFE_RANGE + 1);
+        }
+    }
+
+    @Override
+    public int getParticleCount() { return mCount; }
+
+    /** Particles are always moving; with none, nothing changes until the next burst is due. */
+    @Override
+    public long nextVisibleChange(long globalT) {
+        if (mCount > 0) return globalT;
+        return mEvents.size() > 0 ? mEvents.getNextFireTime() : NEVER;
+    }
+
+    @Override
+    public float[] getBgColor() { return sBgColor; }
+
+    /** State: the particle count, the launch state, the random state, each particle column in turn
+     and then the pending events. */
+    @Override
+    public int getStateSize() {
+        return 4 + 8 + 4 + 8 + mCount * PARTICLE_BYTES + mEvents.getStateSize();
+    }
+
+    @Override
+    public void writeState(ByteBuffer out) {
+        synchronized (mSync) {
+            out.putInt(mCount);
+            out.putLong(mLastLaunch);
+            out.putInt(mLaunchSide);
+            out.putLong(mRandom.getState());
+            SceneSnapshot.putFloats(out, mStart, mCount * 3);
+            SceneSnapshot.putFloats(out, mVelocity, mCount * 3);
+            SceneSnapshot.putFloats(out, mColors, mCount * 4);
+            SceneSnapshot.putFloats(out, mShape, mCount * 3);
+            SceneSnapshot.putLongs(out, mBirth, mCount);
+            SceneSnapshot.putLongs(out, mDeath, mCount);
+            mEvents.write(out);
+        }
+    }
+
+    @Override
+    public void readState(ByteBuffer in, long shift) {
+        synchronized (mSync) {
+            int stored = in.getInt();
+            long lastLaunch = in.getLong();
+            mLastLaunch = lastLaunch < 0 ? lastLaunch : lastLaunch + shift;
+            mLaunchSide = in.getInt();
+            mRandom.setState(in.getLong());
+            // A smaller budget drops the particles beyond it.
+            int count = Math.min(stored, mCapacity);
+            SceneSnapshot.getFloats(in, mStart, count * 3, stored * 3);
+            SceneSnapshot.getFloats(in, mVelocity, count * 3, stored * 3);
+            SceneSnapshot.getFloats(in, mColors, count * 4, stored * 4);
+            SceneSnapshot.getFloats(in, mShape, count * 3, stored * 3);
+            SceneSnapshot.getLongs(in, mBirth, count, stored);
+            SceneSnapshot.getLongs(in, mDeath, count, stored);
+            for (int i = 0; i < count; ++i) {
+                mBirth[i] += shift;
+                mDeath[i] += shift;
+            }
+            mCount = count;
+            mEvents.read(in, shift);
+        }
+        updateActivity();
+    }
+}
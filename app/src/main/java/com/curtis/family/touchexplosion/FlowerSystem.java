@@ -0,0 +1,312 @@
+package com.curtis.family.touchexplosion;
+
+import com.curtis.family.touchexplosion.functions.DragBallisticFunction3D;
+import com.curtis.family.touchexplosion.functions.SineFunction;
+
+import java.nio.ByteBuffer;
+
+/** A flower thrown out by a burst. Its path is a closed-form function of time: air drag slows the
+ burst to a steady fall while the flower swings back and forth like a pendulum, tilting with the
+ swing. Flowers are pooled; a flower is re-initialized with reset() rather than replaced. */
+class FlowerParticle implements Particle {
+    /** The number of bytes of state stored for a flower. */
+    static final int STATE_BYTES = 11 * 4 + 8;
+    /** The tilt of the flower (in degrees) per meter it has swung from the center of its swing. */
+    static final float TILT_PER_METER = 40.0f;
+
+    /** The burst, slowed by drag. */
+    private DragBallisticFunction3D mPath;
+    /** The pendulum swing, displacing the flower along x. */
+    private SineFunction mSway;
+    /** The parameters the flower was emitted with. */
+    private float mX0, mY0, mZ0;
+    private float mVx, mVy, mVz;
+    private float mDrag;
+    private float mSwayFreq;
+    private float mSwayAmp;
+    private float mSpin;
+    private float mHue;
+    private long mBirth;
+    /** The petal color then the center color (r, g, b, a each). */
+    private float mColors[];
+
+    /** Constructs a flower which has not yet been emitted; it must be reset() before it is used. */
+    public FlowerParticle() {
+        mPath = new DragBallisticFunction3D(Vector3.ZERO, Vector3.ZERO, 1.0f, 0);
+        mSway = new SineFunction(0, 0, 0);
+        mColors = new float[8];
+    }
+
+    /** Re-initializes the flower in place.
+     * @param x             The x-position at t0.
+     * @param y             The y-position at t0.
+     * @param z             The z-position at t0.
+     * @param vx            The x-velocity at t0 (in m/ms).
+     * @param vy            The y-velocity at t0 (in m/ms).
+     * @param vz            The z-velocity at t0 (in m/ms).
+     * @param drag          The drag coefficient (in 1/ms).
+     * @param swayFreq      The frequency of the swing (in cycles per millisecond).
+     * @param swayAmp       The amplitude of the swing (in meters).
+     * @param spin          The orientation of the flower at the center of its swing (in degrees).
+     * @param hue           The hue of the petals (in degrees); the center is the complementary hue.
+     * @param t0            The simulator time stamp of its emission (in milliseconds).
+     */
+    public void reset(float x, float y, float z, float vx, float vy, float vz, float drag,
+                      float swayFreq, float swayAmp, float spin, float hue, long t0) {
+        mX0 = x;
+        mY0 = y;
+        mZ0 = z;
+        mVx = vx;
+        mVy = vy;
+        mVz = vz;
+        mDrag = drag;
+        mSwayFreq = swayFreq;
+        mSwayAmp = swayAmp;
+        mSpin = spin;
+        mHue = hue;
+        mBirth = t0;
+        mPath.set(x, y, z, vx, vy, vz, drag, t0);
+        mSway.set(swayFreq, swayAmp, t0);
+        SimpleParticleSystem.setHue(hue, mColors, 0);
+        SimpleParticleSystem.setHue(hue >= 180 ? hue - 180 : hue + 180, mColors, 4);
+    }
+
+    /** Writes the flower's emission parameters (STATE_BYTES bytes). */
+    public void write(ByteBuffer out) {
+        out.putFloat(mX0).putFloat(mY0).putFloat(mZ0);
+        out.putFloat(mVx).putFloat(mVy).putFloat(mVz);
+        out.putFloat(mDrag).putFloat(mSwayFreq).putFloat(mSwayAmp);
+        out.putFloat(mSpin).putFloat(mHue);
+        out.putLong(mBirth);
+    }
+
+    /** Re-initializes the flower from the parameters stored by write(), moving its emission time by
+     the given shift (in milliseconds). */
+    public void read(ByteBuffer in, long shift) {
+        float x = in.getFloat(), y = in.getFloat(), z = in.getFloat();
+        float vx = in.getFloat(), vy = in.getFloat(), vz = in.getFloat();
+        float drag = in.getFloat(), swayFreq = in.getFloat(), swayAmp = in.getFloat();
+        float spin = in.getFloat(), hue = in.getFloat();
+        reset(x, y, z, vx, vy, vz, drag, swayFreq, swayAmp, spin, hue, in.getLong() + shift);
+    }
+
+    /** Evaluates the flower's position into `pos` and reports its orientation (in degrees). The
+     swing drives both, so it is evaluated once. */
+    public float eval(long globalT, Vector3 pos) {
+        float sway = mSway.eval(globalT);
+        mPath.eval(globalT, pos);
+        pos.set(pos.x + sway, pos.y, pos.z);
+        return mSpin + TILT_PER_METER * sway;
+    }
+
+    @Override
+    public void getPosition(long globalT, Vector3 pos) { eval(globalT, pos); }
+
+    @Override
+    public float getOrient(long globalT) {
+        return mSpin + TILT_PER_METER * mSway.eval(globalT);
+    }
+
+    public float getScale() { return 0.5f; }
+
+    /** Returns the petal color (the center color follows it in the same array, at index 4). */
+    @Override
+    public float[] getColor() { return mColors; }
+
+    /** Flowers live until they fall out of the frustum. */
+    @Override
+    public boolean isAlive(long globalT) { return true; }
+}
+
+/**
+ * Flower explosion; each tap bursts a ring of flowers outwards. Air friction quickly slows them
+ * down, after which they fall at a more or less constant speed, swinging back and forth like
+ * pendulums as they go.
+ *
+ * Each flower is a pure function of time (DragBallisticFunction3D and a SineFunction sway), so
+ * there is no per-frame integration; a frame evaluates each flower directly.
+ */
+public class FlowerSystem extends ParticleSystem {
+    static final String TAG = FlowerSystem.class.getSimpleName();
+
+    /** The number of flowers in a burst. */
+    private static final int BURST_COUNT = 12;
+    /** The minimum duration (in milliseconds) between bursts. */
+    private static final long BURST_PERIOD = 250;
+    /** The largest initial speed (in m/ms) of a flower; the speed in z is a quarter of it. */
+    private static final float BURST_SPEED = 0.006f;
+    /** The range of drag coefficients (in 1/ms): the burst slows within 200 - 330 ms. */
+    private static final float MIN_DRAG = 0.003f;
+    private static final float MAX_DRAG = 0.005f;
+    /** The range of swing frequencies (in cycles/ms). */
+    private static final float MIN_SWAY_FREQ = 0.4f / 1000.0f;
+    private static final float MAX_SWAY_FREQ = 0.8f / 1000.0f;
+    /** The range of swing amplitudes (in meters). */
+    private static final float MIN_SWAY_AMP = 0.2f;
+    private static final float MAX_SWAY_AMP = 0.5f;
+    /** The largest difference (in degrees) between the hues of the flowers in a burst. */
+    private static final float HUE_SPREAD = 40.0f;
+    /** The range of depths (0 at the near plane, 1 at the far plane) bursts are placed at. */
+    private static final float MIN_DEPTH = 0.3f;
+    private static final float DEPTH_RANGE = 0.3f;
+    private static final float sBgColor[] = {0.05f, 0.05f, 0.05f};
+
+    private SpriteBatch mBatch;
+    /** The flower pool; the live flowers occupy the first mCount entries. */
+    private FlowerParticle mFlowers[];
+    /** The number of live flowers. */
+    private int mCount;
+    /** The time stamp of the last burst (in milliseconds); negative if there has been none. */
+    private long mLastBurst;
+    private XorShiftRandom mRandom;
+    private Vector3 mPose;
+    private Vector3 mScratch;
+    private Object mSync;
+
+    public FlowerSystem() {
+        this(System.nanoTime());
+    }
+
+    /** Constructor.
+     * @param seed  The seed of the system's random numbers; systems with the same seed and the
+     *              same touches produce the same flowers.
+     */
+    public FlowerSystem(long seed) {
+        super();
+        mRandom = new XorShiftRandom(seed);
+        mPose = new Vector3();
+        mScratch = new Vector3();
+        mSync = new Object();
+        mLastBurst = -1;
+        allocate(0);
+    }
+
+    @Override
+    public void initMaterials(Scene scene) {
+        Material flower = scene.getMaterial(Material.SHADE_MASKED, R.raw.flower, R.raw.flower_mask);
+        mBatch = scene.getBatch(flower, mParticleBudget);
+        allocate(Math.min(mParticleBudget, mBatch.getCapacity()));
+    }
+
+    /** Sizes the flower pool to hold the given number of flowers; any flowers are lost. */
+    private void allocate(int capacity) {
+        mFlowers = new FlowerParticle[capacity];
+        for (int i = 0; i < capacity; ++i) {
+            mFlowers[i] = new FlowerParticle();
+        }
+        mCount = 0;
+    }
+
+    @Override
+    public void draw(long globalT) {
+        int originalSize = mCount;
+        synchronized (mSync) {
+            int count = mCount;
+            for (int i = 0; i < count; ) {
+                if (drawFlower(mFlowers[i], globalT)) {
+                    ++i;
+                } else {
+                    // Swap the dead flower with the last live one; it stays in the pool.
+                    --count;
+                    FlowerParticle dead = mFlowers[i];
+                    mFlowers[i] = mFlowers[count];
+                    mFlowers[count] = dead;
+                }
+            }
+            mCount = count;
+        }
+        if (originalSize > 0 && mCount == 0) notifyActivityStop();
+    }
+
+    /** Draws the flower -- indicates true if it is still alive, false if it has left the frustum. */
+    private boolean drawFlower(FlowerParticle flower, long globalT) {
+        float theta = flower.eval(globalT, mScratch);
+        if (mFrustum.farthestOut(mScratch, 1.0f) > 1.0f) return false;
+        float colors[] = flower.getColor();
+        mBatch.add(mScratch.x, mScratch.y, mScratch.z, theta, flower.getScale(),
+                colors, 0, colors, 4, 0);
+        return true;
+    }
+
+    @Override
+    public void reportTouch(float x, float y, Frustum frustum, long globalT) {
+        if (mLastBurst >= 0 && globalT - mLastBurst <= BURST_PERIOD) return;
+        if (mCount + BURST_COUNT > Math.min(mFlowers.length, mParticleBudget)) return;
+        if (mCount == 0) notifyActivityStart();
+        synchronized (mSync) {
+            float depth = MIN_DEPTH + DEPTH_RANGE * mRandom.nextFloat();
+            mFrustum.pointInFrustum(x, y, depth, mPose);
+            burst(mPose, globalT);
+        }
+        mLastBurst = globalT;
+    }
+
+    /** Emits a ring of flowers from the given position, evenly spread in direction (with a random
+     phase) and with random speed, drag, swing and shades of a random hue. */
+    private void burst(Vector3 pos, long globalT) {
+        float hue = mRandom.nextFloat() * 360;
+        float phase = mRandom.nextFloat() * (float)(2 * Math.PI);
+        for (int i = 0; i < BURST_COUNT; ++i) {
+            float angle = phase + i * (float)(2 * Math.PI) / BURST_COUNT;
+            float speed = BURST_SPEED * (0.5f + 0.5f * mRandom.nextFloat());
+            float vx = speed * (float)Math.cos(angle);
+            float vy = speed * (float)Math.sin(angle);
+            float vz = (mRandom.nextFloat() * 2 - 1) * speed * 0.25f;
+            float drag = MIN_DRAG + (MAX_DRAG - MIN_DRAG) * mRandom.nextFloat();
+            float swayFreq = MIN_SWAY_FREQ + (MAX_SWAY_FREQ - MIN_SWAY_FREQ) * mRandom.nextFloat();
+            float swayAmp = MIN_SWAY_AMP + (MAX_SWAY_AMP - MIN_SWAY_AMP) * mRandom.nextFloat();
+            float spin = mRandom.nextFloat() * 360;
+            float h = hue + (mRandom.nextFloat() - 0.5f) * HUE_SPREAD;
+            if (h < 0) h += 360;
+            if (h >= 360) h -= 360;
+            mFlowers[mCount++].reset(pos.x, pos.y, pos.z, vx, vy, vz, drag, swayFreq, swayAmp,
+                    spin, h, globalT);
+        }
+    }
+
+    @Override
+    public int getParticleCount() { return mCount; }
+
+    /** Flowers are always falling; the system only comes to rest once they have all left. */
+    @Override
+    public long nextVisibleChange(long globalT) { return mCount > 0 ? globalT : NEVER; }
+
+    @Override
+    public float[] getBgColor() { return sBgColor; }
+
+    /** State: the flower count, the time of the last burst, the random state, then each flower. */
+    @Override
+    public int getStateSize() { return 4 + 8 + 8 + mCount * FlowerParticle.STATE_BYTES; }
+
+    @Override
+    public void writeState(ByteBuffer out) {
+        synchronized (mSync) {
+            out.putInt(mCount);
+            out.putLong(mLastBurst);
+            out.putLong(mRandom.getState());
+            for (int i = 0; i < mCount; ++i) {
+                mFlowers[i].write(out);
+            }
+        }
+    }
+
+    @Override
+    public void readState(ByteBuffer in, long shift) {
+        boolean wasActive = mCount > 0;
+        synchronized (mSync) {
+            int stored = in.getInt();
+            long lastBurst = in.getLong();
+            mLastBurst = lastBurst < 0 ? lastBurst : lastBurst + shift;
+            mRandom.setState(in.getLong());
+            // A smaller budget drops the flowers beyond it.
+            int count = Math.min(stored, mFlowers.length);
+            for (int i = 0; i < count; ++i) {
+                mFlowers[i].read(in, shift);
+            }
+            in.position(in.position() + (stored - count) * FlowerParticle.STATE_BYTES);
+            mCount = count;
+        }
+        if (!wasActive && mCount > 0) notifyActivityStart();
+        if (wasActive && mCount == 0) notifyActivityStop();
+    }
+}
@@ -0,0 +1,204 @@
+package com.curtis.family.touchexplosion;
+
+/**
+ * A source of acceleration on the particles of a ParticleIntegrator. Each simulation step, every
+ * field adds its acceleration on a contiguous range of particles to their acceleration columns;
+ * a field loops over the columns directly (rather than being asked about one particle at a time)
+ * so that the loops are tight enough for the JIT to unroll.
+ *
+ * Accelerations are in m/ms^2, like the rest of the particle math.
+ */
+public abstract class ForceField {
+    /** Adds the field's acceleration on the particles [begin, end) to their accelerations. */
+    abstract void accumulate(ParticleIntegrator p, int begin, int end);
+
+    /** A uniform acceleration (e.g., gravity, or buoyancy pointing up). */
+    public static class Gravity extends ForceField {
+        private float mX, mY, mZ;
+
+        /** Constructor.
+         * @param x     The acceleration along x (in m/ms^2).
+         * @param y     The acceleration along y (in m/ms^2); -9.8e-6 is earth's gravity.
+         * @param z     The acceleration along z (in m/ms^2).
+         */
+        public Gravity(float x, float y, float z) {
+            set(x, y, z);
+        }
+
+        /** Sets the acceleration (in m/ms^2). */
+        public void set(float x, float y, float z) {
+            mX = x;
+            mY = y;
+            mZ = z;
+        }
+
+        @Override
+        void accumulate(ParticleIntegrator p, int begin, int end) {
+            float ax[] = p.mAx, ay[] = p.mAy, az[] = p.mAz;
+            for (int i = begin; i < end; ++i) {
+                ax[i] += mX;
+                ay[i] += mY;
+                az[i] += mZ;
+            }
+        }
+    }
+
+    /** Drag proportional to velocity, a = -rate * v. On its own it slows particles exponentially;
+     with a constant acceleration g they approach the terminal velocity g / rate. It is stable for
+     steps shorter than 2 / rate. */
+    public static class Damping extends ForceField {
+        private float mRate;
+
+        /** Constructor.
+         * @param rate  The fraction of the velocity lost per millisecond (in 1/ms).
+         */
+        public Damping(float rate) {
+            mRate = rate;
+        }
+
+        public void setRate(float rate) { mRate = rate; }
+
+        @Override
+        void accumulate(ParticleIntegrator p, int begin, int end) {
+            float vx[] = p.mVx, vy[] = p.mVy, vz[] = p.mVz;
+            float ax[] = p.mAx, ay[] = p.mAy, az[] = p.mAz;
+            float k = mRate;
+            for (int i = begin; i < end; ++i) {
+                ax[i] -= k * vx[i];
+                ay[i] -= k * vy[i];
+                az[i] -= k * vz[i];
+            }
+        }
+    }
+
+    /** A pull towards a point (e.g., a touch): a = strength * d / (|d|^2 + softening^2), where d
+     is the offset to the point. Far from the point the pull falls off as 1 / distance; the
+     softening keeps it bounded near the point. A strength of zero turns the field off. */
+    public static class Attractor extends ForceField {
+        private float mX, mY, mZ;
+        private float mStrength;
+        private float mSoftening2;
+
+        /** Constructor -- the attractor starts off (with zero strength).
+         * @param softening The distance (in meters) within which the pull stops growing.
+         */
+        public Attractor(float softening) {
+            mSoftening2 = softening * softening;
+        }
+
+        /** Moves the point particles are pulled towards. */
+        public void setPosition(float x, float y, float z) {
+            mX = x;
+            mY = y;
+            mZ = z;
+        }
+
+        /** Sets the strength of the pull (in m^2/ms^2); negative values push particles away. */
+        public void setStrength(float strength) { mStrength = strength; }
+
+        public float getStrength() { return mStrength; }
+
+        @Override
+        void accumulate(ParticleIntegrator p, int begin, int end) {
+            if (mStrength == 0) return;
+            float x[] = p.mX, y[] = p.mY, z[] = p.mZ;
+            float ax[] = p.mAx, ay[] = p.mAy, az[] = p.mAz;
+            for (int i = begin; i < end; ++i) {
+                float dx = mX - x[i], dy = mY - y[i], dz = mZ - z[i];
+                float s = mStrength / (dx * dx + dy * dy + dz * dz + mSoftening2);
+                ax[i] += dx * s;
+                ay[i] += dy * s;
+                az[i] += dz * s;
+            }
+        }
+    }
+
+    /** A swirl about an axis parallel to z: a tangential acceleration
+     a = strength * (-dy, dx) / (r^2 + radius^2), where (dx, dy) is the offset from the axis. It is
+     strongest at the given radius and counter-clockwise for positive strengths. */
+    public static class Vortex extends ForceField {
+        private float mX, mY;
+        private float mStrength;
+        private float mRadius2;
+
+        /** Constructor.
+         * @param x         The x-coordinate of the axis.
+         * @param y         The y-coordinate of the axis.
+         * @param radius    The radius (in meters) at which the swirl is strongest.
+         * @param strength  The strength of the swirl (in m^2/ms^2).
+         */
+        public Vortex(float x, float y, float radius, float strength) {
+            mX = x;
+            mY = y;
+            mRadius2 = radius * radius;
+            mStrength = strength;
+        }
+
+        /** Moves the axis. */
+        public void setCenter(float x, float y) {
+            mX = x;
+            mY = y;
+        }
+
+        /** Sets the radius (in meters) at which the swirl is strongest and its strength (in
+         m^2/ms^2). */
+        public void set(float radius, float strength) {
+            mRadius2 = radius * radius;
+            mStrength = strength;
+        }
+
+        @Override
+        void accumulate(ParticleIntegrator p, int begin, int end) {
+            float x[] = p.mX, y[] = p.mY;
+            float ax[] = p.mAx, ay[] = p.mAy;
+            for (int i = begin; i < end; ++i) {
+                float dx = x[i] - mX, dy = y[i] - mY;
+                float s = mStrength / (dx * dx + dy * dy + mRadius2);
+                ax[i] -= dy * s;
+                ay[i] += dx * s;
+            }
+        }
+    }
+
+    /** A push away from the obstacles of an ObstacleField for particles within a margin of them:
+     the push grows linearly from zero at the margin to `strength` at the obstacles' surfaces (and
+     beyond, inside them), along the field's gradient. Each particle costs one field lookup. */
+    public static class Avoidance extends ForceField {
+        private ObstacleField mField;
+        private final float mMargin;
+        private final float mStrength;
+        private final Vector3 mGradient;
+
+        /** Constructor.
+         * @param field     The obstacles (null for none).
+         * @param margin    The distance (in meters) from the obstacles at which the push starts.
+         * @param strength  The acceleration (in m/ms^2) at the obstacles' surfaces.
+         */
+        public Avoidance(ObstacleField field, float margin, float strength) {
+            mField = field;
+            mMargin = margin;
+            mStrength = strength;
+            mGradient = new Vector3();
+        }
+
+        /** Replaces the obstacles (null for none). */
+        public void setField(ObstacleField field) { mField = field; }
+
+        @Override
+        void accumulate(ParticleIntegrator p, int begin, int end) {
+            ObstacleField field = mField;
+            if (field == null) return;
+            float x[] = p.mX, y[] = p.mY, z[] = p.mZ;
+            float ax[] = p.mAx, ay[] = p.mAy, az[] = p.mAz;
+            float scale = mStrength / mMargin;
+            for (int i = begin; i < end; ++i) {
+                float d = field.sample(x[i], y[i], z[i], mGradient);
+                if (d >= mMargin) continue;
+                float s = (mMargin - Math.max(d, 0)) * scale;
+                ax[i] += mGradient.x * s;
+                ay[i] += mGradient.y * s;
+                az[i] += mGradient.z * s;
+            }
+        }
+    }
+}
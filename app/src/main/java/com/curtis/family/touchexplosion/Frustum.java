@@ -108,12 +108,28 @@ public class Frustum {
     public Vector3 getForward() { return mForward; }
     public Vector3 getTarget() { return mEye.add(mForward); }
 
+    /** Writes the planes of the frustum's floor and sides (bottom, left, right): nx, ny, nz, d
+     per plane, with the inside where n . p + d < 0 (see PiecewiseFunction3D).
+     * @param out   Receives the 12 values.
+     */
+    public void getWalls(float[] out) {
+        int walls[] = {2, 4, 5};
+        for (int w = 0; w < walls.length; ++w) {
+            Plane plane = mPlanes.get(walls[w]);
+            out[w * 4] = plane.n.x;
+            out[w * 4 + 1] = plane.n.y;
+            out[w * 4 + 2] = plane.n.z;
+            out[w * 4 + 3] = plane.D;
+        }
+    }
+
     /** Reports the distance outside the frustum the point is. If the frustum is inside, it returns
      a negative value. It will stop testing if it counters a distance >= `threshold`. */
     public float farthestOut(Vector3 pos, float threshold) {
         float farthest = (float)Double.NEGATIVE_INFINITY;
-        for (Plane plane : mPlanes) {
-            float dist = plane.signedDistance(pos);
+        // Indexed, rather than for-each, so no iterator is created on each call.
+        for (int i = 0; i < mPlanes.size(); ++i) {
+            float dist = mPlanes.get(i).signedDistance(pos);
             if ( dist > farthest ) {
                 farthest = dist;
                 if (farthest > threshold) break;
@@ -0,0 +1,63 @@
+package com.curtis.family.touchexplosion;
+
+/**
+ * A particle's color, alpha and size over its life, baked into a small table indexed by its
+ * normalized age (0 at birth, 1 at death), so that drawing a particle with any number of ramps
+ * costs a single lookup rather than an evaluation per channel.
+ *
+ * The ramp is defined by keys of (age, r, g, b, a, scale), interpolated linearly between keys and
+ * held constant before the first and after the last; it is baked once, when constructed. Ages are
+ * looked up at the nearest of SIZE evenly spaced entries, so a key is reproduced exactly only if
+ * its age falls on an entry (e.g., 0 and 1); between entries, the ramp is off by at most half a
+ * step's change.
+ */
+public class LifetimeRamp {
+    /** The number of entries in the table. */
+    public static final int SIZE = 64;
+    /** The number of floats per key and per entry (the age and the five channels, and the five
+     channels, respectively). */
+    public static final int KEY_FLOATS = 6;
+    public static final int ENTRY_FLOATS = 5;
+
+    /** The entries: r, g, b, a, scale. */
+    private final float mTable[];
+
+    /** Constructor.
+     * @param keys  The keys: age, r, g, b, a, scale per key, in increasing age.
+     */
+    public LifetimeRamp(float[] keys) {
+        int count = keys.length / KEY_FLOATS;
+        if (count == 0) throw new IllegalArgumentException("A ramp needs at least one key");
+        mTable = new float[SIZE * ENTRY_FLOATS];
+        int key = 0;
+        for (int i = 0; i < SIZE; ++i) {
+            float age = i / (float)(SIZE - 1);
+            while (key + 1 < count && keys[(key + 1) * KEY_FLOATS] <= age) ++key;
+            int k0 = key * KEY_FLOATS;
+            float w = 0;
+            int k1 = k0;
+            if (key + 1 < count && age > keys[k0]) {
+                k1 = k0 + KEY_FLOATS;
+                w = (age - keys[k0]) / (keys[k1] - keys[k0]);
+            }
+            for (int c = 1; c <= ENTRY_FLOATS; ++c) {
+                mTable[i * ENTRY_FLOATS + c - 1] = keys[k0 + c] + (keys[k1 + c] - keys[k0 + c]) * w;
+            }
+        }
+    }
+
+    /** Looks up the ramp at the given age.
+     * @param age       The normalized age; it is clamped to [0, 1].
+     * @param color     Receives the color (r, g, b, a).
+     * @return The scale.
+     */
+    public float sample(float age, float[] color) {
+        int i = (int)(age * (SIZE - 1) + 0.5f);
+        i = (i < 0 ? 0 : (i >= SIZE ? SIZE - 1 : i)) * ENTRY_FLOATS;
+        color[0] = mTable[i];
+        color[1] = mTable[i + 1];
+        color[2] = mTable[i + 2];
+        color[3] = mTable[i + 3];
+        return mTable[i + 4];
+    }
+}
@@ -0,0 +1,128 @@
+package com.curtis.family.touchexplosion;
+
+import java.util.List;
+
+/**
+ * A container for short-lived elements whose lifespans are known when they are added and which are
+ * added in order of their birth.
+ *
+ * Lifespans are quantized into buckets of a fixed width. Each bucket is a fixed-size FIFO ring;
+ * because every element in a ring has the same lifespan and elements arrive in birth order, each
+ * ring is also ordered by death time. Expiring elements is then a matter of bumping each ring's
+ * tail past the elements whose death time has passed -- live elements are never inspected.
+ *
+ * All storage is allocated at construction.
+ */
+class LifetimeRings<T> {
+    /** The shortest lifespan (in milliseconds). */
+    private final long mMinLife;
+    /** The width of each lifespan bucket (in milliseconds). */
+    private final long mBucketWidth;
+    /** The number of elements each ring can hold. */
+    private final int mRingCapacity;
+    /** The elements, ring by ring: ring r occupies [r * mRingCapacity, (r + 1) * mRingCapacity). */
+    private final Object[] mItems;
+    /** The death time of each element in mItems. */
+    private final long[] mDeath;
+    /** The index (within its ring) of each ring's oldest element. */
+    private final int[] mTail;
+    /** The number of elements in each ring. */
+    private final int[] mCount;
+    /** The total number of elements. */
+    private int mSize;
+
+    /** Constructor.
+     * @param minLife       The shortest lifespan (in milliseconds).
+     * @param maxLife       The longest lifespan (in milliseconds).
+     * @param bucketWidth   The resolution of the lifespans (in milliseconds).
+     * @param ringCapacity  The number of elements each lifespan bucket can hold.
+     */
+    LifetimeRings(long minLife, long maxLife, long bucketWidth, int ringCapacity) {
+        mMinLife = minLife;
+        mBucketWidth = bucketWidth;
+        mRingCapacity = ringCapacity;
+        int rings = (int)((maxLife - minLife) / bucketWidth) + 1;
+        mItems = new Object[rings * ringCapacity];
+        mDeath = new long[rings * ringCapacity];
+        mTail = new int[rings];
+        mCount = new int[rings];
+        mSize = 0;
+    }
+
+    /** Rounds the given lifespan down to the resolution of the buckets (clamping it to the range
+     given at construction). */
+    long quantize(long life) {
+        return mMinLife + bucketOf(life) * mBucketWidth;
+    }
+
+    /** Adds an element. Its lifespan should already be quantized; it must not be born before any
+     element previously added with the same lifespan.
+     * @return True if the element was added, false if its lifespan bucket is full.
+     */
+    boolean add(T item, long birthT, long life) {
+        int ring = bucketOf(life);
+        int count = mCount[ring];
+        if (count == mRingCapacity) return false;
+        int i = ring * mRingCapacity + (mTail[ring] + count) % mRingCapacity;
+        mItems[i] = item;
+        mDeath[i] = birthT + quantize(life);
+        mCount[ring] = count + 1;
+        ++mSize;
+        return true;
+    }
+
+    /** Removes every element which has died by the given time, moving it into `dead`.
+     * @return The number of elements removed.
+     */
+    @SuppressWarnings("unchecked")
+    int expire(long globalT, List<T> dead) {
+        int removed = 0;
+        for (int ring = 0; ring < mCount.length; ++ring) {
+            int base = ring * mRingCapacity;
+            int tail = mTail[ring];
+            int count = mCount[ring];
+            while (count > 0 && mDeath[base + tail] <= globalT) {
+                dead.add((T)mItems[base + tail]);
+                mItems[base + tail] = null;
+                tail = (tail + 1) % mRingCapacity;
+                --count;
+                ++removed;
+            }
+            mTail[ring] = tail;
+            mCount[ring] = count;
+        }
+        mSize -= removed;
+        return removed;
+    }
+
+    /** Reports the total number of live elements. */
+    int size() { return mSize; }
+
+    /** Reports the number of lifespan buckets. */
+    int getRingCount() { return mCount.length; }
+
+    /** Reports the number of elements in the given ring. */
+    int getRingSize(int ring) { return mCount[ring]; }
+
+    /** Returns the i-th oldest element of the given ring. */
+    @SuppressWarnings("unchecked")
+    T get(int ring, int i) {
+        return (T)mItems[ring * mRingCapacity + (mTail[ring] + i) % mRingCapacity];
+    }
+
+    /** Reports the earliest time at which an element dies; Long.MAX_VALUE if there are none. */
+    long getNextDeath() {
+        long next = Long.MAX_VALUE;
+        for (int ring = 0; ring < mCount.length; ++ring) {
+            if (mCount[ring] > 0) {
+                next = Math.min(next, mDeath[ring * mRingCapacity + mTail[ring]]);
+            }
+        }
+        return next;
+    }
+
+    private int bucketOf(long life) {
+        long bucket = (life - mMinLife) / mBucketWidth;
+        return (int)Math.max(0, Math.min(mCount.length - 1, bucket));
+    }
+}
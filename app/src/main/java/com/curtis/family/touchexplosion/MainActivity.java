@@ -124,13 +124,13 @@ public class MainActivity extends AppCompatActivity {
     protected void onResume() {
         super.onResume();
         delayedHide(100);
-        // TODO: Give the renderer (and corresponding particle system) a chance to wake up.
+        mContentView.onResume();
     }
 
     @Override
     protected void onPause() {
         super.onPause();
-        // TODO: Give the renderer a chance to pause.
+        mContentView.onPause();
     }
 
     private void toggle() {
@@ -0,0 +1,185 @@
+package com.curtis.family.touchexplosion;
+
+/**
+ * The GL state a sprite is drawn with: a shading model and its textures. Materials are shared by
+ * every system which draws with the same state and are created through Scene.getMaterial().
+ *
+ * All materials use the same vertex layout (see SpriteBatch) and the same vertex shader; they
+ * differ in their fragment shader, and in the polygon their sprites are drawn as (see
+ * SpriteShape).
+ *
+ * Every material draws with premultiplied alpha: the textures are premultiplied when they are
+ * loaded, the fragment shaders output premultiplied color, and the scene blends with GL_ONE,
+ * GL_ONE_MINUS_SRC_ALPHA. A sprite's additivity (aAdditive, 0 to 1) scales down only the alpha it
+ * writes: at 0 the sprite covers what is behind it, at 1 it adds its light to it. So glowing and
+ * ordinary sprites share one blend state, and can share a batch and its draw call. The depth fade
+ * (alpha) scales the sprite's alpha, capped at 1.
+ */
+public class Material implements Comparable<Material> {
+    /** The texture modulated by the sprite color (aColor). */
+    public static final int SHADE_TINT = 0;
+    /** The texture's color is replaced by aColor where the mask texture is bright, and by aColor2
+     where it is dark. */
+    public static final int SHADE_MASKED = 1;
+    /** The texture is blended with a copy of itself, rotated by the angle whose (cos, sin) is
+     given in aColor2.xy, and modulated by aColor. */
+    public static final int SHADE_SPARK = 2;
+    /** No textures: aColor, fading out towards the long edges of the quad (u = 0 and u = 1). Used
+     for the camera-facing strips of Trails. */
+    public static final int SHADE_RIBBON = 3;
+    /** The number of shading models. */
+    static final int SHADING_COUNT = 4;
+
+    static final String VERTEX_SHADER =
+            "uniform mat4 uMVPMatrix;" +
+                    "uniform float uFarLimit;" +
+                    "attribute vec4 aPosition;" +
+                    "attribute vec2 aTextureCoord;" +
+                    "attribute vec4 aColor;" +
+                    "attribute vec4 aColor2;" +
+                    "attribute float aAdditive;" +
+                    "varying vec2 vTextureCoord;" +
+                    "varying vec4 vColor;" +
+                    "varying vec4 vColor2;" +
+                    "varying float vAdditive;" +
+                    "varying float alpha;" +
+                    "void main() {" +
+                    "  gl_Position = uMVPMatrix * aPosition;" +
+                    "  float dist = 0.125f + 1.0f - (gl_Position.z / uFarLimit) * 0.825f;" +
+                    "  alpha = sqrt(dist);" +
+                    "  vTextureCoord = aTextureCoord;" +
+                    "  vColor = aColor;" +
+                    "  vColor2 = aColor2;" +
+                    "  vAdditive = aAdditive;" +
+                    "}";
+
+    private static final String TINT_FRAGMENT_SHADER =
+            "precision mediump float;" +
+                    "varying vec2 vTextureCoord;" +
+                    "varying vec4 vColor;" +
+                    "varying float vAdditive;" +
+                    "varying float alpha;" +
+                    "uniform sampler2D uTexture0;" +
+                    "void main() {" +
+                    "  float fade = min(alpha, 1.0f) * vColor.a;" +
+                    "  vec4 tint = vec4(vColor.rgb * fade, fade);" +
+                    "  gl_FragColor = texture2D(uTexture0, vTextureCoord) * tint;" +
+                    "  gl_FragColor.a *= 1.0f - vAdditive;" +
+                    "}";
+
+    private static final String MASKED_FRAGMENT_SHADER =
+            "precision mediump float;" +
+                    "varying vec2 vTextureCoord;" +
+                    "varying vec4 vColor;" +
+                    "varying vec4 vColor2;" +
+                    "varying float vAdditive;" +
+                    "varying float alpha;" +
+                    "uniform sampler2D uTexture0;" +
+                    "uniform sampler2D uTexture1;" +
+                    "void main() {" +
+                    "  vec4 texel = texture2D(uTexture0, vTextureCoord);" +
+                    "  float color_mask = texture2D(uTexture1, vTextureCoord).x;" +
+                    "  texel.xyz *= color_mask < 0.75f ? vColor2.xyz : vColor.xyz;" +
+                    "  gl_FragColor = texel * min(alpha, 1.0f);" +
+                    "  gl_FragColor.a *= 1.0f - vAdditive;" +
+                    "}";
+
+    private static final String SPARK_FRAGMENT_SHADER =
+            "precision mediump float;" +
+                    "varying vec2 vTextureCoord;" +
+                    "varying vec4 vColor;" +
+                    "varying vec4 vColor2;" +
+                    "varying float vAdditive;" +
+                    "varying float alpha;" +
+                    "uniform sampler2D uTexture0;" +
+                    "void main() {" +
+                    "  vec2 uv = vTextureCoord;" +
+                    "  gl_FragColor = texture2D(uTexture0, uv) * 0.5f;" +
+                    "  vec2 x = vec2(vColor2.y, vColor2.x);" +
+                    "  vec2 y = vec2(-vColor2.x, vColor2.y);" +
+                    "  vec2 localUV = uv - 0.5f;" +
+                    "  vec2 uv2 = vec2(dot(localUV, x),dot(localUV, y)) + 0.5f;" +
+                    "  float overflow = uv2.x > 1.f ? 0.f : " +
+                    "                   uv2.x < 0.f ? 0.f : " +
+                    "                   uv2.y > 1.f ? 0.f : " +
+                    "                   uv2.y < 0.f ? 0.f : 1.f;" +
+                    "  gl_FragColor += texture2D(uTexture0, uv2) * 0.5f;" +
+                    "  float fade = min(alpha, 1.0f) * vColor.a * overflow;" +
+                    "  gl_FragColor *= vec4(vColor.rgb * fade, fade);" +
+                    "  gl_FragColor.a *= 1.0f - vAdditive;" +
+                    "}";
+
+    private static final String RIBBON_FRAGMENT_SHADER =
+            "precision mediump float;" +
+                    "varying vec2 vTextureCoord;" +
+                    "varying vec4 vColor;" +
+                    "varying float vAdditive;" +
+                    "varying float alpha;" +
+                    "void main() {" +
+                    "  float edge = 1.0f - abs(vTextureCoord.x * 2.0f - 1.0f);" +
+                    "  float fade = min(alpha, 1.0f) * vColor.a * edge;" +
+                    "  gl_FragColor = vec4(vColor.rgb * fade, fade * (1.0f - vAdditive));" +
+                    "}";
+
+    /** One of the SHADE_* constants. */
+    final int mShading;
+    /** The raw resource ids of the textures; 0 if the texture unit is unused. */
+    final int mTexture0;
+    final int mTexture1;
+    /** The polygon the sprites are drawn as. */
+    final SpriteShape mShape;
+
+    // GL state -- valid after Scene.initGL().
+    int mProgram;
+    int mTexId0;
+    int mTexId1;
+    int mMVPHandle;
+    int mFarLimitHandle;
+    int mPositionHandle;
+    int mTexCoordHandle;
+    int mColorHandle;
+    int mColor2Handle;
+    int mAdditiveHandle;
+
+    Material(int shading, int texture0, int texture1) {
+        mShading = shading;
+        mTexture0 = texture0;
+        mTexture1 = texture1;
+        mShape = SpriteShape.forMaterial(shading, texture0);
+    }
+
+    /** Reports the shading model of the material (one of the SHADE_* constants). */
+    public int getShading() { return mShading; }
+
+    /** Returns the polygon the material's sprites are drawn as. */
+    public SpriteShape getShape() { return mShape; }
+
+    /** Reports the fragment shader source for the material's shading model. */
+    String getFragmentShader() {
+        switch (mShading) {
+            case SHADE_MASKED:
+                return MASKED_FRAGMENT_SHADER;
+            case SHADE_SPARK:
+                return SPARK_FRAGMENT_SHADER;
+            case SHADE_RIBBON:
+                return RIBBON_FRAGMENT_SHADER;
+            default:
+                return TINT_FRAGMENT_SHADER;
+        }
+    }
+
+    /** Reports if this material has the given state. */
+    boolean matches(int shading, int texture0, int texture1) {
+        return mShading == shading && mTexture0 == texture0 && mTexture1 == texture1;
+    }
+
+    /** Materials are ordered by program and then by texture, so that drawing them in order
+     minimizes state changes. */
+    @Override
+    public int compareTo(Material other) {
+        if (mShading != other.mShading) return mShading < other.mShading ? -1 : 1;
+        if (mTexture0 != other.mTexture0) return mTexture0 < other.mTexture0 ? -1 : 1;
+        if (mTexture1 != other.mTexture1) return mTexture1 < other.mTexture1 ? -1 : 1;
+        return 0;
+    }
+}
@@ -5,8 +5,11 @@ import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
 import android.os.SystemClock;
+import android.util.Log;
 import android.view.MotionEvent;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Random;
 
 import javax.microedition.khronos.egl.EGLConfig;
@@ -16,11 +19,52 @@ import javax.microedition.khronos.opengles.GL10;
  * The OpenGL renderer.
  */
 public class MyGLRenderer implements GLSurfaceView.Renderer {
-    private ParticleSystem mParticleSystem;
+    static final String TAG = MyGLRenderer.class.getSimpleName();
+    /** The name of the file (in the app's files directory) holding the particle snapshot. */
+    private static final String SNAPSHOT_FILE = "particles.snapshot";
+    /** The frame time the dynamic resolution aims for (in milliseconds): a 60 Hz frame, with some
+     slack for the jitter in the frame interval. */
+    private static final float TARGET_FRAME_MS = 18.0f;
+    /** The estimated time from the end of drawing a frame to its display (in milliseconds): the
+     swap queues the frame, and the compositor shows it on a later vsync. */
+    private static final long DISPLAY_MS = 2 * 16;
+    /** The number of latest touch latencies the reported percentiles cover. */
+    private static final int LATENCY_SAMPLES = 256;
+    /** The interval between updates of the touch prediction's horizon, and between the reports of
+     the latency (in milliseconds). */
+    private static final long LATENCY_REPORT_MS = 5000;
+    /** The particle systems drawn by the renderer. It outlives the GL context. */
+    private Scene mScene;
+    /** Decides when the next frame is drawn. */
+    private final RenderScheduler mScheduler;
+    /** The total time the renderer has spent paused (in milliseconds); the particles' clock
+     excludes it. */
+    private long mPausedTime;
+    /** The (uptime) time stamp at which the renderer was paused; -1 if it is running. */
+    private long mPauseStart;
     // mMVPMatrix is an abbreviation for "Model View Projection Matrix"
     private final float[] mMVPMatrix = new float[16];
     private final float[] mProjectionMatrix = new float[16];
     private final float[] mViewMatrix = new float[16];
+    /** If true, the particles are drawn offscreen at a resolution set by mResolution. */
+    private boolean mDynamicResolution;
+    private final ResolutionController mResolution;
+    private OffscreenTarget mOffscreen;
+    /** The size of the last offscreen frame (in pixels). */
+    private final int[] mFrameSize = new int[2];
+    /** The start (nanoTime) of the last frame; 0 if it did not follow another frame at once. */
+    private long mFrameStart;
+    /** Measures the time from each touch to the display of its frame. */
+    private final TouchLatency mLatency;
+    /** Extrapolates the touches to the display of their frame. */
+    private final TouchPredictor mPredictor;
+    /** The time from a touch to the display of its frame which the prediction covers (in
+     milliseconds): the median latency, once it has been measured. */
+    private volatile long mPredictionMs;
+    /** The (uptime) time of the next update of mPredictionMs. */
+    private long mNextLatencyReport;
+    /** Receives a predicted touch position. */
+    private final float[] mTouch = new float[2];
 
     // Window dimensions in pixels
     private int _wWidth;
@@ -37,14 +81,37 @@ public class MyGLRenderer implements GLSurfaceView.Renderer {
     MyGLRenderer(MyGLSurfaceView glView, Context ctx) {
         mContext = ctx;
         mGlView = glView;
+        // Full rate is 60 Hz; it is held for half a second after each touch.
+        mScheduler = new RenderScheduler(16, 500);
+        mDynamicResolution = true;
+        mResolution = new ResolutionController(TARGET_FRAME_MS);
+        mPausedTime = 0;
+        mPauseStart = -1;
+        mLatency = new TouchLatency(LATENCY_SAMPLES, DISPLAY_MS);
+        mPredictor = new TouchPredictor();
+        mPredictionMs = DISPLAY_MS;
     }
 
     @Override
     public void onSurfaceCreated(GL10 gl, EGLConfig config) {
-        mParticleSystem = new SimpleParticleSystem();
-        mParticleSystem.addListener(mGlView);
-        mParticleSystem.initGL(mContext);
-        float bgColor[] = mParticleSystem.getBgColor();
+        if (mScene == null) {
+            mScene = new Scene();
+            mScene.addListener(mGlView);
+            // Particle budgets and per-frame time budgets (in ms) for each system.
+            mScene.add(new SimpleParticleSystem(), 2000, 4.0f);
+            mScene.add(new FlowerSystem(), 600, 2.0f);
+            mScene.add(new FireworksSystem(), 1000, 2.0f);
+            mScene.add(new FeedingPoolSystem(), 300, 3.0f);
+            mScene.add(new BubbleSystem(), 400, 2.0f);
+            mScene.add(new TinkerBellSystem(getGlobalT()), 300, 2.0f);
+            // Flowers and sparks under 8 pixels across lose little to a single texture sample.
+            mScene.getLod().setDetailPixels(8);
+            restoreSnapshot();
+        }
+        mScene.initGL(mContext);
+        // The previous context's target went with it.
+        mOffscreen = new OffscreenTarget();
+        float bgColor[] = mScene.getBgColor();
 
         GLES20.glClearColor(bgColor[0], bgColor[1], bgColor[2], 0.0f);
         random = new Random();
@@ -55,6 +122,9 @@ public class MyGLRenderer implements GLSurfaceView.Renderer {
         _wHeight = height;
 
         GLES20.glViewport(0, 0, width, height);
+        mScene.setViewport(width, height);
+        mOffscreen.release();
+        if (mDynamicResolution) mOffscreen.initGL(width, height);
 
         float ratio = (float) width / height;
         mFrustum = new Frustum(new Vector3(0, 0, 3), new Vector3(0, 0, -1),
@@ -70,19 +140,59 @@ public class MyGLRenderer implements GLSurfaceView.Renderer {
         Matrix.setLookAtM(mViewMatrix, 0,
                 mFrustum.getEye().x, mFrustum.getEye().y, mFrustum.getEye().z,
                 tgt.x, tgt.y, tgt.z, 0f, 1.0f, 0.0f);
-        mParticleSystem.setFrustum(mFrustum);
+        mScene.setFrustum(mFrustum);
         // Calculate the projection and view transformation
         Matrix.multiplyMM(mMVPMatrix, 0, mProjectionMatrix, 0, mViewMatrix, 0);
     }
 
     @Override
     public void onDrawFrame(GL10 gl) {
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        // While frames are drawn back to back, the swap blocks until the GPU catches up, so the
+        // interval between frames measures the GPU's frame time.
+        long start = System.nanoTime();
+        if (mFrameStart != 0) mResolution.update((start - mFrameStart) * 1e-6f);
 
         long now = getGlobalT();
-        mParticleSystem.drawGL(now, mMVPMatrix);
+        boolean offscreen = mDynamicResolution && mOffscreen.isValid();
+        if (offscreen) {
+            mOffscreen.begin(mResolution.getScale(), mFrameSize);
+            mScene.setViewport(mFrameSize[0], mFrameSize[1]);
+        } else {
+            GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        }
+        mLatency.beginFrame();
+        mScene.drawGL(now, mMVPMatrix);
+        if (offscreen) mOffscreen.end();
+        if (mLatency.endFrame(SystemClock.uptimeMillis()) > 0) updateLatency();
+
+        long delay = mScheduler.getFrameDelay(now, mScene.nextVisibleChange(now));
+        mFrameStart = delay == RenderScheduler.CONTINUOUS ? start : 0;
+        mGlView.scheduleFrame(delay);
     }
 
+    /** Reports the touch latency's percentiles and predicts the touches over its median, at most
+     every LATENCY_REPORT_MS. */
+    private void updateLatency() {
+        long uptime = SystemClock.uptimeMillis();
+        if (uptime < mNextLatencyReport) return;
+        mNextLatencyReport = uptime + LATENCY_REPORT_MS;
+        long median = mLatency.getPercentile(0.5f);
+        mPredictionMs = median;
+        Log.i(TAG, "Touch latency (ms) over " + mLatency.getSampleCount() + " touches: p50 " +
+                median + ", p90 " + mLatency.getPercentile(0.9f) + ", p99 " +
+                mLatency.getPercentile(0.99f));
+    }
+
+    /** Returns the touch latency measurements. */
+    TouchLatency getTouchLatency() { return mLatency; }
+
+    /** Turns drawing the particles offscreen at a dynamic resolution on or off. Called before
+     the surface is created. */
+    void setDynamicResolution(boolean enabled) { mDynamicResolution = enabled; }
+
+    /** Returns the controller of the offscreen resolution, to read its decisions. */
+    ResolutionController getResolutionController() { return mResolution; }
+
     public static int loadShader(int type, String shaderCode){
 
         // create a vertex shader type (GLES20.GL_VERTEX_SHADER)
@@ -96,22 +206,84 @@ public class MyGLRenderer implements GLSurfaceView.Renderer {
         return shader;
     }
 
-    protected long getGlobalT() {
-        // TODO: This needs to take into account when the system is paused and restarted.
-        return SystemClock.uptimeMillis();
+    /** Reports the particles' clock (in milliseconds); it stands still while the renderer is
+     paused. */
+    protected synchronized long getGlobalT() {
+        long now = mPauseStart < 0 ? SystemClock.uptimeMillis() : mPauseStart;
+        return now - mPausedTime;
+    }
+
+    /** Stops the particles' clock and saves the particles, so they survive the activity. Called
+     from the UI thread once the view has paused (and the GL thread is idle). */
+    void pause() {
+        synchronized (this) {
+            if (mPauseStart >= 0) return;
+            mPauseStart = SystemClock.uptimeMillis();
+        }
+        if (mScene == null) return;
+        try {
+            SceneSnapshot.save(mScene, getSnapshotFile(), getGlobalT());
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to save the particles: " + e.getMessage());
+        }
+    }
+
+    /** Restarts the particles' clock where it stopped. Called from the UI thread before the view
+     resumes. */
+    synchronized void resume() {
+        if (mPauseStart < 0) return;
+        mPausedTime += SystemClock.uptimeMillis() - mPauseStart;
+        mPauseStart = -1;
+    }
+
+    /** Restores the particles saved by a previous instance of the renderer (e.g., before the
+     process was killed), rebased onto the current clock. */
+    private void restoreSnapshot() {
+        try {
+            SceneSnapshot.restore(mScene, getSnapshotFile(), getGlobalT());
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to restore the particles: " + e.getMessage());
+        }
+    }
+
+    /** Releases the scene (stopping the systems' threads) and lets it go; a later surface builds
+     the scene afresh and restores the particles pause() saved. Called from the UI thread once the
+     GL thread has exited. */
+    void release() {
+        if (mScene == null) return;
+        mScene.release();
+        mScene = null;
+    }
+
+    private File getSnapshotFile() {
+        return new File(mContext.getFilesDir(), SNAPSHOT_FILE);
     }
 
     synchronized public boolean handleTouchEvent(MotionEvent e) {
         String TAG = "MyGLRenderer";
         int code = e.getActionMasked();
         if (code == MotionEvent.ACTION_DOWN || code == MotionEvent.ACTION_MOVE) {
-            // First compute an (x, y) value in canonical space [-1, -1] X [1, 1]
-            float x = 2 * (e.getX() / (float) _wWidth - 0.5f);
-            float y = 2 * ((_wHeight - e.getY()) / (float) _wHeight - 0.5f);
+            if (code == MotionEvent.ACTION_DOWN) mPredictor.reset();
+            // The samples batched into the event, then the event's own, in canonical space
+            // [-1, -1] X [1, 1].
+            for (int h = 0; h < e.getHistorySize(); ++h) {
+                mPredictor.addSample(e.getHistoricalEventTime(h), toCanonicalX(e.getHistoricalX(h)),
+                        toCanonicalY(e.getHistoricalY(h)));
+            }
+            mPredictor.addSample(e.getEventTime(), toCanonicalX(e.getX()), toCanonicalY(e.getY()));
+            // Where the finger will be when the frame reflecting the touch is displayed.
+            mPredictor.predict(e.getEventTime() + mPredictionMs, mTouch);
 
-            mParticleSystem.reportTouch(x, y, mFrustum, getGlobalT());
+            long now = getGlobalT();
+            mScheduler.reportInput(now);
+            mScene.reportTouch(mTouch[0], mTouch[1], now);
+            mLatency.reportEvent(e.getEventTime());
             return true;
         }
         return false;
     }
+
+    private float toCanonicalX(float x) { return 2 * (x / (float) _wWidth - 0.5f); }
+
+    private float toCanonicalY(float y) { return 2 * ((_wHeight - y) / (float) _wHeight - 0.5f); }
 }
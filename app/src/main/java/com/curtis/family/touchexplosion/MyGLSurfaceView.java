@@ -11,6 +11,13 @@ import android.view.MotionEvent;
  */
 public class MyGLSurfaceView extends GLSurfaceView implements ParticleSystem.ActivityListener {
     private MyGLRenderer mRenderer;
+    /** Reports if the view is rendering continuously (as opposed to on request). */
+    private boolean mContinuous;
+    /** Requests a single frame; posted when the scheduler asks for a frame after a delay. */
+    private final Runnable mRequestRender = new Runnable() {
+        @Override
+        public void run() { requestRender(); }
+    };
 
     public MyGLSurfaceView(Context context) {
         super(context);
@@ -30,24 +37,70 @@ public class MyGLSurfaceView extends GLSurfaceView implements ParticleSystem.Act
         getHolder().setFormat(PixelFormat.TRANSPARENT);
         setZOrderOnTop(true);
         setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+        mContinuous = false;
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        mRenderer.pause();
+    }
+
+    @Override
+    public void onResume() {
+        mRenderer.resume();
+        super.onResume();
+    }
+
+    /** The GL thread exits with the window; the scene's threads go with it. */
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mRenderer.release();
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent e) {
         boolean handled = mRenderer.handleTouchEvent( e );
         if ( handled ) {
-            requestRender();
+            // Input returns the view to full rate.
+            setContinuous(true);
         }
         return handled;
     }
 
+    /** Called by the renderer after each frame with the delay until the next one.
+     * @param delay     RenderScheduler.CONTINUOUS, RenderScheduler.ON_DEMAND or the delay (in
+     *                  milliseconds) before the next frame.
+     */
+    void scheduleFrame(long delay) {
+        if (delay == RenderScheduler.CONTINUOUS) {
+            setContinuous(true);
+            return;
+        }
+        setContinuous(false);
+        removeCallbacks(mRequestRender);
+        if (delay != RenderScheduler.ON_DEMAND) {
+            postDelayed(mRequestRender, delay);
+        }
+    }
+
+    /** Switches between continuous and on-request rendering. Called from both the UI and GL
+     threads. */
+    private synchronized void setContinuous(boolean continuous) {
+        if (continuous == mContinuous) return;
+        mContinuous = continuous;
+        setRenderMode(continuous ? GLSurfaceView.RENDERMODE_CONTINUOUSLY :
+                GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+    }
+
     @Override
     public void startActivity() {
-        setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+        setContinuous(true);
     }
 
     @Override
     public void stopActivity() {
-        setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+        // The render scheduler decides the rate once the systems are quiet.
     }
 }
@@ -0,0 +1,100 @@
+package com.curtis.family.touchexplosion;
+
+/**
+ * A solid shape which particles must avoid. An obstacle is defined by its signed distance: the
+ * distance from a point to the shape's surface, negative inside it. Obstacles are baked into an
+ * ObstacleField rather than queried directly each frame.
+ */
+public abstract class Obstacle {
+    /** Reports the signed distance from (x, y, z) to the obstacle's surface (negative inside). */
+    public abstract float distance(float x, float y, float z);
+
+    /** Mixes the obstacle's kind and parameters into the given hash (see ObstacleField's layout
+     key); two obstacles with the same hash have the same shape and placement. */
+    abstract long hash(long h);
+
+    /** Mixes a value into a 64-bit FNV-1a hash. */
+    static long mix(long h, long value) {
+        for (int i = 0; i < 8; ++i) {
+            h ^= (value >>> (i * 8)) & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /** Mixes a float value into a 64-bit FNV-1a hash. */
+    static long mix(long h, float value) { return mix(h, Float.floatToIntBits(value)); }
+
+    /** A sphere. */
+    public static class Sphere extends Obstacle {
+        private final float mX, mY, mZ;
+        private final float mRadius;
+
+        /** Constructor.
+         * @param center    The center of the sphere.
+         * @param radius    The radius of the sphere (in meters).
+         */
+        public Sphere(Vector3 center, float radius) {
+            mX = center.x;
+            mY = center.y;
+            mZ = center.z;
+            mRadius = radius;
+        }
+
+        @Override
+        public float distance(float x, float y, float z) {
+            float dx = x - mX, dy = y - mY, dz = z - mZ;
+            return (float)Math.sqrt(dx * dx + dy * dy + dz * dz) - mRadius;
+        }
+
+        @Override
+        long hash(long h) {
+            h = mix(h, 1L);
+            h = mix(mix(mix(h, mX), mY), mZ);
+            return mix(h, mRadius);
+        }
+    }
+
+    /** An axis-aligned box, optionally with rounded edges. */
+    public static class Box extends Obstacle {
+        private final float mX, mY, mZ;
+        private final float mHalfX, mHalfY, mHalfZ;
+        private final float mRounding;
+
+        /** Constructor.
+         * @param center    The center of the box.
+         * @param halfSize  The distances from the center to the box's faces along each axis,
+         *                  including the rounding.
+         * @param rounding  The radius of the rounding of the edges and corners (in meters).
+         */
+        public Box(Vector3 center, Vector3 halfSize, float rounding) {
+            mX = center.x;
+            mY = center.y;
+            mZ = center.z;
+            mRounding = rounding;
+            mHalfX = halfSize.x - rounding;
+            mHalfY = halfSize.y - rounding;
+            mHalfZ = halfSize.z - rounding;
+        }
+
+        @Override
+        public float distance(float x, float y, float z) {
+            // The distance to the box shrunk by the rounding, less the rounding.
+            float qx = Math.abs(x - mX) - mHalfX;
+            float qy = Math.abs(y - mY) - mHalfY;
+            float qz = Math.abs(z - mZ) - mHalfZ;
+            float ox = Math.max(qx, 0), oy = Math.max(qy, 0), oz = Math.max(qz, 0);
+            float outside = (float)Math.sqrt(ox * ox + oy * oy + oz * oz);
+            float inside = Math.min(Math.max(qx, Math.max(qy, qz)), 0);
+            return outside + inside - mRounding;
+        }
+
+        @Override
+        long hash(long h) {
+            h = mix(h, 2L);
+            h = mix(mix(mix(h, mX), mY), mZ);
+            h = mix(mix(mix(h, mHalfX), mHalfY), mHalfZ);
+            return mix(h, mRounding);
+        }
+    }
+}
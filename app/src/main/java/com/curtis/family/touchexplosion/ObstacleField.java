@@ -0,0 +1,275 @@
+package com.curtis.family.touchexplosion;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * The signed distance to a set of obstacles, baked into a regular grid over a box (typically the
+ * view frustum's bounds). A query interpolates the grid trilinearly, so the distance to the
+ * nearest obstacle -- and its gradient, the direction away from it -- costs the same eight reads
+ * however many obstacles there are.
+ *
+ * A field with a single layer (nz == 1) is two-dimensional: it is baked in the box's middle plane
+ * and ignores z.
+ *
+ * Baking evaluates every obstacle at every grid point, so it is split across threads row by row
+ * and the result is cached on disk. The cache file is named by a key hashed from the obstacles and
+ * the grid, so a change to either bakes a new field. Cache layout (platform byte order):
+ *
+ *      int     MAGIC
+ *      int     VERSION
+ *      long    the layout key
+ *      int     nx, ny, nz
+ *      float   the box: min x, y, z, max x, y, z
+ *      float[] the distances, x fastest, then y, then z
+ */
+public class ObstacleField {
+    static final String TAG = ObstacleField.class.getSimpleName();
+    private static final int MAGIC = 0x54585344;  // "TXSD"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 3 * 4 + 6 * 4;
+
+    private final long mKey;
+    private final int mNx, mNy, mNz;
+    /** The box the grid covers. */
+    private final float mMin[];
+    private final float mMax[];
+    /** The inverse of the grid spacing along each axis (0 along z for a 2D field). */
+    private final float mInvDx, mInvDy, mInvDz;
+    /** The distances, x fastest, then y, then z. */
+    private final float mDistance[];
+
+    private ObstacleField(long key, int nx, int ny, int nz, float[] min, float[] max,
+                          float[] distance) {
+        mKey = key;
+        mNx = nx;
+        mNy = ny;
+        mNz = nz;
+        mMin = min.clone();
+        mMax = max.clone();
+        mInvDx = (nx - 1) / (max[0] - min[0]);
+        mInvDy = (ny - 1) / (max[1] - min[1]);
+        mInvDz = nz > 1 ? (nz - 1) / (max[2] - min[2]) : 0;
+        mDistance = distance;
+    }
+
+    /** Computes the key identifying a field: the obstacles' shapes and placements and the grid.
+     * @param obstacles The obstacles.
+     * @param min       The minimum corner of the box the grid covers (x, y, z).
+     * @param max       The maximum corner of the box the grid covers (x, y, z).
+     * @param nx        The number of grid points along x (at least 2).
+     * @param ny        The number of grid points along y (at least 2).
+     * @param nz        The number of grid points along z (1 for a 2D field).
+     */
+    public static long layoutKey(List<Obstacle> obstacles, float[] min, float[] max,
+                                 int nx, int ny, int nz) {
+        long h = 0xcbf29ce484222325L;
+        h = Obstacle.mix(Obstacle.mix(Obstacle.mix(h, (long)nx), (long)ny), (long)nz);
+        for (int i = 0; i < 3; ++i) {
+            h = Obstacle.mix(Obstacle.mix(h, min[i]), max[i]);
+        }
+        h = Obstacle.mix(h, (long)obstacles.size());
+        for (Obstacle o : obstacles) {
+            h = o.hash(h);
+        }
+        return h;
+    }
+
+    /** Bakes the field; the parameters are the same as layoutKey()'s.
+     * @param threads   The number of threads which evaluate the obstacles.
+     */
+    public static ObstacleField bake(List<Obstacle> obstacles, final float[] min,
+                                     final float[] max, final int nx, final int ny, final int nz,
+                                     int threads) {
+        final Obstacle shapes[] = obstacles.toArray(new Obstacle[obstacles.size()]);
+        final float distance[] = new float[nx * ny * nz];
+        // Beyond every obstacle, the distance is at least the size of the box.
+        float dx = max[0] - min[0], dy = max[1] - min[1], dz = max[2] - min[2];
+        final float far = (float)Math.sqrt(dx * dx + dy * dy + dz * dz);
+        final float stepX = dx / (nx - 1);
+        final float stepY = dy / (ny - 1);
+        final float stepZ = nz > 1 ? dz / (nz - 1) : 0;
+        final float z0 = nz > 1 ? min[2] : (min[2] + max[2]) * 0.5f;
+        WorkerPool pool = new WorkerPool(threads, "sdf");
+        try {
+            pool.run(new WorkerPool.Task() {
+                @Override
+                public void run(int row) {
+                    float y = min[1] + (row % ny) * stepY;
+                    float z = z0 + (row / ny) * stepZ;
+                    int i = row * nx;
+                    for (int ix = 0; ix < nx; ++ix, ++i) {
+                        float x = min[0] + ix * stepX;
+                        float d = far;
+                        for (Obstacle o : shapes) {
+                            d = Math.min(d, o.distance(x, y, z));
+                        }
+                        distance[i] = d;
+                    }
+                }
+            }, ny * nz);
+        } finally {
+            pool.shutdown();
+        }
+        return new ObstacleField(layoutKey(obstacles, min, max, nx, ny, nz), nx, ny, nz, min, max,
+                distance);
+    }
+
+    /** Returns the field for the obstacles from the cache directory, baking (and caching) it if it
+     has not been baked before. The parameters are the same as bake()'s.
+     * @param cacheDir  The directory of the cached fields.
+     */
+    public static ObstacleField load(File cacheDir, List<Obstacle> obstacles, float[] min,
+                                     float[] max, int nx, int ny, int nz, int threads) {
+        long key = layoutKey(obstacles, min, max, nx, ny, nz);
+        File file = new File(cacheDir, String.format("obstacles-%016x.sdf", key));
+        try {
+            ObstacleField field = read(file, key);
+            if (field != null) return field;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read the cached obstacle field " + file, e);
+        }
+        ObstacleField field = bake(obstacles, min, max, nx, ny, nz, threads);
+        try {
+            field.write(file);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to cache the obstacle field " + file, e);
+        }
+        return field;
+    }
+
+    /** Computes the box bounding the frustum's volume, from the near plane to the far plane.
+     * @param f     The frustum.
+     * @param min   Set to the minimum corner (x, y, z).
+     * @param max   Set to the maximum corner (x, y, z).
+     */
+    public static void frustumBounds(Frustum f, float[] min, float[] max) {
+        Vector3 p = new Vector3();
+        for (int i = 0; i < 3; ++i) {
+            min[i] = Float.MAX_VALUE;
+            max[i] = -Float.MAX_VALUE;
+        }
+        for (int corner = 0; corner < 8; ++corner) {
+            f.pointInFrustum((corner & 1) == 0 ? -1 : 1, (corner & 2) == 0 ? -1 : 1,
+                    (corner & 4) == 0 ? 0 : 1, p);
+            min[0] = Math.min(min[0], p.x);
+            min[1] = Math.min(min[1], p.y);
+            min[2] = Math.min(min[2], p.z);
+            max[0] = Math.max(max[0], p.x);
+            max[1] = Math.max(max[1], p.y);
+            max[2] = Math.max(max[2], p.z);
+        }
+    }
+
+    /** Writes the field to the file, replacing it. The field is written to a temporary file beside
+     it, which is forced to the disk and then renamed over it, so a crash mid-write never leaves a
+     partial field under the cache's name. */
+    void write(File file) throws IOException {
+        int size = HEADER_BYTES + mDistance.length * 4;
+        File temp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(temp, "rw")) {
+            raf.setLength(size);
+            MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buf.order(ByteOrder.nativeOrder());
+            buf.putInt(MAGIC).putInt(VERSION).putLong(mKey);
+            buf.putInt(mNx).putInt(mNy).putInt(mNz);
+            for (int i = 0; i < 3; ++i) buf.putFloat(mMin[i]);
+            for (int i = 0; i < 3; ++i) buf.putFloat(mMax[i]);
+            SceneSnapshot.putFloats(buf, mDistance, mDistance.length);
+            buf.force();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Unable to rename " + temp + " to " + file);
+        }
+    }
+
+    /** Reads a field written by write(); null if the file is missing or holds a different field. */
+    static ObstacleField read(File file, long key) throws IOException {
+        if (!file.exists()) return null;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            if (length < HEADER_BYTES) return null;
+            MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+            buf.order(ByteOrder.nativeOrder());
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION || buf.getLong() != key) {
+                return null;
+            }
+            int nx = buf.getInt(), ny = buf.getInt(), nz = buf.getInt();
+            if (nx < 2 || ny < 2 || nz < 1 || (long)nx * ny * nz * 4 != length - HEADER_BYTES) {
+                return null;
+            }
+            float min[] = new float[3];
+            float max[] = new float[3];
+            for (int i = 0; i < 3; ++i) min[i] = buf.getFloat();
+            for (int i = 0; i < 3; ++i) max[i] = buf.getFloat();
+            float distance[] = new float[nx * ny * nz];
+            SceneSnapshot.getFloats(buf, distance, distance.length, distance.length);
+            return new ObstacleField(key, nx, ny, nz, min, max, distance);
+        }
+    }
+
+    /** Reports the signed distance (in meters) from (x, y, z) to the nearest obstacle. Points
+     outside the box are clamped to it. */
+    public float distance(float x, float y, float z) {
+        return sample(x, y, z, null);
+    }
+
+    /** Reports the signed distance (in meters) from (x, y, z) to the nearest obstacle and, if
+     `gradient` is not null, sets it to the distance's gradient: the direction away from the
+     nearest obstacle (approximately unit length). Points outside the box are clamped to it. */
+    public float sample(float x, float y, float z, Vector3 gradient) {
+        float u = clamp((x - mMin[0]) * mInvDx, mNx - 1);
+        float v = clamp((y - mMin[1]) * mInvDy, mNy - 1);
+        float w = clamp((z - mMin[2]) * mInvDz, mNz - 1);
+        int i = Math.min((int)u, mNx - 2);
+        int j = Math.min((int)v, mNy - 2);
+        // A 2D field has a single layer; its "upper" layer is the same one.
+        int k = mNz > 1 ? Math.min((int)w, mNz - 2) : 0;
+        int strideZ = mNz > 1 ? mNx * mNy : 0;
+        float fu = u - i, fv = v - j, fw = w - k;
+
+        float d[] = mDistance;
+        int base = (k * mNy + j) * mNx + i;
+        float c000 = d[base], c100 = d[base + 1];
+        float c010 = d[base + mNx], c110 = d[base + mNx + 1];
+        base += strideZ;
+        float c001 = d[base], c101 = d[base + 1];
+        float c011 = d[base + mNx], c111 = d[base + mNx + 1];
+
+        float dx00 = c100 - c000, dx10 = c110 - c010, dx01 = c101 - c001, dx11 = c111 - c011;
+        float c00 = c000 + dx00 * fu, c10 = c010 + dx10 * fu;
+        float c01 = c001 + dx01 * fu, c11 = c011 + dx11 * fu;
+        float c0 = c00 + (c10 - c00) * fv;
+        float c1 = c01 + (c11 - c01) * fv;
+        if (gradient != null) {
+            float gx0 = dx00 + (dx10 - dx00) * fv;
+            float gx1 = dx01 + (dx11 - dx01) * fv;
+            float gy0 = c10 - c00, gy1 = c11 - c01;
+            gradient.set((gx0 + (gx1 - gx0) * fw) * mInvDx,
+                    (gy0 + (gy1 - gy0) * fw) * mInvDy,
+                    (c1 - c0) * mInvDz);
+        }
+        return c0 + (c1 - c0) * fw;
+    }
+
+    private static float clamp(float value, int max) {
+        return Math.max(0, Math.min(max, value));
+    }
+
+    /** Reports the key identifying the field's obstacles and grid (see layoutKey()). */
+    public long getKey() { return mKey; }
+
+    public int getSizeX() { return mNx; }
+
+    public int getSizeY() { return mNy; }
+
+    public int getSizeZ() { return mNz; }
+}
@@ -0,0 +1,161 @@
+package com.curtis.family.touchexplosion;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * An offscreen render target for drawing the particles at a fraction of the screen's resolution,
+ * then stretching them over the screen.
+ *
+ * The target's texture is allocated at the full size of the screen once; a scaled frame is drawn
+ * into its lower-left corner, so changing the scale costs nothing. Composition copies the texels
+ * (with their alpha, as the surface is transparent) with linear filtering and blending off,
+ * sampling between the centers of the frame's outer texels so nothing beyond the frame bleeds in.
+ */
+public class OffscreenTarget {
+    static final String TAG = OffscreenTarget.class.getSimpleName();
+
+    private static final String VERTEX_SHADER =
+            "attribute vec2 aPosition;" +
+                    "uniform vec2 uOffset;" +
+                    "uniform vec2 uScale;" +
+                    "varying vec2 vTextureCoord;" +
+                    "void main() {" +
+                    "  gl_Position = vec4(aPosition, 0.0, 1.0);" +
+                    "  vTextureCoord = uOffset + (aPosition * 0.5 + 0.5) * uScale;" +
+                    "}";
+
+    private static final String FRAGMENT_SHADER =
+            "precision mediump float;" +
+                    "varying vec2 vTextureCoord;" +
+                    "uniform sampler2D uTexture;" +
+                    "void main() {" +
+                    "  gl_FragColor = texture2D(uTexture, vTextureCoord);" +
+                    "}";
+
+    /** The screen-filling triangle strip. */
+    private static final float sQuad[] = {-1, -1, 1, -1, -1, 1, 1, 1};
+
+    private final FloatBuffer mQuad;
+    private int mWidth;
+    private int mHeight;
+    /** The size of the current frame within the texture (in pixels). */
+    private int mScaledWidth;
+    private int mScaledHeight;
+    private int mTexture;
+    private int mFramebuffer;
+    private int mProgram;
+    private int mPositionHandle;
+    private int mOffsetHandle;
+    private int mScaleHandle;
+
+    /** Constructor -- the target has no GL resources until initGL(). */
+    public OffscreenTarget() {
+        mQuad = ByteBuffer.allocateDirect(sQuad.length * 4).order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        mQuad.put(sQuad).position(0);
+    }
+
+    /** Creates the target's GL resources for a screen of the given size. Called each time the
+     surface changes; the resources of a previous context are gone with it. */
+    public void initGL(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        int ids[] = new int[1];
+        GLES20.glGenTextures(1, ids, 0);
+        mTexture = ids[0];
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTexture);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER,
+                GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER,
+                GLES20.GL_LINEAR);
+        // Non-power-of-two textures must clamp.
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S,
+                GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T,
+                GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+
+        GLES20.glGenFramebuffers(1, ids, 0);
+        mFramebuffer = ids[0];
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, mFramebuffer);
+        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                GLES20.GL_TEXTURE_2D, mTexture, 0);
+        int status = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        Utils.checkGlError(TAG, "glFramebufferTexture2D");
+        if (status != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+            release();
+            return;
+        }
+
+        int vertexShader = MyGLRenderer.loadShader(GLES20.GL_VERTEX_SHADER, VERTEX_SHADER);
+        int fragmentShader = MyGLRenderer.loadShader(GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER);
+        mProgram = GLES20.glCreateProgram();
+        GLES20.glAttachShader(mProgram, vertexShader);
+        GLES20.glAttachShader(mProgram, fragmentShader);
+        GLES20.glLinkProgram(mProgram);
+        mPositionHandle = GLES20.glGetAttribLocation(mProgram, "aPosition");
+        mOffsetHandle = GLES20.glGetUniformLocation(mProgram, "uOffset");
+        mScaleHandle = GLES20.glGetUniformLocation(mProgram, "uScale");
+        GLES20.glUseProgram(mProgram);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(mProgram, "uTexture"), 0);
+    }
+
+    /** Reports if the target was created (some drivers cannot render to an RGBA texture). */
+    public boolean isValid() { return mFramebuffer != 0; }
+
+    /** Binds the target for a frame at the given scale and clears it.
+     * @param scale     The scale of the screen's width and height.
+     * @param out       Receives the size of the frame (width, height), in pixels.
+     */
+    public void begin(float scale, int[] out) {
+        mScaledWidth = Math.max(1, Math.round(mWidth * scale));
+        mScaledHeight = Math.max(1, Math.round(mHeight * scale));
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, mFramebuffer);
+        GLES20.glViewport(0, 0, mScaledWidth, mScaledHeight);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        out[0] = mScaledWidth;
+        out[1] = mScaledHeight;
+    }
+
+    /** Stretches the frame over the screen. */
+    public void end() {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        GLES20.glViewport(0, 0, mWidth, mHeight);
+        GLES20.glDisable(GLES20.GL_BLEND);
+        GLES20.glUseProgram(mProgram);
+        GLES20.glUniform2f(mOffsetHandle, 0.5f / mWidth, 0.5f / mHeight);
+        GLES20.glUniform2f(mScaleHandle, (mScaledWidth - 1) / (float)mWidth,
+                (mScaledHeight - 1) / (float)mHeight);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTexture);
+        mQuad.position(0);
+        GLES20.glVertexAttribPointer(mPositionHandle, 2, GLES20.GL_FLOAT, false, 0, mQuad);
+        GLES20.glEnableVertexAttribArray(mPositionHandle);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+    }
+
+    /** Deletes the target's GL resources. */
+    public void release() {
+        int ids[] = new int[1];
+        if (mFramebuffer != 0) {
+            ids[0] = mFramebuffer;
+            GLES20.glDeleteFramebuffers(1, ids, 0);
+            mFramebuffer = 0;
+        }
+        if (mTexture != 0) {
+            ids[0] = mTexture;
+            GLES20.glDeleteTextures(1, ids, 0);
+            mTexture = 0;
+        }
+        if (mProgram != 0) {
+            GLES20.glDeleteProgram(mProgram);
+            mProgram = 0;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.curtis.family.touchexplosion;
+
+/** A particle which follows its own functions of time: the fairy, her sparks and the flowers. */
+interface Particle {
+    void getPosition(long globalT, Vector3 pos);
+    float getOrient(long globalT);
+    float getScale();
+    float[] getColor();
+    boolean isAlive(long globalT);
+}
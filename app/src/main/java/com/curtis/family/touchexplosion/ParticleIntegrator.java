@@ -0,0 +1,205 @@
+package com.curtis.family.touchexplosion;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Numerically simulated point particles: the counterpart of the closed-form Function3D
+ * trajectories, for particles which respond to forces that change after they are born (touches,
+ * swirls, obstacles).
+ *
+ * The particles' positions, velocities and accelerations are kept in columns, one per coordinate,
+ * with the live particles packed at the front. Each step clears the accelerations, lets every
+ * ForceField add to them, and then advances the particles by semi-implicit (symplectic) Euler:
+ *
+ *      v += a * dt
+ *      x += v * dt
+ *
+ * which, unlike explicit Euler, does not gain energy in orbits and springs.
+ *
+ * By default each advance() is a single step of the frame's duration. With a fixed step, the
+ * frame's duration is instead divided into steps of the same length, carrying the remainder over
+ * to the next frame; the motion is then the same whatever the frame rate, and stays stable under
+ * stiff fields (strong damping, close attractors). Owners with per-particle columns of their own
+ * mirror the integrator's swap-removal (see move()).
+ */
+public class ParticleIntegrator {
+    /** The particles' positions (in meters). */
+    final float mX[], mY[], mZ[];
+    /** The particles' velocities (in m/ms). */
+    final float mVx[], mVy[], mVz[];
+    /** The particles' accelerations during a step (in m/ms^2). */
+    final float mAx[], mAy[], mAz[];
+    private final int mCapacity;
+    private int mCount;
+    private final ArrayList<ForceField> mFields;
+    /** The duration of a fixed step (in milliseconds); 0 for a single step per advance(). */
+    private float mStep;
+    /** The most fixed steps taken in one advance(); a longer gap is skipped. */
+    private int mMaxSteps;
+    /** The time (in milliseconds) left over from the last advance(), less than a step. */
+    private float mCarry;
+
+    /** Constructor.
+     * @param capacity  The largest number of particles.
+     */
+    public ParticleIntegrator(int capacity) {
+        mCapacity = capacity;
+        mX = new float[capacity];
+        mY = new float[capacity];
+        mZ = new float[capacity];
+        mVx = new float[capacity];
+        mVy = new float[capacity];
+        mVz = new float[capacity];
+        mAx = new float[capacity];
+        mAy = new float[capacity];
+        mAz = new float[capacity];
+        mFields = new ArrayList<>();
+    }
+
+    /** Adds a field to those acting on the particles; fields are applied in the order added. */
+    public void addField(ForceField field) {
+        mFields.add(field);
+    }
+
+    /** Divides each advance() into steps of a fixed duration.
+     * @param stepMs    The duration of a step (in milliseconds); 0 restores a single step per
+     *                  advance().
+     * @param maxSteps  The most steps taken in one advance(); time beyond them is dropped (e.g.,
+     *                  after a stall), so a slow frame cannot make the next one slower.
+     */
+    public void setFixedStep(float stepMs, int maxSteps) {
+        mStep = stepMs;
+        mMaxSteps = maxSteps;
+        mCarry = 0;
+    }
+
+    /** Appends a particle.
+     * @return The particle's index, or -1 if the integrator is full.
+     */
+    public int add(float x, float y, float z, float vx, float vy, float vz) {
+        if (mCount == mCapacity) return -1;
+        int i = mCount++;
+        mX[i] = x;
+        mY[i] = y;
+        mZ[i] = z;
+        mVx[i] = vx;
+        mVy[i] = vy;
+        mVz[i] = vz;
+        return i;
+    }
+
+    /** Copies the particle in slot `from` into slot `to`. */
+    public void move(int from, int to) {
+        if (from == to) return;
+        mX[to] = mX[from];
+        mY[to] = mY[from];
+        mZ[to] = mZ[from];
+        mVx[to] = mVx[from];
+        mVy[to] = mVy[from];
+        mVz[to] = mVz[from];
+    }
+
+    /** Sets the number of live particles (e.g., after removing particles with move()). */
+    public void setCount(int count) { mCount = count; }
+
+    /** Advances the particles by the given duration: one step, or as many fixed steps as fit.
+     * @param dt    The duration (in milliseconds).
+     * @return The number of steps taken.
+     */
+    public int advance(float dt) {
+        if (mStep <= 0) {
+            step(dt);
+            return 1;
+        }
+        mCarry += dt;
+        int steps = (int)(mCarry / mStep);
+        if (steps > mMaxSteps) {
+            steps = mMaxSteps;
+            mCarry = 0;
+        } else {
+            mCarry -= steps * mStep;
+        }
+        for (int s = 0; s < steps; ++s) {
+            step(mStep);
+        }
+        return steps;
+    }
+
+    /** Takes a single step of the given duration (in milliseconds). */
+    public void step(float dt) {
+        int count = mCount;
+        Arrays.fill(mAx, 0, count, 0);
+        Arrays.fill(mAy, 0, count, 0);
+        Arrays.fill(mAz, 0, count, 0);
+        for (int f = 0; f < mFields.size(); ++f) {
+            mFields.get(f).accumulate(this, 0, count);
+        }
+        integrate(mX, mVx, mAx, count, dt);
+        integrate(mY, mVy, mAy, count, dt);
+        integrate(mZ, mVz, mAz, count, dt);
+    }
+
+    /** Advances one coordinate of the particles by semi-implicit Euler. */
+    private static void integrate(float[] x, float[] v, float[] a, int count, float dt) {
+        for (int i = 0; i < count; ++i) {
+            float vi = v[i] + a[i] * dt;
+            v[i] = vi;
+            x[i] += vi * dt;
+        }
+    }
+
+    /** Reports the number of bytes write() stores. */
+    int getStateSize() { return 4 + 4 + mCount * 6 * 4; }
+
+    /** Writes the particles: their count, the carried-over time, then the position and velocity
+     columns in turn. */
+    void write(ByteBuffer out) {
+        out.putInt(mCount);
+        out.putFloat(mCarry);
+        SceneSnapshot.putFloats(out, mX, mCount);
+        SceneSnapshot.putFloats(out, mY, mCount);
+        SceneSnapshot.putFloats(out, mZ, mCount);
+        SceneSnapshot.putFloats(out, mVx, mCount);
+        SceneSnapshot.putFloats(out, mVy, mCount);
+        SceneSnapshot.putFloats(out, mVz, mCount);
+    }
+
+    /** Replaces the particles with those stored by write(); particles beyond the capacity are
+     dropped.
+     * @return The number of particles stored (which may exceed the number kept).
+     */
+    int read(ByteBuffer in) {
+        int stored = in.getInt();
+        mCarry = in.getFloat();
+        int count = Math.min(stored, mCapacity);
+        SceneSnapshot.getFloats(in, mX, count, stored);
+        SceneSnapshot.getFloats(in, mY, count, stored);
+        SceneSnapshot.getFloats(in, mZ, count, stored);
+        SceneSnapshot.getFloats(in, mVx, count, stored);
+        SceneSnapshot.getFloats(in, mVy, count, stored);
+        SceneSnapshot.getFloats(in, mVz, count, stored);
+        mCount = count;
+        return stored;
+    }
+
+    /** Reports the time (in milliseconds) carried over to the next advance(). */
+    public float getCarry() { return mCarry; }
+
+    public int getCount() { return mCount; }
+
+    public int getCapacity() { return mCapacity; }
+
+    public float getX(int i) { return mX[i]; }
+
+    public float getY(int i) { return mY[i]; }
+
+    public float getZ(int i) { return mZ[i]; }
+
+    public float getVelocityX(int i) { return mVx[i]; }
+
+    public float getVelocityY(int i) { return mVy[i]; }
+
+    public float getVelocityZ(int i) { return mVz[i]; }
+}
@@ -27,18 +27,14 @@ package com.curtis.family.touchexplosion;
 //      - food not eaten eventually moves under the surface and then fades away.
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.opengl.GLES20;
-import android.opengl.GLUtils;
-import android.util.Log;
-
-import java.io.IOException;
-import java.io.InputStream;
+
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 /**
- * Represents a particle system.
+ * Represents a particle system. A system runs as part of a Scene; it describes the materials it
+ * draws with when it is added to the scene and, each frame, adds its sprites to the scene's
+ * batches.
  */
 public abstract class ParticleSystem {
     /** Definition of listener notified when the particle system stops and starts simulating
@@ -50,13 +46,20 @@ public abstract class ParticleSystem {
         /** Called when the particle system no longer has active particles. */
         void stopActivity();
     }
+
+    /** The time reported by nextVisibleChange() when nothing will change until the next touch. */
+    public static final long NEVER = Long.MAX_VALUE;
+
     protected Frustum mFrustum;
     private ArrayList<ActivityListener> mListeners;
+    /** The largest number of live particles the system may have; assigned by the scene. */
+    protected int mParticleBudget;
 
     /** Constructor */
     public ParticleSystem() {
         mFrustum = null;
         mListeners = new ArrayList<>();
+        mParticleBudget = Integer.MAX_VALUE;
     }
 
     /** Adds an activity listener to the system. */
@@ -69,11 +72,56 @@ public abstract class ParticleSystem {
         mListeners.remove(listener);
     }
 
-    /** Initializes the OpenGL resources for this system. */
-    public abstract void initGL(Context context);
+    /** Called when the system is added to a scene; the system acquires the materials and batches
+     it draws with. */
+    public abstract void initMaterials(Scene scene);
+
+    /** Stops any threads the system started and lets go of what it holds beyond its memory. The
+     system is not drawn again. Systems without such resources (the default) do nothing. */
+    public void release() {}
+
+    /** Initializes any OpenGL resources the system needs beyond its materials (which are owned by
+     the scene). Called each time the GL context is created. */
+    public void initGL(Context context) {}
+
+    /** Adds the sprites of the particles at the given time stamp to the system's batches. */
+    public abstract void draw(long globalT);
+
+    /** Reports the number of live particles. */
+    public abstract int getParticleCount();
+
+    /** Reports the earliest time (at or after globalT) at which a frame drawn by the system would
+     differ from the one drawn at globalT. A system which is in motion reports globalT; one which
+     only moves slightly can report a later time to be drawn at a reduced rate; one that is still
+     reports NEVER. The default is to be drawn every frame. */
+    public long nextVisibleChange(long globalT) { return globalT; }
 
-    /** Draws the particles to the open gl context at the given time stamp. */
-    public abstract void drawGL(long globalT, float[] mMVPMatrix);
+    /** Carries out the work the system has queued for later frames (e.g., requested bursts not
+     yet built), so that its state is complete. SceneSnapshot calls it before getStateSize() and
+     writeState(); systems which queue nothing (the default) do nothing. */
+    public void flushSpawns() {}
+
+    /** Reports the number of bytes writeState() stores for the system in its current state. A
+     system without state worth keeping (the default) stores nothing. */
+    public int getStateSize() { return 0; }
+
+    /** Writes the live state of the system (particles, emitter timers, random state) into the
+     buffer; see SceneSnapshot. Time stamps are written as they are. */
+    public void writeState(ByteBuffer out) {}
+
+    /** Replaces the live state of the system with the state stored by writeState().
+     * @param in        The stored state.
+     * @param shift     The amount (in milliseconds) to add to every stored time stamp, to rebase
+     *                  it onto the current clock.
+     */
+    public void readState(ByteBuffer in, long shift) {}
+
+    /** Sets the largest number of live particles the system may have. Systems honor the budget
+     when they create particles. */
+    public void setParticleBudget(int budget) { mParticleBudget = budget; }
+
+    /** Reports the largest number of live particles the system may have. */
+    public int getParticleBudget() { return mParticleBudget; }
 
     /** Reports that there has been a touch on the screen. Provides the (x, y) coordinates of the
      touch in *canonical* coordinates (i.e., both lie in the range [-1, 1]. The particle system
@@ -102,39 +150,6 @@ public abstract class ParticleSystem {
         }
     }
 
-    /** Loads a resource image as an OpenGL texture. */
-    protected int loadTexture(Context context, int resource) {
-        // Initialize texture
-        InputStream is = context.getResources().openRawResource( resource );
-        Bitmap bitmap;
-        try {
-            bitmap = BitmapFactory.decodeStream(is);
-        } finally {
-            try {
-                is.close();
-            } catch(IOException e) {
-                Log.e("GLTextures", e.getMessage());
-                // Ignore.
-            }
-        }
-        String TAG = "SimpleParticleSystem";
-
-        int[] tmp_tex = new int[ 1 ];
-        GLES20.glGenTextures( 1, tmp_tex, 0 );
-        Utils.checkGlError( TAG, "glGenTextures" );
-        int texId = tmp_tex[0];
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texId);
-        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
-        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-        //TODO: control whether I want to wrap or clamp the image
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_REPEAT);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_REPEAT);
-        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
-        Utils.checkGlError( TAG, "ERROR CHECK - 2" );
-        bitmap.recycle();
-        return texId;
-    }
-
     // TODO:
     //  2. I need to handle transparency
     //  3. I need to handle a particle that just declares it has died.
@@ -0,0 +1,52 @@
+package com.curtis.family.touchexplosion;
+
+/**
+ * Decides when the view draws its next frame. After each frame the scene reports the time of its
+ * next visible change (see ParticleSystem.nextVisibleChange()); the scheduler turns that into a
+ * delay:
+ *
+ *      - while things are moving, or shortly after input, frames are drawn continuously,
+ *      - when the next change is more than a frame away, a single frame is drawn after a delay
+ *        (e.g., a system drawn at a reduced rate),
+ *      - when nothing will change, no frame is drawn until the next input.
+ */
+public class RenderScheduler {
+    /** The delay reported when frames should be drawn continuously. */
+    public static final long CONTINUOUS = 0;
+    /** The delay reported when no frame needs to be drawn until the next input. */
+    public static final long ON_DEMAND = Long.MAX_VALUE;
+
+    /** The period of a full-rate frame (in milliseconds). */
+    private final long mFramePeriod;
+    /** The time after an input during which frames are drawn continuously (in milliseconds). */
+    private final long mInputHold;
+    /** The time stamp of the last input; written by the UI thread, read by the GL thread. */
+    private volatile long mLastInput;
+
+    /** Constructor.
+     * @param framePeriod   The period of a full-rate frame (in milliseconds).
+     * @param inputHold     The time after an input during which frames are drawn continuously (in
+     *                      milliseconds).
+     */
+    public RenderScheduler(long framePeriod, long inputHold) {
+        mFramePeriod = framePeriod;
+        mInputHold = inputHold;
+        mLastInput = -inputHold;
+    }
+
+    /** Reports that there has been input at the given time stamp. */
+    public void reportInput(long globalT) { mLastInput = globalT; }
+
+    /** Reports the delay until the next frame should be drawn.
+     * @param globalT       The time stamp of the frame just drawn.
+     * @param nextChange    The time of the next visible change (ParticleSystem.NEVER if there is
+     *                      none).
+     * @return CONTINUOUS, ON_DEMAND, or the delay (in milliseconds) before the next frame.
+     */
+    public long getFrameDelay(long globalT, long nextChange) {
+        if (globalT - mLastInput < mInputHold) return CONTINUOUS;
+        if (nextChange == ParticleSystem.NEVER) return ON_DEMAND;
+        long delay = nextChange - globalT;
+        return delay < mFramePeriod ? CONTINUOUS : delay;
+    }
+}
@@ -0,0 +1,149 @@
+package com.curtis.family.touchexplosion;
+
+/**
+ * Picks the resolution the particles are rendered at from the measured frame time: when frames
+ * take longer than the target, the resolution steps down; when they are comfortably within it for
+ * a long while, it steps back up.
+ *
+ * The scales are a fixed ladder (e.g., 1, 0.85, 0.7, 0.6, 0.5 of the screen's width and height).
+ * Decisions use the smoothed frame time and have hysteresis in both time and value, so that the
+ * scale does not flicker between two steps:
+ *
+ *      - down: the smoothed time stays above the target plus a margin for several frames (a single
+ *        long frame, e.g., a GC pause, counts as at most twice the target);
+ *      - up: the smoothed time stays below the target less a margin for many frames;
+ *      - after each change, the smoothed time is restarted and a few frames are ignored while the
+ *        new resolution settles;
+ *      - a step up which has to be undone soon after doubles the wait before the next one.
+ *
+ * The controller only does arithmetic; it can be replayed against a recorded series of frame
+ * times (see ResolutionControllerTest).
+ */
+public class ResolutionController {
+    /** The default ladder of scales. */
+    public static final float DEFAULT_SCALES[] = {1.0f, 0.85f, 0.7f, 0.6f, 0.5f};
+    /** The weight of the latest frame in the smoothed frame time. */
+    private static final float SMOOTHING = 0.1f;
+    /** The fraction of the target the smoothed time must exceed to step down. */
+    private static final float DOWN_MARGIN = 0.1f;
+    /** The fraction of the target the smoothed time must be under to step up. */
+    private static final float UP_MARGIN = 0.05f;
+    /** The number of consecutive frames over budget before stepping down. */
+    private static final int DOWN_FRAMES = 15;
+    /** The number of consecutive frames under budget before stepping up (at first). */
+    private static final int UP_FRAMES = 90;
+    /** The longest wait before stepping up, after failed steps up. */
+    private static final int MAX_UP_FRAMES = 1440;
+    /** The number of frames ignored after a change. */
+    private static final int SETTLE_FRAMES = 15;
+
+    private final float mTargetMs;
+    private final float mScales[];
+    /** The current step of the ladder. */
+    private int mLevel;
+    private float mSmoothedMs;
+    /** The number of frames in the current run over or under budget. */
+    private int mOverFrames;
+    private int mUnderFrames;
+    /** The frames under budget needed to step up. */
+    private int mUpFrames;
+    /** The frames left to ignore after a change. */
+    private int mSettleFrames;
+    /** The number of frames since the last step up; -1 if none is pending judgment. */
+    private int mSinceUp;
+    private int mChangeCount;
+
+    /** Constructor -- the controller starts at full resolution.
+     * @param targetMs  The frame time to stay within (in milliseconds).
+     * @param scales    The scales, from the largest down.
+     */
+    public ResolutionController(float targetMs, float[] scales) {
+        mTargetMs = targetMs;
+        mScales = scales.clone();
+        mLevel = 0;
+        mUpFrames = UP_FRAMES;
+        mSinceUp = -1;
+        mChangeCount = 0;
+        restart();
+    }
+
+    /** Constructor with the default scales. */
+    public ResolutionController(float targetMs) {
+        this(targetMs, DEFAULT_SCALES);
+    }
+
+    /** Reports the time a frame took.
+     * @param frameMs   The frame time (in milliseconds).
+     * @return True if the scale changed.
+     */
+    public boolean update(float frameMs) {
+        if (mSinceUp >= 0 && ++mSinceUp > mUpFrames) {
+            // The last step up held: the next one needn't wait as long.
+            mSinceUp = -1;
+            mUpFrames = UP_FRAMES;
+        }
+        if (mSettleFrames > 0) {
+            --mSettleFrames;
+            return false;
+        }
+        frameMs = Math.min(frameMs, mTargetMs * 2);
+        if (mSmoothedMs < 0) {
+            mSmoothedMs = frameMs;
+        } else {
+            mSmoothedMs += (frameMs - mSmoothedMs) * SMOOTHING;
+        }
+        if (mSmoothedMs > mTargetMs * (1 + DOWN_MARGIN)) {
+            ++mOverFrames;
+            mUnderFrames = 0;
+        } else if (mSmoothedMs < mTargetMs * (1 - UP_MARGIN)) {
+            ++mUnderFrames;
+            mOverFrames = 0;
+        } else {
+            mOverFrames = 0;
+            mUnderFrames = 0;
+        }
+
+        if (mOverFrames >= DOWN_FRAMES && mLevel < mScales.length - 1) {
+            if (mSinceUp >= 0) {
+                // The step up was too far; wait longer before trying again.
+                mUpFrames = Math.min(MAX_UP_FRAMES, mUpFrames * 2);
+                mSinceUp = -1;
+            }
+            ++mLevel;
+            ++mChangeCount;
+            restart();
+            return true;
+        }
+        if (mUnderFrames >= mUpFrames && mLevel > 0) {
+            --mLevel;
+            ++mChangeCount;
+            mSinceUp = 0;
+            restart();
+            return true;
+        }
+        return false;
+    }
+
+    /** Starts measuring afresh after a change. */
+    private void restart() {
+        mSmoothedMs = -1;
+        mOverFrames = 0;
+        mUnderFrames = 0;
+        mSettleFrames = SETTLE_FRAMES;
+    }
+
+    /** Reports the scale of the width and height to render at. */
+    public float getScale() { return mScales[mLevel]; }
+
+    /** Reports the current step of the ladder (0 is full resolution). */
+    public int getLevel() { return mLevel; }
+
+    /** Reports the smoothed frame time (in milliseconds); negative while settling. */
+    public float getSmoothedMs() { return mSmoothedMs; }
+
+    /** Reports the number of frames under budget currently needed to step up. */
+    public int getUpFrames() { return mUpFrames; }
+
+    /** Reports the number of changes of scale. */
+    public int getChangeCount() { return mChangeCount; }
+}
@@ -0,0 +1,451 @@
+package com.curtis.family.touchexplosion;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * A set of particle systems which run at the same time.
+ *
+ * The scene routes touches to all of its systems. The systems add their sprites to batches which
+ * are shared by every system drawing with the same material; the scene then draws each batch with
+ * a single draw call, with the batches ordered by program and texture. The GL state (programs,
+ * textures, blending) is owned by the scene and is set up once, not per system.
+ *
+ * Each system is given a particle budget and a time budget. If drawing a system takes longer than
+ * its time budget, the scene lowers the number of particles the system may have; when it is
+ * comfortably within its time budget, the particle budget recovers.
+ *
+ * Before the batches are drawn, the LOD stage (see SpriteLod) drops the sprites too small or faint
+ * to see and moves small sprites of multi-sample materials to single-sample batches.
+ */
+public class Scene {
+    static final String TAG = Scene.class.getSimpleName();
+
+    /** The depth over which sprites fade (see Material.VERTEX_SHADER). */
+    static final float FAR_LIMIT = 7;
+    /** The smallest particle budget the time budget can reduce a system to. */
+    private static final int MIN_PARTICLE_BUDGET = 16;
+    /** The weight of the latest frame in the smoothed draw cost. */
+    private static final float COST_SMOOTHING = 0.1f;
+
+    /** A system in the scene, with its budgets. */
+    private class Entry implements ParticleSystem.ActivityListener {
+        final ParticleSystem mSystem;
+        /** The largest particle budget the system is given. */
+        final int mMaxParticles;
+        /** The time the system may take to draw each frame (in nanoseconds). */
+        final long mTimeBudgetNs;
+        /** The smoothed time the system takes to draw each frame (in nanoseconds). */
+        float mCostNs;
+        /** Reports if the system has active particles. */
+        boolean mActive;
+
+        Entry(ParticleSystem system, int maxParticles, long timeBudgetNs) {
+            mSystem = system;
+            mMaxParticles = maxParticles;
+            mTimeBudgetNs = timeBudgetNs;
+            mCostNs = 0;
+            mActive = false;
+        }
+
+        @Override
+        public void startActivity() {
+            if (!mActive) {
+                mActive = true;
+                onSystemActivity(true);
+            }
+        }
+
+        @Override
+        public void stopActivity() {
+            if (mActive) {
+                mActive = false;
+                onSystemActivity(false);
+            }
+        }
+    }
+
+    private final ArrayList<Entry> mEntries;
+    /** The batch of each material, in draw order. */
+    private final ArrayList<SpriteBatch> mBatches;
+    private final ArrayList<ParticleSystem.ActivityListener> mListeners;
+    /** The number of systems with active particles. */
+    private int mActiveCount;
+    private Frustum mFrustum;
+    private final SpriteLod mLod;
+    /** The size of the viewport (in pixels). */
+    private int mViewportWidth;
+    private int mViewportHeight;
+
+    private FloatBuffer mVertices;
+    /** The index buffer of each sprite shape, sized for the largest batch drawn with it. */
+    private final HashMap<SpriteShape, ShortBuffer> mIndices;
+
+    /** Constructor */
+    public Scene() {
+        mEntries = new ArrayList<>();
+        mBatches = new ArrayList<>();
+        mListeners = new ArrayList<>();
+        mActiveCount = 0;
+        mFrustum = null;
+        mLod = new SpriteLod();
+        mIndices = new HashMap<>();
+        mViewportWidth = 0;
+        mViewportHeight = 0;
+    }
+
+    /** Adds a system to the scene.
+     * @param system        The system to add.
+     * @param maxParticles  The largest number of particles the system may have.
+     * @param timeBudgetMs  The time the system may take each frame (in milliseconds).
+     */
+    public void add(ParticleSystem system, int maxParticles, float timeBudgetMs) {
+        Entry entry = new Entry(system, maxParticles, (long)(timeBudgetMs * 1e6f));
+        mEntries.add(entry);
+        system.addListener(entry);
+        system.setParticleBudget(maxParticles);
+        system.initMaterials(this);
+        if (mFrustum != null) system.setFrustum(mFrustum);
+    }
+
+    /** Reports the number of systems in the scene. */
+    public int getSystemCount() { return mEntries.size(); }
+
+    /** Returns the i-th system in the scene. */
+    public ParticleSystem getSystem(int i) { return mEntries.get(i).mSystem; }
+
+    /** Returns the material with the given state, creating it if no system uses it yet.
+     * @param shading   One of the Material.SHADE_* constants.
+     * @param texture0  The raw resource of the first texture.
+     * @param texture1  The raw resource of the second texture (0 if unused).
+     */
+    public Material getMaterial(int shading, int texture0, int texture1) {
+        for (SpriteBatch b : mBatches) {
+            if (b.getMaterial().matches(shading, texture0, texture1)) return b.getMaterial();
+        }
+        Material material = new Material(shading, texture0, texture1);
+        mBatches.add(new SpriteBatch(material));
+        Collections.sort(mBatches, new Comparator<SpriteBatch>() {
+            @Override
+            public int compare(SpriteBatch a, SpriteBatch b) {
+                return a.getMaterial().compareTo(b.getMaterial());
+            }
+        });
+        return material;
+    }
+
+    /** Returns the batch for the given material, reserving room in it for the given number of
+     additional sprites. Systems should call this while they are being added to the scene. */
+    public SpriteBatch getBatch(Material material, int sprites) {
+        SpriteBatch batch = findBatch(material);
+        batch.reserve(sprites);
+        if (material.mShading == Material.SHADE_MASKED
+                || material.mShading == Material.SHADE_SPARK) {
+            // The sprites may be moved to a tint batch with the same texture when they are small.
+            SpriteBatch lod = findBatch(getMaterial(Material.SHADE_TINT, material.mTexture0, 0));
+            lod.reserve(sprites);
+            batch.setLodBatch(lod);
+        }
+        return batch;
+    }
+
+    private SpriteBatch findBatch(Material material) {
+        for (SpriteBatch batch : mBatches) {
+            if (batch.getMaterial() == material) return batch;
+        }
+        throw new IllegalArgumentException("The material does not belong to this scene");
+    }
+
+    /** Sets the visible volume for all systems. */
+    public void setFrustum(Frustum frustum) {
+        mFrustum = frustum;
+        for (Entry e : mEntries) {
+            e.mSystem.setFrustum(frustum);
+        }
+    }
+
+    /** Releases every system (see ParticleSystem.release()); the scene is not drawn again. */
+    public void release() {
+        for (Entry e : mEntries) {
+            e.mSystem.release();
+        }
+    }
+
+    /** Returns the visible volume. */
+    public Frustum getFrustum() { return mFrustum; }
+
+    /** Sets the size of the viewport (in pixels), which the LOD stage measures sprites in. */
+    public void setViewport(int width, int height) {
+        mViewportWidth = width;
+        mViewportHeight = height;
+    }
+
+    /** Returns the level-of-detail stage, to tune its thresholds or read its counts. */
+    public SpriteLod getLod() { return mLod; }
+
+    /** The background color of the scene: that of its first system. */
+    public float[] getBgColor() { return mEntries.get(0).mSystem.getBgColor(); }
+
+    /** Adds a listener which is notified when the scene goes from having no active systems to
+     having some, and back. */
+    public void addListener(ParticleSystem.ActivityListener listener) {
+        mListeners.add(listener);
+    }
+
+    /** Removes an activity listener from the scene. */
+    public void removeListener(ParticleSystem.ActivityListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /** Reports a touch in canonical coordinates to every system in the scene. */
+    public void reportTouch(float x, float y, long globalT) {
+        for (int i = 0; i < mEntries.size(); ++i) {
+            mEntries.get(i).mSystem.reportTouch(x, y, mFrustum, globalT);
+        }
+    }
+
+    /** Reports the earliest time at which any system changes visibly (see
+     ParticleSystem.nextVisibleChange()); ParticleSystem.NEVER if none will. */
+    public long nextVisibleChange(long globalT) {
+        long next = ParticleSystem.NEVER;
+        for (int i = 0; i < mEntries.size(); ++i) {
+            next = Math.min(next, mEntries.get(i).mSystem.nextVisibleChange(globalT));
+        }
+        return next;
+    }
+
+    /** Creates the OpenGL resources for the scene: the programs and textures of every material,
+     and the resources of each system. Called each time the GL context is (re-)created. */
+    public void initGL(Context context) {
+        int programs[] = new int[Material.SHADING_COUNT];
+        HashMap<Integer, Integer> textures = new HashMap<>();
+        for (SpriteBatch b : mBatches) {
+            Material m = b.getMaterial();
+            if (programs[m.mShading] == 0) {
+                programs[m.mShading] = loadProgram(Material.VERTEX_SHADER, m.getFragmentShader());
+            }
+            m.mProgram = programs[m.mShading];
+            m.mTexId0 = getTexture(context, textures, m.mTexture0);
+            m.mTexId1 = getTexture(context, textures, m.mTexture1);
+            m.mMVPHandle = GLES20.glGetUniformLocation(m.mProgram, "uMVPMatrix");
+            m.mFarLimitHandle = GLES20.glGetUniformLocation(m.mProgram, "uFarLimit");
+            m.mPositionHandle = GLES20.glGetAttribLocation(m.mProgram, "aPosition");
+            m.mTexCoordHandle = GLES20.glGetAttribLocation(m.mProgram, "aTextureCoord");
+            m.mColorHandle = GLES20.glGetAttribLocation(m.mProgram, "aColor");
+            m.mColor2Handle = GLES20.glGetAttribLocation(m.mProgram, "aColor2");
+            m.mAdditiveHandle = GLES20.glGetAttribLocation(m.mProgram, "aAdditive");
+            GLES20.glUseProgram(m.mProgram);
+            GLES20.glUniform1i(GLES20.glGetUniformLocation(m.mProgram, "uTexture0"), 0);
+            GLES20.glUniform1i(GLES20.glGetUniformLocation(m.mProgram, "uTexture1"), 1);
+        }
+        for (Entry e : mEntries) {
+            e.mSystem.initGL(context);
+        }
+    }
+
+    /** Fills the batches with the sprites of all of the systems at the given time. A rendering
+     backend then draws the batches, in order, and clears them. */
+    public void update(long globalT) {
+        for (int i = 0; i < mEntries.size(); ++i) {
+            Entry e = mEntries.get(i);
+            long start = System.nanoTime();
+            e.mSystem.draw(globalT);
+            e.mCostNs += (System.nanoTime() - start - e.mCostNs) * COST_SMOOTHING;
+            applyTimeBudget(e);
+        }
+    }
+
+    /** Reports the number of batches (one per material). */
+    public int getBatchCount() { return mBatches.size(); }
+
+    /** Returns the i-th batch in draw order. */
+    public SpriteBatch getBatchAt(int i) { return mBatches.get(i); }
+
+    /** Draws all of the systems at the given time. */
+    public void drawGL(long globalT, float[] mvpMatrix) {
+        update(globalT);
+        mLod.apply(this, mvpMatrix, mViewportWidth, mViewportHeight);
+
+        ensureBuffers();
+        GLES20.glEnable(GLES20.GL_BLEND);
+        // Premultiplied alpha; see Material.
+        GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        int program = -1;
+        int tex0 = -1;
+        int tex1 = -1;
+        int stride = SpriteBatch.FLOATS_PER_VERTEX * 4;
+        for (int i = 0; i < mBatches.size(); ++i) {
+            SpriteBatch batch = mBatches.get(i);
+            int count = batch.getCount();
+            if (count == 0) continue;
+            Material m = batch.getMaterial();
+            if (m.mProgram != program) {
+                program = m.mProgram;
+                GLES20.glUseProgram(program);
+                GLES20.glUniformMatrix4fv(m.mMVPHandle, 1, false, mvpMatrix, 0);
+                GLES20.glUniform1f(m.mFarLimitHandle, FAR_LIMIT);
+                setAttribute(m.mPositionHandle, 3, 0, stride);
+                setAttribute(m.mTexCoordHandle, 2, 3, stride);
+                setAttribute(m.mColorHandle, 4, 5, stride);
+                setAttribute(m.mColor2Handle, 4, 9, stride);
+                setAttribute(m.mAdditiveHandle, 1, 13, stride);
+            }
+            if (m.mTexId0 != tex0) {
+                tex0 = m.mTexId0;
+                GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, tex0);
+            }
+            if (m.mTexture1 != 0 && m.mTexId1 != tex1) {
+                tex1 = m.mTexId1;
+                GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
+                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, tex1);
+            }
+            SpriteShape shape = m.getShape();
+            ShortBuffer indices = mIndices.get(shape);
+            mVertices.position(0);
+            mVertices.put(batch.getData(), 0, count * batch.getFloatsPerSprite());
+            indices.position(0);
+            GLES20.glDrawElements(GLES20.GL_TRIANGLES, count * shape.getTriangles().length,
+                    GLES20.GL_UNSIGNED_SHORT, indices);
+            batch.clear();
+        }
+    }
+
+    /** Shrinks a system's particle budget while it exceeds its time budget; lets it recover
+     when the system is well within it. */
+    private void applyTimeBudget(Entry e) {
+        int budget = e.mSystem.getParticleBudget();
+        if (e.mCostNs > e.mTimeBudgetNs) {
+            e.mSystem.setParticleBudget(Math.max(MIN_PARTICLE_BUDGET, budget - budget / 10));
+        } else if (e.mCostNs < e.mTimeBudgetNs / 2 && budget < e.mMaxParticles) {
+            e.mSystem.setParticleBudget(Math.min(e.mMaxParticles, budget + budget / 20 + 1));
+        }
+    }
+
+    /** Points an attribute at its floats in the vertex buffer. An attribute the program doesn't
+     read (e.g., aColor2 in the tint shader) may have been optimized out, leaving no handle. */
+    private void setAttribute(int handle, int size, int offset, int stride) {
+        if (handle < 0) return;
+        mVertices.position(offset);
+        GLES20.glVertexAttribPointer(handle, size, GLES20.GL_FLOAT, false, stride, mVertices);
+        GLES20.glEnableVertexAttribArray(handle);
+    }
+
+    /** Sizes the vertex buffer for the largest batch and each shape's index buffer for the
+     largest batch drawn with it. */
+    private void ensureBuffers() {
+        int floats = 0;
+        for (int i = 0; i < mBatches.size(); ++i) {
+            SpriteBatch batch = mBatches.get(i);
+            floats = Math.max(floats, batch.getCapacity() * batch.getFloatsPerSprite());
+            SpriteShape shape = batch.getMaterial().getShape();
+            int indices = batch.getCapacity() * shape.getTriangles().length;
+            ShortBuffer buffer = mIndices.get(shape);
+            if (buffer == null || buffer.capacity() < indices) {
+                mIndices.put(shape, makeIndices(shape, batch.getCapacity()));
+            }
+        }
+        if (mVertices != null && mVertices.capacity() >= floats) return;
+        mVertices = ByteBuffer.allocateDirect(floats * 4)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    /** Creates the indices of the given number of sprites of a shape. */
+    private static ShortBuffer makeIndices(SpriteShape shape, int sprites) {
+        short triangles[] = shape.getTriangles();
+        int vertices = shape.getVertexCount();
+        ShortBuffer indices = ByteBuffer.allocateDirect(sprites * triangles.length * 2)
+                .order(ByteOrder.nativeOrder()).asShortBuffer();
+        for (int i = 0; i < sprites; ++i) {
+            int v = i * vertices;
+            for (short t : triangles) {
+                indices.put((short)(v + t));
+            }
+        }
+        indices.position(0);
+        return indices;
+    }
+
+    private void onSystemActivity(boolean active) {
+        if (active) {
+            if (mActiveCount++ == 0) {
+                for (ParticleSystem.ActivityListener l : mListeners) l.startActivity();
+            }
+        } else {
+            if (--mActiveCount == 0) {
+                for (ParticleSystem.ActivityListener l : mListeners) l.stopActivity();
+            }
+        }
+    }
+
+    private int getTexture(Context context, HashMap<Integer, Integer> textures, int resource) {
+        if (resource == 0) return 0;
+        Integer id = textures.get(resource);
+        if (id == null) {
+            id = loadTexture(context, resource);
+            textures.put(resource, id);
+        }
+        return id;
+    }
+
+    private static int loadProgram(String vertexCode, String fragmentCode) {
+        int vertexShader = MyGLRenderer.loadShader(GLES20.GL_VERTEX_SHADER, vertexCode);
+        int fragmentShader = MyGLRenderer.loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentCode);
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        GLES20.glLinkProgram(program);
+        return program;
+    }
+
+    /** Loads a resource image as an OpenGL texture. */
+    private static int loadTexture(Context context, int resource) {
+        // Initialize texture
+        InputStream is = context.getResources().openRawResource( resource );
+        Bitmap bitmap;
+        // The materials expect premultiplied textures; GLUtils uploads the bitmap's pixels as they
+        // are stored, so they are decoded premultiplied.
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPremultiplied = true;
+        try {
+            bitmap = BitmapFactory.decodeStream(is, null, options);
+        } finally {
+            try {
+                is.close();
+            } catch(IOException e) {
+                Log.e("GLTextures", e.getMessage());
+                // Ignore.
+            }
+        }
+
+        int[] tmp_tex = new int[ 1 ];
+        GLES20.glGenTextures( 1, tmp_tex, 0 );
+        Utils.checkGlError( TAG, "glGenTextures" );
+        int texId = tmp_tex[0];
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texId);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        //TODO: control whether I want to wrap or clamp the image
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_REPEAT);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_REPEAT);
+        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+        Utils.checkGlError( TAG, "ERROR CHECK - 2" );
+        bitmap.recycle();
+        return texId;
+    }
+}
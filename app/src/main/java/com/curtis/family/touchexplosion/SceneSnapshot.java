@@ -0,0 +1,146 @@
+package com.curtis.family.touchexplosion;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Saves the live state of a scene's particle systems to a file and restores it, so the particles
+ * survive the activity being paused (or its process being killed).
+ *
+ * The file is written and read through a memory mapping in the platform's byte order; systems write
+ * their particle columns with bulk puts and read them back with bulk gets. Layout:
+ *
+ *      int     MAGIC
+ *      int     VERSION
+ *      long    the time stamp of the snapshot (in milliseconds)
+ *      int     the number of systems
+ *      per system:
+ *          int     the hash of the system's class name
+ *          int     the number of bytes of state
+ *          byte[]  the state (see ParticleSystem.writeState())
+ *
+ * On restore, every time stamp is rebased by the time between the snapshot and the restore, so
+ * the particles continue from where they were paused.
+ */
+public class SceneSnapshot {
+    static final String TAG = SceneSnapshot.class.getSimpleName();
+    private static final int MAGIC = 0x54585053;  // "TXPS"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4;
+    private static final int SYSTEM_HEADER_BYTES = 4 + 4;
+
+    /** Writes the state of every system in the scene to the file.
+     * @param scene     The scene to save.
+     * @param file      The file to write; it is replaced.
+     * @param globalT   The current time stamp (in milliseconds).
+     */
+    public static void save(Scene scene, File file, long globalT) throws IOException {
+        int count = scene.getSystemCount();
+        int size = HEADER_BYTES;
+        for (int i = 0; i < count; ++i) {
+            ParticleSystem system = scene.getSystem(i);
+            system.flushSpawns();
+            size += SYSTEM_HEADER_BYTES + system.getStateSize();
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(size);
+            MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buf.order(ByteOrder.nativeOrder());
+            buf.putInt(MAGIC).putInt(VERSION).putLong(globalT).putInt(count);
+            for (int i = 0; i < count; ++i) {
+                ParticleSystem system = scene.getSystem(i);
+                int bytes = system.getStateSize();
+                buf.putInt(tagOf(system)).putInt(bytes);
+                int start = buf.position();
+                system.writeState(buf);
+                if (buf.position() - start != bytes) {
+                    throw new IOException(system.getClass().getSimpleName() + " wrote " +
+                            (buf.position() - start) + " bytes of state; expected " + bytes);
+                }
+            }
+            buf.force();
+        }
+    }
+
+    /** Replaces the state of every system in the scene with the state saved in the file. Nothing
+     is restored if the file is missing or was saved from a scene with different systems.
+     * @param scene     The scene to restore.
+     * @param file      The file written by save().
+     * @param globalT   The current time stamp (in milliseconds); the saved time stamps are
+     *                  rebased onto it.
+     * @return True if the scene was restored.
+     */
+    public static boolean restore(Scene scene, File file, long globalT) throws IOException {
+        if (!file.exists()) return false;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            if (length < HEADER_BYTES) return false;
+            MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+            buf.order(ByteOrder.nativeOrder());
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) return false;
+            long shift = globalT - buf.getLong();
+            int count = buf.getInt();
+            if (count != scene.getSystemCount()) return false;
+
+            // Validate the whole file before any system is touched.
+            int start = buf.position();
+            for (int i = 0; i < count; ++i) {
+                if (buf.remaining() < SYSTEM_HEADER_BYTES) return false;
+                int tag = buf.getInt();
+                int bytes = buf.getInt();
+                if (tag != tagOf(scene.getSystem(i)) || bytes < 0 || bytes > buf.remaining()) {
+                    return false;
+                }
+                buf.position(buf.position() + bytes);
+            }
+
+            buf.position(start);
+            for (int i = 0; i < count; ++i) {
+                buf.getInt();
+                int bytes = buf.getInt();
+                ByteBuffer state = buf.slice();
+                state.order(ByteOrder.nativeOrder());
+                state.limit(bytes);
+                scene.getSystem(i).readState(state, shift);
+                buf.position(buf.position() + bytes);
+            }
+            return true;
+        }
+    }
+
+    /** Writes the first count values of the column. */
+    static void putFloats(ByteBuffer out, float[] column, int count) {
+        out.asFloatBuffer().put(column, 0, count);
+        out.position(out.position() + count * 4);
+    }
+
+    /** Reads the first count of the stored values of a column written by putFloats(), skipping the
+     rest. */
+    static void getFloats(ByteBuffer in, float[] column, int count, int stored) {
+        in.asFloatBuffer().get(column, 0, count);
+        in.position(in.position() + stored * 4);
+    }
+
+    /** Writes the first count values of the column. */
+    static void putLongs(ByteBuffer out, long[] column, int count) {
+        out.asLongBuffer().put(column, 0, count);
+        out.position(out.position() + count * 8);
+    }
+
+    /** Reads the first count of the stored values of a column written by putLongs(), skipping the
+     rest. */
+    static void getLongs(ByteBuffer in, long[] column, int count, int stored) {
+        in.asLongBuffer().get(column, 0, count);
+        in.position(in.position() + stored * 8);
+    }
+
+    /** Identifies the kind of system a block of state belongs to. */
+    private static int tagOf(ParticleSystem system) {
+        return system.getClass().getName().hashCode();
+    }
+}
@@ -1,53 +1,49 @@
 package com.curtis.family.touchexplosion;
 
-import android.content.Context;
-import android.opengl.GLES20;
-import android.opengl.Matrix;
-
-import java.nio.IntBuffer;
-import java.util.ArrayList;
-import java.util.Random;
+import java.nio.ByteBuffer;
 
 /**
  * Simple particle system; an explosion of sprites from the tap location that fall to the ground.
+ *
+ * Each particle follows a closed-form ballistic trajectory and spins at a constant rate, so it is
+ * fully described by its state at birth. The particles are stored as columns of those values
+ * (rather than as objects), with the live particles packed at the front.
+ *
+ * The particles spawned by a touch form a burst: they share an origin and a birth time and are
+ * stored contiguously. Relative to the burst's mean velocity their speeds are bounded, so the whole
+ * burst lies within a sphere which moves with that velocity, falls with gravity and grows linearly
+ * with age; each burst is tested against the frustum first. A burst whose sphere is inside the
+ * frustum draws its particles without testing them; one whose sphere is outside is retired whole;
+ * only the particles of bursts which straddle the frustum are tested one by one.
+ *
+ * A touch only requests its burst (see SpawnQueue); the bursts are built at the start of the next
+ * frames, a slice of time per frame, so a storm of taps doesn't build all of its bursts in one
+ * frame. Each burst keeps the time of its touch, so one built late is drawn as far along as it
+ * would have been. flushSpawns() builds the pending requests, so that a snapshot keeps them.
+ * With the default mSpawnPeriod a touch requests at most a burst every 100 ms, which one frame
+ * builds; the slices only come into play when the period is shortened or mSpawnCount raised.
  */
 public class SimpleParticleSystem extends ParticleSystem {
-
-    private final String vertexShaderCode =
-            "uniform mat4 uMVPMatrix;" +
-                    "uniform float uFarLimit;" +
-                    "attribute vec4 aPosition;" +
-                    "attribute vec2 aTextureCoord;" +
-                    "varying vec2 vTextureCoord;" +
-                    "varying float alpha;" +
-                    "void main() {" +
-                    "  gl_Position = uMVPMatrix * aPosition;" +
-                    "  float dist = 0.125f + 1.0f - (gl_Position.z / uFarLimit) * 0.825f;" +
-                    "  alpha = sqrt(dist);" +
-                    "  vTextureCoord = aTextureCoord;" +
-                    "}";
-
-    private final String fragmentShaderCode =
-            "precision mediump float;" +
-                    "varying vec2 vTextureCoord;" +
-                    "uniform sampler2D iconTexture;" +
-                    "uniform sampler2D colorTexture;" +
-                    "varying float alpha;" +
-                    "uniform vec4 uColor;" +
-                    "uniform vec4 uCenterColor;" +
-                    "void main() {" +
-                    "  gl_FragColor = texture2D(iconTexture, vTextureCoord);" +
-                    "  float color_mask = texture2D(colorTexture, vTextureCoord).x;" +
-                    "  gl_FragColor.xyz *= color_mask < 0.75f ? uCenterColor.xyz : uColor.xyz;" +
-                    "  gl_FragColor.a = min(alpha, gl_FragColor.a);" +
-                    "}";
-
-    private IntBuffer mData;
-
-    private short drawOrder[] = { 0, 1, 2, 0, 2, 3 }; // order to draw vertices
-    private int mProgram;
-    private int mFlowerTex;
-    private int mColorTex;
+    /** Half the gravitational acceleration: 4.9 m/s^2 converted to m/ms^2. */
+    private static final float HALF_GRAVITY = -4.9e-6f;
+    /** The largest initial speed in x and y (in m/ms); the speed in z is a quarter of it. */
+    private static final float MAX_SPEED = 0.0075f;
+    /** The largest spin rate (in degrees/ms). */
+    private static final float MAX_SPIN = 0.2f;
+    /** The range of depths (0 at the near plane, 1 at the far plane) particles are spawned at. */
+    private static final float MIN_DEPTH = 0.2f;
+    private static final float DEPTH_RANGE = 0.6f;
+    /** The distance (in meters) a particle may be outside the frustum before it is retired. */
+    private static final float CULL_MARGIN = 1.0f;
+    /** The number of bytes of state stored for each particle and for each burst. */
+    private static final int PARTICLE_BYTES = (3 + 2 + 8) * 4;
+    private static final int BURST_BYTES = (3 + 3 + 1) * 4 + 4 + 8;
+    /** The largest number of bursts waiting to be built. */
+    private static final int SPAWN_QUEUE = 64;
+    /** The time (in milliseconds) each frame may spend building requested bursts, by default. */
+    private static final float SPAWN_SLICE_MS = 1.0f;
+
+    private SpriteBatch mBatch;
     float sBgColor[] = {0.05f, 0.05f, 0.05f};
 
     /** The time stamp of the last time particles were spawned. In milliseconds.*/
@@ -60,161 +56,410 @@ public class SimpleParticleSystem extends ParticleSystem {
     float mScale;
 
     public SimpleParticleSystem() {
+        this(System.nanoTime());
+    }
+
+    /** Constructor.
+     * @param seed  The seed of the system's random numbers; systems with the same seed and the
+     *              same touches produce the same particles.
+     */
+    public SimpleParticleSystem(long seed) {
         super();
-        mParticles = new ArrayList<>();
         mPose = new Vector3();
-        mVel = new Vector3();
         scratch = new Vector3();
-        mMat = new float[16];
-        random = new Random();
+        mRandom = new XorShiftRandom(seed);
         mSync = new Object();
+        allocate(0);
         mLastSpawn = -1;
         mSpawnPeriod = 100;  // 10 spawns / second (100 ms between spawns).
         mSpawnCount = 10;
         mScale = 0.75f;
+        mSpawns = new SpawnQueue(SPAWN_QUEUE);
+        setSpawnSlice(SPAWN_SLICE_MS);
     }
 
     @Override
-    public void initGL(Context context) {
-        int one = 0x10000;
-        // DATA: v.x, v.y, v.z, u, v
-        // FIXED DATA
-        int interleaved[] = {
-                -one, -one, 0,0, one,
-                one, -one, 0, one, one,
-                -one, one, 0, 0, 0,
-                one, one, 0, one, 0
-        };
-        mData = Utils.buildBuffer(interleaved);
+    public void initMaterials(Scene scene) {
+        Material flower = scene.getMaterial(Material.SHADE_MASKED, R.raw.flower, R.raw.flower_mask);
+        mBatch = scene.getBatch(flower, mParticleBudget);
+        allocate(Math.min(mParticleBudget, mBatch.getCapacity()));
+    }
 
-        int vertexShader = MyGLRenderer.loadShader(GLES20.GL_VERTEX_SHADER,
-                vertexShaderCode);
-        int fragmentShader = MyGLRenderer.loadShader(GLES20.GL_FRAGMENT_SHADER,
-                fragmentShaderCode);
+    /** Sizes the particle columns to hold the given number of particles; any particles are lost. */
+    private void allocate(int capacity) {
+        mCapacity = capacity;
+        mCount = 0;
+        mVelocity = new float[capacity * 3];
+        mSpin = new float[capacity * 2];
+        mColors = new float[capacity * 8];
+        mDrawX = new float[capacity];
+        mDrawY = new float[capacity];
+        mDrawZ = new float[capacity];
+        mDrawAngle = new float[capacity];
+        // Every burst keeps at least one particle, so there are never more bursts than particles.
+        mBurstCount = 0;
+        mOrigin = new float[capacity * 3];
+        mBurstVelocity = new float[capacity * 3];
+        mBurstSpeed = new float[capacity];
+        mBurstSize = new int[capacity];
+        mBirth = new long[capacity];
+    }
 
-        // create empty OpenGL ES Program
-        mProgram = GLES20.glCreateProgram();
+    /** Sets the time each frame may spend building requested bursts (in milliseconds). At least
+     one burst is built per frame, however small the slice. */
+    public void setSpawnSlice(float ms) { mSpawnSliceNs = (long)(ms * 1e6); }
 
-        // add the vertex shader to program
-        GLES20.glAttachShader(mProgram, vertexShader);
+    @Override
+    public void draw(long globalT) {
+        boolean wasActive = mCount > 0 || mSpawns.size() > 0;
+        synchronized (mSync) {
+            mSpawns.drain(mSpawnSliceNs, mBuild);
+            // The surviving particles and bursts are packed down in order, so each burst's
+            // particles stay contiguous.
+            int read = 0;
+            int write = 0;
+            int bursts = 0;
+            mParticleTests = 0;
+            for (int b = 0; b < mBurstCount; ++b) {
+                int first = read;
+                int end = read + mBurstSize[b];
+                read = end;
+                float t = globalT - mBirth[b];
+                int o = b * 3;
+                float x0 = mOrigin[o], y0 = mOrigin[o + 1], z0 = mOrigin[o + 2];
+                // The burst's bounding sphere.
+                float radius = mBurstSpeed[b] * t;
+                scratch.set(x0 + mBurstVelocity[o] * t,
+                        y0 + (mBurstVelocity[o + 1] + HALF_GRAVITY * t) * t,
+                        z0 + mBurstVelocity[o + 2] * t);
+                float out = mFrustum.farthestOut(scratch, CULL_MARGIN + radius);
+                if (out > CULL_MARGIN + radius) continue;
+                boolean inside = out + radius <= CULL_MARGIN;
+
+                int kept = write;
+                if (inside) {
+                    drawBurst(first, end, x0, y0, z0, t);
+                    for (int i = first; i < end; ++i) moveParticle(i, write++);
+                } else {
+                    for (int i = first; i < end; ++i) {
+                        if (drawParticle(i, x0, y0, z0, t, false)) {
+                            moveParticle(i, write++);
+                        }
+                    }
+                }
+                if (write == kept) continue;
+                moveBurst(b, bursts);
+                mBurstSize[bursts++] = write - kept;
+            }
+            mCount = write;
+            mBurstCount = bursts;
+        }
+        if (wasActive && mCount == 0 && mSpawns.size() == 0) notifyActivityStop();
+    }
 
-        // add the fragment shader to program
-        GLES20.glAttachShader(mProgram, fragmentShader);
+    /** Draws the i-th particle -- indicates true if it is still alive, false if not.
+     * @param x0        The x-coordinate of the particle's burst's origin.
+     * @param y0        The y-coordinate of the particle's burst's origin.
+     * @param z0        The z-coordinate of the particle's burst's origin.
+     * @param t         The age of the particle (in milliseconds).
+     * @param inside    True if the particle's burst is known to be inside the frustum, so the
+     *                  particle need not be tested.
+     */
+    protected boolean drawParticle(int i, float x0, float y0, float z0, float t, boolean inside) {
+        int p = i * 3;
+        float x = x0 + mVelocity[p] * t;
+        float y = y0 + (mVelocity[p + 1] + HALF_GRAVITY * t) * t;
+        float z = z0 + mVelocity[p + 2] * t;
+        if (!inside) {
+            ++mParticleTests;
+            scratch.set(x, y, z);
+            if (mFrustum.farthestOut(scratch, CULL_MARGIN) > CULL_MARGIN) return false;
+        }
 
-        // creates OpenGL ES program executables
-        GLES20.glLinkProgram(mProgram);
+        float theta = mSpin[i * 2] + mSpin[i * 2 + 1] * t;
+        mBatch.add(x, y, z, theta, mScale, mColors, i * 8, mColors, i * 8 + 4, 0);
+        return true;
+    }
 
-        mFlowerTex = loadTexture(context, R.raw.flower);
-        mColorTex = loadTexture(context, R.raw.flower_mask);
+    /** Draws the particles of a burst which is inside the frustum (so all of them are drawn): their
+     placements are written to the draw columns and the batch takes them in one call.
+     * @param first     The burst's first particle.
+     * @param end       One past the burst's last particle.
+     * @param x0        The x-coordinate of the burst's origin.
+     * @param y0        The y-coordinate of the burst's origin.
+     * @param z0        The z-coordinate of the burst's origin.
+     * @param t         The age of the burst (in milliseconds).
+     */
+    private void drawBurst(int first, int end, float x0, float y0, float z0, float t) {
+        float fall = HALF_GRAVITY * t;
+        for (int i = first; i < end; ++i) {
+            int p = i * 3;
+            mDrawX[i] = x0 + mVelocity[p] * t;
+            mDrawY[i] = y0 + (mVelocity[p + 1] + fall) * t;
+            mDrawZ[i] = z0 + mVelocity[p + 2] * t;
+            mDrawAngle[i] = mSpin[i * 2] + mSpin[i * 2 + 1] * t;
+        }
+        mDrawScale[0] = mScale;
+        mBatch.addAll(mDrawX, mDrawY, mDrawZ, mDrawAngle, mDrawScale, 0, mColors, 8, 4, 0, first,
+                end);
+    }
+
+    /** Copies the particle in slot `from` into slot `to`. */
+    private void moveParticle(int from, int to) {
+        if (from == to) return;
+        System.arraycopy(mVelocity, from * 3, mVelocity, to * 3, 3);
+        System.arraycopy(mSpin, from * 2, mSpin, to * 2, 2);
+        System.arraycopy(mColors, from * 8, mColors, to * 8, 8);
+    }
 
+    /** Copies the burst in slot `from` into slot `to` (its size is set by the caller). */
+    private void moveBurst(int from, int to) {
+        if (from == to) return;
+        System.arraycopy(mOrigin, from * 3, mOrigin, to * 3, 3);
+        System.arraycopy(mBurstVelocity, from * 3, mBurstVelocity, to * 3, 3);
+        mBurstSpeed[to] = mBurstSpeed[from];
+        mBirth[to] = mBirth[from];
     }
 
     @Override
-    public void drawGL(long globalT, float[] mMVPMatrix) {
-        GLES20.glEnable( GLES20.GL_BLEND );
-        GLES20.glBlendFunc( GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA );
+    public void reportTouch(float x, float y, Frustum frustum, long globalT) {
 
-        // Add program to OpenGL ES environment
-        GLES20.glUseProgram(mProgram);
+        if (mLastSpawn < 0 || mLastSpawn + mSpawnPeriod < globalT ) {
+            synchronized (mSync) {
+                // The pending bursts' particles must fit as well.
+                int budget = Math.min(mCapacity, mParticleBudget);
+                if (mCount + (mSpawns.size() + 1) * mSpawnCount > budget) return;
+                if (!mSpawns.push(globalT, x, y)) return;
+            }
+            if (mCount == 0) notifyActivityStart();
+            mLastSpawn = globalT;
+        }
+    }
 
-        int texLoc = GLES20.glGetUniformLocation(mProgram, "iconTexture");
-        GLES20.glUniform1i(texLoc, 0);
-        texLoc = GLES20.glGetUniformLocation(mProgram, "colorTexture");
-        GLES20.glUniform1i(texLoc, 1);
+    /** Builds a requested burst at the touch (x, y), born at the time of the touch. Called with
+     mSync held. */
+    private void buildBurst(float x, float y, long spawnT) {
+        if (mCount + mSpawnCount > Math.min(mCapacity, mParticleBudget)) return;
+        // The depth comes from the system's random numbers (not the frustum's) so that seeded
+        // systems are reproducible.
+        float depth = MIN_DEPTH + DEPTH_RANGE * mRandom.nextFloat();
+        mFrustum.pointInFrustum(x, y, depth, mPose);
+        int b = mBurstCount++;
+        mOrigin[b * 3] = mPose.x;
+        mOrigin[b * 3 + 1] = mPose.y;
+        mOrigin[b * 3 + 2] = mPose.z;
+        mBirth[b] = spawnT;
+        mBurstSize[b] = mSpawnCount;
+        int first = mCount;
+        for (int i = 0; i < mSpawnCount; ++i) {
+            spawn();
+        }
+        setBounds(b, first, mCount);
+    }
 
-        GLES20.glActiveTexture( GLES20.GL_TEXTURE0 );
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mFlowerTex);
+    /** Sets the b-th burst's bounding velocity and speed from its particles [first, end): their
+     mean velocity and their largest speed relative to it. */
+    private void setBounds(int b, int first, int end) {
+        float mx = 0, my = 0, mz = 0;
+        for (int p = first * 3; p < end * 3; p += 3) {
+            mx += mVelocity[p];
+            my += mVelocity[p + 1];
+            mz += mVelocity[p + 2];
+        }
+        float n = end - first;
+        mx /= n;
+        my /= n;
+        mz /= n;
+        float maxSpeed2 = 0;
+        for (int p = first * 3; p < end * 3; p += 3) {
+            float dx = mVelocity[p] - mx, dy = mVelocity[p + 1] - my, dz = mVelocity[p + 2] - mz;
+            maxSpeed2 = Math.max(maxSpeed2, dx * dx + dy * dy + dz * dz);
+        }
+        mBurstVelocity[b * 3] = mx;
+        mBurstVelocity[b * 3 + 1] = my;
+        mBurstVelocity[b * 3 + 2] = mz;
+        // A little slack so that rounding cannot leave a particle outside the sphere.
+        mBurstSpeed[b] = (float)Math.sqrt(maxSpeed2) * 1.001f;
+    }
 
-        GLES20.glActiveTexture( GLES20.GL_TEXTURE1 );
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mColorTex);
+    /** Appends a particle to the newest burst, with random velocity, spin and (complementary)
+     colors. */
+    private void spawn() {
+        int i = mCount++;
+        int p = i * 3;
+        mVelocity[p] = (mRandom.nextFloat() * 2 - 1) * MAX_SPEED;
+        mVelocity[p + 1] = (mRandom.nextFloat() * 2 - 1) * MAX_SPEED;
+        mVelocity[p + 2] = (mRandom.nextFloat() * 2 - 1) * MAX_SPEED * 0.25f;
+        mSpin[i * 2] = mRandom.nextFloat() * 360;
+        mSpin[i * 2 + 1] = (mRandom.nextFloat() * 2 - 1) * MAX_SPIN;
+
+        float h = mRandom.nextFloat() * 360;
+        setHue(h, mColors, i * 8);
+        h += 180;
+        while (h > 360) { h -= 360; }
+        setHue(h, mColors, i * 8 + 4);
+    }
 
-        int stride = 20; // 4 bytes-per int * 5 ints.
-        mData.position(0);
-        int handle =  GLES20.glGetAttribLocation( mProgram, "aPosition" );
-        GLES20.glVertexAttribPointer(handle, 3, GLES20.GL_FIXED, false, stride, mData);
-        GLES20.glEnableVertexAttribArray( handle );
+    /** Sets the fully saturated, opaque color of the given hue (in degrees) into `colors` at the
+     given index (r, g, b, a). With saturation and value of 1, each channel is a clamped,
+     piecewise-linear function of the hue. */
+    static void setHue(float hue, float[] colors, int index) {
+        float h = hue / 60.0f;
+        colors[index] = clamp01(Math.abs(h - 3) - 1);
+        colors[index + 1] = clamp01(2 - Math.abs(h - 2));
+        colors[index + 2] = clamp01(2 - Math.abs(h - 4));
+        colors[index + 3] = 1.0f;
+    }
 
-        mData.position(3); handle =  GLES20.glGetAttribLocation( mProgram, "aTextureCoord" );
-        GLES20.glVertexAttribPointer(handle, 2, GLES20.GL_FIXED, false, stride, mData);
-        GLES20.glEnableVertexAttribArray( handle );
-        GLES20.glEnableVertexAttribArray( handle );
+    private static float clamp01(float value) {
+        return Math.max(0.0f, Math.min(1.0f, value));
+    }
 
-        int mFarLimitHandle = GLES20.glGetUniformLocation(mProgram, "uFarLimit");
-        GLES20.glUniform1f(mFarLimitHandle, 7);
+    @Override
+    public int getParticleCount() { return mCount; }
 
-        int originalSize = mParticles.size();
-        synchronized (mSync) {
-            int count = mParticles.size();
-            for (int i = 0; i < count; ++i) {
-                SimpleParticle particle = mParticles.get(i);
-                if (!drawParticle(particle, globalT, mMVPMatrix) ) {
-                    SimpleParticle end = mParticles.remove(count - 1);
-                    --count;
-                    if ( count > 0 && i != count ) mParticles.set(i, end);
-                    --i;
-                }
-            }
-        }
-        if (originalSize > 0 && mParticles.size() == 0) notifyActivityStop();
-    }
+    /** Reports the number of live bursts. */
+    public int getBurstCount() { return mBurstCount; }
 
-    /** Draws the particle given -- indicates true if it is still alive, false if not. */
-    protected boolean drawParticle(SimpleParticle particle, long globalT, float[] mvpMatrix) {
-        // Elapsed is a monotonically increasing time.
-        float theta = particle.getOrient(globalT);
-        particle.getPosition(globalT, scratch);
-        if (mFrustum.farthestOut(scratch, 1.0f) > 1.0f) return false;
+    /** Reports the number of requested bursts waiting to be built. */
+    public int getSpawnBacklog() { return mSpawns.size(); }
 
-        Matrix.setIdentityM( mMat, 0 );
-        Matrix.translateM( mMat, 0, scratch.x, scratch.y, scratch.z );
-        Matrix.rotateM(mMat, 0, theta, 0, 0, 1);
-        Matrix.scaleM(mMat, 0, mScale, mScale, mScale);
-        Matrix.multiplyMM( mMat, 0, mvpMatrix, 0, mMat, 0 );
+    /** Reports the number of particles tested against the frustum one by one in the last frame
+     (those of the bursts straddling it). */
+    public int getParticleTests() { return mParticleTests; }
 
-        int mMVPMatrixHandle = GLES20.glGetUniformLocation(mProgram, "uMVPMatrix");
-        GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mMat, 0);
+    /** Particles are always falling; the system only comes to rest once they have all left and no
+     burst is waiting to be built. */
+    @Override
+    public long nextVisibleChange(long globalT) {
+        return mCount > 0 || mSpawns.size() > 0 ? globalT : NEVER;
+    }
 
-        // get handle to fragment shader's vColor member
-        int mColorHandle = GLES20.glGetUniformLocation(mProgram, "uColor");
-        GLES20.glUniform4fv(mColorHandle, 1, particle.getColor(), 0);
-        int mCenterHandle = GLES20.glGetUniformLocation(mProgram, "uCenterColor");
-        GLES20.glUniform4fv(mCenterHandle, 1, particle.getColor2(), 0);
+    @Override
+    public float[] getBgColor() { return sBgColor; }
 
-        // Draw the quad
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
-        return true;
+    /** Builds every requested burst still waiting in the spawn queue. */
+    @Override
+    public void flushSpawns() {
+        synchronized (mSync) {
+            mSpawns.drainAll(mBuild);
+        }
     }
 
+    /** State: the particle and burst counts, the last spawn time, the random state, then each burst
+     column and each particle column in turn. Bursts still in the spawn queue are not stored; see
+     flushSpawns(). */
     @Override
-    public void reportTouch(float x, float y, Frustum frustum, long globalT) {
+    public int getStateSize() {
+        return 4 + 4 + 8 + 8 + mBurstCount * BURST_BYTES + mCount * PARTICLE_BYTES;
+    }
 
-        if (mLastSpawn < 0 || mLastSpawn + mSpawnPeriod < globalT ) {
-            if (mParticles.size() == 0) notifyActivityStart();
-            mFrustum.pointInFrustum(x, y, mPose);
-            float maxSpeed = 0.0075f;
-            synchronized (mSync) {
-                for (int i = 0; i < mSpawnCount; ++i) {
-                    float orient = random.nextFloat() * 360;
-                    mVel.set((random.nextFloat() * 2 - 1) * maxSpeed,
-                            (random.nextFloat() * 2 - 1) * maxSpeed,
-                            (random.nextFloat() * 2 - 1) * maxSpeed * 0.25f);
-                    mParticles.add(new SimpleParticle(mPose, mVel, orient, globalT));
-                }
-            }
-            mLastSpawn = globalT;
+    @Override
+    public void writeState(ByteBuffer out) {
+        synchronized (mSync) {
+            out.putInt(mCount);
+            out.putInt(mBurstCount);
+            out.putLong(mLastSpawn);
+            out.putLong(mRandom.getState());
+            SceneSnapshot.putFloats(out, mOrigin, mBurstCount * 3);
+            SceneSnapshot.putFloats(out, mBurstVelocity, mBurstCount * 3);
+            SceneSnapshot.putFloats(out, mBurstSpeed, mBurstCount);
+            out.asIntBuffer().put(mBurstSize, 0, mBurstCount);
+            out.position(out.position() + mBurstCount * 4);
+            SceneSnapshot.putLongs(out, mBirth, mBurstCount);
+            SceneSnapshot.putFloats(out, mVelocity, mCount * 3);
+            SceneSnapshot.putFloats(out, mSpin, mCount * 2);
+            SceneSnapshot.putFloats(out, mColors, mCount * 8);
         }
     }
 
     @Override
-    public float[] getBgColor() { return sBgColor; }
+    public void readState(ByteBuffer in, long shift) {
+        boolean wasActive = mCount > 0;
+        synchronized (mSync) {
+            int stored = in.getInt();
+            int storedBursts = in.getInt();
+            long lastSpawn = in.getLong();
+            mLastSpawn = lastSpawn < 0 ? lastSpawn : lastSpawn + shift;
+            mRandom.setState(in.getLong());
+            mSpawns.clear();
+            // A smaller budget keeps the oldest particles (and the bursts they belong to).
+            int count = Math.min(stored, mCapacity);
+            int bursts = Math.min(storedBursts, mCapacity);
+            SceneSnapshot.getFloats(in, mOrigin, bursts * 3, storedBursts * 3);
+            SceneSnapshot.getFloats(in, mBurstVelocity, bursts * 3, storedBursts * 3);
+            SceneSnapshot.getFloats(in, mBurstSpeed, bursts, storedBursts);
+            in.asIntBuffer().get(mBurstSize, 0, bursts);
+            in.position(in.position() + storedBursts * 4);
+            SceneSnapshot.getLongs(in, mBirth, bursts, storedBursts);
+            SceneSnapshot.getFloats(in, mVelocity, count * 3, stored * 3);
+            SceneSnapshot.getFloats(in, mSpin, count * 2, stored * 2);
+            SceneSnapshot.getFloats(in, mColors, count * 8, stored * 8);
+            int kept = 0;
+            int b = 0;
+            for (; b < bursts && kept < count; ++b) {
+                mBurstSize[b] = Math.min(mBurstSize[b], count - kept);
+                kept += mBurstSize[b];
+                mBirth[b] += shift;
+            }
+            mBurstCount = b;
+            mCount = count;
+        }
+        if (!wasActive && mCount > 0) notifyActivityStart();
+        if (wasActive && mCount == 0) notifyActivityStop();
+    }
 
-    private ArrayList<SimpleParticle> mParticles;
     private Vector3 mPose;
-    private Vector3 mVel;
     private Vector3 scratch;
-    private float mMat[];
-    private Random random;
+    private XorShiftRandom mRandom;
     private Object mSync;
+    /** The bursts requested by touches and not yet built. */
+    private SpawnQueue mSpawns;
+    /** The time each frame may spend building requested bursts (in nanoseconds). */
+    private long mSpawnSliceNs;
+    /** Builds the requested bursts. */
+    private final SpawnQueue.Handler mBuild = new SpawnQueue.Handler() {
+        @Override
+        public void spawn(float x, float y, long spawnT) { buildBurst(x, y, spawnT); }
+    };
+
+    // Particle columns; the live particles occupy the first mCount entries.
+    /** The number of particles the columns can hold. */
+    private int mCapacity;
+    /** The number of live particles. */
+    private int mCount;
+    /** The velocity of each particle at its birth: x, y, z (in m/ms). */
+    private float mVelocity[];
+    /** The orientation of each particle at its birth and its spin rate: degrees, degrees/ms. */
+    private float mSpin[];
+    /** The colors of each particle: the petal color then the center color (r, g, b, a each). */
+    private float mColors[];
+    /** The placement of each particle in the current frame (see drawBurst()): position and
+     orientation (in degrees). */
+    private float mDrawX[];
+    private float mDrawY[];
+    private float mDrawZ[];
+    private float mDrawAngle[];
+    /** The shared half-width passed to the batch. */
+    private final float mDrawScale[] = new float[1];
+    /** The number of particles tested one by one in the last frame. */
+    private int mParticleTests;
+
+    // Burst columns; the live bursts occupy the first mBurstCount entries, in the order their
+    // particles are stored.
+    /** The number of live bursts. */
+    private int mBurstCount;
+    /** The position each burst was spawned at: x, y, z. */
+    private float mOrigin[];
+    /** The mean velocity of each burst's particles (in m/ms): x, y, z. */
+    private float mBurstVelocity[];
+    /** The largest speed (in m/ms) of any particle spawned in each burst, relative to the burst's
+     mean velocity. */
+    private float mBurstSpeed[];
+    /** The number of live particles in each burst. */
+    private int mBurstSize[];
+    /** The time stamp of each burst's birth (in milliseconds). */
+    private long mBirth[];
 
 //    // Program
 //    private GLProgram mGlProgram = null;
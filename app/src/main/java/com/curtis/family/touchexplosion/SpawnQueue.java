@@ -0,0 +1,91 @@
+package com.curtis.family.touchexplosion;
+
+/**
+ * Spawns requested by touches, waiting to be built -- e.g., the bursts a particle system spawns at
+ * a tap. A request is only its time stamp and the touch's position; the system builds the particles
+ * when the request is drained, a slice of time per frame, so that a storm of touches spreads its
+ * construction over several frames instead of hitching a single one.
+ *
+ * A request keeps its exact time stamp, so particles built a few frames late appear already
+ * advanced to where they would have been. Requests are drained in order (first in, first out), so
+ * a system which draws its random numbers while building produces the same particles however the
+ * requests are spread over frames.
+ *
+ * The requests are a ring; all storage is allocated at construction.
+ */
+class SpawnQueue {
+    /** Builds the requested spawns as they are drained. */
+    interface Handler {
+        /** Called for each drained request, in the order they were made.
+         * @param x         The x-position of the touch.
+         * @param y         The y-position of the touch.
+         * @param spawnT    The time (in milliseconds) of the request.
+         */
+        void spawn(float x, float y, long spawnT);
+    }
+
+    /** The time stamp and position of each request, in a ring. */
+    private final long mT[];
+    private final float mX[];
+    private final float mY[];
+    /** The index of the oldest request. */
+    private int mHead;
+    /** The number of pending requests. */
+    private int mSize;
+
+    /** Constructor.
+     * @param capacity  The largest number of requests which can be pending at once.
+     */
+    SpawnQueue(int capacity) {
+        mT = new long[capacity];
+        mX = new float[capacity];
+        mY = new float[capacity];
+    }
+
+    /** Requests a spawn.
+     * @param spawnT    The time of the request (in milliseconds).
+     * @param x         The x-position of the touch.
+     * @param y         The y-position of the touch.
+     * @return False if the queue is full (and the request is dropped).
+     */
+    boolean push(long spawnT, float x, float y) {
+        if (mSize == mT.length) return false;
+        int i = (mHead + mSize) % mT.length;
+        mT[i] = spawnT;
+        mX[i] = x;
+        mY[i] = y;
+        ++mSize;
+        return true;
+    }
+
+    /** Builds pending requests, oldest first, until the slice of time is spent. At least one
+     request is built (if any is pending), so the queue always makes progress.
+     * @param sliceNs   The time the requests may take (in nanoseconds).
+     * @return The number of requests built.
+     */
+    int drain(long sliceNs, Handler handler) {
+        if (mSize == 0) return 0;
+        long start = System.nanoTime();
+        int built = 0;
+        do {
+            int i = mHead;
+            mHead = (mHead + 1) % mT.length;
+            --mSize;
+            handler.spawn(mX[i], mY[i], mT[i]);
+            ++built;
+        } while (mSize > 0 && System.nanoTime() - start < sliceNs);
+        return built;
+    }
+
+    /** Builds every pending request. */
+    int drainAll(Handler handler) { return drain(Long.MAX_VALUE, handler); }
+
+    /** Reports the number of pending requests: the backlog. */
+    int size() { return mSize; }
+
+    /** Discards every pending request. */
+    void clear() {
+        mHead = 0;
+        mSize = 0;
+    }
+}
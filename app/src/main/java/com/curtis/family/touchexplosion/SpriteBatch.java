@@ -0,0 +1,332 @@
+package com.curtis.family.touchexplosion;
+
+/**
+ * The sprites drawn with a single material in a frame. Systems add sprites to the batch; the scene
+ * draws the whole batch with one draw call.
+ *
+ * Each sprite is expanded on the CPU into the polygon of the material's shape (see SpriteShape) in
+ * world space (the sprite's translation, rotation about z and uniform scale are applied here), so
+ * that sprites from any number of systems can share the scene's MVP matrix. Vertex layout
+ * (floats):
+ *
+ *      x, y, z, u, v, r, g, b, a, r2, g2, b2, a2, additive
+ *
+ * The additivity (see Material) is per sprite: 0 blends the sprite over what is behind it, 1 adds
+ * its light to it, and values between mix the two. Every call which writes sprites takes it, so
+ * systems which share a batch never inherit each other's.
+ */
+public class SpriteBatch {
+    /** The number of floats per vertex. */
+    public static final int FLOATS_PER_VERTEX = 14;
+    /** The most vertices in a batch; it keeps the vertex indices within an unsigned short. */
+    public static final int MAX_VERTICES = 65536;
+    /** The largest batch of quads. */
+    public static final int MAX_SPRITES = MAX_VERTICES / 4;
+
+    private final Material mMaterial;
+    /** The corners of the material's shape: x, y, u, v per vertex. */
+    private final float mCorners[];
+    private final int mVertices;
+    private final int mFloatsPerSprite;
+    /** True if the shape is the quad, whose corners are expanded in closed form. */
+    private final boolean mQuad;
+    private int mCapacity;
+    private float mData[];
+    private int mCount;
+    /** Receives the cosine and sine of a sprite's rotation. */
+    private final float mCosSin[] = new float[2];
+    /** The single-sample batch the LOD stage moves this batch's small sprites to; null if none. */
+    private SpriteBatch mLodBatch;
+
+    /** Constructor -- the batch is empty and holds no sprites until space is reserved.
+     * @param material  The material the sprites are drawn with.
+     */
+    SpriteBatch(Material material) {
+        mMaterial = material;
+        mCorners = material.getShape().getCorners();
+        mVertices = material.getShape().getVertexCount();
+        mFloatsPerSprite = mVertices * FLOATS_PER_VERTEX;
+        mQuad = material.getShape() == SpriteShape.QUAD;
+        mCapacity = 0;
+        mData = new float[0];
+        mCount = 0;
+    }
+
+    /** Grows the batch to hold the given number of additional sprites (up to MAX_VERTICES
+     vertices). This allocates; it is intended to be called while systems are added to the scene.
+     The texture coordinates are the same for every sprite, so they are written here, once. */
+    void reserve(int sprites) {
+        int capacity = Math.min(MAX_VERTICES / mVertices, mCapacity + sprites);
+        if (capacity == mCapacity) return;
+        float data[] = new float[capacity * mFloatsPerSprite];
+        for (int i = 0; i < capacity * mVertices; ++i) {
+            int v = i % mVertices;
+            data[i * FLOATS_PER_VERTEX + 3] = mCorners[v * 4 + 2];
+            data[i * FLOATS_PER_VERTEX + 4] = mCorners[v * 4 + 3];
+        }
+        System.arraycopy(mData, 0, data, 0, mCount * mFloatsPerSprite);
+        mData = data;
+        mCapacity = capacity;
+    }
+
+    /** Adds a sprite to the batch, blended over what is behind it (additivity 0).
+     * @param x         The x-position of the sprite center.
+     * @param y         The y-position of the sprite center.
+     * @param z         The z-position of the sprite center.
+     * @param angle     The rotation of the sprite around the z-axis (in degrees).
+     * @param scale     The half-width of the sprite.
+     * @param color     The primary color (r, g, b, a).
+     * @param color2    The secondary color (r, g, b, a); its meaning depends on the material.
+     * @return True if the sprite was added, false if the batch is full.
+     */
+    public boolean add(float x, float y, float z, float angle, float scale,
+                       float[] color, float[] color2) {
+        return add(x, y, z, angle, scale, color, 0, color2, 0, 0);
+    }
+
+    /** Adds a sprite to the batch, reading its colors from the given offsets of (possibly shared)
+     color arrays. The parameters are the same as add()'s.
+     * @param colorOffset   The index of the primary color in `color`.
+     * @param color2Offset  The index of the secondary color in `color2`.
+     * @param additive      The sprite's additivity (see the class comment).
+     */
+    public boolean add(float x, float y, float z, float angle, float scale,
+                       float[] color, int colorOffset, float[] color2, int color2Offset,
+                       float additive) {
+        if (mCount == mCapacity) return false;
+        FastTrig.cosSinDegrees(angle, mCosSin, 0);
+        float c = mCosSin[0] * scale;
+        float s = mCosSin[1] * scale;
+        expand(mCount, x, y, z, c, s, color, colorOffset, color2, color2Offset, additive);
+        ++mCount;
+        return true;
+    }
+
+    /** Adds a run of sprites from columns of particle attributes; particle i's values are at
+     index i of each column (or at i times the stride). This is add() without a call per sprite.
+     * @param x         The x-positions of the sprite centers.
+     * @param y         The y-positions of the sprite centers.
+     * @param z         The z-positions of the sprite centers.
+     * @param angle     The rotations around the z-axis (in degrees); null if none are rotated.
+     * @param scale     The half-widths of the sprites.
+     * @param scaleStride   The distance between the sprites' half-widths; 0 if they all share
+     *                      scale[0].
+     * @param colors    The sprites' primary colors (r, g, b, a) and secondary colors.
+     * @param colorStride   The distance between the sprites' colors; 0 if they all share them.
+     * @param color2Offset  The index of a sprite's secondary color relative to its primary one.
+     * @param additive  The sprites' additivity (see the class comment).
+     * @param begin     The first particle to add.
+     * @param end       One past the last particle to add.
+     * @return The number of sprites added; fewer than end - begin if the batch filled up.
+     */
+    public int addAll(float[] x, float[] y, float[] z, float[] angle, float[] scale,
+                      int scaleStride, float[] colors, int colorStride, int color2Offset,
+                      float additive, int begin, int end) {
+        end = Math.min(end, begin + mCapacity - mCount);
+        for (int p = begin; p < end; ++p) {
+            float size = scale[p * scaleStride];
+            float c = size, s = 0;
+            if (angle != null) {
+                FastTrig.cosSinDegrees(angle[p], mCosSin, 0);
+                c = mCosSin[0] * size;
+                s = mCosSin[1] * size;
+            }
+            int color = p * colorStride;
+            expand(mCount++, x[p], y[p], z[p], c, s, colors, color, colors, color + color2Offset,
+                    additive);
+        }
+        return Math.max(0, end - begin);
+    }
+
+    /** Appends up to the given number of sprites without writing them, for set() to fill -- e.g.,
+     from several threads at once, each filling its own range of the slots. Every appended sprite
+     must be written, or removed with moveSprite() and setCount(), before the batch is drawn.
+     * @param sprites   The number of sprites wanted.
+     * @return The index of the first appended sprite; getCount() minus it were appended, fewer
+     *         than wanted if the batch filled up.
+     */
+    int append(int sprites) {
+        int first = mCount;
+        mCount = Math.min(mCapacity, mCount + sprites);
+        return first;
+    }
+
+    /** Writes a sprite into a slot appended by append(). It writes only that sprite's vertices and
+     uses no shared scratch space, so sprites in different slots may be set concurrently. The
+     parameters are the same as add()'s, but for the rotation and scale, and the additivity:
+     * @param sprite    The index of the sprite.
+     * @param c         The cosine of the sprite's rotation times its half-width.
+     * @param s         The sine of the sprite's rotation times its half-width.
+     * @param additive  The sprite's additivity (see the class comment).
+     */
+    void set(int sprite, float x, float y, float z, float c, float s,
+             float[] color, int colorOffset, float[] color2, int color2Offset, float additive) {
+        expand(sprite, x, y, z, c, s, color, colorOffset, color2, color2Offset, additive);
+    }
+
+    /** Adds a quad given by its corners rather than by a sprite's placement (e.g., a segment of a
+     ribbon); the batch's shape must be the quad. The corners are in the quad's order: (-1, -1),
+     (1, -1), (-1, 1), (1, 1), and so keep its texture coordinates.
+     * @param corners   The corners: x, y, z per corner.
+     * @param color     The color of every corner (r, g, b, a); the secondary color is zero.
+     * @param additive  The quad's additivity (see the class comment).
+     * @return True if the quad was added, false if the batch is full.
+     */
+    boolean addQuad(float[] corners, float[] color, float additive) {
+        if (!mQuad) throw new IllegalStateException("The batch's shape is not a quad");
+        if (mCount == mCapacity) return false;
+        int i = mCount++ * mFloatsPerSprite;
+        for (int v = 0; v < 12; v += 3) {
+            mData[i] = corners[v];
+            mData[i + 1] = corners[v + 1];
+            mData[i + 2] = corners[v + 2];
+            mData[i + 5] = color[0];
+            mData[i + 6] = color[1];
+            mData[i + 7] = color[2];
+            mData[i + 8] = color[3];
+            mData[i + 9] = 0;
+            mData[i + 10] = 0;
+            mData[i + 11] = 0;
+            mData[i + 12] = 0;
+            mData[i + 13] = additive;
+            i += FLOATS_PER_VERTEX;
+        }
+        return true;
+    }
+
+    /** Writes the vertices of a sprite (all but the texture coordinates, which never change).
+     * @param sprite    The index of the sprite.
+     * @param c         The cosine of the sprite's rotation times its scale.
+     * @param s         The sine of the sprite's rotation times its scale.
+     * @param additive  The sprite's additivity.
+     */
+    private void expand(int sprite, float x, float y, float z, float c, float s,
+                        float[] color, int colorOffset, float[] color2, int color2Offset,
+                        float additive) {
+        int i = sprite * mFloatsPerSprite;
+        if (mQuad) {
+            // The quad's corners are (+/-1, +/-1): each rotated, scaled corner is +/-(c - s) or
+            // +/-(c + s) from the center.
+            float sum = c + s, diff = c - s;
+            mData[i] = x - diff;
+            mData[i + 1] = y - sum;
+            mData[i + FLOATS_PER_VERTEX] = x + sum;
+            mData[i + FLOATS_PER_VERTEX + 1] = y - diff;
+            mData[i + FLOATS_PER_VERTEX * 2] = x - sum;
+            mData[i + FLOATS_PER_VERTEX * 2 + 1] = y + diff;
+            mData[i + FLOATS_PER_VERTEX * 3] = x + diff;
+            mData[i + FLOATS_PER_VERTEX * 3 + 1] = y + sum;
+        } else {
+            for (int v = 0, j = i; v < mVertices; ++v, j += FLOATS_PER_VERTEX) {
+                float cx = mCorners[v * 4];
+                float cy = mCorners[v * 4 + 1];
+                mData[j] = x + c * cx - s * cy;
+                mData[j + 1] = y + s * cx + c * cy;
+            }
+        }
+        float r = color[colorOffset], g = color[colorOffset + 1];
+        float b = color[colorOffset + 2], a = color[colorOffset + 3];
+        float r2 = color2[color2Offset], g2 = color2[color2Offset + 1];
+        float b2 = color2[color2Offset + 2], a2 = color2[color2Offset + 3];
+        for (int v = 0; v < mVertices; ++v) {
+            mData[i + 2] = z;
+            mData[i + 5] = r;
+            mData[i + 6] = g;
+            mData[i + 7] = b;
+            mData[i + 8] = a;
+            mData[i + 9] = r2;
+            mData[i + 10] = g2;
+            mData[i + 11] = b2;
+            mData[i + 12] = a2;
+            mData[i + 13] = additive;
+            i += FLOATS_PER_VERTEX;
+        }
+    }
+
+    /** Recovers a sprite's placement from two of its vertices.
+     * @param sprite    The index of the sprite.
+     * @param out       Receives the sprite's center (x, y, z) and the cosine and sine of its
+     *                  rotation times its scale (the sprite's half-width).
+     */
+    void measure(int sprite, float[] out) {
+        SpriteShape shape = mMaterial.getShape();
+        int a = shape.getFar0(), b = shape.getFar1();
+        int i = sprite * mFloatsPerSprite;
+        int ia = i + a * FLOATS_PER_VERTEX, ib = i + b * FLOATS_PER_VERTEX;
+        // The vertices are the corners rotated and scaled: (px, py) = (c * cx - s * cy,
+        // s * cx + c * cy) plus the center, so (c, s) is the ratio of the two as complex numbers.
+        float ex = mCorners[b * 4] - mCorners[a * 4];
+        float ey = mCorners[b * 4 + 1] - mCorners[a * 4 + 1];
+        float dx = mData[ib] - mData[ia], dy = mData[ib + 1] - mData[ia + 1];
+        float inv = 1 / (ex * ex + ey * ey);
+        float c = (dx * ex + dy * ey) * inv;
+        float s = (dy * ex - dx * ey) * inv;
+        float cx = mCorners[a * 4], cy = mCorners[a * 4 + 1];
+        out[0] = mData[ia] - (c * cx - s * cy);
+        out[1] = mData[ia + 1] - (s * cx + c * cy);
+        out[2] = mData[ia + 2];
+        out[3] = c;
+        out[4] = s;
+    }
+
+    /** Appends a copy of a sprite of another batch, re-expanded to this batch's shape if they
+     differ.
+     * @param src       The batch holding the sprite.
+     * @param index     The index of the sprite in `src`.
+     * @param scratch   Space for five floats.
+     * @return True if the sprite was added, false if the batch is full.
+     */
+    boolean addSprite(SpriteBatch src, int index, float[] scratch) {
+        if (mCount == mCapacity) return false;
+        if (src.mCorners == mCorners) {
+            System.arraycopy(src.mData, index * mFloatsPerSprite, mData, mCount * mFloatsPerSprite,
+                    mFloatsPerSprite);
+        } else {
+            src.measure(index, scratch);
+            int color = index * src.mFloatsPerSprite + 5;
+            expand(mCount, scratch[0], scratch[1], scratch[2], scratch[3], scratch[4],
+                    src.mData, color, src.mData, color + 4, src.mData[color + 8]);
+        }
+        ++mCount;
+        return true;
+    }
+
+    /** Copies the sprite in slot `from` into slot `to`. */
+    void moveSprite(int from, int to) {
+        if (from == to) return;
+        System.arraycopy(mData, from * mFloatsPerSprite, mData, to * mFloatsPerSprite,
+                mFloatsPerSprite);
+    }
+
+    /** Sets the number of sprites (e.g., after removing sprites with moveSprite()). */
+    void setCount(int count) { mCount = count; }
+
+    /** Sets the batch the LOD stage moves small sprites to. */
+    void setLodBatch(SpriteBatch batch) { mLodBatch = batch; }
+
+    /** Returns the batch the LOD stage moves small sprites to; null if the batch's sprites are
+     already drawn with a single sample. */
+    SpriteBatch getLodBatch() { return mLodBatch; }
+
+    /** Empties the batch. */
+    public void clear() { mCount = 0; }
+
+    /** Reports the number of sprites in the batch. */
+    public int getCount() { return mCount; }
+
+    /** Reports the maximum number of sprites in the batch. */
+    public int getCapacity() { return mCapacity; }
+
+    /** Reports the number of vertices per sprite. */
+    public int getVerticesPerSprite() { return mVertices; }
+
+    /** Reports the number of floats per sprite. */
+    public int getFloatsPerSprite() { return mFloatsPerSprite; }
+
+    /** Returns the vertex data; only the first getCount() * getFloatsPerSprite() values are
+     valid. */
+    public float[] getData() { return mData; }
+
+    /** Returns the material the batch is drawn with. */
+    public Material getMaterial() { return mMaterial; }
+}
@@ -0,0 +1,147 @@
+package com.curtis.family.touchexplosion;
+
+/**
+ * The level-of-detail stage: run over the filled batches before they are drawn, it sorts each
+ * sprite into one of three tiers by its size on screen and its final alpha.
+ *
+ *  - Full: drawn as submitted.
+ *  - Reduced: smaller than the detail size; sprites whose material samples its textures more than
+ *    once (masked, spark) are moved to the batch's LOD batch, drawn with the single-sample tint
+ *    shader and the same first texture. The difference is a few pixels across.
+ *  - Dropped: narrower than a pixel, or fainter than the alpha threshold; removed from the batch.
+ *
+ * The size and alpha are computed from the MVP matrix as the renderer would: the width in pixels
+ * of the sprite at its depth, and the vertex shader's depth fade (see Material.VERTEX_SHADER)
+ * times the sprite's color alpha (which the masked shader ignores). Sprites are assumed to face
+ * the camera, as every system's sprites lie in planes of constant z.
+ *
+ * The surviving sprites keep their order, so blending is unchanged within each batch. Ribbon
+ * batches (see Trails) hold strips rather than sprites and are drawn as submitted.
+ */
+public class SpriteLod {
+    /** The default thresholds: a pixel, an alpha of 1/255 (no visible change), and no reduced
+     tier. */
+    public static final float DEFAULT_MIN_PIXELS = 1.0f;
+    public static final float DEFAULT_MIN_ALPHA = 1.0f / 255;
+    public static final float DEFAULT_DETAIL_PIXELS = 0.0f;
+
+    private float mMinPixels;
+    private float mMinAlpha;
+    private float mDetailPixels;
+    private boolean mEnabled;
+    // The number of sprites in each tier in the last frame.
+    private int mFullCount;
+    private int mReducedCount;
+    private int mDroppedCount;
+    /** A sprite's placement (see SpriteBatch.measure()). */
+    private final float mPlacement[];
+
+    /** Constructor -- the stage is enabled with the default thresholds. */
+    public SpriteLod() {
+        mMinPixels = DEFAULT_MIN_PIXELS;
+        mMinAlpha = DEFAULT_MIN_ALPHA;
+        mDetailPixels = DEFAULT_DETAIL_PIXELS;
+        mEnabled = true;
+        mPlacement = new float[5];
+    }
+
+    /** Sets the width (in pixels) below which sprites are dropped. */
+    public void setMinPixels(float pixels) { mMinPixels = pixels; }
+
+    /** Sets the final alpha below which sprites are dropped. */
+    public void setMinAlpha(float alpha) { mMinAlpha = alpha; }
+
+    /** Sets the width (in pixels) below which sprites are drawn with a single-sample shader; 0
+     disables the reduced tier. */
+    public void setDetailPixels(float pixels) { mDetailPixels = pixels; }
+
+    /** Enables or disables the stage; a disabled stage (or one without a viewport) leaves the
+     batches as they are. */
+    public void setEnabled(boolean enabled) { mEnabled = enabled; }
+
+    public boolean isEnabled() { return mEnabled; }
+
+    /** Reports the number of sprites drawn at full detail in the last frame. */
+    public int getFullCount() { return mFullCount; }
+
+    /** Reports the number of sprites moved to a single-sample shader in the last frame. */
+    public int getReducedCount() { return mReducedCount; }
+
+    /** Reports the number of sprites dropped in the last frame. */
+    public int getDroppedCount() { return mDroppedCount; }
+
+    /** Sorts the sprites of every batch of the scene into their tiers.
+     * @param scene     The scene, with its batches filled.
+     * @param m         The MVP matrix (column-major).
+     * @param width     The width of the viewport (in pixels).
+     * @param height    The height of the viewport (in pixels).
+     */
+    public void apply(Scene scene, float[] m, int width, int height) {
+        mFullCount = 0;
+        mReducedCount = 0;
+        mDroppedCount = 0;
+        if (!mEnabled || width <= 0 || height <= 0) {
+            for (int b = 0; b < scene.getBatchCount(); ++b) {
+                mFullCount += scene.getBatchAt(b).getCount();
+            }
+            return;
+        }
+        // The pixels per meter at unit depth; the larger of the two axes. Single-sample batches
+        // come first in draw order, so the sprites moved to them are not measured twice.
+        float pixelScale = Math.max(Math.abs(m[0]) * width, Math.abs(m[5]) * height) * 0.5f;
+        for (int b = 0; b < scene.getBatchCount(); ++b) {
+            apply(scene.getBatchAt(b), m, pixelScale);
+        }
+    }
+
+    /** Sorts the sprites of a batch, packing the ones which stay down in order. */
+    private void apply(SpriteBatch batch, float[] m, float pixelScale) {
+        if (batch.getMaterial().getShading() == Material.SHADE_RIBBON) {
+            mFullCount += batch.getCount();
+            return;
+        }
+        float data[] = batch.getData();
+        SpriteBatch lod = mDetailPixels > 0 ? batch.getLodBatch() : null;
+        boolean colorAlpha = batch.getMaterial().getShading() != Material.SHADE_MASKED;
+        int count = batch.getCount();
+        int kept = 0;
+        float placement[] = mPlacement;
+        for (int s = 0; s < count; ++s) {
+            batch.measure(s, placement);
+            float x = placement[0], y = placement[1], z = placement[2];
+            float c = placement[3], sin = placement[4];
+            // The sprite's width: twice its scale.
+            float size = 2 * (float)Math.sqrt(c * c + sin * sin);
+            float cz = m[2] * x + m[6] * y + m[10] * z + m[14];
+            float cw = m[3] * x + m[7] * y + m[11] * z + m[15];
+            float pixels = cw > 0 ? size * pixelScale / cw : 0;
+            float alpha = (float)Math.sqrt(Math.max(0.0f,
+                    0.125f + 1.0f - (cz / Scene.FAR_LIMIT) * 0.825f));
+            if (colorAlpha) alpha *= data[s * batch.getFloatsPerSprite() + 8];
+
+            if (pixels < mMinPixels || alpha < mMinAlpha) {
+                ++mDroppedCount;
+            } else if (lod != null && pixels < mDetailPixels
+                    && lod.addSprite(batch, s, placement)) {
+                ++mReducedCount;
+                // The masked shader takes its alpha from the texture alone; the tint shader
+                // multiplies in the color's, so it is made opaque.
+                if (!colorAlpha) setOpaque(lod, lod.getCount() - 1);
+            } else {
+                ++mFullCount;
+                batch.moveSprite(s, kept++);
+            }
+        }
+        batch.setCount(kept);
+    }
+
+    /** Sets the primary color alpha of a sprite's vertices to 1. */
+    private static void setOpaque(SpriteBatch batch, int sprite) {
+        float data[] = batch.getData();
+        int i = sprite * batch.getFloatsPerSprite() + 8;
+        for (int v = 0; v < batch.getVerticesPerSprite(); ++v) {
+            data[i] = 1;
+            i += SpriteBatch.FLOATS_PER_VERTEX;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.curtis.family.touchexplosion;
+
+import java.util.Arrays;
+
+/**
+ * The polygon a sprite is drawn as: by default the full quad, or a convex polygon fitted to the
+ * visible part of the sprite's texture, so that the transparent corners of the quad are not
+ * blended (fill rate being what limits large sprites).
+ *
+ * A shape's vertices are given in the frame of the unit quad (x and y in [-1, 1], as
+ * SpriteBatch.add() scales and rotates them), in counter-clockwise order; each vertex's texture
+ * coordinates follow from its position. The polygon is drawn as a fan of triangles.
+ *
+ * Shapes are fitted with fromAlpha(): the convex hull of every texel above an alpha threshold,
+ * grown by half a texel for linear filtering (and wrapped across the edges, as the textures
+ * repeat), and then simplified to at most MAX_VERTICES vertices by extending edges outward, so the
+ * polygon still covers everything the hull does. The fitted shapes of the app's textures are baked
+ * into forMaterial(); SpriteShapeTest re-fits them from the images and reports the area saved.
+ */
+public class SpriteShape {
+    /** The most vertices a fitted shape has. */
+    public static final int MAX_VERTICES = 8;
+    /** The full quad, drawn as the triangles (0, 1, 2) and (2, 1, 3). */
+    public static final SpriteShape QUAD = new SpriteShape(
+            new float[]{-1, -1, 1, -1, -1, 1, 1, 1}, new short[]{0, 1, 2, 2, 1, 3});
+
+    // The shapes of the app's textures, fitted by fromAlpha() to every texel with any alpha (so
+    // drawing them is exact), rounded outward; see SpriteShapeTest.
+    private static final SpriteShape FLOWER = polygon(new float[]{
+            -0.9922f, 0.0704f, -0.5641f, -1.0000f, 0.6590f, -1.0000f, 0.9678f, 0.1879f,
+            0.9322f, 0.4729f, 0.0926f, 1.0000f, -0.2094f, 1.0000f, -0.9922f, 0.3323f});
+    private static final SpriteShape STAR = polygon(new float[]{
+            -1.0000f, 0.0079f, -0.7624f, -1.0000f, 0.7333f, -1.0000f, 1.0000f, 0.0079f,
+            1.0000f, 0.5391f, 0.2735f, 1.0000f, -0.2735f, 1.0000f, -1.0000f, 0.5399f});
+    private static final SpriteShape TARGET = polygon(new float[]{
+            -1.0000f, -0.4688f, -0.4688f, -1.0000f, 0.4688f, -1.0000f, 1.0000f, -0.4688f,
+            1.0000f, 0.4688f, 0.4688f, 1.0000f, -0.4688f, 1.0000f, -1.0000f, 0.4688f});
+
+    /** The vertices: x, y, u, v per vertex. */
+    private final float mCorners[];
+    /** The triangles, as indices of the vertices. */
+    private final short mTriangles[];
+    /** Two vertices far apart, from which a sprite's center and size are recovered. */
+    private final int mFar0;
+    private final int mFar1;
+    private final float mArea;
+
+    /** Constructor.
+     * @param xy            The vertices' positions (x, y) in the frame of the unit quad.
+     * @param triangles     The triangles, as indices of the vertices.
+     */
+    private SpriteShape(float[] xy, short[] triangles) {
+        int count = xy.length / 2;
+        mCorners = new float[count * 4];
+        for (int i = 0; i < count; ++i) {
+            mCorners[i * 4] = xy[i * 2];
+            mCorners[i * 4 + 1] = xy[i * 2 + 1];
+            mCorners[i * 4 + 2] = (xy[i * 2] + 1) * 0.5f;
+            mCorners[i * 4 + 3] = (1 - xy[i * 2 + 1]) * 0.5f;
+        }
+        mTriangles = triangles;
+        int far0 = 0, far1 = 1;
+        float farthest = 0;
+        for (int i = 0; i < count; ++i) {
+            for (int j = i + 1; j < count; ++j) {
+                float dx = xy[j * 2] - xy[i * 2], dy = xy[j * 2 + 1] - xy[i * 2 + 1];
+                if (dx * dx + dy * dy > farthest) {
+                    farthest = dx * dx + dy * dy;
+                    far0 = i;
+                    far1 = j;
+                }
+            }
+        }
+        mFar0 = far0;
+        mFar1 = far1;
+        float area = 0;
+        for (int t = 0; t < triangles.length; t += 3) {
+            area += Math.abs(cross(xy, triangles[t], triangles[t + 1], triangles[t + 2])) * 0.5f;
+        }
+        mArea = area;
+    }
+
+    /** Creates the shape of a convex polygon, drawn as a fan from its first vertex.
+     * @param xy    The vertices' positions (x, y), counter-clockwise.
+     */
+    static SpriteShape polygon(float[] xy) {
+        int count = xy.length / 2;
+        short triangles[] = new short[(count - 2) * 3];
+        for (int i = 0; i < count - 2; ++i) {
+            triangles[i * 3] = 0;
+            triangles[i * 3 + 1] = (short)(i + 1);
+            triangles[i * 3 + 2] = (short)(i + 2);
+        }
+        return new SpriteShape(xy, triangles);
+    }
+
+    /** Returns the shape sprites of the given material are drawn as.
+     * @param shading   One of the Material.SHADE_* constants.
+     * @param texture0  The raw resource of the material's first texture, whose alpha is the
+     *                  sprite's.
+     */
+    static SpriteShape forMaterial(int shading, int texture0) {
+        if (texture0 == R.raw.flower) return FLOWER;
+        // Spark shading also draws the star rotated about its center, which reaches the quad's
+        // corners.
+        if (texture0 == R.raw.star) return shading == Material.SHADE_SPARK ? QUAD : STAR;
+        if (texture0 == R.raw.target) return TARGET;
+        return QUAD;
+    }
+
+    /** Fits a shape to the texels of an image above an alpha threshold.
+     * @param argb              The image, in ARGB, row by row from the top.
+     * @param width             The width of the image (in texels).
+     * @param height            The height of the image (in texels).
+     * @param alphaThreshold    The alpha (0-255) above which a texel is visible.
+     * @param rotated           If true, the shape also covers the image rotated by any angle about
+     *                          its center (as spark shading draws it).
+     * @return The shape; the quad if no polygon within the quad does better.
+     */
+    public static SpriteShape fromAlpha(int[] argb, int width, int height, int alphaThreshold,
+                                        boolean rotated) {
+        // The corners of the visible texels' footprints, in texels; the leftmost and rightmost
+        // texels of each row are enough for the hull.
+        float points[] = new float[height * 2 * 5 * 4 * 2];
+        int count = 0;
+        for (int y = 0; y < height; ++y) {
+            int left = -1, right = -1;
+            for (int x = 0; x < width; ++x) {
+                if ((argb[y * width + x] >>> 24) > alphaThreshold) {
+                    if (left < 0) left = x;
+                    right = x;
+                }
+            }
+            if (left < 0) continue;
+            count = addFootprint(points, count, left, y, width, height);
+            count = addFootprint(points, count, right, y, width, height);
+        }
+        if (count < 3) return QUAD;
+        // To the frame of the unit quad: y up.
+        for (int i = 0; i < count; ++i) {
+            points[i * 2] = points[i * 2] / width * 2 - 1;
+            points[i * 2 + 1] = 1 - points[i * 2 + 1] / height * 2;
+        }
+        float xy[];
+        if (rotated) {
+            // The disk swept by the footprints, as the octagon around it.
+            float r = 0;
+            for (int i = 0; i < count; ++i) {
+                r = Math.max(r, (float)Math.hypot(points[i * 2], points[i * 2 + 1]));
+            }
+            r /= (float)Math.cos(Math.PI / 8);
+            xy = new float[16];
+            for (int i = 0; i < 8; ++i) {
+                double theta = Math.PI / 8 + i * Math.PI / 4 - Math.PI;
+                xy[i * 2] = (float)(r * Math.cos(theta));
+                xy[i * 2 + 1] = (float)(r * Math.sin(theta));
+            }
+        } else {
+            xy = simplify(hull(points, count), MAX_VERTICES);
+        }
+        if (xy == null) return QUAD;
+        for (float c : xy) {
+            if (Math.abs(c) > 1) return QUAD;
+        }
+        return polygon(xy);
+    }
+
+    /** Adds the corners of a texel's footprint -- the texel grown by half a texel on each side,
+     which is what linear filtering reads it over -- including its parts wrapped across the
+     image's edges. */
+    private static int addFootprint(float[] points, int count, int x, int y, int width,
+                                    int height) {
+        float x0 = x - 0.5f, x1 = x + 1.5f;
+        float y0 = y - 0.5f, y1 = y + 1.5f;
+        count = addRect(points, count, x0, y0, x1, y1, width, height);
+        if (x0 < 0) count = addRect(points, count, x0 + width, y0, width, y1, width, height);
+        if (x1 > width) count = addRect(points, count, 0, y0, x1 - width, y1, width, height);
+        if (y0 < 0) count = addRect(points, count, x0, y0 + height, x1, height, width, height);
+        if (y1 > height) count = addRect(points, count, x0, 0, x1, y1 - height, width, height);
+        return count;
+    }
+
+    /** Adds the corners of a rectangle, clamped to the image. */
+    private static int addRect(float[] points, int count, float x0, float y0, float x1, float y1,
+                               int width, int height) {
+        x0 = Math.max(0, x0);
+        y0 = Math.max(0, y0);
+        x1 = Math.min(width, x1);
+        y1 = Math.min(height, y1);
+        float corners[] = {x0, y0, x1, y0, x0, y1, x1, y1};
+        if (count + 4 > points.length / 2) return count;
+        System.arraycopy(corners, 0, points, count * 2, 8);
+        return count + 4;
+    }
+
+    /** The convex hull of the points (Andrew's monotone chain), counter-clockwise. */
+    static float[] hull(float[] points, int count) {
+        Integer order[] = new Integer[count];
+        for (int i = 0; i < count; ++i) order[i] = i;
+        final float p[] = points;
+        Arrays.sort(order, new java.util.Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int c = Float.compare(p[a * 2], p[b * 2]);
+                return c != 0 ? c : Float.compare(p[a * 2 + 1], p[b * 2 + 1]);
+            }
+        });
+        int h[] = new int[count * 2];
+        int k = 0;
+        for (int i = 0; i < count; ++i) {
+            while (k >= 2 && turn(p, h[k - 2], h[k - 1], order[i]) <= 0) --k;
+            h[k++] = order[i];
+        }
+        for (int i = count - 2, lower = k + 1; i >= 0; --i) {
+            while (k >= lower && turn(p, h[k - 2], h[k - 1], order[i]) <= 0) --k;
+            h[k++] = order[i];
+        }
+        // The last point repeats the first.
+        float xy[] = new float[(k - 1) * 2];
+        for (int i = 0; i < k - 1; ++i) {
+            xy[i * 2] = p[h[i] * 2];
+            xy[i * 2 + 1] = p[h[i] * 2 + 1];
+        }
+        return xy;
+    }
+
+    /** Reduces a convex polygon to at most the given number of vertices without uncovering any
+     of it: repeatedly, the edge whose removal adds the least area is replaced by extending its
+     neighbors until they meet. Edges are only removed where the meeting point is within the quad.
+     * @return The reduced polygon, or null if it cannot be reduced within the quad.
+     */
+    static float[] simplify(float[] xy, int maxVertices) {
+        int n = xy.length / 2;
+        float v[] = Arrays.copyOf(xy, xy.length);
+        float meet[] = new float[2];
+        while (n > maxVertices) {
+            int best = -1;
+            float bestArea = Float.MAX_VALUE;
+            float bestX = 0, bestY = 0;
+            for (int i = 0; i < n; ++i) {
+                // Edge i runs from vertex i to i + 1; its neighbors end at i and start at i + 1.
+                int prev = (i + n - 1) % n, a = i, b = (i + 1) % n, next = (i + 2) % n;
+                if (!intersect(v, prev, a, b, next, meet)) continue;
+                if (Math.abs(meet[0]) > 1 || Math.abs(meet[1]) > 1) continue;
+                float area = Math.abs((v[b * 2] - v[a * 2]) * (meet[1] - v[a * 2 + 1])
+                        - (v[b * 2 + 1] - v[a * 2 + 1]) * (meet[0] - v[a * 2])) * 0.5f;
+                if (area < bestArea) {
+                    bestArea = area;
+                    best = i;
+                    bestX = meet[0];
+                    bestY = meet[1];
+                }
+            }
+            if (best < 0) return null;
+            // Vertex `best` becomes the meeting point; vertex best + 1 is removed.
+            v[best * 2] = bestX;
+            v[best * 2 + 1] = bestY;
+            int removed = (best + 1) % n;
+            System.arraycopy(v, (removed + 1) * 2, v, removed * 2, (n - removed - 1) * 2);
+            --n;
+        }
+        return Arrays.copyOf(v, n * 2);
+    }
+
+    /** Intersects the line through vertices prev and a with the line through b and next, where
+     they meet beyond a and before b (i.e., outside the edge a-b).
+     * @return False if the lines do not meet on that side.
+     */
+    private static boolean intersect(float[] v, int prev, int a, int b, int next, float[] out) {
+        float dx1 = v[a * 2] - v[prev * 2], dy1 = v[a * 2 + 1] - v[prev * 2 + 1];
+        float dx2 = v[next * 2] - v[b * 2], dy2 = v[next * 2 + 1] - v[b * 2 + 1];
+        float denom = dx1 * dy2 - dy1 * dx2;
+        // The neighbors turn by less than 180 degrees in total only if they converge.
+        if (denom <= 1e-9f) return false;
+        float ex = v[b * 2] - v[a * 2], ey = v[b * 2 + 1] - v[a * 2 + 1];
+        float t = (ex * dy2 - ey * dx2) / denom;
+        if (t < 0) return false;
+        out[0] = v[a * 2] + dx1 * t;
+        out[1] = v[a * 2 + 1] + dy1 * t;
+        return true;
+    }
+
+    private static float turn(float[] p, int a, int b, int c) {
+        return (p[b * 2] - p[a * 2]) * (p[c * 2 + 1] - p[a * 2 + 1])
+                - (p[b * 2 + 1] - p[a * 2 + 1]) * (p[c * 2] - p[a * 2]);
+    }
+
+    private static float cross(float[] xy, int a, int b, int c) {
+        return (xy[b * 2] - xy[a * 2]) * (xy[c * 2 + 1] - xy[a * 2 + 1])
+                - (xy[b * 2 + 1] - xy[a * 2 + 1]) * (xy[c * 2] - xy[a * 2]);
+    }
+
+    /** Reports the number of vertices. */
+    public int getVertexCount() { return mCorners.length / 4; }
+
+    /** Returns the vertices: x, y, u, v per vertex. */
+    float[] getCorners() { return mCorners; }
+
+    /** Returns the triangles, as indices of the vertices. */
+    short[] getTriangles() { return mTriangles; }
+
+    int getFar0() { return mFar0; }
+
+    int getFar1() { return mFar1; }
+
+    /** Reports the area of the shape, in the frame of the unit quad (whose area is 4). */
+    public float getArea() { return mArea; }
+
+    /** Reports the fraction of the quad's area (and so of its fragments) the shape saves. */
+    public float getAreaSaved() { return 1 - mArea / 4; }
+}
@@ -1,67 +1,110 @@
 package com.curtis.family.touchexplosion;
 
-import android.content.Context;
-import android.opengl.GLES20;
-import android.opengl.Matrix;
-
-import com.curtis.family.touchexplosion.functions.BallisticFunction1D;
 import com.curtis.family.touchexplosion.functions.ConstFunction1D;
 import com.curtis.family.touchexplosion.functions.Function1D;
-import com.curtis.family.touchexplosion.functions.HermiteFunction3D;
+import com.curtis.family.touchexplosion.functions.HermitePathFunction3D;
 import com.curtis.family.touchexplosion.functions.LinearFunction1D;
+import com.curtis.family.touchexplosion.functions.PiecewiseFunction3D;
 import com.curtis.family.touchexplosion.functions.SineFunction;
 
-import java.nio.IntBuffer;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Random;
-
-interface Particle {
-    void getPosition(long globalT, Vector3 pos);
-    float getOrient(long globalT);
-    float getScale();
-    float[] getColor();
-    boolean isAlive(long globalT);
-}
 
 /** The spark particle that the tinkerbell particle gives off. It is emitted at a particular
- location and then simply falls due to gravity -- decaying and eventually dying out. */
+ location and then simply falls due to gravity, bouncing off the floor of the frustum -- decaying
+ and eventually dying out. Sparks are pooled; a dead spark is re-initialized with reset() rather
+ than replaced. */
 class SparkParticle implements Particle {
-    /** The x-position of the spark. */
-    private float mX;
-    /** The time varying y-position of the spark. */
-    private BallisticFunction1D mY;
-    /** The z-position of the spark. */
-    private float mZ;
+    /** The shortest spark lifespan (in milliseconds). */
+    static final long MIN_LIFE = 1500;
+    /** The longest spark lifespan (in milliseconds). */
+    static final long MAX_LIFE = 2500;
+    /** The resolution of spark lifespans (in milliseconds); sparks expire in groups of this width. */
+    static final long LIFE_STEP = 100;
+    /** The number of bytes of state stored for a spark. */
+    static final int STATE_BYTES = 4 * 4 + 8 + 8;
+    /** The fraction of its speed into the floor a spark keeps when it bounces. */
+    static final float RESTITUTION = 0.5f;
+    /** The number of bounces before a spark falls through the floor. */
+    static final int MAX_BOUNCES = 4;
+
+    /** The time varying position of the spark. */
+    private PiecewiseFunction3D mPath;
     /** The age function -- it ages from 0 to 1. */
-    private Function1D mAgeFunction;
+    private LinearFunction1D mAgeFunction;
     /** Determines the spin of the particle. */
-    private Function1D mSpinFunction;
+    private LinearFunction1D mSpinFunction;
+    /** The duration this particle lives (in milliseconds). */
+    private long mLifespan;
+    /** The position, orientation and time stamp at which the spark was emitted. */
+    private float mX0;
+    private float mY0;
+    private float mZ0;
+    private float mSpin0;
+    private long mBirth;
     /** The particle color. */
     private float mColor[] = {1.0f, 1.0f, 0.1f, 1.0f};
-    /** Random number generator */
-    private Random sRandom = new Random();
 
+    /** Constructs a spark which has not yet been emitted; it must be reset() before it is used.
+     * @param walls     The planes the spark bounces off (see PiecewiseFunction3D); shared.
+     */
+    public SparkParticle(float[] walls) {
+        mPath = new PiecewiseFunction3D(walls, RESTITUTION, MAX_BOUNCES);
+        mPath.setGravity(-1e-6f);
+        mAgeFunction = new LinearFunction1D(1, 0, 0);
+        mSpinFunction = new LinearFunction1D(0, 0, 0);
+    }
 
     /** Construtor.
+     * @param walls         The planes the spark bounces off (see PiecewiseFunction3D); shared.
      * @param x             The x-position at t0.
      * @param y             The y-position at t0.
      * @param z             The z-position at t0.
      * @param duration      The duration this particle lives (in milliseconds).
+     * @param spin          The orientation at t0 (in radians).
      * @param t0            The simulator time stamp of its creation (in milliseconds).
      */
-    public SparkParticle(float x, float y, float z, long duration, long t0) {
-        mX = x;
-        mY = new BallisticFunction1D(y, 0, t0);
-        mY.setGravity(-1e-6f);
-        mZ = z;
-        mAgeFunction = new LinearFunction1D(0, 1.0f / (float)duration, t0);
+    public SparkParticle(float[] walls, float x, float y, float z, long duration, float spin,
+                         long t0) {
+        this(walls);
+        reset(x, y, z, duration, spin, t0);
+    }
+
+    /** Re-initializes the spark in place; the parameters are the same as the constructor's (less
+     the walls). */
+    public void reset(float x, float y, float z, long duration, float spin, long t0) {
+        mX0 = x;
+        mY0 = y;
+        mZ0 = z;
+        mPath.set(x, y, z, 0, 0, 0, t0);
+        mLifespan = duration;
+        mAgeFunction.set(0, 1.0f / (float)duration, t0);
         // It spins twice a second -> 4pi rad/1000 ms --> pi rad / 250 ms.
-        mSpinFunction = new LinearFunction1D((float)(sRandom.nextFloat() * Math.PI * 2.0f / 5.0f), (float)Math.PI / 1000.0f, t0);
+        mSpin0 = spin;
+        mSpinFunction.set(spin, (float)Math.PI / 1000.0f, t0);
+        mBirth = t0;
     }
 
+    /** Writes the spark's emission parameters (STATE_BYTES bytes). */
+    public void write(ByteBuffer out) {
+        out.putFloat(mX0).putFloat(mY0).putFloat(mZ0).putFloat(mSpin0);
+        out.putLong(mLifespan).putLong(mBirth);
+    }
+
+    /** Re-initializes the spark from the parameters stored by write(), moving its emission time by
+     the given shift (in milliseconds). */
+    public void read(ByteBuffer in, long shift) {
+        float x = in.getFloat(), y = in.getFloat(), z = in.getFloat(), spin = in.getFloat();
+        long duration = in.getLong();
+        reset(x, y, z, duration, spin, in.getLong() + shift);
+    }
+
+    /** Reports the time stamp at which the spark was emitted (in milliseconds). */
+    public long getBirth() { return mBirth; }
+
     @Override
     public void getPosition(long globalT, Vector3 pos) {
-        pos.set(mX, mY.eval(globalT), mZ);
+        mPath.eval(globalT, pos);
     }
 
     @Override
@@ -71,6 +114,12 @@ class SparkParticle implements Particle {
 
     public float getScale() { return 0.1f; }
 
+    /** Reports the spark's age, normalized to its lifespan (1 when it dies). */
+    public float getAge(long globalT) { return mAgeFunction.eval(globalT); }
+
+    /** Reports the duration this particle lives (in milliseconds). */
+    public long getLifespan() { return mLifespan; }
+
     @Override
     public float[] getColor() {
         return mColor;
@@ -85,11 +134,17 @@ class SparkParticle implements Particle {
 /** The main tinkerbell particle. */
 class TinkerBellParticle implements Particle {
     static final String TAG = TinkerBellParticle.class.getSimpleName();
+    /** The number of path knots retained; drag samples beyond this are coalesced. */
+    static final int PATH_CAPACITY = 64;
+    /** The flight speed: 150 ms/m. */
+    static final float FLIGHT_SPEED = 1.0f / 150.0f;
+    /** The time (in milliseconds) she keeps emitting sparks after coming to rest. */
+    static final long IDLE_DELAY = 3000;
 
     /** The scalar function that provides a bobbing displacement in the y-direction. */
     private Function1D mBobbing;
-    /** The vector function that provides the position of the particle. */
-    private HermiteFunction3D mPosition;
+    /** The path the particle follows; each reported touch extends it. */
+    private HermitePathFunction3D mPosition;
     /** The scalar function specifying the orientation of the particle. */
     private Function1D mOrient;
     /** The scale of the sprite from radius 1 to scale radius. */
@@ -100,36 +155,36 @@ class TinkerBellParticle implements Particle {
     private long mLastEmit;
     /** The minimum number of milliseconds that must pass before emitting a new spark. */
     private long mEmitPeriod;
-    private static Random sRandom = new Random();
+    /** The source of the sparks' random positions, lifespans and orientations. */
+    private XorShiftRandom mRandom;
+    /** Scratch vector, to avoid garbage collection. */
+    private Vector3 mScratch;
 
     /** Constructor.
      *  @param globalT      The time stamp at which this is created (sets the origin for the
      *                      functions.
      *  @param emitPeriod   The amount of time (in milliseconds) which must elapse before a new
      *                      spark can be emitted.
+     *  @param random       The random number generator for the emitted sparks.
      */
-    public TinkerBellParticle(long globalT, long emitPeriod) {
+    public TinkerBellParticle(long globalT, long emitPeriod, XorShiftRandom random) {
         // Frequency: 3Hz ==> 3/1000 cycles / ms.
         mBobbing = new SineFunction(2.0f / 1000.0f, 0.0625f, globalT);
         //TODO: The original position should be at the proper depth (vis a vis the chasing
         // depth.
-        mPosition = new HermiteFunction3D(Vector3.ZERO, Vector3.ZERO, Vector3.ZERO, Vector3.ZERO, globalT, 1000);
+        mPosition = new HermitePathFunction3D(PATH_CAPACITY, Vector3.ZERO, globalT);
         mOrient = new ConstFunction1D(0);
         mLastEmit = 0;
         mEmitPeriod = emitPeriod;
+        mRandom = random;
         mRadius = 0.25f;
+        mScratch = new Vector3();
     }
 
-    /** Causes tinkerbell to fly to the given position. */
+    /** Causes tinkerbell to fly to the given position. The position is appended to the path she is
+     already following, so a drag is followed along the gesture rather than cutting to its end. */
     public void flyTo(Vector3 tgtPos, long globalT) {
-        Vector3 currPos = new Vector3();
-        Vector3 currVel = new Vector3();
-        mPosition.eval(globalT, currPos);
-        mPosition.deriv(globalT, currVel);
-        float dist = currPos.distance(tgtPos);
-        long speed_inv = 150; // 200 ms/m.
-        long duration = (long)(dist * speed_inv);
-        mPosition.set(currPos, currVel, tgtPos, Vector3.ZERO, globalT, duration);
+        mPosition.append(tgtPos, globalT, FLIGHT_SPEED);
     }
 
     /** Evaluate the position of the agent at the given time, setting the position into the given
@@ -151,28 +206,52 @@ class TinkerBellParticle implements Particle {
     /** Reports if the sprite is alive. */
     public boolean isAlive(long globalT) { return true; }
 
-    /** Emits a new spark. Will be null if it is too soon to emit. */
-    public SparkParticle emit(long globalT) {
+    /** Reports if she has been at rest long enough to stop emitting sparks; only her bobbing
+     remains. */
+    public boolean isIdle(long globalT) { return globalT >= mPosition.getRestTime() + IDLE_DELAY; }
+
+    /** Reports the number of bytes writeState() stores. */
+    public int getStateSize() { return 8 + 8 + mPosition.getStateSize(); }
+
+    /** Writes her state: the time of the last emission, the phase of her bobbing and her path. */
+    public void writeState(ByteBuffer out) {
+        out.putLong(mLastEmit);
+        out.putLong(mBobbing.getTimeOrigin());
+        mPosition.write(out);
+    }
+
+    /** Restores the state stored by writeState(), moving its time stamps by the given shift (in
+     milliseconds). */
+    public void readState(ByteBuffer in, long shift) {
+        mLastEmit = in.getLong() + shift;
+        mBobbing.resetTime(in.getLong() + shift);
+        mPosition.read(in, shift);
+    }
+
+    /** Emits a new spark by re-initializing the given (pooled) spark. Reports false, leaving the
+     spark untouched, if it is too soon to emit. */
+    public boolean emit(long globalT, SparkParticle spark) {
+        if (isIdle(globalT)) return false;
         if (globalT - mLastEmit > mEmitPeriod ) {
             // TODO: Emit multiple particles based on the time that has passed and *advance* them.
             //  This would happen automatically if I set their t0 value to the "correct" one
             //  retroactively.
-            Vector3 pos = new Vector3();
+            Vector3 pos = mScratch;
             mPosition.eval(globalT, pos);
             mLastEmit = globalT;
-            float x, y, z;
-            synchronized(sRandom) {
-                x = (sRandom.nextFloat() - 0.5f) * mRadius + pos.x;
-                y = (sRandom.nextFloat() - 0.5f) * mRadius + pos.y;
-                z = (sRandom.nextFloat() - 0.5f) * mRadius + pos.z;
-            }
+            float x = (mRandom.nextFloat() - 0.5f) * mRadius + pos.x;
+            float y = (mRandom.nextFloat() - 0.5f) * mRadius + pos.y;
+            float z = (mRandom.nextFloat() - 0.5f) * mRadius + pos.z;
             // TODO: Come up with a more interesting positioning
             // TODO: Initial position should be an offset from the tinker bell particle.
-            // TODO: Come up with some random lifespan.
-            long life = 1500 + (long)(sRandom.nextFloat() * 1000);
-            return new SparkParticle(x, y, z, life, globalT);
+            // The lifespan is quantized so sparks can be expired a whole group at a time.
+            int steps = (int)((SparkParticle.MAX_LIFE - SparkParticle.MIN_LIFE) / SparkParticle.LIFE_STEP);
+            long life = SparkParticle.MIN_LIFE + SparkParticle.LIFE_STEP * mRandom.nextInt(steps + 1);
+            float spin = (float)(mRandom.nextFloat() * Math.PI * 2.0f / 5.0f);
+            spark.reset(x, y, z, life, spin, globalT);
+            return true;
         }
-        return null;
+        return false;
     }
 }
 
@@ -184,232 +263,193 @@ public class TinkerBellSystem extends ParticleSystem {
 
     static final String TAG = TinkerBellSystem.class.getSimpleName();
 
-    // Consts --------------------------------------------------------------------------------
-
-    private final String vertexShaderCode =
-            "uniform mat4 uMVPMatrix;" +
-                    "uniform float uFarLimit;" +
-                    "attribute vec4 aPosition;" +
-                    "attribute vec2 aTextureCoord;" +
-                    "varying vec2 vTextureCoord;" +
-                    "varying float alpha;" +
-                    "void main() {" +
-                    "  gl_Position = uMVPMatrix * aPosition;" +
-                    "  float dist = 0.125f + 1.0f - (gl_Position.z / uFarLimit) * 0.825f;" +
-                    "  alpha = sqrt(dist);" +
-                    "  vTextureCoord = aTextureCoord;" +
-                    "}";
-
-    private final String fragmentShaderCode =
-            "precision mediump float;" +
-                    "varying vec2 vTextureCoord;" +
-                    "uniform sampler2D uTexture0;" +
-                    "varying float alpha;" +
-                    "uniform vec4 uColor;" +
-                    "void main() {" +
-                    "  gl_FragColor = texture2D(uTexture0, vTextureCoord) * uColor;" +
-                    "  gl_FragColor.a = min(alpha, gl_FragColor.a);" +
-                    "}";
-
-    private final String sparkVertexCode =
-            "uniform mat4 uMVPMatrix;" +
-                    "uniform float uFarLimit;" +
-                    "uniform vec2 uTexOrient;" +
-                    "attribute vec4 aPosition;" +
-                    "attribute vec2 aTextureCoord;" +
-                    "varying vec4 vTextureCoord;" +
-                    "varying float alpha;" +
-                    "void main() {" +
-                    "  gl_Position = uMVPMatrix * aPosition;" +
-                    "  float dist = 0.125f + 1.0f - (gl_Position.z / uFarLimit) * 0.825f;" +
-                    "  alpha = sqrt(dist);" +
-                    "  vTextureCoord.xy = aTextureCoord;" +
-                    "  vTextureCoord.wz = uTexOrient;" +
-                    "}";
-
-    private final String sparkFragmentCode =
-            "precision mediump float;" +
-                    "varying vec4 vTextureCoord;" +
-                    "uniform sampler2D uTexture0;" +
-                    "varying float alpha;" +
-                    "uniform vec4 uColor;" +
-                    "void main() {" +
-                    "  vec2 uv = vTextureCoord.xy;" +
-                    "  gl_FragColor = texture2D(uTexture0, uv) * 0.5f;" +
-                    "  vec2 x = vec2(vTextureCoord.z, vTextureCoord.w);" +
-                    "  vec2 y = vec2(-vTextureCoord.w, vTextureCoord.z);" +
-                    "  vec2 localUV = uv - 0.5f;" +
-                    "  vec2 uv2 = vec2(dot(localUV, x),dot(localUV, y)) + 0.5f;" +
-                    "  float overflow = uv2.x > 1.f ? 0.f : " +
-                    "                   uv2.x < 0.f ? 0.f : " +
-                    "                   uv2.y > 1.f ? 0.f : " +
-                    "                   uv2.y < 0.f ? 0.f : 1.f;" +
-                    "  gl_FragColor += texture2D(uTexture0, uv2) * 0.5f;" +
-                    "  gl_FragColor *= uColor;" +
-                    "  gl_FragColor.a = min( min(alpha, gl_FragColor.a), overflow);" +
-                    "}";
-
-
     // Members --------------------------------------------------------------------------------
 
     private TinkerBellParticle mTinkerBell;
-    private ArrayList<SparkParticle> mSparks;
-    private IntBuffer mData;
-    private int mFairyProgram;
-    private int mSparkProgram;
-    private int mTinkerTex;
-    private int mSparkTex;
+    /** The live sparks, grouped by lifespan so they expire without being inspected. */
+    private LifetimeRings<SparkParticle> mSparks;
+    /** Dead sparks, ready to be emitted again. */
+    private ArrayList<SparkParticle> mSparkPool;
+    private SpriteBatch mFairyBatch;
+    private SpriteBatch mSparkBatch;
     private Object mSync;
     private Vector3 mScratch;
-    private float mMat[];
+    /** The random number generator for the sparks. */
+    private XorShiftRandom mRandom;
+    /** The spark's orientation (cos, sin), passed to the spark material as its second color. */
+    private float mOrient[];
+    /** The color of the spark being drawn, from the spark ramp. */
+    private final float mSparkColor[] = new float[4];
+    /** The planes of the frustum the sparks bounce off; zeros (no planes) until the frustum is
+     set. */
+    private final float mWalls[] = new float[12];
+    /** The fairy's trail: her position every TRAIL_PERIOD over the last TRAIL_LENGTH samples. */
+    private final Trails mTrail;
+    /** The time of the last sample in the trail (in milliseconds). */
+    private long mTrailT;
+    private static final float sBgColor[] = {0.0f, 0.0f, 0.0f};
+    /** The sparks' color and scale (relative to their own) over their lives: white-hot and small,
+     then yellow, cooling to red as they fade and shrink. */
+    private static final LifetimeRamp sSparkRamp = new LifetimeRamp(new float[]{
+            0.0f, 1.0f, 1.0f, 0.8f, 1.0f, 0.6f,
+            0.15f, 1.0f, 1.0f, 0.1f, 1.0f, 1.0f,
+            0.7f, 1.0f, 0.5f, 0.05f, 0.8f, 0.9f,
+            1.0f, 0.8f, 0.15f, 0.05f, 0.0f, 0.4f});
+    /** The number of sparks allocated up front: enough for the longest lifetime at the emit rate. */
+    private static final int SPARK_POOL_SIZE = 512;
+    /** The number of sparks with any one lifespan which can be alive at once. */
+    private static final int SPARK_RING_SIZE = 256;
+    /** The number of positions in the fairy's trail, and the time between them (in
+     milliseconds): the trail reaches back about a third of a second. */
+    private static final int TRAIL_LENGTH = 24;
+    private static final long TRAIL_PERIOD = 15;
+    /** The frame period (in milliseconds) while only the idle fairy's bobbing is moving. */
+    private static final long IDLE_FRAME_PERIOD = 33;
+    /** Reports if the system is emitting or drawing sparks (as last reported to the listeners). */
+    private boolean mActive;
 
     // Methods ---------------------------------------------------------------------------------
     public TinkerBellSystem(long globalT) {
+        this(globalT, System.nanoTime());
+    }
+
+    /** Constructor.
+     * @param globalT   The time stamp at which the system is created (in milliseconds).
+     * @param seed      The seed of the sparks' random numbers.
+     */
+    public TinkerBellSystem(long globalT, long seed) {
         super();
-        mTinkerBell = new TinkerBellParticle(globalT, 10);
-        mSparks = new ArrayList<>();
+        mRandom = new XorShiftRandom(seed);
+        mTinkerBell = new TinkerBellParticle(globalT, 10, mRandom);
+        mSparks = new LifetimeRings<>(SparkParticle.MIN_LIFE, SparkParticle.MAX_LIFE,
+                SparkParticle.LIFE_STEP, SPARK_RING_SIZE);
+        mSparkPool = new ArrayList<>(SPARK_POOL_SIZE);
+        for (int i = 0; i < SPARK_POOL_SIZE; ++i) {
+            mSparkPool.add(new SparkParticle(mWalls));
+        }
         mScratch = new Vector3();
         mSync = new Object();
-        mMat = new float[16];
+        mOrient = new float[4];
+        mTrail = new Trails(1, TRAIL_LENGTH);
+        mTrail.setStyle(0, 0.06f, 1.0f, 0.85f, 0.4f, 0.5f);
+        mTrailT = Long.MIN_VALUE;
+        mActive = false;
     }
 
     @Override
-    public void initGL(Context context) {
-        notifyActivityStart();
-        int one = 0x10000;
-        // DATA: v.x, v.y, v.z, u, v
-        // FIXED DATA
-        int interleaved[] = {
-                -one, -one, 0,0, one,
-                one, -one, 0, one, one,
-                -one, one, 0, 0, 0,
-                one, one, 0, one, 0
-        };
-        mData = Utils.buildBuffer(interleaved);
-
-        mFairyProgram = loadProgram(vertexShaderCode, fragmentShaderCode);
-        mSparkProgram = loadProgram(sparkVertexCode, sparkFragmentCode);
-
-        mTinkerTex = loadTexture(context, R.raw.yin_yang);
-        mSparkTex = loadTexture(context, R.raw.star);
-    }
-
-    protected int loadProgram(String vertexCode, String fragmentCode) {
-        int vertexShader = MyGLRenderer.loadShader(GLES20.GL_VERTEX_SHADER,
-                vertexCode);
-        int fragmentShader = MyGLRenderer.loadShader(GLES20.GL_FRAGMENT_SHADER,
-                fragmentCode);
-        int program = GLES20.glCreateProgram();
-        GLES20.glAttachShader(program, vertexShader);
-        GLES20.glAttachShader(program, fragmentShader);
-        GLES20.glLinkProgram(program);
-
-        return program;
+    public void initMaterials(Scene scene) {
+        Material fairy = scene.getMaterial(Material.SHADE_TINT, R.raw.yin_yang, 0);
+        Material spark = scene.getMaterial(Material.SHADE_SPARK, R.raw.star, 0);
+        mFairyBatch = scene.getBatch(fairy, 1);
+        mSparkBatch = scene.getBatch(spark, Math.min(SPARK_POOL_SIZE, mParticleBudget));
+        mTrail.initMaterials(scene);
     }
 
+    /** Takes the floor and sides of the frustum for the sparks to bounce off. */
     @Override
-    public void drawGL(long globalT, float[] mMVPMatrix) {
-
-        GLES20.glEnable( GLES20.GL_BLEND );
-        GLES20.glBlendFunc( GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA );
-
-        GLES20.glActiveTexture( GLES20.GL_TEXTURE0 );
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTinkerTex);
-
-        // Add program to OpenGL ES environment
-        GLES20.glUseProgram(mFairyProgram);
-        int texLoc = GLES20.glGetUniformLocation(mFairyProgram, "uTexture0");
-        GLES20.glUniform1i(texLoc, 0);
-
-        int stride = 20; // 4 bytes-per int * 5 ints.
-        mData.position(0);
-        int handle =  GLES20.glGetAttribLocation(mFairyProgram, "aPosition" );
-        GLES20.glVertexAttribPointer(handle, 3, GLES20.GL_FIXED, false, stride, mData);
-        GLES20.glEnableVertexAttribArray( handle );
-
-        mData.position(3); handle =  GLES20.glGetAttribLocation(mFairyProgram, "aTextureCoord" );
-        GLES20.glVertexAttribPointer(handle, 2, GLES20.GL_FIXED, false, stride, mData);
-        GLES20.glEnableVertexAttribArray( handle );
-        GLES20.glEnableVertexAttribArray( handle );
-
-        handle = GLES20.glGetUniformLocation(mFairyProgram, "uFarLimit");
-        GLES20.glUniform1f(handle, 7);
-
-        drawParticle(mTinkerBell, globalT, mMVPMatrix, mFairyProgram);
+    public void setFrustum(Frustum f) {
+        super.setFrustum(f);
+        f.getWalls(mWalls);
+    }
 
-        // Sparks
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mSparkTex);
+    @Override
+    public void draw(long globalT) {
+        drawParticle(mTinkerBell, globalT, mFairyBatch, mTinkerBell.getColor());
+        drawTrail(globalT);
 
-        // Add program to OpenGL ES environment
-        GLES20.glUseProgram(mSparkProgram);
-        texLoc = GLES20.glGetUniformLocation(mSparkProgram, "uTexture0");
-        GLES20.glUniform1i(texLoc, 0);
+        synchronized (mSync) {
+            mSparks.expire(globalT, mSparkPool);
+            // The fairy herself counts against the budget.
+            if (mSparks.size() + 1 < mParticleBudget) {
+                emitSpark(globalT);
+            }
+            // Every spark in the rings is alive; sparks which have left the frustum are simply
+            // not drawn until they expire.
+            for (int ring = 0; ring < mSparks.getRingCount(); ++ring) {
+                int count = mSparks.getRingSize(ring);
+                for (int i = 0; i < count; ++i) {
+                    drawSpark(mSparks.get(ring, i), globalT);
+                }
+            }
+        }
+        updateActivity(globalT);
+    }
 
-        mData.position(0);
-        handle =  GLES20.glGetAttribLocation(mSparkProgram, "aPosition" );
-        GLES20.glVertexAttribPointer(handle, 3, GLES20.GL_FIXED, false, stride, mData);
-        GLES20.glEnableVertexAttribArray( handle );
+    /** Samples the fairy's position into her trail up to the given time, and draws the trail.
+     The samples are taken at whole multiples of TRAIL_PERIOD, so the trail doesn't depend on the
+     frame rate; a frame after a long gap samples only as far back as the trail reaches. */
+    private void drawTrail(long globalT) {
+        synchronized (mScratch) {
+            if (mTrailT > globalT) {
+                mTrail.clear(0);
+                mTrailT = Long.MIN_VALUE;
+            }
+            long t = Math.max(mTrailT + TRAIL_PERIOD, globalT - (TRAIL_LENGTH - 1) * TRAIL_PERIOD);
+            for (t -= t % TRAIL_PERIOD; t <= globalT; t += TRAIL_PERIOD) {
+                mTinkerBell.getPosition(t, mScratch);
+                mTrail.push(0, mScratch.x, mScratch.y, mScratch.z);
+                mTrailT = t;
+            }
+        }
+        mTrail.draw(mFrustum.getEye());
+    }
 
-        mData.position(3); handle =  GLES20.glGetAttribLocation(mSparkProgram, "aTextureCoord" );
-        GLES20.glVertexAttribPointer(handle, 2, GLES20.GL_FIXED, false, stride, mData);
-        GLES20.glEnableVertexAttribArray( handle );
-        GLES20.glEnableVertexAttribArray( handle );
+    /** Notifies the listeners when the fairy starts or stops sparkling. */
+    private void updateActivity(long globalT) {
+        boolean active = isSparkling(globalT);
+        if (active == mActive) return;
+        mActive = active;
+        if (active) {
+            notifyActivityStart();
+        } else {
+            notifyActivityStop();
+        }
+    }
 
-        handle = GLES20.glGetUniformLocation(mSparkProgram, "uFarLimit");
-        GLES20.glUniform1f(handle, 7);
+    /** Reports if the fairy is emitting sparks or any of her sparks are still alive. */
+    private boolean isSparkling(long globalT) {
+        return mSparks.size() > 0 || !mTinkerBell.isIdle(globalT);
+    }
 
-        synchronized (mSync) {
-            SparkParticle newSpark = mTinkerBell.emit(globalT);
-            if ( newSpark != null) mSparks.add(newSpark);
-            int count = mSparks.size();
-            for (int i = 0; i < count; ++i) {
-                SparkParticle particle = mSparks.get(i);
-                if (!drawSpark(particle, globalT, mMVPMatrix) ) {
-                    SparkParticle end = mSparks.remove(count - 1);
-                    --count;
-                    if ( count > 0 && i != count ) mSparks.set(i, end);
-                    --i;
-                }
-            }
+    /** Emits a spark from the pool; if the pool has run dry, the spark is skipped rather than
+     allocated, so the frame loop never creates garbage. */
+    private void emitSpark(long globalT) {
+        int free = mSparkPool.size();
+        if (free == 0) return;
+        SparkParticle newSpark = mSparkPool.get(free - 1);
+        if (mTinkerBell.emit(globalT, newSpark)
+                && mSparks.add(newSpark, globalT, newSpark.getLifespan())) {
+            mSparkPool.remove(free - 1);
         }
     }
 
-    public boolean drawSpark(SparkParticle particle, long globalT, float[] mvpMatrix) {
-        int handle = GLES20.glGetUniformLocation(mSparkProgram, "uTexOrient");
+    public boolean drawSpark(SparkParticle particle, long globalT) {
         float angle = particle.getOrient(globalT);
-        float[] orient = {(float)Math.cos(angle), (float)Math.sin(angle) };
-        GLES20.glUniform2fv(handle, 0, orient, 0);
-        drawParticle(particle, globalT, mvpMatrix, mSparkProgram);
-        return true;
+        FastTrig.cosSin(angle, mOrient, 0);
+        float scale = sSparkRamp.sample(particle.getAge(globalT), mSparkColor);
+        return drawParticle(particle, globalT, mSparkBatch, mSparkColor,
+                particle.getScale() * scale, mOrient, 1);
+    }
+
+    /** Draws the particle given -- indicates true if it was drawn, false if it lies outside the
+     frustum. The caller is responsible for only drawing live particles. */
+    public boolean drawParticle(Particle particle, long globalT, SpriteBatch batch, float[] color2) {
+        return drawParticle(particle, globalT, batch, particle.getColor(), particle.getScale(),
+                color2, 0);
     }
 
-    /** Draws the particle given -- indicates true if it is still alive, false if not. */
-    public boolean drawParticle(Particle particle, long globalT, float[] mvpMatrix, int program) {
+    /** Draws the particle given with the given color, scale (e.g., from a LifetimeRamp) and
+     additivity (see SpriteBatch); see drawParticle(). */
+    private boolean drawParticle(Particle particle, long globalT, SpriteBatch batch,
+                                 float[] color, float scale, float[] color2, float additive) {
         // Elapsed is a monotonically increasing time.
-        if (!particle.isAlive(globalT)) return false;
         float theta = particle.getOrient(globalT);
         synchronized (mScratch) {
             particle.getPosition(globalT, mScratch);
             if (mFrustum.farthestOut(mScratch, 1.0f) > 1.0f) return false;
-
-            Matrix.setIdentityM(mMat, 0);
-            Matrix.translateM(mMat, 0, mScratch.x, mScratch.y, mScratch.z);
+            return batch.add(mScratch.x, mScratch.y, mScratch.z, theta, scale, color, 0, color2, 0,
+                    additive);
         }
-        Matrix.rotateM(mMat, 0, theta, 0, 0, 1);
-        float scale = particle.getScale();
-        Matrix.scaleM(mMat, 0, scale, scale, scale);
-        Matrix.multiplyMM( mMat, 0, mvpMatrix, 0, mMat, 0 );
-
-        int mMVPMatrixHandle = GLES20.glGetUniformLocation(program, "uMVPMatrix");
-        GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mMat, 0);
-
-        // get handle to fragment shader's vColor member
-        int mColorHandle = GLES20.glGetUniformLocation(program, "uColor");
-        GLES20.glUniform4fv(mColorHandle, 1, particle.getColor(), 0);
-
-        // Draw the quad
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
-        return true;
     }
 
     @Override
@@ -420,8 +460,66 @@ public class TinkerBellSystem extends ParticleSystem {
         }
     }
 
+    @Override
+    public int getParticleCount() { return mSparks.size() + 1; }
+
+    /** While she sparkles (or flies) every frame changes; once she is idle only her slow bobbing
+     remains, which is drawn at a reduced rate. */
+    @Override
+    public long nextVisibleChange(long globalT) {
+        return isSparkling(globalT) ? globalT : globalT + IDLE_FRAME_PERIOD;
+    }
+
+    /** State: the random state, the fairy, then the spark count and each spark, ring by ring and
+     oldest first (so that they can be re-added in order). */
+    @Override
+    public int getStateSize() {
+        return 8 + mTinkerBell.getStateSize() + 4 + mSparks.size() * SparkParticle.STATE_BYTES;
+    }
+
+    @Override
+    public void writeState(ByteBuffer out) {
+        synchronized (mSync) {
+            out.putLong(mRandom.getState());
+            synchronized (mScratch) {
+                mTinkerBell.writeState(out);
+            }
+            out.putInt(mSparks.size());
+            for (int ring = 0; ring < mSparks.getRingCount(); ++ring) {
+                int count = mSparks.getRingSize(ring);
+                for (int i = 0; i < count; ++i) {
+                    mSparks.get(ring, i).write(out);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void readState(ByteBuffer in, long shift) {
+        synchronized (mSync) {
+            mRandom.setState(in.getLong());
+            synchronized (mScratch) {
+                mTinkerBell.readState(in, shift);
+                // The trail is only drawn, not stored; it is sampled afresh.
+                mTrail.clear(0);
+                mTrailT = Long.MIN_VALUE;
+            }
+            mSparks.expire(Long.MAX_VALUE, mSparkPool);
+            int count = in.getInt();
+            for (int i = 0; i < count; ++i) {
+                int free = mSparkPool.size();
+                SparkParticle spark = free > 0 ? mSparkPool.remove(free - 1)
+                        : new SparkParticle(mWalls);
+                spark.read(in, shift);
+                if (!mSparks.add(spark, spark.getBirth(), spark.getLifespan())) {
+                    mSparkPool.add(spark);
+                }
+            }
+        }
+    }
+
     @Override
     public float[] getBgColor() {
-        return new float[0];
+        return sBgColor;
     }
 }
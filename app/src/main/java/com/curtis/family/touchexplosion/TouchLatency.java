@@ -0,0 +1,92 @@
+package com.curtis.family.touchexplosion;
+
+import java.util.Arrays;
+
+/**
+ * Measures the touch-to-photon latency: the time from a touch event (its MotionEvent time stamp)
+ * to the display of the first frame which reflects it, and reports its percentiles over the most
+ * recent events.
+ *
+ * Events are reported from the UI thread as they are handled. A frame takes every event reported
+ * before it begins (those are the ones the scene has seen), and when it has been drawn each of
+ * them is stamped with the frame's display time: the end of drawing plus an estimate of the time
+ * the swap and the compositor take to put it on the screen, which GLES 2 cannot measure. Events
+ * reported while a frame is drawn count towards the next one.
+ *
+ * All storage is allocated at construction: events beyond PENDING per frame are dropped (the
+ * earliest, which wait longest, are kept), and only the latest samples are kept.
+ */
+public class TouchLatency {
+    /** The most events waiting for a frame. */
+    private static final int PENDING = 64;
+
+    /** The estimated time from the end of drawing to the display (in milliseconds). */
+    private final long mDisplayMs;
+    /** The time stamps of the events waiting for a frame, and of those the current frame
+     reflects. */
+    private final long mPending[] = new long[PENDING];
+    private int mPendingCount;
+    private final long mInFlight[] = new long[PENDING];
+    private int mInFlightCount;
+    /** The latest latencies (in milliseconds), in a ring, and a copy to sort. */
+    private final long mSamples[];
+    private final long mSorted[];
+    private int mNext;
+    private int mSampleCount;
+
+    /** Constructor.
+     * @param samples   The number of latest latencies the percentiles cover.
+     * @param displayMs The estimated time from the end of drawing a frame to its display (in
+     *                  milliseconds).
+     */
+    public TouchLatency(int samples, long displayMs) {
+        mDisplayMs = displayMs;
+        mSamples = new long[samples];
+        mSorted = new long[samples];
+    }
+
+    /** Reports a touch event which has been passed to the scene.
+     * @param eventTime The time stamp of the event (in milliseconds, on the uptime clock).
+     */
+    public synchronized void reportEvent(long eventTime) {
+        if (mPendingCount < PENDING) mPending[mPendingCount++] = eventTime;
+    }
+
+    /** Reports that a frame is starting: it reflects every event reported so far. */
+    public synchronized void beginFrame() {
+        System.arraycopy(mPending, 0, mInFlight, 0, mPendingCount);
+        mInFlightCount = mPendingCount;
+        mPendingCount = 0;
+    }
+
+    /** Reports that the frame has been drawn, and records the latency of each event it reflects.
+     * @param drawnTime The time the frame was drawn (in milliseconds, on the uptime clock).
+     * @return The number of latencies recorded.
+     */
+    public synchronized int endFrame(long drawnTime) {
+        long display = drawnTime + mDisplayMs;
+        for (int i = 0; i < mInFlightCount; ++i) {
+            mSamples[mNext] = display - mInFlight[i];
+            mNext = (mNext + 1) % mSamples.length;
+            if (mSampleCount < mSamples.length) ++mSampleCount;
+        }
+        int recorded = mInFlightCount;
+        mInFlightCount = 0;
+        return recorded;
+    }
+
+    /** Reports the number of latencies the percentiles cover. */
+    public synchronized int getSampleCount() { return mSampleCount; }
+
+    /** Reports a percentile of the latest latencies (the nearest rank).
+     * @param fraction  The fraction of the latencies at or below the percentile, in [0, 1].
+     * @return The percentile (in milliseconds); -1 if no latency has been recorded.
+     */
+    public synchronized long getPercentile(float fraction) {
+        if (mSampleCount == 0) return -1;
+        System.arraycopy(mSamples, 0, mSorted, 0, mSampleCount);
+        Arrays.sort(mSorted, 0, mSampleCount);
+        int rank = (int)Math.ceil(fraction * mSampleCount) - 1;
+        return mSorted[Math.max(0, Math.min(mSampleCount - 1, rank))];
+    }
+}
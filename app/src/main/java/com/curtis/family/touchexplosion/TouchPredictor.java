@@ -0,0 +1,90 @@
+package com.curtis.family.touchexplosion;
+
+/**
+ * Extrapolates a touch to the time its frame is expected to be displayed, so that what is spawned
+ * at the touch keeps up with the finger rather than trailing it by the touch-to-photon latency
+ * (see TouchLatency).
+ *
+ * The predictor keeps the last few samples of the gesture (including the historical samples a
+ * MotionEvent batches). The velocity is a least-squares fit of the samples within the last
+ * WINDOW_MS, and the prediction is the newest sample moved along it. A straight line rather than a
+ * curve: a fitted acceleration amplifies the sensor's noise far more than it corrects on curves.
+ * The horizon is capped at MAX_HORIZON_MS, and a finger which has stopped (no samples in the
+ * window but the newest) is predicted to stay where it is.
+ *
+ * The predictor only does arithmetic; it can be replayed against recorded gestures (see
+ * TouchPredictorTest).
+ */
+public class TouchPredictor {
+    /** The number of samples kept. */
+    private static final int HISTORY = 8;
+    /** The age of the oldest sample (relative to the newest) in the velocity fit (in
+     milliseconds). */
+    public static final int WINDOW_MS = 40;
+    /** The furthest ahead of the newest sample a touch is predicted (in milliseconds). */
+    public static final int MAX_HORIZON_MS = 50;
+
+    /** The samples' time stamps (in milliseconds) and positions, in a ring. */
+    private final long mT[] = new long[HISTORY];
+    private final float mX[] = new float[HISTORY];
+    private final float mY[] = new float[HISTORY];
+    /** The index of the newest sample. */
+    private int mHead;
+    private int mCount;
+
+    /** Forgets the gesture; called when a new one starts. */
+    public void reset() { mCount = 0; }
+
+    /** Adds a sample of the gesture. Samples which are not newer than the newest are ignored.
+     * @param t     The time of the sample (in milliseconds).
+     * @param x     The x-position of the touch.
+     * @param y     The y-position of the touch.
+     */
+    public void addSample(long t, float x, float y) {
+        if (mCount > 0 && t <= mT[mHead]) return;
+        mHead = (mHead + 1) % HISTORY;
+        mT[mHead] = t;
+        mX[mHead] = x;
+        mY[mHead] = y;
+        if (mCount < HISTORY) ++mCount;
+    }
+
+    /** Reports the number of samples kept. */
+    public int getCount() { return mCount; }
+
+    /** Predicts the position of the touch at the given time.
+     * @param t     The time (in milliseconds); times before the newest sample predict the newest
+     *              sample.
+     * @param out   Receives the predicted position (x, y).
+     * @return False if there are no samples (and out is untouched).
+     */
+    public boolean predict(long t, float[] out) {
+        if (mCount == 0) return false;
+        long newest = mT[mHead];
+        out[0] = mX[mHead];
+        out[1] = mY[mHead];
+        float horizon = Math.min(t - newest, MAX_HORIZON_MS);
+        if (horizon <= 0) return true;
+
+        // Least-squares velocity over the window, with times relative to the newest sample.
+        int n = 0;
+        float st = 0, sx = 0, sy = 0, stt = 0, stx = 0, sty = 0;
+        for (int k = 0; k < mCount; ++k) {
+            int i = (mHead - k + HISTORY) % HISTORY;
+            float dt = mT[i] - newest;
+            if (dt < -WINDOW_MS) break;
+            ++n;
+            st += dt;
+            sx += mX[i];
+            sy += mY[i];
+            stt += dt * dt;
+            stx += dt * mX[i];
+            sty += dt * mY[i];
+        }
+        float det = n * stt - st * st;
+        if (n < 2 || det <= 0) return true;
+        out[0] += (n * stx - st * sx) / det * horizon;
+        out[1] += (n * sty - st * sy) / det * horizon;
+        return true;
+    }
+}
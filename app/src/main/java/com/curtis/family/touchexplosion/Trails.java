@@ -0,0 +1,191 @@
+package com.curtis.family.touchexplosion;
+
+/**
+ * The trails of a system's emitters: the last few positions of each, drawn as camera-facing
+ * ribbons which narrow and fade towards the oldest position.
+ *
+ * Each emitter's positions are kept in a fixed ring; pushing a position overwrites the oldest once
+ * the ring is full. Every frame, draw() turns each trail into a strip of quads, one per pair of
+ * consecutive positions, written into the scene's ribbon batch (see Material.SHADE_RIBBON). The
+ * batch is shared by every system's trails, so all of the trails in the scene are one vertex
+ * stream and one draw call.
+ *
+ * At each position the strip spans the trail's width (tapered by the position's age) across the
+ * direction of the trail, perpendicular to the line of sight, so the ribbon always faces the eye.
+ * Consecutive quads share the corners at their common position, so the strip has no gaps. A quad
+ * has a single color, so the alpha fades in steps of a quad -- the taper of the width is exact.
+ * The ribbons are light: they are drawn additively (see Material).
+ *
+ * All storage is allocated at construction; drawing costs O(1) per position.
+ */
+public class Trails {
+    /** The number of floats per position: x, y, z. */
+    private static final int POINT_FLOATS = 3;
+
+    private final int mEmitters;
+    /** The number of positions each ring holds. */
+    private final int mLength;
+    /** The rings, emitter by emitter: emitter e occupies [e * mLength, (e + 1) * mLength)
+     positions. */
+    private final float mPoints[];
+    /** The index of each emitter's newest position in its ring. */
+    private final int mHead[];
+    /** The number of positions in each emitter's ring. */
+    private final int mCount[];
+    /** The color (r, g, b, a) and half-width of the newest end of each emitter's trail. */
+    private final float mColors[];
+    private final float mHalfWidths[];
+    /** The sides of the strip at the two ends of the quad being built: x, y, z per end. */
+    private final float mSides[] = new float[6];
+    /** The corners and color of the quad being built. */
+    private final float mCorners[] = new float[12];
+    private final float mColor[] = new float[4];
+    private SpriteBatch mBatch;
+
+    /** Constructor -- every trail is empty, white and has zero width.
+     * @param emitters  The number of trails.
+     * @param length    The number of positions each trail keeps (at least 2).
+     */
+    public Trails(int emitters, int length) {
+        if (length < 2) throw new IllegalArgumentException("A trail needs at least two points");
+        mEmitters = emitters;
+        mLength = length;
+        mPoints = new float[emitters * length * POINT_FLOATS];
+        mHead = new int[emitters];
+        mCount = new int[emitters];
+        mColors = new float[emitters * 4];
+        mHalfWidths = new float[emitters];
+        for (int e = 0; e < emitters; ++e) {
+            setStyle(e, 0, 1, 1, 1, 1);
+        }
+    }
+
+    /** Reserves room for the trails in the scene's ribbon batch; called from the owning system's
+     initMaterials(). */
+    public void initMaterials(Scene scene) {
+        Material ribbon = scene.getMaterial(Material.SHADE_RIBBON, 0, 0);
+        mBatch = scene.getBatch(ribbon, mEmitters * (mLength - 1));
+    }
+
+    /** Sets the width and color of a trail at its newest position.
+     * @param emitter   The trail.
+     * @param halfWidth Half of the width of the ribbon.
+     * @param r         The red component of the color.
+     * @param g         The green component of the color.
+     * @param b         The blue component of the color.
+     * @param a         The alpha of the color.
+     */
+    public void setStyle(int emitter, float halfWidth, float r, float g, float b, float a) {
+        mHalfWidths[emitter] = halfWidth;
+        mColors[emitter * 4] = r;
+        mColors[emitter * 4 + 1] = g;
+        mColors[emitter * 4 + 2] = b;
+        mColors[emitter * 4 + 3] = a;
+    }
+
+    /** Appends a position to a trail, dropping its oldest position if the trail is full. */
+    public void push(int emitter, float x, float y, float z) {
+        int head = mHead[emitter] + 1;
+        if (head == mLength) head = 0;
+        mHead[emitter] = head;
+        if (mCount[emitter] < mLength) ++mCount[emitter];
+        int i = (emitter * mLength + head) * POINT_FLOATS;
+        mPoints[i] = x;
+        mPoints[i + 1] = y;
+        mPoints[i + 2] = z;
+    }
+
+    /** Removes every position of a trail. */
+    public void clear(int emitter) { mCount[emitter] = 0; }
+
+    /** Reports the number of positions in a trail. */
+    public int getCount(int emitter) { return mCount[emitter]; }
+
+    /** Reports the number of positions each trail keeps. */
+    public int getLength() { return mLength; }
+
+    /** Writes the quads of every trail into the ribbon batch.
+     * @param eye   The position of the eye the ribbons face.
+     * @return The number of quads written; fewer than the trails have if the batch filled up.
+     */
+    public int draw(Vector3 eye) {
+        int quads = 0;
+        for (int e = 0; e < mEmitters; ++e) {
+            int count = mCount[e];
+            if (count < 2) continue;
+            // Zero, in case the oldest position's side is undefined.
+            mSides[3] = mSides[4] = mSides[5] = 0;
+            side(e, count, 0, eye, mSides, 0);
+            for (int j = 0; j + 1 < count; ++j) {
+                // The previous quad's newer end is this quad's older one.
+                int older = (j & 1) * 3, newer = 3 - older;
+                side(e, count, j + 1, eye, mSides, newer);
+                int p0 = index(e, count, j), p1 = index(e, count, j + 1);
+                corner(0, p0, mSides, older, -1);
+                corner(1, p0, mSides, older, 1);
+                corner(2, p1, mSides, newer, -1);
+                corner(3, p1, mSides, newer, 1);
+                int color = e * 4;
+                mColor[0] = mColors[color];
+                mColor[1] = mColors[color + 1];
+                mColor[2] = mColors[color + 2];
+                mColor[3] = mColors[color + 3] * (taper(count, j) + taper(count, j + 1)) * 0.5f;
+                if (!mBatch.addQuad(mCorners, mColor, 1)) return quads;
+                ++quads;
+            }
+        }
+        return quads;
+    }
+
+    /** The index in mPoints of the j-th oldest position of a trail with count positions. */
+    private int index(int emitter, int count, int j) {
+        int r = mHead[emitter] - (count - 1 - j);
+        if (r < 0) r += mLength;
+        return (emitter * mLength + r) * POINT_FLOATS;
+    }
+
+    /** The width and alpha of the j-th oldest position, relative to the newest's: 1 at the newest,
+     falling to 0 at the oldest position of a full trail. */
+    private float taper(int count, int j) {
+        return (j + mLength - count) / (float)(mLength - 1);
+    }
+
+    /** Computes the offset from the j-th oldest position of a trail to the strip's edge: across the
+     trail's direction there (from the neighboring positions) and the line of sight, at half the
+     tapered width. A position where the direction is undefined (e.g., the trail has not moved)
+     keeps the side at `out`'s other end. */
+    private void side(int emitter, int count, int j, Vector3 eye, float[] out, int offset) {
+        int p = index(emitter, count, j);
+        int a = index(emitter, count, Math.max(0, j - 1));
+        int b = index(emitter, count, Math.min(count - 1, j + 1));
+        float dx = mPoints[b] - mPoints[a];
+        float dy = mPoints[b + 1] - mPoints[a + 1];
+        float dz = mPoints[b + 2] - mPoints[a + 2];
+        float ex = eye.x - mPoints[p];
+        float ey = eye.y - mPoints[p + 1];
+        float ez = eye.z - mPoints[p + 2];
+        float sx = dy * ez - dz * ey;
+        float sy = dz * ex - dx * ez;
+        float sz = dx * ey - dy * ex;
+        float length = (float)Math.sqrt(sx * sx + sy * sy + sz * sz);
+        int other = 3 - offset;
+        if (length == 0) {
+            out[offset] = out[other];
+            out[offset + 1] = out[other + 1];
+            out[offset + 2] = out[other + 2];
+            return;
+        }
+        float scale = mHalfWidths[emitter] * taper(count, j) / length;
+        out[offset] = sx * scale;
+        out[offset + 1] = sy * scale;
+        out[offset + 2] = sz * scale;
+    }
+
+    /** Writes the given corner of the quad: the position at p, plus or minus the side. */
+    private void corner(int corner, int p, float[] sides, int side, float sign) {
+        int c = corner * 3;
+        mCorners[c] = mPoints[p] + sign * sides[side];
+        mCorners[c + 1] = mPoints[p + 1] + sign * sides[side + 1];
+        mCorners[c + 2] = mPoints[p + 2] + sign * sides[side + 2];
+    }
+}
@@ -81,6 +81,8 @@ public class Vector3 {
     public void mul_ip(float s) { x *= s; y *= s; z *= s; }
     public void negate_ip() { x = -x; y = -y; z = -z; }
 
+    // These operators create a new vector; they should not be used in per-frame code. Use the
+    // in-place operators above, or the static operators below, instead.
     public Vector3 add(Vector3 v) {
         return new Vector3( x + v.x, y + v.y, z + v.z);
     }
@@ -0,0 +1,214 @@
+package com.curtis.family.touchexplosion;
+
+/**
+ * A water surface simulated as a height field: a grid of heights obeying the 2D wave equation,
+ *
+ * h_tt = c^2 (h_xx + h_yy),
+ *
+ * advanced with fixed time steps of a leapfrog scheme. Two grids are kept -- the heights at the
+ * current and previous steps -- and each step writes the next heights over the previous ones and
+ * swaps the grids. The edges of the grid are held flat (so waves reflect from them) and every step
+ * is damped slightly so that disturbances die away.
+ *
+ * A step only reads the current grid and writes each cell of the other, so the rows are split into
+ * bands which are stepped in parallel by a WorkerPool; the result does not depend on the number of
+ * threads.
+ *
+ * The grid lies in a plane of constant z, covering [x0, x0 + cols * cellSize] by
+ * [y0, y0 + rows * cellSize]; heights are displacements along z.
+ */
+public class WaterSurface {
+    /** The duration of a simulation step (in milliseconds). */
+    public static final long STEP_MS = 16;
+    /** The most steps taken to catch up with the clock; a longer gap is skipped. */
+    private static final int MAX_STEPS = 4;
+    /** The number of rows in each band handed to a worker. */
+    private static final int BAND_ROWS = 16;
+    /** The largest stable value of (c * dt / dx)^2 for the 2D scheme. */
+    private static final float MAX_COURANT2 = 0.5f;
+
+    private final int mCols;
+    private final int mRows;
+    private final float mCellSize;
+    private final float mX0;
+    private final float mY0;
+    /** (c * dt / dx)^2 for a step. */
+    private final float mCourant2;
+    /** The fraction of each step's motion which is kept. */
+    private final float mDamping;
+    /** The heights at the current and the previous step, row by row. */
+    private float mHeight[];
+    private float mPrevious[];
+    /** The largest absolute height in each band after the last step. */
+    private final float mBandPeak[];
+    private final int mBands;
+    private final WorkerPool mPool;
+    private final WorkerPool.Task mStepTask;
+    /** The time stamp the simulation has reached (in milliseconds); negative before the first
+     advance(). */
+    private long mSimT;
+
+    /** Constructor.
+     * @param cols      The number of grid columns (along x).
+     * @param rows      The number of grid rows (along y).
+     * @param cellSize  The width of a grid cell (in meters).
+     * @param x0        The x-coordinate of the grid's first column.
+     * @param y0        The y-coordinate of the grid's first row.
+     * @param waveSpeed The speed at which waves travel (in m/ms); it is limited to the fastest
+     *                  speed the grid can represent stably.
+     * @param damping   The fraction of the motion lost each step (e.g., 0.01).
+     * @param threads   The number of threads which step the grid (including the caller's).
+     */
+    public WaterSurface(int cols, int rows, float cellSize, float x0, float y0, float waveSpeed,
+                        float damping, int threads) {
+        mCols = cols;
+        mRows = rows;
+        mCellSize = cellSize;
+        mX0 = x0;
+        mY0 = y0;
+        float courant = waveSpeed * STEP_MS / cellSize;
+        mCourant2 = Math.min(MAX_COURANT2, courant * courant);
+        mDamping = 1.0f - damping;
+        mHeight = new float[cols * rows];
+        mPrevious = new float[cols * rows];
+        mBands = (rows + BAND_ROWS - 1) / BAND_ROWS;
+        mBandPeak = new float[mBands];
+        mPool = new WorkerPool(threads, "water");
+        mStepTask = new WorkerPool.Task() {
+            @Override
+            public void run(int band) {
+                stepBand(band);
+            }
+        };
+        mSimT = -1;
+    }
+
+    /** Stops the worker threads. */
+    public void shutdown() { mPool.shutdown(); }
+
+    /** Advances the simulation to the given time in whole steps. At most a few steps are taken;
+     if the clock is further ahead, the rest of the time is skipped.
+     * @return The number of steps taken.
+     */
+    public int advance(long globalT) {
+        if (mSimT < 0 || globalT - mSimT > MAX_STEPS * STEP_MS) {
+            mSimT = globalT - (mSimT < 0 ? 0 : MAX_STEPS * STEP_MS);
+        }
+        int steps = 0;
+        while (mSimT + STEP_MS <= globalT) {
+            step();
+            mSimT += STEP_MS;
+            ++steps;
+        }
+        return steps;
+    }
+
+    /** Takes a single simulation step. */
+    public void step() {
+        mPool.run(mStepTask, mBands);
+        float temp[] = mPrevious;
+        mPrevious = mHeight;
+        mHeight = temp;
+    }
+
+    /** Computes the next heights of the band's rows into mPrevious; the edges stay flat. */
+    private void stepBand(int band) {
+        int r0 = Math.max(1, band * BAND_ROWS);
+        int r1 = Math.min(mRows - 1, (band + 1) * BAND_ROWS);
+        float h[] = mHeight;
+        float next[] = mPrevious;
+        float c2 = mCourant2;
+        float damping = mDamping;
+        float peak = 0;
+        for (int r = r0; r < r1; ++r) {
+            int i = r * mCols + 1;
+            int end = r * mCols + mCols - 1;
+            for (; i < end; ++i) {
+                float center = h[i];
+                float laplacian = h[i - 1] + h[i + 1] + h[i - mCols] + h[i + mCols] - 4 * center;
+                float value = center + (center - next[i]) * damping + c2 * laplacian;
+                next[i] = value;
+                peak = Math.max(peak, Math.abs(value));
+            }
+        }
+        mBandPeak[band] = peak;
+    }
+
+    /** Reports the largest absolute height after the last step. */
+    public float getPeak() {
+        float peak = 0;
+        for (int b = 0; b < mBands; ++b) {
+            peak = Math.max(peak, mBandPeak[b]);
+        }
+        return peak;
+    }
+
+    /** Flattens the surface; the next advance() starts the simulation's clock afresh. */
+    public void clear() {
+        mSimT = -1;
+        for (int i = 0; i < mHeight.length; ++i) {
+            mHeight[i] = 0;
+            mPrevious[i] = 0;
+        }
+        for (int b = 0; b < mBands; ++b) {
+            mBandPeak[b] = 0;
+        }
+    }
+
+    /** Drops a disturbance onto the surface: a smooth (raised cosine) dent centered at (x, y).
+     * @param x         The x-coordinate of the center (in meters).
+     * @param y         The y-coordinate of the center (in meters).
+     * @param radius    The radius of the dent (in meters).
+     * @param depth     The displacement at the center (in meters); positive values push the
+     *                  surface towards -z.
+     */
+    public void disturb(float x, float y, float radius, float depth) {
+        float cx = (x - mX0) / mCellSize;
+        float cy = (y - mY0) / mCellSize;
+        float cr = radius / mCellSize;
+        int c0 = Math.max(1, (int)Math.floor(cx - cr));
+        int c1 = Math.min(mCols - 2, (int)Math.ceil(cx + cr));
+        int r0 = Math.max(1, (int)Math.floor(cy - cr));
+        int r1 = Math.min(mRows - 2, (int)Math.ceil(cy + cr));
+        for (int r = r0; r <= r1; ++r) {
+            for (int c = c0; c <= c1; ++c) {
+                float dx = c - cx;
+                float dy = r - cy;
+                float d = (float)Math.sqrt(dx * dx + dy * dy) / cr;
+                if (d >= 1) continue;
+                mHeight[r * mCols + c] -= depth * 0.5f * (1 + (float)Math.cos(Math.PI * d));
+            }
+        }
+    }
+
+    /** Reports the height of the surface at (x, y), interpolated bilinearly; 0 off the grid. */
+    public float sampleHeight(float x, float y) {
+        float cx = (x - mX0) / mCellSize;
+        float cy = (y - mY0) / mCellSize;
+        if (!(cx >= 0 && cy >= 0 && cx < mCols - 1 && cy < mRows - 1)) return 0;
+        int c = (int)cx;
+        int r = (int)cy;
+        float u = cx - c;
+        float v = cy - r;
+        int i = r * mCols + c;
+        float bottom = mHeight[i] + (mHeight[i + 1] - mHeight[i]) * u;
+        float top = mHeight[i + mCols] + (mHeight[i + mCols + 1] - mHeight[i + mCols]) * u;
+        return bottom + (top - bottom) * v;
+    }
+
+    /** Computes the slope of the surface at (x, y) -- (dh/dx, dh/dy, 0) -- by central differences
+     of the interpolated heights, storing it in the given vector. */
+    public void sampleSlope(float x, float y, Vector3 slope) {
+        float d = mCellSize;
+        float dx = sampleHeight(x + d, y) - sampleHeight(x - d, y);
+        float dy = sampleHeight(x, y + d) - sampleHeight(x, y - d);
+        slope.set(dx / (2 * d), dy / (2 * d), 0);
+    }
+
+    public int getCols() { return mCols; }
+
+    public int getRows() { return mRows; }
+
+    /** Returns the current heights, row by row; the array is replaced each step. */
+    public float[] getHeights() { return mHeight; }
+}
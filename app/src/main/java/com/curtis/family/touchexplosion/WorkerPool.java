@@ -0,0 +1,143 @@
+package com.curtis.family.touchexplosion;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of worker threads which run the indexed pieces of a task (e.g., the row bands of a
+ * grid) in parallel, for work which is handed out every frame.
+ *
+ * The calling thread works alongside the workers: the pieces are claimed one at a time from a
+ * shared counter until none are left, and run() returns once every piece is done. Unlike an
+ * ExecutorService, handing out a task creates no garbage -- there are no futures or queued
+ * runnables -- so it can be used from a frame loop.
+ *
+ * The workers are daemon threads; shutdown() stops them.
+ */
+class WorkerPool {
+    /** A task split into indexed pieces; the pieces may run in any order and on any thread. */
+    interface Task {
+        void run(int piece);
+    }
+
+    private final Thread mThreads[];
+    private final Object mLock;
+    private final AtomicInteger mNextPiece;
+    /** The current task and its number of pieces. */
+    private Task mTask;
+    private int mPieces;
+    /** Incremented for each task; a worker runs a task once it sees a new generation. */
+    private int mGeneration;
+    /** The number of workers still running the current task. */
+    private int mBusy;
+    /** The first failure of a piece of the current task, rethrown by run(). */
+    private RuntimeException mError;
+    private boolean mShutdown;
+
+    /** Constructor.
+     * @param threads   The number of threads which run the pieces, including the caller of run();
+     *                  with one thread, the pieces simply run on the caller.
+     * @param name      The prefix of the worker threads' names.
+     */
+    WorkerPool(int threads, String name) {
+        mLock = new Object();
+        mNextPiece = new AtomicInteger();
+        mThreads = new Thread[Math.max(0, threads - 1)];
+        for (int i = 0; i < mThreads.length; ++i) {
+            mThreads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work();
+                }
+            }, name + "-" + i);
+            mThreads[i].setDaemon(true);
+            mThreads[i].start();
+        }
+    }
+
+    /** Reports the number of threads which run the pieces (including the caller). */
+    int getThreadCount() { return mThreads.length + 1; }
+
+    /** Runs every piece of the task, returning once they are all done. A RuntimeException thrown by
+     a piece is rethrown here (once the other pieces are done). */
+    void run(Task task, int pieces) {
+        if (mThreads.length == 0) {
+            for (int i = 0; i < pieces; ++i) {
+                task.run(i);
+            }
+            return;
+        }
+        synchronized (mLock) {
+            mTask = task;
+            mPieces = pieces;
+            mError = null;
+            mNextPiece.set(0);
+            mBusy = mThreads.length;
+            ++mGeneration;
+            mLock.notifyAll();
+        }
+        RuntimeException error = claimPieces(task, pieces);
+        synchronized (mLock) {
+            boolean interrupted = false;
+            while (mBusy > 0) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    // The workers are still using the task; finish waiting for them.
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+            mTask = null;
+            if (error == null) error = mError;
+        }
+        if (error != null) throw error;
+    }
+
+    /** Stops the workers once they finish their current task. */
+    void shutdown() {
+        synchronized (mLock) {
+            mShutdown = true;
+            mLock.notifyAll();
+        }
+    }
+
+    /** The workers' loop: wait for a new task, help run it, report being done. */
+    private void work() {
+        int seen = 0;
+        while (true) {
+            Task task;
+            int pieces;
+            synchronized (mLock) {
+                while (mGeneration == seen && !mShutdown) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (mShutdown) return;
+                seen = mGeneration;
+                task = mTask;
+                pieces = mPieces;
+            }
+            RuntimeException error = claimPieces(task, pieces);
+            synchronized (mLock) {
+                if (error != null && mError == null) mError = error;
+                if (--mBusy == 0) mLock.notifyAll();
+            }
+        }
+    }
+
+    /** Runs pieces until there are none left; reports the first failure, if any. */
+    private RuntimeException claimPieces(Task task, int pieces) {
+        RuntimeException error = null;
+        for (int i = mNextPiece.getAndIncrement(); i < pieces; i = mNextPiece.getAndIncrement()) {
+            try {
+                task.run(i);
+            } catch (RuntimeException e) {
+                if (error == null) error = e;
+            }
+        }
+        return error;
+    }
+}
@@ -0,0 +1,50 @@
+package com.curtis.family.touchexplosion;
+
+/**
+ * A small, fast pseudo-random number generator (xorshift64*) whose entire state is a single long.
+ * Unlike java.util.Random, the state can be read and restored, so a particle system's random
+ * sequence survives a snapshot.
+ *
+ * It is not thread-safe; callers synchronize as they do for the rest of their state.
+ */
+public class XorShiftRandom {
+    private long mState;
+
+    /** Constructor -- seeded from the clock. */
+    public XorShiftRandom() { this(System.nanoTime()); }
+
+    /** Constructor.
+     * @param seed  The seed; any value (including zero) is valid.
+     */
+    public XorShiftRandom(long seed) { setState(seed); }
+
+    /** Reports the generator's state. */
+    public long getState() { return mState; }
+
+    /** Sets the generator's state; the generator continues the sequence of the generator that
+     reported the state. */
+    public void setState(long state) {
+        // The all-zero state is a fixed point of xorshift.
+        mState = state == 0 ? 0x9E3779B97F4A7C15L : state;
+    }
+
+    /** Returns the next 64 pseudo-random bits. */
+    public long nextLong() {
+        long x = mState;
+        x ^= x >>> 12;
+        x ^= x << 25;
+        x ^= x >>> 27;
+        mState = x;
+        return x * 0x2545F4914F6CDD1DL;
+    }
+
+    /** Returns a value uniformly distributed in [0, 1). */
+    public float nextFloat() {
+        return (nextLong() >>> 40) * (1.0f / (1 << 24));
+    }
+
+    /** Returns a value uniformly distributed in [0, bound). */
+    public int nextInt(int bound) {
+        return (int)(((nextLong() >>> 33) * bound) >>> 31);
+    }
+}
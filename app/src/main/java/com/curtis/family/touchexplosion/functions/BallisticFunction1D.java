@@ -26,6 +26,17 @@ public class BallisticFunction1D extends Function1D {
         x_dot0 = v0;
     }
 
+    /** Re-initializes the trajectory in place.
+     * @param p0    Value of f(t0).
+     * @param v0    Value of f'(t0).
+     * @param t0    Time origin.
+     */
+    public void set(float p0, float v0, long t0) {
+        resetTime(t0);
+        x0 = p0;
+        x_dot0 = v0;
+    }
+
     /** Sets the gravity constant. */
     public void setGravity(float gravity) { mGravity = gravity; }
 
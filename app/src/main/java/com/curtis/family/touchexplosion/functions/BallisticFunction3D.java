@@ -18,7 +18,10 @@ public class BallisticFunction3D extends Function3D {
     private Vector3 x_dot0;
 
     /** The gravity constant. Gravity constant 4.9 m/s^2 converted to 4.9 m/ms^2. */
-    private static Vector3 half_gravity = new Vector3(0, -4.9e-6f, 0);
+    public static final float HALF_GRAVITY = -4.9e-6f;
+
+    /** The coefficient of t^2 in y (x and z have none). */
+    private float mGravity = HALF_GRAVITY;
 
     /** Constructor.
      * @param p0    Value of f(t0).
@@ -32,13 +35,41 @@ public class BallisticFunction3D extends Function3D {
         scratch1 = new Vector3();
     }
 
+    /** Re-initializes the trajectory in place; the parameters are the same as the constructor's,
+     with the vectors given by component. */
+    public void set(float x, float y, float z, float vx, float vy, float vz, long t0) {
+        resetTime(t0);
+        x0.set(x, y, z);
+        x_dot0.set(vx, vy, vz);
+    }
+
+    /** Sets the gravity constant (the coefficient of t^2 in y). */
+    public void setGravity(float gravity) { mGravity = gravity; }
+
+    /** Reports the gravity constant (the coefficient of t^2 in y). */
+    public float getGravity() { return mGravity; }
+
     /** @inheritDoc */
     @Override
     public void eval(long globalT, Vector3 result) {
         long t = getLocalT(globalT);
         long t2 = t * t;
-        result.set(half_gravity.x *t2 +  x_dot0.x * t + x0.x,
-                half_gravity.y * t2 + x_dot0.y * t + x0.y,
-                half_gravity.z * t2 + x_dot0.z * t + x0.z);
+        result.set(x_dot0.x * t + x0.x,
+                mGravity * t2 + x_dot0.y * t + x0.y,
+                x_dot0.z * t + x0.z);
+    }
+
+    /** Computes the value at the given time relative to the origin (in milliseconds, possibly
+     between whole milliseconds), storing it in the given vector. */
+    public void evalLocal(float localT, Vector3 result) {
+        result.set(x_dot0.x * localT + x0.x,
+                (mGravity * localT + x_dot0.y) * localT + x0.y,
+                x_dot0.z * localT + x0.z);
+    }
+
+    /** Computes the velocity, f'(t), at the given time relative to the origin (in milliseconds,
+     possibly between whole milliseconds), storing it in the given vector. */
+    public void evalVelocity(float localT, Vector3 result) {
+        result.set(x_dot0.x, 2 * mGravity * localT + x_dot0.y, x_dot0.z);
     }
 }
@@ -0,0 +1,92 @@
+package com.curtis.family.touchexplosion.functions;
+
+import com.curtis.family.touchexplosion.Vector3;
+
+/**
+ * A function that evaluates a 3D ballistics trajectory subject to linear air drag:
+ *
+ * f''(t) = g - k * f'(t)
+ *
+ * The velocity decays exponentially from its initial value towards the terminal velocity g / k:
+ *
+ * f'(t) = vT + (v0 - vT) * e^(-k * t),  vT = g / k
+ * f(t) = x0 + vT * t + (v0 - vT) * (1 - e^(-k * t)) / k
+ *
+ * A fast initial burst therefore slows quickly and settles into a steady fall. Evaluation costs a
+ * single exponential, regardless of the elapsed time.
+ *
+ * The position is evaluated as
+ *
+ * f(t) = x0 + v0 * (1 - e^(-k * t)) / k + g * (k * t - 1 + e^(-k * t)) / k^2
+ *
+ * with expm1() in double precision: the two terms of the first form are each about g * t / k, and
+ * cancel catastrophically in float when the drag is small. This form tends to the drag-free
+ * trajectory (see BallisticFunction3D) as k tends to 0.
+ */
+public class DragBallisticFunction3D extends Function3D {
+    /** The gravity constant. 9.8 m/s^2 converted to 9.8e-6 m/ms^2. */
+    public static final float GRAVITY = -9.8e-6f;
+
+    /** The value of the function at the time origin: f(t0). */
+    private float mX0, mY0, mZ0;
+    /** The value of the function's first derivative at the time origin: f'(t0). */
+    private float mVX, mVY, mVZ;
+    /** The terminal velocity in y (x and z have no terminal velocity). */
+    private float mTerminalY;
+    /** The drag coefficient, k (in 1/ms). */
+    private float mDrag;
+
+    /** Constructor.
+     * @param p0    Value of f(t0).
+     * @param v0    Value of f'(t0).
+     * @param drag  The drag coefficient, k (in 1/ms); it must be positive. The velocity decays to
+     *              the terminal velocity with a time constant of 1 / k milliseconds.
+     * @param t0    Time origin.
+     */
+    public DragBallisticFunction3D(Vector3 p0, Vector3 v0, float drag, long t0) {
+        super(t0);
+        set(p0.x, p0.y, p0.z, v0.x, v0.y, v0.z, drag, t0);
+    }
+
+    /** Re-initializes the trajectory in place; the parameters are the same as the constructor's,
+     with the vectors given by component. Without drag the terminal velocity is infinite, so a
+     drag which isn't positive is refused (see BallisticFunction3D). */
+    public void set(float x0, float y0, float z0, float vx, float vy, float vz, float drag,
+                    long t0) {
+        if (!(drag > 0)) throw new IllegalArgumentException("The drag must be positive: " + drag);
+        resetTime(t0);
+        mX0 = x0;
+        mY0 = y0;
+        mZ0 = z0;
+        mDrag = drag;
+        mTerminalY = GRAVITY / drag;
+        mVX = vx;
+        mVY = vy;
+        mVZ = vz;
+    }
+
+    /** Reports the drag coefficient (in 1/ms). */
+    public float getDrag() { return mDrag; }
+
+    /** Reports the terminal velocity in y (in m/ms). */
+    public float getTerminalVelocity() { return mTerminalY; }
+
+    /** @inheritDoc */
+    @Override
+    public void eval(long globalT, Vector3 result) {
+        double kt = mDrag * (double)getLocalT(globalT);
+        double decayed = Math.expm1(-kt);
+        float decay = (float)(-decayed / mDrag);
+        float settled = (float)((decayed + kt) / ((double)mDrag * mDrag));
+        result.set(mX0 + mVX * decay,
+                mY0 + mVY * decay + GRAVITY * settled,
+                mZ0 + mVZ * decay);
+    }
+
+    /** Computes the velocity, f'(t), at the given global time, storing it in the given vector. */
+    public void evalVelocity(long globalT, Vector3 result) {
+        double decayed = Math.expm1(-mDrag * (double)getLocalT(globalT));
+        float decay = (float)(1 + decayed);
+        result.set(mVX * decay, mVY * decay + GRAVITY * (float)(-decayed / mDrag), mVZ * decay);
+    }
+}
@@ -10,9 +10,15 @@ abstract class FunctionBase {
     /** Given the current clock time, reports the time elapsed from the origin (in milliseconds). */
     protected long getLocalT(long globalT) { return globalT - t0; }
 
+    /** Given a time relative to the origin, reports the corresponding clock time (in milliseconds). */
+    protected long getGlobalT(long localT) { return localT + t0; }
+
     /** Constructor -- sets the origin of the domain to the given value (in milliseconds). */
     public FunctionBase(long t0) { this.t0 = t0; }
 
+    /** Reports the origin time value (in milliseconds). */
+    public long getTimeOrigin() { return t0; }
+
     /** Resets the origin time value. */
     public void resetTime(long t0) { this.t0 = t0; }
 }
\ No newline at end of file
@@ -32,16 +32,38 @@ public class HermiteFunction3D extends Function3D {
         h = duration;
     }
 
-    /** Reset the function to a new set of values. */
+    /** Reset the function to a new set of values. The values are copied into the function's own
+     vectors; no new objects are created. */
     public void set(Vector3 p0, Vector3 v0, Vector3 pT, Vector3 vT, long t0, long duration) {
         resetTime(t0);
-        x0 = p0.clone();
-        xdot0 = v0.clone();
-        xT = pT.clone();
-        xdotT = vT.clone();
+        x0.set(p0);
+        xdot0.set(v0);
+        xT.set(pT);
+        xdotT.set(vT);
         h = duration;
     }
 
+    /** Sets the state at the start of the interpolation: f(0) and f'(0), in place. */
+    public void setStart(Vector3 p0, Vector3 v0) {
+        x0.set(p0);
+        xdot0.set(v0);
+    }
+
+    /** Sets the state at the end of the interpolation: f(T) and f'(T), in place. */
+    public void setEnd(Vector3 pT, Vector3 vT) {
+        xT.set(pT);
+        xdotT.set(vT);
+    }
+
+    /** Sets the time origin and the duration T - t0 of the interpolation. */
+    public void setTiming(long t0, long duration) {
+        resetTime(t0);
+        h = duration;
+    }
+
+    /** Reports the duration T - t0 of the interpolation (in milliseconds). */
+    public long getDuration() { return h; }
+
     @Override
     public void eval(long globalT, Vector3 result) {
         float t = getLocalT(globalT) / (float)h;
@@ -0,0 +1,271 @@
+package com.curtis.family.touchexplosion.functions;
+
+import com.curtis.family.touchexplosion.Vector3;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A C1-continuous path in R3 built from a sequence of Hermite segments.
+ *
+ * The path is a sequence of knots (position, velocity, time). Consecutive knots define a cubic
+ * Hermite segment. The knots are stored in a fixed-size ring so that points can be appended at
+ * touch rate without creating any objects. Interior knot velocities are Catmull-Rom tangents
+ * (p[i+1] - p[i-1]) / (t[i+1] - t[i-1]); the final knot is always reached at rest.
+ *
+ * Before the first knot, and after the last knot, the value is held constant.
+ */
+public class HermitePathFunction3D extends Function3D {
+    /** The number of bytes write() stores per knot: time, position and velocity. */
+    private static final int KNOT_BYTES = 8 + 6 * 4;
+    /** The maximum number of knots in the path. */
+    private final int mCapacity;
+    /** The local time of each knot (in milliseconds). */
+    private final long[] mTimes;
+    /** The position of each knot (x, y, z interleaved). */
+    private final float[] mPos;
+    /** The velocity of each knot (x, y, z interleaved) in units per millisecond. */
+    private final float[] mVel;
+    /** The physical index of the oldest knot in the ring. */
+    private int mHead;
+    /** The number of knots in the ring. */
+    private int mCount;
+
+    /** The segment most recently evaluated. It is only re-loaded when the active segment
+     changes. */
+    private final HermiteFunction3D mSegment;
+    /** The physical index of the knot which starts mSegment; -1 if mSegment is stale. */
+    private int mLoaded;
+
+    // Scratch vectors, to avoid garbage collection.
+    private final Vector3 mP0;
+    private final Vector3 mV0;
+    private final Vector3 mP1;
+    private final Vector3 mV1;
+    private final Vector3 mCurrPos;
+    private final Vector3 mCurrVel;
+
+    /** Constructor.
+     * @param capacity  The maximum number of knots the path can hold (at least 4).
+     * @param p0        The initial position of the path (at rest).
+     * @param t0        The time origin.
+     */
+    public HermitePathFunction3D(int capacity, Vector3 p0, long t0) {
+        super(t0);
+        if (capacity < 4) {
+            throw new IllegalArgumentException("A Hermite path requires at least four knots");
+        }
+        mCapacity = capacity;
+        mTimes = new long[capacity];
+        mPos = new float[capacity * 3];
+        mVel = new float[capacity * 3];
+        mP0 = new Vector3();
+        mV0 = new Vector3();
+        mP1 = new Vector3();
+        mV1 = new Vector3();
+        mCurrPos = new Vector3();
+        mCurrVel = new Vector3();
+        mSegment = new HermiteFunction3D(p0, Vector3.ZERO, p0, Vector3.ZERO, 0, 1);
+        reset(p0, t0);
+    }
+
+    /** Discards the whole path; the path holds the given position from the given time on. */
+    public void reset(Vector3 p, long globalT) {
+        mHead = 0;
+        mCount = 0;
+        pushKnot(p.x, p.y, p.z, 0, 0, 0, getLocalT(globalT));
+    }
+
+    /** Extends the path to the given point. The new segment starts at the current end of the path
+     and is traversed at the given speed, arriving at rest.
+
+     Knots which lie entirely in the past (relative to globalT) are discarded. If the segment being
+     traversed at globalT is about to have its end tangent changed, it is first re-anchored at the
+     current position and velocity so that the path stays C1 continuous at globalT.
+
+     If the ring is full, the most recent knot is replaced by the new point.
+     * @param p         The point to add to the path.
+     * @param globalT   The current time.
+     * @param speed     The speed at which the new segment is traversed (in units per ms).
+     */
+    public void append(Vector3 p, long globalT, float speed) {
+        long t = getLocalT(globalT);
+        evalLocal(t, mCurrPos);
+        derivLocal(t, mCurrVel);
+
+        // Drop the knots which can no longer be reached.
+        int active = findKnot(t);
+        if (active > 0) {
+            dropOldest(active);
+        }
+        if (mCount <= 2) {
+            // The tangent at the end of the active segment is about to change (or the path has
+            // already been completed); restart the active segment from the current state.
+            setKnot(mHead, mCurrPos.x, mCurrPos.y, mCurrPos.z, mCurrVel.x, mCurrVel.y, mCurrVel.z,
+                    t);
+        }
+        if (mCount == mCapacity) {
+            --mCount;
+        }
+
+        int last = physical(mCount - 1);
+        float dx = p.x - mPos[last * 3];
+        float dy = p.y - mPos[last * 3 + 1];
+        float dz = p.z - mPos[last * 3 + 2];
+        float dist = (float)Math.sqrt(dx * dx + dy * dy + dz * dz);
+        long duration = Math.max(1, (long)(dist / speed));
+        pushKnot(p.x, p.y, p.z, 0, 0, 0, mTimes[last] + duration);
+
+        if (mCount >= 3) {
+            // The previous end knot is now an interior knot.
+            int prev = physical(mCount - 3);
+            int curr = physical(mCount - 2);
+            int next = physical(mCount - 1);
+            float dt = (float)(mTimes[next] - mTimes[prev]);
+            for (int i = 0; i < 3; ++i) {
+                mVel[curr * 3 + i] = (mPos[next * 3 + i] - mPos[prev * 3 + i]) / dt;
+            }
+        }
+        mLoaded = -1;
+    }
+
+    /** Reports the number of knots currently in the path. */
+    public int getKnotCount() { return mCount; }
+
+    /** Reports if the path has come to rest at its final knot by the given time. */
+    public boolean isAtRest(long globalT) {
+        return getLocalT(globalT) >= mTimes[physical(mCount - 1)];
+    }
+
+    /** Reports the clock time (in milliseconds) at which the path reaches its last knot. */
+    public long getRestTime() {
+        return getGlobalT(mTimes[physical(mCount - 1)]);
+    }
+
+    /** Reports the number of bytes write() stores for the path in its current state. */
+    public int getStateSize() { return 12 + mCount * KNOT_BYTES; }
+
+    /** Writes the path (its time origin and knots, oldest first) into the buffer. */
+    public void write(ByteBuffer out) {
+        out.putLong(getTimeOrigin());
+        out.putInt(mCount);
+        for (int k = 0; k < mCount; ++k) {
+            int i = physical(k);
+            out.putLong(mTimes[i]);
+            for (int j = 0; j < 3; ++j) out.putFloat(mPos[i * 3 + j]);
+            for (int j = 0; j < 3; ++j) out.putFloat(mVel[i * 3 + j]);
+        }
+    }
+
+    /** Replaces the path with one stored by write(). Knot times are local, so only the origin is
+     moved by the given shift (in milliseconds). If the stored path has more knots than this one can
+     hold, the oldest are dropped. A stored path without knots (which write() never stores) is
+     ignored, leaving this path as it was. */
+    public void read(ByteBuffer in, long shift) {
+        long origin = in.getLong() + shift;
+        int count = in.getInt();
+        if (count < 1) return;
+        resetTime(origin);
+        int skip = Math.max(0, count - mCapacity);
+        in.position(in.position() + skip * KNOT_BYTES);
+        mHead = 0;
+        mCount = 0;
+        for (int k = skip; k < count; ++k) {
+            long t = in.getLong();
+            float x = in.getFloat(), y = in.getFloat(), z = in.getFloat();
+            float vx = in.getFloat(), vy = in.getFloat(), vz = in.getFloat();
+            pushKnot(x, y, z, vx, vy, vz, t);
+        }
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void eval(long globalT, Vector3 result) {
+        evalLocal(getLocalT(globalT), result);
+    }
+
+    /** Computes the derivative of the path (in units per millisecond) at the given time. */
+    public void deriv(long globalT, Vector3 result) {
+        derivLocal(getLocalT(globalT), result);
+    }
+
+    private void evalLocal(long t, Vector3 result) {
+        int k = findKnot(t);
+        if (k < 0 || k == mCount - 1) {
+            int i = physical(k < 0 ? 0 : k);
+            result.set(mPos[i * 3], mPos[i * 3 + 1], mPos[i * 3 + 2]);
+            return;
+        }
+        loadSegment(k);
+        mSegment.eval(t, result);
+    }
+
+    private void derivLocal(long t, Vector3 result) {
+        int k = findKnot(t);
+        if (k < 0 || k == mCount - 1) {
+            int i = physical(k < 0 ? 0 : k);
+            result.set(mVel[i * 3], mVel[i * 3 + 1], mVel[i * 3 + 2]);
+            return;
+        }
+        loadSegment(k);
+        mSegment.deriv(t, result);
+        // The segment reports the derivative with respect to its normalized parameter.
+        result.mul_ip(1.0f / mSegment.getDuration());
+    }
+
+    /** Finds the logical index of the last knot whose time is <= t; -1 if t precedes the path. */
+    private int findKnot(long t) {
+        int lo = 0;
+        int hi = mCount - 1;
+        if (t < mTimes[mHead]) return -1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (mTimes[physical(mid)] <= t) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /** Loads the segment starting at logical knot k into mSegment (if not already loaded). */
+    private void loadSegment(int k) {
+        int a = physical(k);
+        if (a == mLoaded) return;
+        int b = physical(k + 1);
+        long h = mTimes[b] - mTimes[a];
+        // The Hermite function's tangents are relative to its normalized parameter.
+        mP0.set(mPos[a * 3], mPos[a * 3 + 1], mPos[a * 3 + 2]);
+        mV0.set(mVel[a * 3] * h, mVel[a * 3 + 1] * h, mVel[a * 3 + 2] * h);
+        mP1.set(mPos[b * 3], mPos[b * 3 + 1], mPos[b * 3 + 2]);
+        mV1.set(mVel[b * 3] * h, mVel[b * 3 + 1] * h, mVel[b * 3 + 2] * h);
+        mSegment.set(mP0, mV0, mP1, mV1, mTimes[a], h);
+        mLoaded = a;
+    }
+
+    private int physical(int logical) {
+        return (mHead + logical) % mCapacity;
+    }
+
+    private void dropOldest(int n) {
+        mHead = (mHead + n) % mCapacity;
+        mCount -= n;
+        mLoaded = -1;
+    }
+
+    private void pushKnot(float x, float y, float z, float vx, float vy, float vz, long t) {
+        setKnot(physical(mCount), x, y, z, vx, vy, vz, t);
+        ++mCount;
+    }
+
+    private void setKnot(int i, float x, float y, float z, float vx, float vy, float vz, long t) {
+        mPos[i * 3] = x;
+        mPos[i * 3 + 1] = y;
+        mPos[i * 3 + 2] = z;
+        mVel[i * 3] = vx;
+        mVel[i * 3 + 1] = vy;
+        mVel[i * 3 + 2] = vz;
+        mTimes[i] = t;
+        mLoaded = -1;
+    }
+}
@@ -20,6 +20,17 @@ public class LinearFunction1D extends Function1D {
         this.v0 = v0;
     }
 
+    /** Re-initializes the function in place.
+     * @param x0    The value of f(t0).
+     * @param v0    The value of f'(t0).
+     * @param t0    The value of t0.
+     */
+    public void set(float x0, float v0, long t0) {
+        resetTime(t0);
+        this.x0 = x0;
+        this.v0 = v0;
+    }
+
     /** @inheritDoc */
     @Override
     public float eval(long globalT) {
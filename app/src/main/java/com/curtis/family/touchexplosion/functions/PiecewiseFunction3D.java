@@ -0,0 +1,175 @@
+package com.curtis.family.touchexplosion.functions;
+
+import com.curtis.family.touchexplosion.Vector3;
+
+/**
+ * A ballistic trajectory which bounces off a set of planes (e.g., the floor and walls of the view
+ * frustum), as a chain of BallisticFunction3D segments.
+ *
+ * Each segment ends where it first crosses one of the planes, found by solving the quadratic
+ *
+ * n . f(t) + d = 0
+ *
+ * for the earliest time the trajectory leaves through the plane. The next segment starts there
+ * with the velocity reflected about the plane, its normal part scaled by the restitution. Nothing
+ * is tested per frame: a segment's end is computed once, when the segment begins, and the next
+ * segment only when the trajectory is evaluated past that end. Evaluation resumes from the last
+ * segment used, so evaluating at increasing times costs O(1) amortized, no matter how many bounces
+ * there are.
+ *
+ * Segments start on whole milliseconds (the segment's time origin): the segment after a bounce
+ * starts at the first whole millisecond after the contact, where the reflected path from the
+ * contact point has got to. After the last bounce the trajectory continues unbounded (e.g., it
+ * falls out of the frustum).
+ *
+ * The planes are given as (nx, ny, nz, d) per plane, with the inside where n . p + d < 0 (as
+ * Frustum.getWalls() reports them). The array is shared, not copied: if it changes, the segments
+ * computed afterwards use the new planes. Only crossings outward count: a trajectory which starts
+ * outside a plane hits it only if it comes back in and goes out again. A plane with a zero normal
+ * is never hit.
+ */
+public class PiecewiseFunction3D extends Function3D {
+    /** The number of floats per plane. */
+    public static final int PLANE_FLOATS = 4;
+    /** The latest contact considered, relative to a segment's start (in milliseconds). */
+    private static final double MAX_CONTACT_MS = 1e12;
+
+    /** The segments; the first mSegmentCount are computed. */
+    private final BallisticFunction3D mSegments[];
+    /** The time each computed segment ends (in milliseconds); Long.MAX_VALUE if it doesn't. */
+    private final long mEnds[];
+    /** The time of each computed segment's contact, relative to its start (in milliseconds). */
+    private final float mContactT[];
+    /** The plane each computed segment ends on. */
+    private final int mContactPlane[];
+    private int mSegmentCount;
+    /** The segment the last evaluation used. */
+    private int mCurrent;
+    private final float mPlanes[];
+    private final float mRestitution;
+    private final Vector3 mScratch;
+
+    /** Constructor -- the trajectory is at rest at the origin until set().
+     * @param planes        The planes to bounce off (see the class description).
+     * @param restitution   The fraction of the normal speed kept by a bounce.
+     * @param maxBounces    The number of bounces before the trajectory continues unbounded.
+     */
+    public PiecewiseFunction3D(float[] planes, float restitution, int maxBounces) {
+        super(0);
+        mPlanes = planes;
+        mRestitution = restitution;
+        mSegments = new BallisticFunction3D[maxBounces + 1];
+        for (int i = 0; i < mSegments.length; ++i) {
+            mSegments[i] = new BallisticFunction3D(Vector3.ZERO, Vector3.ZERO, 0);
+        }
+        mEnds = new long[maxBounces + 1];
+        mContactT = new float[maxBounces + 1];
+        mContactPlane = new int[maxBounces + 1];
+        mScratch = new Vector3();
+        set(0, 0, 0, 0, 0, 0, 0);
+    }
+
+    /** Re-initializes the trajectory in place.
+     * @param x     The x-position at t0.
+     * @param y     The y-position at t0.
+     * @param z     The z-position at t0.
+     * @param vx    The x-velocity at t0 (in m/ms).
+     * @param vy    The y-velocity at t0 (in m/ms).
+     * @param vz    The z-velocity at t0 (in m/ms).
+     * @param t0    Time origin.
+     */
+    public void set(float x, float y, float z, float vx, float vy, float vz, long t0) {
+        resetTime(t0);
+        mSegments[0].set(x, y, z, vx, vy, vz, t0);
+        mSegmentCount = 1;
+        mCurrent = 0;
+        findContact(0);
+    }
+
+    /** Sets the gravity constant (the coefficient of t^2 in y) of every segment; the trajectory
+     must be set() again afterwards. */
+    public void setGravity(float gravity) {
+        for (int i = 0; i < mSegments.length; ++i) mSegments[i].setGravity(gravity);
+    }
+
+    /** Reports the number of segments computed so far (one more than the bounces). */
+    public int getSegmentCount() { return mSegmentCount; }
+
+    /** @inheritDoc */
+    @Override
+    public void eval(long globalT, Vector3 result) {
+        int k = mCurrent;
+        while (k > 0 && globalT < mSegments[k].getTimeOrigin()) --k;
+        while (globalT >= mEnds[k]) {
+            if (k + 1 == mSegmentCount) bounce(k);
+            ++k;
+        }
+        mCurrent = k;
+        mSegments[k].eval(globalT, result);
+    }
+
+    /** Computes the segment which follows segment k. */
+    private void bounce(int k) {
+        BallisticFunction3D segment = mSegments[k];
+        Vector3 p = mScratch;
+        float tc = mContactT[k];
+        segment.evalLocal(tc, p);
+        float px = p.x, py = p.y, pz = p.z;
+        segment.evalVelocity(tc, p);
+        int n = mContactPlane[k] * PLANE_FLOATS;
+        float nx = mPlanes[n], ny = mPlanes[n + 1], nz = mPlanes[n + 2];
+        float vn = (1 + mRestitution) * (p.x * nx + p.y * ny + p.z * nz);
+        float vx = p.x - vn * nx, vy = p.y - vn * ny, vz = p.z - vn * nz;
+        // Follow the reflected path from the contact to the next whole millisecond.
+        float f = mEnds[k] - segment.getTimeOrigin() - tc;
+        float gravity = segment.getGravity();
+        mSegments[k + 1].set(px + vx * f, py + (vy + gravity * f) * f, pz + vz * f,
+                vx, vy + 2 * gravity * f, vz, mEnds[k]);
+        ++mSegmentCount;
+        findContact(k + 1);
+    }
+
+    /** Finds where segment k leaves through a plane, if it does. */
+    private void findContact(int k) {
+        mEnds[k] = Long.MAX_VALUE;
+        if (k + 1 == mSegments.length) return;
+        BallisticFunction3D segment = mSegments[k];
+        long t0 = segment.getTimeOrigin();
+        Vector3 p = mScratch;
+        segment.evalVelocity(0, p);
+        double vx = p.x, vy = p.y, vz = p.z;
+        segment.eval(t0, p);
+        double gravity = segment.getGravity();
+        double first = Double.POSITIVE_INFINITY;
+        for (int i = 0; i + PLANE_FLOATS <= mPlanes.length; i += PLANE_FLOATS) {
+            float nx = mPlanes[i], ny = mPlanes[i + 1], nz = mPlanes[i + 2];
+            // The signed distance to the plane: c + b * t + a * t^2.
+            double c = nx * p.x + ny * p.y + nz * p.z + mPlanes[i + 3];
+            double b = nx * vx + ny * vy + nz * vz;
+            double a = ny * gravity;
+            double t;
+            if (a == 0) {
+                if (b <= 0) continue;
+                t = -c / b;
+                if (!(t >= 0)) continue;
+            } else {
+                double discriminant = b * b - 4 * a * c;
+                // A trajectory which only grazes the plane doesn't cross it.
+                if (discriminant <= 0) continue;
+                // The root where the distance is increasing (its derivative, b + 2at, is +sqrt),
+                // in the form which doesn't cancel.
+                double root = Math.sqrt(discriminant);
+                t = b > 0 ? 2 * c / (-b - root) : (root - b) / (2 * a);
+                if (!(t >= 0)) continue;
+            }
+            if (t < first) {
+                first = t;
+                mContactPlane[k] = i / PLANE_FLOATS;
+            }
+        }
+        // A contact centuries away (e.g., crawling towards a plane) is as good as none.
+        if (!(first < MAX_CONTACT_MS)) return;
+        mContactT[k] = (float)first;
+        mEnds[k] = t0 + (long)Math.ceil(first);
+    }
+}
@@ -1,5 +1,7 @@
 package com.curtis.family.touchexplosion.functions;
 
+import com.curtis.family.touchexplosion.FastTrig;
+
 /**
  * Defines the sine function.
  */
@@ -15,8 +17,19 @@ public class SineFunction extends Function1D {
         mAmplitude = amp;
     }
 
+    /** Re-initializes the function in place.
+     * @param freq  The frequency (in cycles per millisecond).
+     * @param amp   The amplitude.
+     * @param t0    The time origin; the function is zero (and rising) there.
+     */
+    public void set(float freq, float amp, long t0) {
+        resetTime(t0);
+        mFrequency = freq;
+        mAmplitude = amp;
+    }
+
     @Override
     public float eval(long globalT) {
-        return mAmplitude * (float)Math.sin(mFrequency * 2 * Math.PI * getLocalT(globalT));
+        return mAmplitude * FastTrig.sinTurns((double)mFrequency * getLocalT(globalT));
     }
 }
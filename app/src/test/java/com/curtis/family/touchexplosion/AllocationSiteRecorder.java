@@ -0,0 +1,119 @@
+package com.curtis.family.touchexplosion;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Attributes a frame loop's allocations to call sites using a flight recording of the JVM's
+ * allocation events.
+ *
+ * The events are sampled (the JVM reports an allocation when it refills a thread-local allocation
+ * buffer), so the frames are run many times and the sites are ranked by the bytes attributed to
+ * them. Each site is the innermost frame in the app's package, followed by the frame that actually
+ * allocated if that lies outside the app (e.g., a collection growing).
+ */
+final class AllocationSiteRecorder {
+    private static final String[] EVENTS = {
+            "jdk.ObjectAllocationInNewTLAB",
+            "jdk.ObjectAllocationOutsideTLAB",
+            "jdk.ObjectAllocationSample"
+    };
+    private static final String APP_PACKAGE = "com.curtis.family.touchexplosion.";
+
+    private AllocationSiteRecorder() {}
+
+    /** Runs the frame `frames` times, starting at time t, and reports the top allocation sites. */
+    static List<String> record(FrameAllocationHarness.Frame frame, long t, long frameMs,
+                               int frames, int maxSites) {
+        try {
+            final Map<String, Long> bytes = new HashMap<>();
+            Path file = Files.createTempFile("frame-allocations", ".jfr");
+            try {
+                Recording recording = new Recording();
+                for (String event : EVENTS) {
+                    recording.enable(event).withStackTrace();
+                }
+                recording.start();
+                for (int i = 0; i < frames; ++i, t += frameMs) {
+                    frame.run(t);
+                }
+                recording.stop();
+                recording.dump(file);
+                recording.close();
+
+                long thread = Thread.currentThread().getId();
+                for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                    if (event.getThread() == null
+                            || event.getThread().getJavaThreadId() != thread) continue;
+                    String site = describeSite(event);
+                    if (site == null) continue;
+                    long size = event.hasField("weight") ? event.getLong("weight")
+                            : event.getLong("allocationSize");
+                    Long total = bytes.get(site);
+                    bytes.put(site, (total == null ? 0 : total) + size);
+                }
+            } finally {
+                Files.deleteIfExists(file);
+            }
+
+            List<String> sites = new ArrayList<>(bytes.keySet());
+            Collections.sort(sites, new Comparator<String>() {
+                @Override
+                public int compare(String a, String b) {
+                    return Long.compare(bytes.get(b), bytes.get(a));
+                }
+            });
+            List<String> report = new ArrayList<>();
+            for (int i = 0; i < sites.size() && i < maxSites; ++i) {
+                report.add(String.format("%10d bytes (sampled)  %s", bytes.get(sites.get(i)),
+                        sites.get(i)));
+            }
+            if (report.isEmpty()) {
+                report.add("no allocation samples were recorded; increase the frame count");
+            }
+            return report;
+        } catch (Exception | LinkageError e) {
+            return Collections.singletonList("allocation sites unavailable: " + e);
+        }
+    }
+
+    private static String describeSite(RecordedEvent event) {
+        RecordedStackTrace stack = event.getStackTrace();
+        if (stack == null || stack.getFrames().isEmpty()) return null;
+        List<RecordedFrame> frames = stack.getFrames();
+        RecordedFrame innermost = frames.get(0);
+        for (RecordedFrame frame : frames) {
+            String type = frame.getMethod().getType().getName();
+            if (!type.startsWith(APP_PACKAGE) || isHarness(type)) continue;
+            String site = format(frame) + " [" + event.getClass("objectClass").getName() + "]";
+            if (frame != innermost) {
+                site += " via " + format(innermost);
+            }
+            return site;
+        }
+        return null;
+    }
+
+    private static boolean isHarness(String type) {
+        return type.startsWith(FrameAllocationHarness.class.getName())
+                || type.startsWith(AllocationSiteRecorder.class.getName())
+                || type.endsWith("Test") || type.contains("Test$");
+    }
+
+    private static String format(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                + ":" + frame.getLineNumber();
+    }
+}
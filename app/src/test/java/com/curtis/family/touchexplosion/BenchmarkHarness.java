@@ -0,0 +1,84 @@
+package com.curtis.family.touchexplosion;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Times pieces of work headlessly, for the benchmarks among the unit tests.
+ *
+ * Timings depend on the machine and on whatever else it is doing, so the benchmarks never gate the
+ * build: they are skipped (see Assume) unless the tests are run with -Dbenchmark=true, and rather
+ * than asserting on their timings they write them to build/benchmarks, a text file per benchmark.
+ * Run them on their own, e.g.
+ *
+ *      ./gradlew test -Dbenchmark=true --tests '*.benchmark*'
+ */
+public class BenchmarkHarness {
+    /** A piece of work to time. */
+    public interface Task {
+        void run();
+    }
+
+    /** The timing of a task. */
+    public static class Result {
+        public final String name;
+        public final int iterations;
+        /** The time taken by the fastest round (in nanoseconds). */
+        public final long bestNs;
+
+        Result(String name, int iterations, long bestNs) {
+            this.name = name;
+            this.iterations = iterations;
+            this.bestNs = bestNs;
+        }
+
+        public double nsPerIteration() { return bestNs / (double)iterations; }
+
+        public String toString() {
+            return String.format("%s: %.1f ns per iteration", name, nsPerIteration());
+        }
+    }
+
+    private final File mDir;
+
+    /** Creates a harness; skips the calling test (see Assume) unless benchmarks were asked for. */
+    public BenchmarkHarness() {
+        assumeTrue("Benchmarks only run with -Dbenchmark=true", Boolean.getBoolean("benchmark"));
+        mDir = new File(System.getProperty("benchmark.dir", "build/benchmarks"));
+    }
+
+    /** Runs the task for `rounds` rounds of `iterations` runs each and reports the fastest round;
+     the first rounds warm up the JIT.
+     * @param name          The name used in the result.
+     * @param task          The task to time.
+     * @param rounds        The number of rounds.
+     * @param iterations    The number of runs of the task in each round.
+     */
+    public Result measure(String name, Task task, int rounds, int iterations) {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; ++r) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                task.run();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return new Result(name, iterations, best);
+    }
+
+    /** Writes the results to build/benchmarks/`benchmark`.txt, a line each, with each one's time
+     relative to the first's. */
+    public void write(String benchmark, Result... results) throws IOException {
+        mDir.mkdirs();
+        try (Writer out = new FileWriter(new File(mDir, benchmark + ".txt"))) {
+            for (Result result : results) {
+                out.write(String.format("%s (%.2fx)%n", result,
+                        result.nsPerIteration() / results[0].nsPerIteration()));
+            }
+        }
+    }
+}
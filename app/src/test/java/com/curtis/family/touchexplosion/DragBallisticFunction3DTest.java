@@ -0,0 +1,88 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.curtis.family.touchexplosion.functions.BallisticFunction3D;
+import com.curtis.family.touchexplosion.functions.DragBallisticFunction3D;
+
+import org.junit.Test;
+
+/**
+ * Verifies the closed form of the drag trajectory: it matches a fine numerical integration of
+ * f'' = g - k f', it tends to the drag-free trajectory as the drag vanishes, and it refuses a drag
+ * which isn't positive.
+ */
+public class DragBallisticFunction3DTest {
+    private static final long T0 = 1000;
+    private static final Vector3 P0 = new Vector3(0.25f, 0.5f, -2);
+    private static final Vector3 V0 = new Vector3(0.002f, 0.003f, -0.001f);
+
+    @Test
+    public void closedFormMatchesIntegration() {
+        float drag = 0.004f;
+        DragBallisticFunction3D function = new DragBallisticFunction3D(P0, V0, drag, T0);
+        assertEquals(DragBallisticFunction3D.GRAVITY / drag, function.getTerminalVelocity(), 0);
+        // Fourth-order Runge-Kutta in double precision, a hundred steps per millisecond.
+        final int steps = 100;
+        final double h = 1.0 / steps, g = DragBallisticFunction3D.GRAVITY;
+        double p[] = {P0.x, P0.y, P0.z}, v[] = {V0.x, V0.y, V0.z};
+        Vector3 position = new Vector3(), velocity = new Vector3();
+        for (long t = T0; t <= T0 + 2000; ++t) {
+            function.eval(t, position);
+            function.evalVelocity(t, velocity);
+            assertEquals("x at " + t, p[0], position.x, 1e-5);
+            assertEquals("y at " + t, p[1], position.y, 1e-5);
+            assertEquals("z at " + t, p[2], position.z, 1e-5);
+            assertEquals("vx at " + t, v[0], velocity.x, 1e-8);
+            assertEquals("vy at " + t, v[1], velocity.y, 1e-8);
+            assertEquals("vz at " + t, v[2], velocity.z, 1e-8);
+            for (int s = 0; s < steps; ++s) {
+                for (int i = 0; i < 3; ++i) {
+                    double a = i == 1 ? g : 0;
+                    double k1v = a - drag * v[i], k1p = v[i];
+                    double k2v = a - drag * (v[i] + h / 2 * k1v), k2p = v[i] + h / 2 * k1v;
+                    double k3v = a - drag * (v[i] + h / 2 * k2v), k3p = v[i] + h / 2 * k2v;
+                    double k4v = a - drag * (v[i] + h * k3v), k4p = v[i] + h * k3v;
+                    p[i] += h / 6 * (k1p + 2 * k2p + 2 * k3p + k4p);
+                    v[i] += h / 6 * (k1v + 2 * k2v + 2 * k3v + k4v);
+                }
+            }
+        }
+        // Long after the burst, the fall has settled at the terminal velocity.
+        function.evalVelocity(T0 + 5000, velocity);
+        assertEquals(function.getTerminalVelocity(), velocity.y, 1e-9);
+        assertEquals(0, velocity.x, 1e-9);
+    }
+
+    @Test
+    public void vanishingDragTendsToTheBallisticTrajectory() {
+        BallisticFunction3D ballistic = new BallisticFunction3D(P0, V0, T0);
+        Vector3 expected = new Vector3(), actual = new Vector3();
+        float previous = Float.MAX_VALUE;
+        for (float drag = 1e-3f; drag > 1e-6f; drag /= 10) {
+            DragBallisticFunction3D function = new DragBallisticFunction3D(P0, V0, drag, T0);
+            float error = 0;
+            for (long t = T0; t <= T0 + 500; ++t) {
+                ballistic.eval(t, expected);
+                function.eval(t, actual);
+                error = Math.max(error, expected.distance(actual));
+            }
+            // The difference is first order in the drag.
+            assertTrue("Drag " + drag + ": " + error, error < previous * 0.2f);
+            previous = error;
+        }
+        assertTrue(previous < 1e-3f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroDragIsRefused() {
+        new DragBallisticFunction3D(P0, V0, 0, T0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeDragIsRefused() {
+        DragBallisticFunction3D function = new DragBallisticFunction3D(P0, V0, 0.001f, T0);
+        function.set(0, 0, 0, 0, 0, 0, -0.001f, T0);
+    }
+}
@@ -0,0 +1,163 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Verifies the event heap: events fire in order of time (ties included), handlers may schedule
+ * more events while the due ones are fired, a full scheduler refuses events, and the pending events
+ * survive a write and read with their times moved.
+ */
+public class EventSchedulerTest {
+    private static final long T0 = 10000;
+
+    /** Records the events it is handed: type, fire time and first argument. */
+    private static class Recorder implements EventScheduler.Handler {
+        final ArrayList<Integer> mTypes = new ArrayList<>();
+        final ArrayList<Long> mTimes = new ArrayList<>();
+        final ArrayList<Float> mArgs = new ArrayList<>();
+
+        @Override
+        public void fire(int type, float[] args, int offset, long fireT) {
+            mTypes.add(type);
+            mTimes.add(fireT);
+            mArgs.add(args[offset]);
+        }
+    }
+
+    @Test
+    public void eventsFireInOrderOfTime() {
+        EventScheduler events = new EventScheduler(64, 1);
+        XorShiftRandom random = new XorShiftRandom(3);
+        // Many ties: 64 events over 8 distinct times.
+        for (int i = 0; i < 64; ++i) {
+            long fireT = T0 + 10 * (long)(random.nextFloat() * 8);
+            int slot = events.schedule(fireT, i);
+            events.setArg(slot, 0, fireT);
+        }
+        assertTrue(events.getNextFireTime() >= T0 && events.getNextFireTime() <= T0 + 70);
+        Recorder recorder = new Recorder();
+        assertEquals(0, events.fireDue(T0 - 1, recorder));
+        int fired = 0;
+        for (long t = T0; t <= T0 + 70; t += 5) {
+            fired += events.fireDue(t, recorder);
+            assertEquals(fired, recorder.mTimes.size());
+            assertTrue(events.getNextFireTime() > t);
+        }
+        assertEquals(64, fired);
+        assertEquals(0, events.size());
+        assertEquals(Long.MAX_VALUE, events.getNextFireTime());
+        boolean seen[] = new boolean[64];
+        for (int i = 0; i < 64; ++i) {
+            if (i > 0) assertTrue(recorder.mTimes.get(i - 1) <= recorder.mTimes.get(i));
+            // Each event fires once, with its own arguments.
+            assertEquals((float)recorder.mTimes.get(i), recorder.mArgs.get(i), 0);
+            assertTrue(!seen[recorder.mTypes.get(i)]);
+            seen[recorder.mTypes.get(i)] = true;
+        }
+    }
+
+    @Test
+    public void handlersMayScheduleWhileFiring() {
+        final EventScheduler events = new EventScheduler(4, 1);
+        final Recorder recorder = new Recorder();
+        EventScheduler.Handler chain = new EventScheduler.Handler() {
+            @Override
+            public void fire(int type, float[] args, int offset, long fireT) {
+                // Each event schedules its successor: the first two are due in the same call, the
+                // third isn't. The firing event's arguments stay intact meanwhile.
+                float arg = args[offset];
+                if (type < 3) {
+                    int slot = events.schedule(fireT + (type < 2 ? 5 : 100), type + 1);
+                    events.setArg(slot, 0, arg + 1);
+                }
+                recorder.fire(type, args, offset, fireT);
+                assertEquals(arg, args[offset], 0);
+            }
+        };
+        events.setArg(events.schedule(T0, 0), 0, 10);
+        events.setArg(events.schedule(T0 + 7, 9), 0, 90);
+        assertEquals(4, events.fireDue(T0 + 20, chain));
+        assertEquals(4, recorder.mTypes.size());
+        // The rescheduled events interleave with the one already pending.
+        assertEquals(Integer.valueOf(0), recorder.mTypes.get(0));
+        assertEquals(Integer.valueOf(1), recorder.mTypes.get(1));
+        assertEquals(Integer.valueOf(9), recorder.mTypes.get(2));
+        assertEquals(Integer.valueOf(2), recorder.mTypes.get(3));
+        assertEquals(12, recorder.mArgs.get(3), 0);
+        assertEquals(1, events.size());
+        assertEquals(T0 + 110, events.getNextFireTime());
+        assertEquals(1, events.fireDue(T0 + 110, chain));
+        assertEquals(Integer.valueOf(3), recorder.mTypes.get(4));
+        assertEquals(0, events.size());
+    }
+
+    @Test
+    public void fullSchedulerRefusesEvents() {
+        EventScheduler events = new EventScheduler(3, 2);
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(events.schedule(T0 + i, i) >= 0);
+        }
+        assertEquals(-1, events.schedule(T0, 3));
+        assertEquals(3, events.size());
+        // A fired event's slot is free again.
+        Recorder recorder = new Recorder();
+        assertEquals(1, events.fireDue(T0, recorder));
+        assertTrue(events.schedule(T0 + 5, 4) >= 0);
+        assertEquals(-1, events.schedule(T0 + 5, 5));
+        events.clear();
+        assertEquals(0, events.size());
+        assertTrue(events.schedule(T0, 6) >= 0);
+    }
+
+    @Test
+    public void stateSurvivesAWriteAndReadWithATimeShift() {
+        EventScheduler saved = new EventScheduler(16, 3);
+        for (int i = 0; i < 10; ++i) {
+            int slot = saved.schedule(T0 + 50 - 5 * i, i);
+            for (int a = 0; a < 3; ++a) {
+                saved.setArg(slot, a, i * 10 + a);
+            }
+        }
+        ByteBuffer state = ByteBuffer.allocate(saved.getStateSize());
+        saved.write(state);
+        assertEquals(0, state.remaining());
+        state.flip();
+
+        // Restored a minute later, into a scheduler which had events of its own.
+        final long shift = 60000;
+        EventScheduler restored = new EventScheduler(16, 3);
+        restored.schedule(T0, 99);
+        restored.read(state, shift);
+        assertEquals(0, state.remaining());
+        assertEquals(10, restored.size());
+        assertEquals(T0 + 5 + shift, restored.getNextFireTime());
+
+        final ArrayList<Integer> types = new ArrayList<>();
+        assertEquals(10, restored.fireDue(T0 + 50 + shift, new EventScheduler.Handler() {
+            @Override
+            public void fire(int type, float[] args, int offset, long fireT) {
+                assertEquals(T0 + 50 - 5 * type + shift, fireT);
+                for (int a = 0; a < 3; ++a) {
+                    assertEquals(type * 10 + a, args[offset + a], 0);
+                }
+                types.add(type);
+            }
+        }));
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(Integer.valueOf(9 - i), types.get(i));
+        }
+
+        // A smaller scheduler keeps as many events as it can hold, and skips the rest.
+        state.rewind();
+        EventScheduler small = new EventScheduler(4, 3);
+        small.read(state, 0);
+        assertEquals(0, state.remaining());
+        assertEquals(4, small.size());
+    }
+}
@@ -0,0 +1,99 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * Measures the table trigonometry's error against Math's over four turns either way, in each of its
+ * units, and at large angles. Also benchmarks it against Math.sin() and Math.cos() (see
+ * BenchmarkHarness).
+ */
+public class FastTrigTest {
+    /** The samples per turn: well off the table's steps, so the samples fall all over them. */
+    private static final int SAMPLES = 100003;
+    private static final int TURNS = 4;
+
+    /** Receives the benchmarks' results, so the JIT can't drop their work. */
+    private float mSink;
+
+    @Test
+    public void errorIsWithinTheBoundOverTheFullRange() {
+        float cosSin[] = new float[2];
+        double worst = 0;
+        for (int i = -SAMPLES * TURNS; i <= SAMPLES * TURNS; ++i) {
+            float turns = i / (float)SAMPLES;
+            double exact = 2 * Math.PI * turns;
+            worst = Math.max(worst, Math.abs(FastTrig.sinTurns(turns) - Math.sin(exact)));
+            worst = Math.max(worst, Math.abs(FastTrig.cosTurns(turns) - Math.cos(exact)));
+            FastTrig.cosSinTurns(turns, cosSin, 0);
+            assertEquals(FastTrig.cosTurns(turns), cosSin[0], 0.0f);
+            assertEquals(FastTrig.sinTurns(turns), cosSin[1], 0.0f);
+
+            float radians = (float)exact;
+            worst = Math.max(worst, Math.abs(FastTrig.sin(radians) - Math.sin(radians)));
+            worst = Math.max(worst, Math.abs(FastTrig.cos(radians) - Math.cos(radians)));
+
+            float degrees = turns * 360;
+            FastTrig.cosSinDegrees(degrees, cosSin, 0);
+            double theta = Math.toRadians(degrees);
+            worst = Math.max(worst, Math.abs(cosSin[0] - Math.cos(theta)));
+            worst = Math.max(worst, Math.abs(cosSin[1] - Math.sin(theta)));
+        }
+        // Angles many turns out (e.g., a long-running spin) are just as accurate.
+        for (int i = 0; i < SAMPLES; ++i) {
+            float radians = (i - SAMPLES / 2) * 0.19f;
+            worst = Math.max(worst, Math.abs(FastTrig.sin(radians) - Math.sin(radians)));
+            worst = Math.max(worst, Math.abs(FastTrig.cos(radians) - Math.cos(radians)));
+        }
+        assertTrue("Largest error " + worst, worst <= FastTrig.MAX_ERROR);
+    }
+
+    @Test
+    public void exactAtTheQuadrants() {
+        for (int q = -8; q <= 8; ++q) {
+            float turns = q * 0.25f;
+            assertEquals(Math.round(Math.sin(2 * Math.PI * turns)), FastTrig.sinTurns(turns), 0.0f);
+            assertEquals(Math.round(Math.cos(2 * Math.PI * turns)), FastTrig.cosTurns(turns), 0.0f);
+        }
+    }
+
+    /** Times the cosine and sine of 4096 angles (in radians, up to 100 either way) from Math and
+     from the table. */
+    @Test
+    public void benchmarkAgainstMath() throws IOException {
+        BenchmarkHarness harness = new BenchmarkHarness();
+        final int count = 4096;
+        final float angles[] = new float[count];
+        XorShiftRandom random = new XorShiftRandom(3);
+        for (int i = 0; i < count; ++i) angles[i] = (random.nextFloat() * 2 - 1) * 100;
+        final float cosSin[] = new float[2];
+        BenchmarkHarness.Result math = harness.measure("Math.cos() + Math.sin(), " + count +
+                " angles", new BenchmarkHarness.Task() {
+            @Override
+            public void run() {
+                float sum = 0;
+                for (int i = 0; i < count; ++i) {
+                    sum += (float)Math.cos(angles[i]) + (float)Math.sin(angles[i]);
+                }
+                mSink += sum;
+            }
+        }, 10, 100);
+        BenchmarkHarness.Result table = harness.measure("FastTrig.cosSin(), " + count +
+                " angles", new BenchmarkHarness.Task() {
+            @Override
+            public void run() {
+                float sum = 0;
+                for (int i = 0; i < count; ++i) {
+                    FastTrig.cosSin(angles[i], cosSin, 0);
+                    sum += cosSin[0] + cosSin[1];
+                }
+                mSink += sum;
+            }
+        }, 10, 100);
+        harness.write("FastTrig", math, table);
+    }
+}
@@ -0,0 +1,47 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Verifies that releasing a scene stops the threads of the feeding pool's water, however many
+ * times the pool was placed.
+ */
+public class FeedingPoolSystemTest {
+    /** The live threads which step water surfaces. */
+    private static Set<Thread> getWaterThreads() {
+        Set<Thread> threads = new HashSet<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("water-") && thread.isAlive()) threads.add(thread);
+        }
+        return threads;
+    }
+
+    @Test
+    public void releaseStopsTheWaterThreads() throws InterruptedException {
+        Set<Thread> before = getWaterThreads();
+        Scene scene = new Scene();
+        scene.add(new FeedingPoolSystem(1, 3), 300, 3.0f);
+        // Each new view places the pool, and replaces its water.
+        for (int i = 0; i < 3; ++i) {
+            float ratio = 1 + i * 0.25f;
+            scene.setFrustum(new Frustum(new Vector3(0, 0, 3), new Vector3(0, 0, -1),
+                    -ratio, ratio, 0.5f, 7.0f, -1, 1));
+        }
+        Set<Thread> started = getWaterThreads();
+        started.removeAll(before);
+        assertTrue(started.size() >= 2);
+
+        scene.release();
+        for (Thread thread : started) {
+            thread.join(5000);
+        }
+        started.retainAll(getWaterThreads());
+        assertEquals(0, started.size());
+    }
+}
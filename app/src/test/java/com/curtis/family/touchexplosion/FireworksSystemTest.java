@@ -0,0 +1,228 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Verifies the chunked update of the fireworks: it draws the same frames on any number of threads,
+ * and only a system large enough to update in parallel starts threads, while steady tapping at the
+ * app's budget is enough to use them. Also verifies the trails of the rockets and the fast sparks,
+ * and times a frame on one thread and on more (see BenchmarkHarness).
+ *
+ * The large frames are loaded as a stored state (see FireworksSystem.writeState()).
+ */
+public class FireworksSystemTest {
+    private static final long T0 = 10000;
+    private static final int COUNT = 6000;
+
+    private final Frustum mFrustum = new Frustum(new Vector3(0, 0, 3), new Vector3(0, 0, -1),
+            -1, 1, 0.5f, 7.0f, -1, 1);
+
+    /** The state of a system with the given number of sparks, born at T0 inside the frustum. */
+    private static ByteBuffer makeState(int count, long seed) {
+        XorShiftRandom random = new XorShiftRandom(seed);
+        ByteBuffer state = ByteBuffer.allocate(4 + 8 + 4 + 8 + count * ((3 + 3 + 4 + 3) * 4 + 16)
+                + 4);
+        state.putInt(count).putLong(-1).putInt(-1).putLong(seed);
+        // Start positions, then velocities: some sparks leave the frustum within a few seconds.
+        for (int i = 0; i < count * 3; ++i) state.putFloat(random.nextFloat() - 0.5f);
+        for (int i = 0; i < count * 3; ++i) state.putFloat((random.nextFloat() - 0.5f) * 0.002f);
+        for (int i = 0; i < count * 4; ++i) state.putFloat(random.nextFloat());
+        for (int i = 0; i < count; ++i) {
+            state.putFloat(random.nextFloat() * 360).putFloat(0.1f).putFloat(1);
+        }
+        for (int i = 0; i < count; ++i) state.putLong(T0);
+        for (int i = 0; i < count; ++i) state.putLong(T0 + 200 + random.nextInt(5000));
+        // No pending events.
+        state.putInt(0);
+        state.flip();
+        return state;
+    }
+
+    /** Creates a system on the given number of threads, loaded with the given state. */
+    private FireworksSystem makeSystem(Scene scene, int threads, ByteBuffer state) {
+        FireworksSystem system = new FireworksSystem(1, threads);
+        scene.add(system, COUNT, 4.0f);
+        scene.setFrustum(mFrustum);
+        system.readState(state.duplicate(), 0);
+        return system;
+    }
+
+    private static SpriteBatch getBatch(Scene scene) {
+        return scene.getBatch(scene.getMaterial(Material.SHADE_TINT, R.raw.star, 0), 0);
+    }
+
+    @Test
+    public void parallelUpdateMatchesSerial() {
+        ByteBuffer state = makeState(COUNT, 11);
+        Scene serialScene = new Scene(), parallelScene = new Scene();
+        FireworksSystem serial = makeSystem(serialScene, 1, state);
+        FireworksSystem parallel = makeSystem(parallelScene, 4, state);
+        SpriteBatch serialBatch = getBatch(serialScene), parallelBatch = getBatch(parallelScene);
+        assertEquals(COUNT, serial.getParticleCount());
+        try {
+            for (long t = T0; t < T0 + 6000; t += 97) {
+                serial.draw(t);
+                parallel.draw(t);
+                assertEquals(serial.getParticleCount(), parallel.getParticleCount());
+                int count = serialBatch.getCount();
+                assertEquals(count, parallelBatch.getCount());
+                float expected[] = serialBatch.getData(), actual[] = parallelBatch.getData();
+                for (int f = 0; f < count * serialBatch.getFloatsPerSprite(); ++f) {
+                    assertEquals(expected[f], actual[f], 0.0f);
+                }
+                serialBatch.clear();
+                parallelBatch.clear();
+            }
+            // The sparks have died or left the frustum, over frames on both sides of the
+            // parallel threshold.
+            assertEquals(0, serial.getParticleCount());
+        } finally {
+            serial.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    /** The scene's ribbon batch, which holds the trails. */
+    private static SpriteBatch getRibbons(Scene scene) {
+        return scene.getBatch(scene.getMaterial(Material.SHADE_RIBBON, 0, 0), 0);
+    }
+
+    @Test
+    public void rocketLeavesATrail() {
+        Scene scene = new Scene();
+        FireworksSystem system = new FireworksSystem(5, 1);
+        scene.add(system, 1000, 4.0f);
+        scene.setFrustum(mFrustum);
+        SpriteBatch ribbons = getRibbons(scene);
+        try {
+            scene.reportTouch(0.2f, 0.3f, T0);
+            int quads = 0;
+            // The rocket's trail grows from its launch to its full length, and keeps it.
+            for (long t = T0; ; t += 16) {
+                scene.update(t);
+                if (system.getParticleCount() != 1) break;
+                assertTrue(ribbons.getCount() >= quads);
+                quads = ribbons.getCount();
+                for (int b = 0; b < scene.getBatchCount(); ++b) scene.getBatchAt(b).clear();
+            }
+            assertEquals(7, quads);
+        } finally {
+            system.shutdown();
+        }
+    }
+
+    @Test
+    public void onlyFastSparksLeaveTrails() {
+        // Two sparks flying sideways from the middle of the view: one slow, one fast.
+        ByteBuffer state = ByteBuffer.allocate(4 + 8 + 4 + 8 + 2 * ((3 + 3 + 4 + 3) * 4 + 16)
+                + 4);
+        state.putInt(2).putLong(-1).putInt(-1).putLong(1);
+        state.putFloat(0).putFloat(0).putFloat(0).putFloat(0).putFloat(0).putFloat(0);
+        state.putFloat(0.001f).putFloat(0).putFloat(0).putFloat(-0.003f).putFloat(0).putFloat(0);
+        for (int i = 0; i < 8; ++i) state.putFloat(1);
+        state.putFloat(0).putFloat(0.1f).putFloat(1).putFloat(0).putFloat(0.1f).putFloat(1);
+        state.putLong(T0).putLong(T0).putLong(T0 + 1000).putLong(T0 + 1000);
+        state.putInt(0);
+        state.flip();
+        Scene scene = new Scene();
+        FireworksSystem system = makeSystem(scene, 1, state);
+        SpriteBatch ribbons = getRibbons(scene);
+        try {
+            // Six positions of the fast spark's path -- the birth and every 20 ms after it.
+            system.draw(T0 + 100);
+            assertEquals(2, system.getParticleCount());
+            assertEquals(5, ribbons.getCount());
+            // The trail is the fast spark's, which flies to the left.
+            float data[] = ribbons.getData();
+            for (int q = 0; q < 5; ++q) {
+                float x = 0;
+                for (int v = 0; v < 4; ++v) {
+                    x += data[q * ribbons.getFloatsPerSprite() + v * SpriteBatch.FLOATS_PER_VERTEX];
+                }
+                assertTrue(x < 0);
+            }
+        } finally {
+            system.shutdown();
+        }
+    }
+
+    @Test
+    public void smallSystemStartsNoThreads() {
+        Scene scene = new Scene();
+        FireworksSystem small = new FireworksSystem(1, 4);
+        FireworksSystem large = new FireworksSystem(1, 4);
+        scene.add(small, FireworksSystem.PARALLEL_MIN - 1, 4.0f);
+        scene.add(large, FireworksSystem.PARALLEL_MIN, 4.0f);
+        try {
+            assertEquals(1, small.getThreadCount());
+            assertEquals(4, large.getThreadCount());
+        } finally {
+            small.shutdown();
+            large.shutdown();
+        }
+    }
+
+    @Test
+    public void tapStormUpdatesInParallel() {
+        // The app's budget, and a tap as often as rockets can be launched.
+        Scene scene = new Scene();
+        FireworksSystem system = new FireworksSystem(3, 4);
+        scene.add(system, 1000, 2.0f);
+        scene.setFrustum(mFrustum);
+        SpriteBatch batch = getBatch(scene);
+        int most = 0;
+        try {
+            assertEquals(4, system.getThreadCount());
+            for (long t = T0; t < T0 + 5000; t += 16) {
+                if ((t - T0) % 160 == 0) {
+                    system.reportTouch((t % 7) / 7.0f - 0.5f, 0.2f, mFrustum, t);
+                }
+                system.draw(t);
+                most = Math.max(most, system.getParticleCount());
+                batch.clear();
+            }
+        } finally {
+            system.release();
+        }
+        assertTrue(most >= FireworksSystem.PARALLEL_MIN);
+    }
+
+    /** Times a frame of sparks on one thread and on more, for a storm's worth of sparks and for
+     COUNT; every frame is at the same time, so every frame updates all of the sparks. */
+    @Test
+    public void benchmarkThreads() throws IOException {
+        BenchmarkHarness harness = new BenchmarkHarness();
+        int counts[] = {600, COUNT};
+        int threads[] = {1, 2, 4};
+        BenchmarkHarness.Result results[] = new BenchmarkHarness.Result[counts.length
+                * threads.length];
+        for (int c = 0; c < counts.length; ++c) {
+            ByteBuffer state = makeState(counts[c], 12);
+            for (int n = 0; n < threads.length; ++n) {
+                Scene scene = new Scene();
+                final FireworksSystem system = makeSystem(scene, threads[n], state);
+                final SpriteBatch batch = getBatch(scene);
+                try {
+                    results[c * threads.length + n] = harness.measure(
+                            String.format("%d sparks, %d threads", counts[c], threads[n]),
+                            new BenchmarkHarness.Task() {
+                                @Override
+                                public void run() {
+                                    system.draw(T0 + 100);
+                                    batch.clear();
+                                }
+                            }, 10, 20);
+                } finally {
+                    system.shutdown();
+                }
+            }
+        }
+        harness.write("FireworksSystem", results);
+    }
+}
@@ -0,0 +1,146 @@
+package com.curtis.family.touchexplosion;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs a particle system's steady-state frame loop headlessly and measures the bytes the loop
+ * allocates on the calling thread.
+ *
+ * The GL calls made by the systems are no-ops in the unit test environment (see
+ * testOptions.unitTests.returnDefaultValues), so what is measured is the system's own per-frame
+ * work. If a frame loop allocates, the frames are re-run under an allocation recording to report
+ * the call sites responsible.
+ *
+ * The counting relies on HotSpot's com.sun.management.ThreadMXBean, and the call sites on its
+ * flight recorder (jdk.jfr, JDK 11 or later). On a JVM without the former the harness can't be
+ * created and the tests using it are skipped; without the latter a failure reports no sites.
+ */
+public class FrameAllocationHarness {
+    /** A single frame of work, evaluated at the given time stamp. */
+    public interface Frame {
+        void run(long globalT);
+    }
+
+    /** The outcome of a measurement. */
+    public static class Report {
+        public final String name;
+        public final int frames;
+        public final long bytes;
+        public final List<String> sites;
+
+        Report(String name, int frames, long bytes, List<String> sites) {
+            this.name = name;
+            this.frames = frames;
+            this.bytes = bytes;
+            this.sites = sites;
+        }
+
+        public double bytesPerFrame() { return bytes / (double)frames; }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(name).append(": ").append(bytes).append(" bytes over ").append(frames)
+                    .append(" frames (").append(String.format("%.1f", bytesPerFrame()))
+                    .append(" bytes/frame)");
+            for (String site : sites) {
+                sb.append("\n    ").append(site);
+            }
+            return sb.toString();
+        }
+    }
+
+    /** The number of windows measured; the most allocation in any window is reported. */
+    private static final int WINDOWS = 3;
+    /** The number of frames re-run to sample the allocation sites of a failing loop. */
+    private static final int SITE_FRAMES = 20000;
+    /** The number of sites reported. */
+    private static final int MAX_SITES = 10;
+
+    private final com.sun.management.ThreadMXBean mBean;
+    /** The bytes allocated by reading the allocation counter itself. */
+    private final long mOverhead;
+
+    /** Creates a harness; skips the calling test (see Assume) if the JVM can't count the bytes a
+     thread allocates. */
+    public FrameAllocationHarness() {
+        assumeTrue("The JVM does not count the bytes each thread allocates", isSupported());
+        mBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        mBean.setThreadAllocatedMemoryEnabled(true);
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 16; ++i) {
+            long before = allocatedBytes();
+            long after = allocatedBytes();
+            overhead = Math.min(overhead, after - before);
+        }
+        mOverhead = overhead;
+    }
+
+    /** Reports if the running JVM counts the bytes each thread allocates. */
+    public static boolean isSupported() {
+        Object bean = ManagementFactory.getThreadMXBean();
+        try {
+            return Class.forName("com.sun.management.ThreadMXBean").isInstance(bean)
+                    && ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported();
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /** Creates a frame which draws the given scene with the given MVP matrix. */
+    public static Frame drawFrame(final Scene scene, final float[] mvpMatrix) {
+        return new Frame() {
+            @Override
+            public void run(long globalT) {
+                scene.drawGL(globalT, mvpMatrix);
+            }
+        };
+    }
+
+    /** Runs `warmup` frames and then measures the allocations of the following windows of `frames`
+     frames each.
+     * @param name      The name used in the report.
+     * @param frame     The frame to run.
+     * @param t0        The time stamp of the first frame (in milliseconds).
+     * @param frameMs   The time which elapses between frames (in milliseconds).
+     * @param warmup    The number of frames to run before measuring.
+     * @param frames    The number of frames in each measured window.
+     */
+    public Report measure(String name, Frame frame, long t0, long frameMs, int warmup, int frames) {
+        long t = t0;
+        for (int i = 0; i < warmup; ++i, t += frameMs) {
+            frame.run(t);
+        }
+        // Every window counts: an allocation made only every so many frames (e.g., a collection
+        // growing, or a cache refilled) may fall in just one of them.
+        long bytes = 0;
+        for (int w = 0; w < WINDOWS; ++w) {
+            long before = allocatedBytes();
+            for (int i = 0; i < frames; ++i, t += frameMs) {
+                frame.run(t);
+            }
+            bytes = Math.max(bytes, allocatedBytes() - before - mOverhead);
+        }
+
+        List<String> sites = Collections.emptyList();
+        if (bytes > 0) {
+            sites = AllocationSiteRecorder.record(frame, t, frameMs, SITE_FRAMES, MAX_SITES);
+        }
+        return new Report(name, frames, bytes, sites);
+    }
+
+    /** Fails, listing the allocation sites, if the report shows any allocation. */
+    public static void assertNoAllocation(Report report) {
+        if (report.bytes > 0) {
+            fail("Frame loop allocates: " + report);
+        }
+    }
+
+    private long allocatedBytes() {
+        return mBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,192 @@
+package com.curtis.family.touchexplosion;
+
+import com.curtis.family.touchexplosion.functions.HermitePathFunction3D;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Verifies that the particle systems' steady-state frame loops do not create garbage.
+ */
+public class FrameAllocationTest {
+    private static final long T0 = 10000;
+    private static final long FRAME_MS = 16;
+
+    private FrameAllocationHarness mHarness;
+    private Frustum mFrustum;
+    private float[] mMVPMatrix;
+
+    @Before
+    public void setUp() {
+        mHarness = new FrameAllocationHarness();
+        mFrustum = new Frustum(new Vector3(0, 0, 3), new Vector3(0, 0, -1),
+                -1, 1, 0.5f, 7.0f, -1, 1);
+        mMVPMatrix = new float[16];
+    }
+
+    /** Creates a scene holding only the given system. */
+    private Scene makeScene(ParticleSystem system) {
+        Scene scene = new Scene();
+        scene.add(system, 2000, 4.0f);
+        scene.setFrustum(mFrustum);
+        return scene;
+    }
+
+    @Test
+    public void simpleParticleSystemFrameDoesNotAllocate() {
+        SimpleParticleSystem system = new SimpleParticleSystem();
+        Scene scene = makeScene(system);
+        // A short drag across the top of the screen; the particles fall through the frustum while
+        // the frames are measured.
+        long t = T0;
+        for (int i = 0; i < 10; ++i, t += 101) {
+            system.reportTouch(-0.5f + i * 0.1f, 0.9f, mFrustum, t);
+        }
+        FrameAllocationHarness.Report report = mHarness.measure("SimpleParticleSystem",
+                FrameAllocationHarness.drawFrame(scene, mMVPMatrix), t, 2, 50, 250);
+        FrameAllocationHarness.assertNoAllocation(report);
+    }
+
+    @Test
+    public void flowerSystemFrameDoesNotAllocate() {
+        FlowerSystem system = new FlowerSystem();
+        Scene scene = makeScene(system);
+        // Bursts along the top of the screen; the flowers drift down while the frames are measured.
+        long t = T0;
+        for (int i = 0; i < 6; ++i, t += 251) {
+            system.reportTouch(-0.5f + i * 0.2f, 0.6f, mFrustum, t);
+        }
+        FrameAllocationHarness.Report report = mHarness.measure("FlowerSystem",
+                FrameAllocationHarness.drawFrame(scene, mMVPMatrix), t, FRAME_MS, 20, 100);
+        FrameAllocationHarness.assertNoAllocation(report);
+    }
+
+    @Test
+    public void fireworksSystemFrameDoesNotAllocate() {
+        final FireworksSystem system = new FireworksSystem();
+        Scene scene = makeScene(system);
+        // A rocket is launched every 200 ms, so rockets, bursts and their second shells overlap
+        // throughout the measurement.
+        final FrameAllocationHarness.Frame draw = FrameAllocationHarness.drawFrame(scene, mMVPMatrix);
+        FrameAllocationHarness.Frame frame = new FrameAllocationHarness.Frame() {
+            @Override
+            public void run(long globalT) {
+                long elapsed = globalT - T0;
+                if (elapsed % 200 < FRAME_MS) {
+                    float x = (elapsed / 200) % 2 == 0 ? 0.5f : -0.5f;
+                    system.reportTouch(x, 0.5f, mFrustum, globalT);
+                }
+                draw.run(globalT);
+            }
+        };
+        FrameAllocationHarness.Report report = mHarness.measure("FireworksSystem",
+                frame, T0, FRAME_MS, 200, 250);
+        FrameAllocationHarness.assertNoAllocation(report);
+    }
+
+    @Test
+    public void feedingPoolSystemFrameDoesNotAllocate() {
+        final FeedingPoolSystem system = new FeedingPoolSystem();
+        Scene scene = makeScene(system);
+        // Food is sprinkled across the pool every half second, so the water never calms.
+        final FrameAllocationHarness.Frame draw = FrameAllocationHarness.drawFrame(scene, mMVPMatrix);
+        FrameAllocationHarness.Frame frame = new FrameAllocationHarness.Frame() {
+            @Override
+            public void run(long globalT) {
+                long elapsed = globalT - T0;
+                if (elapsed % 500 < FRAME_MS) {
+                    float x = (elapsed / 500) % 2 == 0 ? 0.4f : -0.4f;
+                    system.reportTouch(x, 0.2f, mFrustum, globalT);
+                }
+                draw.run(globalT);
+            }
+        };
+        FrameAllocationHarness.Report report = mHarness.measure("FeedingPoolSystem",
+                frame, T0, FRAME_MS, 100, 250);
+        FrameAllocationHarness.assertNoAllocation(report);
+    }
+
+    @Test
+    public void bubbleSystemFrameDoesNotAllocate() {
+        final BubbleSystem system = new BubbleSystem(7);
+        Scene scene = makeScene(system);
+        // A finger sweeps back and forth along the bottom of the screen, releasing bubbles and
+        // pulling them towards it, so every force field is active throughout.
+        final FrameAllocationHarness.Frame draw = FrameAllocationHarness.drawFrame(scene, mMVPMatrix);
+        FrameAllocationHarness.Frame frame = new FrameAllocationHarness.Frame() {
+            @Override
+            public void run(long globalT) {
+                long elapsed = globalT - T0;
+                float phase = (elapsed % 2000) / 1000.0f;
+                float x = phase < 1 ? phase * 2 - 1 : 3 - phase * 2;
+                system.reportTouch(x * 0.8f, -0.7f, mFrustum, globalT);
+                draw.run(globalT);
+            }
+        };
+        FrameAllocationHarness.Report report = mHarness.measure("BubbleSystem",
+                frame, T0, FRAME_MS, 100, 250);
+        FrameAllocationHarness.assertNoAllocation(report);
+    }
+
+    @Test
+    public void tinkerBellSystemFrameDoesNotAllocate() {
+        final TinkerBellSystem system = new TinkerBellSystem(T0);
+        Scene scene = makeScene(system);
+        // She is sent across the screen every second, so she never idles and keeps emitting.
+        final FrameAllocationHarness.Frame draw = FrameAllocationHarness.drawFrame(scene, mMVPMatrix);
+        FrameAllocationHarness.Frame frame = new FrameAllocationHarness.Frame() {
+            @Override
+            public void run(long globalT) {
+                long elapsed = globalT - T0;
+                if (elapsed % 1000 < FRAME_MS) {
+                    float x = (elapsed / 1000) % 2 == 0 ? 0.5f : -0.5f;
+                    system.reportTouch(x, 0.5f, mFrustum, globalT);
+                }
+                draw.run(globalT);
+            }
+        };
+        // Warm up for longer than the longest spark lifetime so the spark pool is in steady state.
+        FrameAllocationHarness.Report report = mHarness.measure("TinkerBellSystem",
+                frame, T0, FRAME_MS, 200, 500);
+        FrameAllocationHarness.assertNoAllocation(report);
+    }
+
+    @Test
+    public void dragPathDoesNotAllocate() {
+        final HermitePathFunction3D path = new HermitePathFunction3D(8, Vector3.ZERO, T0);
+        final Vector3 targets[] = {new Vector3(0.5f, 0, 0), new Vector3(-0.25f, 0.75f, 0.1f),
+                new Vector3(0, -0.5f, -0.2f)};
+        final Vector3 p = new Vector3();
+        FrameAllocationHarness.Frame frame = new FrameAllocationHarness.Frame() {
+            @Override
+            public void run(long globalT) {
+                // Extended every 200 ms, so its ring wraps, and evaluated every frame.
+                long elapsed = globalT - T0;
+                if (elapsed % 200 == 0) {
+                    path.append(targets[(int)(elapsed / 200 % targets.length)], globalT, 0.002f);
+                }
+                path.eval(globalT, p);
+                path.deriv(globalT, p);
+            }
+        };
+        FrameAllocationHarness.Report report = mHarness.measure("HermitePathFunction3D",
+                frame, T0, 1, 2000, 5000);
+        FrameAllocationHarness.assertNoAllocation(report);
+    }
+
+    @Test
+    public void sceneFrameDoesNotAllocate() {
+        Scene scene = new Scene();
+        SimpleParticleSystem simple = new SimpleParticleSystem();
+        scene.add(simple, 2000, 4.0f);
+        scene.add(new TinkerBellSystem(T0), 300, 2.0f);
+        scene.setFrustum(mFrustum);
+        long t = T0;
+        for (int i = 0; i < 10; ++i, t += 101) {
+            scene.reportTouch(-0.5f + i * 0.1f, 0.9f, t);
+        }
+        FrameAllocationHarness.Report report = mHarness.measure("Scene",
+                FrameAllocationHarness.drawFrame(scene, mMVPMatrix), t, 2, 200, 250);
+        FrameAllocationHarness.assertNoAllocation(report);
+    }
+}
@@ -0,0 +1,125 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Compares frames from the SoftwareRasterizer with golden images (src/test/resources/golden).
+ *
+ * When a frame does not match, the frame and an image of the differences are written to
+ * build/golden-diffs: differing pixels are red (brighter for larger differences) over a dimmed copy
+ * of the golden image. Run the tests with -Dgolden.record=true to (re-)write the golden images
+ * instead of comparing against them.
+ */
+public class GoldenImages {
+    private final File mGoldenDir;
+    private final File mDiffDir;
+    private final boolean mRecord;
+
+    /** The outcome of comparing two images. */
+    public static class Diff {
+        /** The number of pixels with a channel differing by more than the tolerance. */
+        public final int differing;
+        /** The largest difference in any channel (0 - 255). */
+        public final int maxDelta;
+        /** The image of the differences (ARGB). */
+        public final int[] image;
+
+        Diff(int differing, int maxDelta, int[] image) {
+            this.differing = differing;
+            this.maxDelta = maxDelta;
+            this.image = image;
+        }
+    }
+
+    public GoldenImages() {
+        mGoldenDir = new File(System.getProperty("golden.dir", "src/test/resources/golden"));
+        mDiffDir = new File(System.getProperty("golden.diffs", "build/golden-diffs"));
+        mRecord = Boolean.getBoolean("golden.record");
+    }
+
+    /** Asserts that the rasterizer's frame matches the named golden image.
+     * @param name          The name of the golden image (without extension).
+     * @param rasterizer    The rasterizer holding the frame.
+     * @param tolerance     The largest difference (0 - 255) of a channel which still matches.
+     * @param maxDiffering  The number of pixels which may exceed the tolerance.
+     */
+    public void assertMatches(String name, SoftwareRasterizer rasterizer, int tolerance,
+                              int maxDiffering) throws IOException {
+        int width = rasterizer.getWidth();
+        int height = rasterizer.getHeight();
+        int[] actual = rasterizer.getPixels();
+        File golden = new File(mGoldenDir, name + ".png");
+        if (mRecord) {
+            mGoldenDir.mkdirs();
+            write(golden, actual, width, height);
+            return;
+        }
+        if (!golden.exists()) {
+            fail("No golden image " + golden + "; run with -Dgolden.record=true to create it");
+        }
+        BufferedImage image = ImageIO.read(golden);
+        assertEquals(name + " width", image.getWidth(), width);
+        assertEquals(name + " height", image.getHeight(), height);
+        int[] expected = image.getRGB(0, 0, width, height, null, 0, width);
+        Diff diff = diff(expected, actual, tolerance);
+        if (diff.differing > maxDiffering) {
+            mDiffDir.mkdirs();
+            File actualFile = new File(mDiffDir, name + "-actual.png");
+            File diffFile = new File(mDiffDir, name + "-diff.png");
+            write(actualFile, actual, width, height);
+            write(diffFile, diff.image, width, height);
+            fail(name + ": " + diff.differing + " pixels differ by more than " + tolerance +
+                    " (max " + diff.maxDelta + "); see " + actualFile + " and " + diffFile);
+        }
+    }
+
+    /** Compares two images of the same size, channel by channel. */
+    public static Diff diff(int[] expected, int[] actual, int tolerance) {
+        int[] image = new int[expected.length];
+        int differing = 0;
+        int maxDelta = 0;
+        for (int i = 0; i < expected.length; ++i) {
+            int delta = 0;
+            for (int shift = 0; shift < 32; shift += 8) {
+                int e = (expected[i] >>> shift) & 0xff;
+                int a = (actual[i] >>> shift) & 0xff;
+                delta = Math.max(delta, Math.abs(e - a));
+            }
+            maxDelta = Math.max(maxDelta, delta);
+            if (delta > tolerance) {
+                ++differing;
+                image[i] = 0xff000000 | (Math.min(255, 128 + delta) << 16);
+            } else {
+                // A dimmed, opaque copy of the expected pixel.
+                int c = expected[i];
+                image[i] = 0xff000000 | ((c >> 2) & 0x3f3f3f);
+            }
+        }
+        return new Diff(differing, maxDelta, image);
+    }
+
+    /** Sets a texture of the rasterizer from a PNG file. */
+    public static void loadTexture(SoftwareRasterizer rasterizer, int resource, File png)
+            throws IOException {
+        BufferedImage image = ImageIO.read(png);
+        int width = image.getWidth();
+        int height = image.getHeight();
+        rasterizer.setTexture(resource, width, height,
+                image.getRGB(0, 0, width, height, null, 0, width));
+    }
+
+    private static void write(File file, int[] argb, int width, int height) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            PngWriter.write(out, argb, width, height);
+        }
+    }
+}
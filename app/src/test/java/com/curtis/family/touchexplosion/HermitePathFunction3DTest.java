@@ -0,0 +1,133 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.curtis.family.touchexplosion.functions.HermitePathFunction3D;
+
+import org.junit.Test;
+
+/**
+ * Verifies the drag path: it passes through its points, its velocity has no jumps at the knots
+ * (nor when the path is extended in flight), and its ring of knots wraps.
+ */
+public class HermitePathFunction3DTest {
+    private static final long T0 = 1000;
+    private static final float SPEED = 0.002f;
+    private static final Vector3 POINTS[] = {
+            new Vector3(0.5f, 0, 0), new Vector3(0.5f, 0.5f, 0), new Vector3(-0.25f, 0.75f, 0.1f),
+            new Vector3(-0.5f, 0, 0), new Vector3(0, -0.5f, -0.2f)};
+
+    /** Builds a path through POINTS, appended all at once at T0.
+     * @param arrivals  Receives the time each point is reached.
+     */
+    private static HermitePathFunction3D makePath(int capacity, long[] arrivals) {
+        HermitePathFunction3D path = new HermitePathFunction3D(capacity, Vector3.ZERO, T0);
+        for (int i = 0; i < POINTS.length; ++i) {
+            path.append(POINTS[i], T0, SPEED);
+            arrivals[i] = getRestTime(path, T0);
+        }
+        return path;
+    }
+
+    /** The first time (from the given one on) at which the path is at rest. */
+    private static long getRestTime(HermitePathFunction3D path, long from) {
+        long t = from;
+        while (!path.isAtRest(t)) ++t;
+        return t;
+    }
+
+    private static void assertNear(Vector3 expected, Vector3 actual, float tolerance) {
+        assertEquals(expected.x, actual.x, tolerance);
+        assertEquals(expected.y, actual.y, tolerance);
+        assertEquals(expected.z, actual.z, tolerance);
+    }
+
+    @Test
+    public void pathPassesThroughItsPoints() {
+        long arrivals[] = new long[POINTS.length];
+        HermitePathFunction3D path = makePath(8, arrivals);
+        assertEquals(POINTS.length + 1, path.getKnotCount());
+        Vector3 p = new Vector3();
+        path.eval(T0, p);
+        assertNear(Vector3.ZERO, p, 1e-6f);
+        for (int i = 0; i < POINTS.length; ++i) {
+            path.eval(arrivals[i], p);
+            assertNear(POINTS[i], p, 1e-5f);
+        }
+        // Held before the first knot and after the last, where it comes to rest.
+        path.eval(T0 - 100, p);
+        assertNear(Vector3.ZERO, p, 1e-6f);
+        path.eval(arrivals[POINTS.length - 1] + 1000, p);
+        assertNear(POINTS[POINTS.length - 1], p, 1e-6f);
+        assertTrue(path.isAtRest(arrivals[POINTS.length - 1]));
+        assertTrue(!path.isAtRest(arrivals[POINTS.length - 1] - 1));
+        path.deriv(arrivals[POINTS.length - 1], p);
+        assertNear(Vector3.ZERO, p, 0.0f);
+    }
+
+    @Test
+    public void velocityIsContinuousAtTheKnots() {
+        long arrivals[] = new long[POINTS.length];
+        HermitePathFunction3D path = makePath(8, arrivals);
+        Vector3 before = new Vector3(), after = new Vector3();
+        // The largest change of the velocity over two milliseconds within the segments. The
+        // acceleration may jump at a knot (the path is only C1), so a change across a knot may be
+        // a little larger -- but a jump in the velocity itself would be far larger.
+        float smooth = 0;
+        int knot = 0;
+        for (long t = T0 + 1; t < arrivals[POINTS.length - 1] - 1; ++t) {
+            if (t + 1 >= arrivals[knot]) {
+                if (t - 1 <= arrivals[knot]) continue;
+                ++knot;
+            }
+            path.deriv(t - 1, before);
+            path.deriv(t + 1, after);
+            smooth = Math.max(smooth, before.distance(after));
+        }
+        for (int i = 0; i + 1 < POINTS.length; ++i) {
+            path.deriv(arrivals[i] - 1, before);
+            path.deriv(arrivals[i] + 1, after);
+            assertTrue("Knot " + i, before.distance(after) <= 2 * smooth);
+            // An interior knot isn't a stop.
+            assertTrue(after.distance(Vector3.ZERO) > SPEED * 0.1f);
+        }
+    }
+
+    @Test
+    public void extendingInFlightKeepsThePositionAndVelocity() {
+        long arrivals[] = new long[POINTS.length];
+        HermitePathFunction3D path = makePath(8, arrivals);
+        long t = (arrivals[1] + arrivals[2]) / 2;
+        Vector3 p0 = new Vector3(), v0 = new Vector3(), p1 = new Vector3(), v1 = new Vector3();
+        path.eval(t, p0);
+        path.deriv(t, v0);
+        path.append(new Vector3(1, 1, 0), t, SPEED);
+        path.eval(t, p1);
+        path.deriv(t, v1);
+        assertNear(p0, p1, 1e-5f);
+        assertNear(v0, v1, 1e-6f);
+    }
+
+    @Test
+    public void ringWraps() {
+        // A path of four knots, extended far more often than that as it is traversed.
+        HermitePathFunction3D path = new HermitePathFunction3D(4, Vector3.ZERO, T0);
+        Vector3 p = new Vector3();
+        long t = T0;
+        for (int i = 0; i < 50; ++i, t += 40) {
+            Vector3 target = POINTS[i % POINTS.length];
+            path.append(target, t, SPEED);
+            assertTrue(path.getKnotCount() <= 4);
+            path.eval(getRestTime(path, t), p);
+            assertNear(target, p, 1e-5f);
+        }
+        // Extended without time passing, the ring fills and the newest knot is replaced.
+        for (int i = 0; i < 10; ++i) {
+            path.append(POINTS[i % POINTS.length], t, SPEED);
+        }
+        assertEquals(4, path.getKnotCount());
+        path.eval(getRestTime(path, t), p);
+        assertNear(POINTS[9 % POINTS.length], p, 1e-5f);
+    }
+}
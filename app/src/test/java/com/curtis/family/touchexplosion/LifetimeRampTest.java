@@ -0,0 +1,75 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Verifies the baked lifetime ramps against their keys.
+ */
+public class LifetimeRampTest {
+    private static final float[] KEYS = {
+            0.0f, 1, 1, 1, 1, 0.5f,
+            0.5f, 1, 0, 0, 1, 1,
+            0.75f, 0, 0, 1, 0.5f, 1,
+            1.0f, 0, 0, 0, 0, 0};
+
+    /** Interpolates the keys directly: the ramp's definition. */
+    private static float exact(float age, int channel) {
+        for (int k = 0; k + LifetimeRamp.KEY_FLOATS < KEYS.length; k += LifetimeRamp.KEY_FLOATS) {
+            float a0 = KEYS[k], a1 = KEYS[k + LifetimeRamp.KEY_FLOATS];
+            if (age <= a1) {
+                float w = Math.max(0, (age - a0) / (a1 - a0));
+                float v0 = KEYS[k + 1 + channel];
+                return v0 + (KEYS[k + LifetimeRamp.KEY_FLOATS + 1 + channel] - v0) * w;
+            }
+        }
+        return KEYS[KEYS.length - LifetimeRamp.KEY_FLOATS + 1 + channel];
+    }
+
+    @Test
+    public void endsAreExact() {
+        LifetimeRamp ramp = new LifetimeRamp(KEYS);
+        float color[] = new float[4];
+        // The ends of the life are entries of the table.
+        for (float age : new float[]{0, 1}) {
+            float scale = ramp.sample(age, color);
+            for (int c = 0; c < 4; ++c) assertEquals(exact(age, c), color[c], 0.0f);
+            assertEquals(exact(age, 4), scale, 0.0f);
+        }
+    }
+
+    @Test
+    public void rampIsWithinHalfAStepOfItsKeys() {
+        LifetimeRamp ramp = new LifetimeRamp(KEYS);
+        float color[] = new float[4];
+        // The steepest channel changes by 4 per unit of age (blue, from 0.5 to 0.75).
+        float tolerance = 4 * 0.5f / (LifetimeRamp.SIZE - 1) + 1e-6f;
+        for (int i = 0; i <= 1000; ++i) {
+            float age = i / 1000.0f;
+            float scale = ramp.sample(age, color);
+            for (int c = 0; c < 4; ++c) {
+                assertEquals("Channel " + c + " at " + age, exact(age, c), color[c], tolerance);
+            }
+            assertEquals("Scale at " + age, exact(age, 4), scale, tolerance);
+        }
+    }
+
+    @Test
+    public void agesOutsideTheLifeAreClamped() {
+        LifetimeRamp ramp = new LifetimeRamp(KEYS);
+        float color[] = new float[4];
+        assertEquals(0.5f, ramp.sample(-3, color), 0.0f);
+        assertEquals(1, color[1], 0.0f);
+        assertEquals(0, ramp.sample(1.5f, color), 0.0f);
+        assertEquals(0, color[3], 0.0f);
+
+        // Keys which don't span the life hold their ends.
+        LifetimeRamp middle = new LifetimeRamp(new float[]{
+                0.25f, 1, 1, 1, 1, 2,
+                0.75f, 0, 0, 0, 0, 1});
+        assertEquals(2, middle.sample(0, color), 0.0f);
+        assertEquals(1, middle.sample(1, color), 0.0f);
+        assertEquals(1.5f, middle.sample(0.5f, color), 1.0f / (LifetimeRamp.SIZE - 1) + 1e-6f);
+    }
+}
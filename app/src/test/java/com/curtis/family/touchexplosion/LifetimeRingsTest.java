@@ -0,0 +1,105 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+/**
+ * Verifies the lifespan buckets: elements expire exactly at the end of their quantized lifespans,
+ * a full bucket refuses elements (and takes them again once it drains), and expiring at the end of
+ * time empties the container.
+ */
+public class LifetimeRingsTest {
+    private static final long MIN_LIFE = 100;
+    private static final long MAX_LIFE = 400;
+    private static final long STEP = 100;
+
+    @Test
+    public void lifespansAreQuantizedAndClamped() {
+        LifetimeRings<String> rings = new LifetimeRings<>(MIN_LIFE, MAX_LIFE, STEP, 4);
+        assertEquals(4, rings.getRingCount());
+        assertEquals(100, rings.quantize(100));
+        assertEquals(100, rings.quantize(199));
+        assertEquals(200, rings.quantize(200));
+        assertEquals(100, rings.quantize(20));
+        assertEquals(400, rings.quantize(1000));
+    }
+
+    @Test
+    public void elementsExpireAtTheEndOfTheirBucket() {
+        LifetimeRings<String> rings = new LifetimeRings<>(MIN_LIFE, MAX_LIFE, STEP, 4);
+        ArrayList<String> dead = new ArrayList<>();
+        assertEquals(Long.MAX_VALUE, rings.getNextDeath());
+        assertTrue(rings.add("a", 0, 100));
+        assertTrue(rings.add("b", 10, 100));
+        // 250 falls in the 200 ms bucket.
+        assertTrue(rings.add("c", 0, 250));
+        assertEquals(3, rings.size());
+        assertEquals(100, rings.getNextDeath());
+
+        // Alive until the last millisecond of the lifespan; dead at its end.
+        assertEquals(0, rings.expire(99, dead));
+        assertEquals(1, rings.expire(100, dead));
+        assertEquals("a", dead.get(0));
+        assertEquals(110, rings.getNextDeath());
+        assertEquals(0, rings.expire(109, dead));
+        assertEquals(1, rings.expire(110, dead));
+        assertEquals(0, rings.expire(199, dead));
+        assertEquals(1, rings.expire(200, dead));
+        assertEquals("c", dead.get(2));
+        assertEquals(0, rings.size());
+        assertEquals(Long.MAX_VALUE, rings.getNextDeath());
+    }
+
+    @Test
+    public void fullBucketRefusesElements() {
+        LifetimeRings<Integer> rings = new LifetimeRings<>(MIN_LIFE, MAX_LIFE, STEP, 3);
+        ArrayList<Integer> dead = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(rings.add(i, i, 100));
+        }
+        assertFalse(rings.add(3, 3, 100));
+        // Other buckets are unaffected.
+        assertTrue(rings.add(4, 3, 300));
+        assertEquals(4, rings.size());
+
+        // Once its oldest element has expired, the bucket takes another; the ring wraps and keeps
+        // its elements in order.
+        assertEquals(1, rings.expire(100, dead));
+        assertTrue(rings.add(5, 101, 100));
+        assertFalse(rings.add(6, 101, 100));
+        int ring = 0;
+        assertEquals(3, rings.getRingSize(ring));
+        assertEquals(1, (int)rings.get(ring, 0));
+        assertEquals(2, (int)rings.get(ring, 1));
+        assertEquals(5, (int)rings.get(ring, 2));
+    }
+
+    @Test
+    public void expiringAtTheEndOfTimeReturnsEveryElement() {
+        LifetimeRings<Object> rings = new LifetimeRings<>(MIN_LIFE, MAX_LIFE, STEP, 8);
+        ArrayList<Object> pool = new ArrayList<>();
+        Object items[] = new Object[20];
+        for (int i = 0; i < items.length; ++i) {
+            items[i] = new Object();
+            assertTrue(rings.add(items[i], i * 10, MIN_LIFE + (i % 4) * STEP));
+        }
+        assertEquals(items.length, rings.expire(Long.MAX_VALUE, pool));
+        assertEquals(0, rings.size());
+        assertEquals(items.length, pool.size());
+        for (Object item : items) {
+            assertTrue(pool.contains(item));
+        }
+        for (int ring = 0; ring < rings.getRingCount(); ++ring) {
+            assertEquals(0, rings.getRingSize(ring));
+        }
+        // The emptied rings are reused.
+        assertTrue(rings.add(items[0], 1000, MIN_LIFE));
+        assertSame(items[0], rings.get(0, 0));
+    }
+}
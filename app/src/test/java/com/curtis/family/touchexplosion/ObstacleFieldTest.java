@@ -0,0 +1,157 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Verifies the baked obstacle field against the obstacles' exact distances, and its caching.
+ */
+public class ObstacleFieldTest {
+    private static final float MIN[] = {-2, -2, -4};
+    private static final float MAX[] = {2, 2, 0};
+    private static final int N = 41;
+    /** The grid spacing: 0.1 m. */
+    private static final float CELL = 4.0f / (N - 1);
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static List<Obstacle> makeObstacles(float sphereX) {
+        List<Obstacle> obstacles = new ArrayList<>();
+        obstacles.add(new Obstacle.Sphere(new Vector3(sphereX, 0.5f, -2), 0.5f));
+        obstacles.add(new Obstacle.Box(new Vector3(-0.8f, -0.8f, -2.5f),
+                new Vector3(0.4f, 0.3f, 0.6f), 0.1f));
+        return obstacles;
+    }
+
+    /** The exact distance to the obstacles. */
+    private static float exact(List<Obstacle> obstacles, float x, float y, float z) {
+        float d = Float.MAX_VALUE;
+        for (Obstacle o : obstacles) {
+            d = Math.min(d, o.distance(x, y, z));
+        }
+        return d;
+    }
+
+    @Test
+    public void interpolatedDistanceMatchesObstacles() {
+        List<Obstacle> obstacles = makeObstacles(0.7f);
+        ObstacleField field = ObstacleField.bake(obstacles, MIN, MAX, N, N, N, 2);
+        XorShiftRandom random = new XorShiftRandom(11);
+        for (int i = 0; i < 1000; ++i) {
+            float x = MIN[0] + random.nextFloat() * 4;
+            float y = MIN[1] + random.nextFloat() * 4;
+            float z = MIN[2] + random.nextFloat() * 4;
+            // Interpolating a distance is exact to within half a cell diagonal.
+            assertEquals(exact(obstacles, x, y, z), field.distance(x, y, z), CELL * 0.87f);
+        }
+        assertTrue(field.distance(0.7f, 0.5f, -2) < -0.4f);
+    }
+
+    @Test
+    public void gradientPointsAwayFromObstacles() {
+        ObstacleField field = ObstacleField.bake(makeObstacles(0.7f), MIN, MAX, N, N, N, 2);
+        Vector3 gradient = new Vector3();
+        Vector3 away = new Vector3();
+        XorShiftRandom random = new XorShiftRandom(5);
+        for (int i = 0; i < 200; ++i) {
+            // Points in a shell around the sphere (and nearer to it than to the box).
+            away.set(random.nextFloat() - 0.5f, random.nextFloat() * 0.5f,
+                    random.nextFloat() - 0.5f);
+            away.normalize();
+            float r = 0.6f + random.nextFloat() * 0.3f;
+            float x = 0.7f + away.x * r, y = 0.5f + away.y * r, z = -2 + away.z * r;
+            float d = field.sample(x, y, z, gradient);
+            assertEquals(r - 0.5f, d, CELL);
+            assertTrue("Gradient " + gradient + " along " + away, gradient.dot(away) > 0.9f);
+            assertEquals(1.0f, (float)Math.sqrt(gradient.dot(gradient)), 0.1f);
+        }
+    }
+
+    @Test
+    public void bakingDoesNotDependOnThreads() {
+        List<Obstacle> obstacles = makeObstacles(0.7f);
+        ObstacleField serial = ObstacleField.bake(obstacles, MIN, MAX, N, N, N, 1);
+        ObstacleField parallel = ObstacleField.bake(obstacles, MIN, MAX, N, N, N, 4);
+        XorShiftRandom random = new XorShiftRandom(3);
+        for (int i = 0; i < 1000; ++i) {
+            float x = MIN[0] + random.nextFloat() * 4;
+            float y = MIN[1] + random.nextFloat() * 4;
+            float z = MIN[2] + random.nextFloat() * 4;
+            assertEquals(serial.distance(x, y, z), parallel.distance(x, y, z), 0.0f);
+        }
+    }
+
+    @Test
+    public void fieldIsCachedByLayout() throws Exception {
+        File dir = mFolder.newFolder("sdf");
+        List<Obstacle> obstacles = makeObstacles(0.7f);
+        ObstacleField baked = ObstacleField.load(dir, obstacles, MIN, MAX, N, N, N, 2);
+        File[] files = dir.listFiles();
+        assertEquals(1, files.length);
+
+        ObstacleField cached = ObstacleField.read(files[0], baked.getKey());
+        assertNotNull(cached);
+        for (float x = -1.95f; x < 2; x += 0.3f) {
+            assertEquals(baked.distance(x, 0.2f, -1.1f), cached.distance(x, 0.2f, -1.1f), 0.0f);
+        }
+        // The same layout loads the cached field rather than baking another.
+        long modified = files[0].lastModified();
+        ObstacleField.load(dir, makeObstacles(0.7f), MIN, MAX, N, N, N, 2);
+        assertEquals(Arrays.asList(files), Arrays.asList(dir.listFiles()));
+        assertEquals(modified, files[0].lastModified());
+
+        // Moving an obstacle changes the key, and so bakes a new field.
+        List<Obstacle> moved = makeObstacles(0.8f);
+        assertNotEquals(baked.getKey(), ObstacleField.layoutKey(moved, MIN, MAX, N, N, N));
+        ObstacleField.load(dir, moved, MIN, MAX, N, N, N, 2);
+        assertEquals(2, dir.listFiles().length);
+        assertNull(ObstacleField.read(files[0], ObstacleField.layoutKey(moved, MIN, MAX, N, N, N)));
+    }
+
+    @Test
+    public void interruptedWriteIsNotMistakenForAField() throws Exception {
+        File dir = mFolder.newFolder("sdf");
+        List<Obstacle> obstacles = makeObstacles(0.7f);
+        ObstacleField baked = ObstacleField.bake(obstacles, MIN, MAX, N, N, N, 1);
+        File file = new File(dir, "field.sdf");
+        // A write interrupted by a crash leaves a partial temporary file, never the field's.
+        File temp = new File(dir, "field.sdf.tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(new byte[100]);
+        }
+        assertNull(ObstacleField.read(file, baked.getKey()));
+
+        // The next write replaces it.
+        baked.write(file);
+        assertEquals(Arrays.asList(file), Arrays.asList(dir.listFiles()));
+        ObstacleField cached = ObstacleField.read(file, baked.getKey());
+        assertNotNull(cached);
+        assertEquals(baked.distance(0.3f, -0.2f, 1.1f), cached.distance(0.3f, -0.2f, 1.1f), 0.0f);
+    }
+
+    @Test
+    public void flatFieldIgnoresDepth() {
+        List<Obstacle> obstacles = makeObstacles(0.7f);
+        ObstacleField field = ObstacleField.bake(obstacles, MIN, MAX, N, N, 1, 1);
+        Vector3 gradient = new Vector3();
+        float d = field.sample(0.7f, 1.5f, -3.9f, gradient);
+        assertEquals(exact(obstacles, 0.7f, 1.5f, -2), d, CELL);
+        assertEquals(d, field.distance(0.7f, 1.5f, 0), 0.0f);
+        assertEquals(0.0f, gradient.z, 0.0f);
+        assertTrue(gradient.y > 0.9f);
+    }
+}
@@ -0,0 +1,155 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Verifies the particle integrator's stepping and its force fields.
+ */
+public class ParticleIntegratorTest {
+    private static final float GRAVITY = -9.8e-6f;
+
+    @Test
+    public void gravityMatchesClosedForm() {
+        ParticleIntegrator p = new ParticleIntegrator(1);
+        p.addField(new ForceField.Gravity(0, GRAVITY, 0));
+        p.setFixedStep(1, 32);
+        p.add(0, 0, -2, 0.002f, 0.004f, 0);
+        for (int frame = 0; frame < 125; ++frame) {
+            p.advance(8);
+        }
+        float t = 1000;
+        assertEquals(0.002f, p.getVelocityX(0), 1e-7f);
+        assertEquals(0.004f + GRAVITY * t, p.getVelocityY(0), 1e-7f);
+        assertEquals(0.002f * t, p.getX(0), 1e-4f);
+        // Semi-implicit Euler leads the parabola by half a step's worth of velocity: g * h * t / 2.
+        float exact = 0.004f * t + 0.5f * GRAVITY * t * t;
+        assertEquals(exact + 0.5f * GRAVITY * t, p.getY(0), 1e-4f);
+        assertEquals(-2, p.getZ(0), 0.0f);
+    }
+
+    /** Creates an integrator under every kind of field with a ring of particles. */
+    private static ParticleIntegrator makeSwirl() {
+        ParticleIntegrator p = new ParticleIntegrator(16);
+        p.addField(new ForceField.Gravity(0, 2e-6f, 0));
+        p.addField(new ForceField.Damping(0.002f));
+        p.addField(new ForceField.Vortex(0, 0, 0.5f, 5e-6f));
+        ForceField.Attractor attractor = new ForceField.Attractor(0.3f);
+        attractor.setPosition(0.5f, 0.5f, -1);
+        attractor.setStrength(1e-5f);
+        p.addField(attractor);
+        p.setFixedStep(4, 8);
+        for (int i = 0; i < 16; ++i) {
+            double theta = i * Math.PI / 8;
+            p.add((float)Math.cos(theta), (float)Math.sin(theta), -1, 0, 0.001f, 0);
+        }
+        return p;
+    }
+
+    @Test
+    public void fixedStepDoesNotDependOnFrameRate() {
+        ParticleIntegrator fast = makeSwirl();
+        ParticleIntegrator slow = makeSwirl();
+        // 1008 ms is 63 frames of 16 ms, or 144 frames of 7 ms: 252 steps either way.
+        int steps = 0;
+        for (int frame = 0; frame < 63; ++frame) {
+            steps += fast.advance(16);
+        }
+        for (int frame = 0; frame < 144; ++frame) {
+            slow.advance(7);
+        }
+        assertEquals(252, steps);
+        for (int i = 0; i < 16; ++i) {
+            assertEquals(fast.getX(i), slow.getX(i), 1e-6f);
+            assertEquals(fast.getY(i), slow.getY(i), 1e-6f);
+            assertEquals(fast.getVelocityX(i), slow.getVelocityX(i), 1e-9f);
+        }
+    }
+
+    @Test
+    public void substepsKeepStiffDampingStable() {
+        // A single 16 ms step of this drag would overshoot (rate * dt = 8 > 2) and diverge.
+        float rate = 0.5f;
+        ParticleIntegrator p = new ParticleIntegrator(1);
+        p.addField(new ForceField.Gravity(0, GRAVITY, 0));
+        p.addField(new ForceField.Damping(rate));
+        p.setFixedStep(1, 32);
+        p.add(0, 0, 0, 0.01f, 0, 0);
+        for (int frame = 0; frame < 100; ++frame) {
+            p.advance(16);
+        }
+        assertEquals(0, p.getVelocityX(0), 1e-9f);
+        assertEquals(GRAVITY / rate, p.getVelocityY(0), 1e-9f);
+    }
+
+    @Test
+    public void longGapsAreSkipped() {
+        ParticleIntegrator p = new ParticleIntegrator(1);
+        p.add(0, 0, 0, 0.001f, 0, 0);
+        p.setFixedStep(8, 6);
+        assertEquals(6, p.advance(10000));
+        assertEquals(0, p.getCarry(), 0.0f);
+        assertEquals(0.048f, p.getX(0), 1e-6f);
+        assertEquals(1, p.advance(13));
+        assertEquals(5, p.getCarry(), 0.0f);
+    }
+
+    @Test
+    public void fieldsPushInTheirDirections() {
+        ParticleIntegrator p = new ParticleIntegrator(1);
+        ForceField.Attractor attractor = new ForceField.Attractor(0.1f);
+        attractor.setPosition(0, 0, 0);
+        p.addField(attractor);
+        p.add(1, 0, 0, 0, 0, 0);
+        // The attractor starts off.
+        p.step(1);
+        assertEquals(0, p.getVelocityX(0), 0.0f);
+
+        attractor.setStrength(1e-5f);
+        p.step(1);
+        assertTrue(p.getVelocityX(0) < 0);
+        assertEquals(0, p.getVelocityY(0), 0.0f);
+
+        ParticleIntegrator q = new ParticleIntegrator(1);
+        q.addField(new ForceField.Vortex(0, 0, 0.5f, 1e-5f));
+        q.add(1, 0, 0, 0, 0, 0);
+        q.step(1);
+        // Counter-clockwise: +y at +x.
+        assertTrue(q.getVelocityY(0) > 0);
+        assertEquals(0, q.getVelocityX(0), 0.0f);
+    }
+
+    @Test
+    public void avoidanceKeepsParticlesOutOfObstacles() {
+        List<Obstacle> obstacles = new ArrayList<>();
+        obstacles.add(new Obstacle.Sphere(new Vector3(0, 0, -1), 0.5f));
+        float min[] = {-3, -3, -1};
+        float max[] = {3, 3, -1};
+        ObstacleField field = ObstacleField.bake(obstacles, min, max, 64, 64, 1, 1);
+
+        // A spray of particles aimed at the obstacle.
+        ParticleIntegrator p = new ParticleIntegrator(21);
+        p.addField(new ForceField.Avoidance(field, 0.6f, 3e-5f));
+        p.setFixedStep(4, 8);
+        for (int i = 0; i <= 20; ++i) {
+            p.add(-2.5f, (i - 10) * 0.05f, -1, 0.002f, 0, 0);
+        }
+        for (int frame = 0; frame < 200; ++frame) {
+            p.advance(16);
+            for (int i = 0; i < p.getCount(); ++i) {
+                float d = obstacles.get(0).distance(p.getX(i), p.getY(i), p.getZ(i));
+                assertTrue("Particle " + i + " entered the obstacle: " + d, d > 0);
+            }
+        }
+        // The particles have gone around or back, not stopped against it.
+        for (int i = 0; i < p.getCount(); ++i) {
+            float x = p.getX(i), y = p.getY(i);
+            assertTrue(x < -0.6f || Math.abs(y) > 0.6f || x > 0.6f);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.curtis.family.touchexplosion.functions.BallisticFunction3D;
+import com.curtis.family.touchexplosion.functions.PiecewiseFunction3D;
+
+import org.junit.Test;
+
+/**
+ * Verifies the bouncing trajectories: they follow the ballistic path until the first contact, stay
+ * inside their planes, lose the expected height per bounce, and compute each bounce only once.
+ */
+public class PiecewiseFunction3DTest {
+    /** A floor at y = 0 and walls at x = -1 and x = 1. */
+    private static final float[] BOX = {0, -1, 0, 0, -1, 0, 0, -1, 1, 0, 0, -1};
+    private static final float G = BallisticFunction3D.HALF_GRAVITY;
+
+    @Test
+    public void followsTheBallisticPathUntilTheFirstContact() {
+        Vector3 p0 = new Vector3(0.25f, 1, -2);
+        Vector3 v0 = new Vector3(0.0002f, 0.001f, 0);
+        BallisticFunction3D ballistic = new BallisticFunction3D(p0, v0, 100);
+        PiecewiseFunction3D bouncing = new PiecewiseFunction3D(BOX, 0.5f, 8);
+        bouncing.set(p0.x, p0.y, p0.z, v0.x, v0.y, v0.z, 100);
+        Vector3 expected = new Vector3(), actual = new Vector3();
+        // The contact: 1 + 0.001 t - 4.9e-6 t^2 = 0.
+        long contact = 100 + (long)Math.ceil((0.001 + Math.sqrt(1e-6 - 4 * G)) / (-2 * G));
+        for (long t = 100; t < contact; ++t) {
+            ballistic.eval(t, expected);
+            bouncing.eval(t, actual);
+            assertEquals(expected.x, actual.x, 0.0f);
+            assertEquals(expected.y, actual.y, 0.0f);
+            assertEquals(expected.z, actual.z, 0.0f);
+        }
+        assertEquals(1, bouncing.getSegmentCount());
+        bouncing.eval(contact, actual);
+        assertEquals(2, bouncing.getSegmentCount());
+        assertTrue(actual.y >= 0);
+    }
+
+    @Test
+    public void bouncesLoseTheRestitutionSquaredOfTheirHeight() {
+        float restitution = 0.6f;
+        PiecewiseFunction3D f = new PiecewiseFunction3D(BOX, restitution, 3);
+        f.set(0, 1, 0, 0, 0, 0, 0);
+        Vector3 p = new Vector3();
+        // The apex of each of the three bounces.
+        float apex[] = new float[4];
+        float lowest = Float.MAX_VALUE;
+        int bounce = -1;
+        boolean rising = false;
+        for (long t = 0; t < 3000; ++t) {
+            f.eval(t, p);
+            if (bounce < 3) lowest = Math.min(lowest, p.y);
+            int segments = f.getSegmentCount() - 1;
+            if (segments != bounce) {
+                bounce = segments;
+                rising = true;
+            }
+            if (rising && bounce > 0) apex[bounce] = Math.max(apex[bounce], p.y);
+        }
+        assertTrue("Lowest " + lowest, lowest >= 0);
+        float height = 1;
+        for (int b = 1; b <= 3; ++b) {
+            height *= restitution * restitution;
+            assertEquals("Bounce " + b, height, apex[b], 0.01f * height + 1e-4f);
+        }
+        // After the last bounce, it falls through the floor.
+        assertEquals(4, f.getSegmentCount());
+        f.eval(10000, p);
+        assertTrue(p.y < 0);
+    }
+
+    @Test
+    public void wallsReflectTheSidewaysVelocity() {
+        PiecewiseFunction3D f = new PiecewiseFunction3D(BOX, 1.0f, 16);
+        // Thrown sideways at 1 m/s from 10 m up: it crosses the 2 m box every 2 s.
+        f.set(0, 10, 0, 0.001f, 0, 0, 0);
+        Vector3 p = new Vector3();
+        for (long t = 0; t < 1400; t += 7) {
+            f.eval(t, p);
+            assertTrue("At " + t, p.x >= -1 && p.x <= 1 && p.y >= 0);
+        }
+        f.eval(1000, p);
+        assertEquals(1, p.x, 1e-3f);
+        f.eval(2000, p);
+        assertEquals(0, p.x, 2e-3f);
+        f.eval(3000, p);
+        assertEquals(-1, p.x, 3e-3f);
+    }
+
+    @Test
+    public void evaluatingOutOfOrderGivesTheSameTrajectory() {
+        PiecewiseFunction3D f = new PiecewiseFunction3D(BOX, 0.7f, 8);
+        f.set(-0.5f, 0.5f, 0, 0.0015f, 0.002f, 0, 50);
+        float forward[] = new float[4000];
+        Vector3 p = new Vector3();
+        for (int t = 0; t < forward.length; ++t) {
+            f.eval(50 + t, p);
+            forward[t] = p.x + p.y * 10;
+        }
+        int segments = f.getSegmentCount();
+        assertTrue(segments > 3);
+        XorShiftRandom random = new XorShiftRandom(5);
+        for (int i = 0; i < 1000; ++i) {
+            int t = random.nextInt(forward.length);
+            f.eval(50 + t, p);
+            assertEquals(forward[t], p.x + p.y * 10, 0.0f);
+        }
+        // The bounces were each computed once.
+        assertEquals(segments, f.getSegmentCount());
+    }
+
+    @Test
+    public void sparksStayInsideTheFrustum() {
+        Frustum frustum = new Frustum(new Vector3(0, 0, 3), new Vector3(0, 0, -1),
+                -1, 1, 0.5f, 7.0f, -1, 1);
+        float walls[] = new float[12];
+        frustum.getWalls(walls);
+        PiecewiseFunction3D f = new PiecewiseFunction3D(walls, 0.5f, 4);
+        f.setGravity(-1e-6f);
+        Vector3 p = new Vector3();
+        frustum.pointInFrustum(0.5f, 0, 0.1f, p);
+        f.set(p.x, p.y, p.z, 0, 0, 0, 0);
+        for (long t = 0; t < 2500; ++t) {
+            f.eval(t, p);
+            assertTrue("At " + t, frustum.farthestOut(p, 1) <= 0);
+        }
+        assertTrue(f.getSegmentCount() > 1);
+    }
+}
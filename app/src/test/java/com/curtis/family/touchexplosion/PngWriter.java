@@ -0,0 +1,70 @@
+package com.curtis.family.touchexplosion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes images as 8-bit RGBA PNG files. It only depends on java.util.zip, so it can write the
+ * software rasterizer's frames on any platform.
+ */
+public class PngWriter {
+    private static final byte[] SIGNATURE = {(byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+    /** Writes the image.
+     * @param out       The stream to write to; it is not closed.
+     * @param argb      The pixels, row by row from the top, as (non-premultiplied) ARGB.
+     * @param width     The width of the image (in pixels).
+     * @param height    The height of the image (in pixels).
+     */
+    public static void write(OutputStream out, int[] argb, int width, int height)
+            throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(SIGNATURE);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream h = new DataOutputStream(header);
+        h.writeInt(width);
+        h.writeInt(height);
+        h.writeByte(8);     // bit depth
+        h.writeByte(6);     // color type: RGBA
+        h.writeByte(0);     // compression: deflate
+        h.writeByte(0);     // filter method: adaptive
+        h.writeByte(0);     // interlace: none
+        writeChunk(data, "IHDR", header.toByteArray());
+
+        ByteArrayOutputStream pixels = new ByteArrayOutputStream();
+        DeflaterOutputStream deflater = new DeflaterOutputStream(pixels);
+        byte[] row = new byte[1 + width * 4];
+        for (int y = 0; y < height; ++y) {
+            row[0] = 0;     // filter: none
+            for (int x = 0; x < width; ++x) {
+                int c = argb[y * width + x];
+                row[1 + x * 4] = (byte)(c >> 16);
+                row[2 + x * 4] = (byte)(c >> 8);
+                row[3 + x * 4] = (byte)c;
+                row[4 + x * 4] = (byte)(c >>> 24);
+            }
+            deflater.write(row);
+        }
+        deflater.finish();
+        writeChunk(data, "IDAT", pixels.toByteArray());
+        writeChunk(data, "IEND", new byte[0]);
+        data.flush();
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] payload)
+            throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(payload);
+        out.writeInt(payload.length);
+        out.write(typeBytes);
+        out.write(payload);
+        out.writeInt((int)crc.getValue());
+    }
+}
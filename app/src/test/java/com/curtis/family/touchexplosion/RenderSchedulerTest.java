@@ -0,0 +1,73 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Verifies the frame delays the render scheduler derives from the scene's next visible change and
+ * from input.
+ */
+public class RenderSchedulerTest {
+    private static final long T0 = 10000;
+    private static final long FRAME_MS = 16;
+    private static final long HOLD_MS = 500;
+
+    @Test
+    public void delayFollowsTheNextVisibleChange() {
+        RenderScheduler scheduler = new RenderScheduler(FRAME_MS, HOLD_MS);
+        // A change now, or within a frame, keeps the frames coming.
+        assertEquals(RenderScheduler.CONTINUOUS, scheduler.getFrameDelay(T0, T0));
+        assertEquals(RenderScheduler.CONTINUOUS, scheduler.getFrameDelay(T0, T0 + FRAME_MS - 1));
+        // A later change waits for it.
+        assertEquals(FRAME_MS, scheduler.getFrameDelay(T0, T0 + FRAME_MS));
+        assertEquals(1000, scheduler.getFrameDelay(T0, T0 + 1000));
+        // No change: nothing is drawn until the next input.
+        assertEquals(RenderScheduler.ON_DEMAND,
+                scheduler.getFrameDelay(T0, ParticleSystem.NEVER));
+    }
+
+    @Test
+    public void inputHoldsTheFullRate() {
+        RenderScheduler scheduler = new RenderScheduler(FRAME_MS, HOLD_MS);
+        scheduler.reportInput(T0);
+        assertEquals(RenderScheduler.CONTINUOUS,
+                scheduler.getFrameDelay(T0, ParticleSystem.NEVER));
+        assertEquals(RenderScheduler.CONTINUOUS,
+                scheduler.getFrameDelay(T0 + HOLD_MS - 1, T0 + 5000));
+        assertEquals(RenderScheduler.ON_DEMAND,
+                scheduler.getFrameDelay(T0 + HOLD_MS, ParticleSystem.NEVER));
+        assertEquals(5000 - HOLD_MS, scheduler.getFrameDelay(T0 + HOLD_MS, T0 + 5000));
+    }
+
+    @Test
+    public void sceneIsDrawnOnlyWhileItChanges() {
+        Frustum frustum = new Frustum(new Vector3(0, 0, 3), new Vector3(0, 0, -1),
+                -1, 1, 0.5f, 7.0f, -1, 1);
+        SimpleParticleSystem simple = new SimpleParticleSystem(3);
+        TinkerBellSystem tinkerBell = new TinkerBellSystem(T0, 3);
+        Scene scene = new Scene();
+        scene.add(simple, 2000, 4.0f);
+        scene.add(tinkerBell, 300, 4.0f);
+        scene.setFrustum(frustum);
+        RenderScheduler scheduler = new RenderScheduler(FRAME_MS, HOLD_MS);
+
+        // The idle fairy only bobs: the scene is drawn at her reduced rate.
+        long t = T0 + 5000;
+        long delay = scheduler.getFrameDelay(t, scene.nextVisibleChange(t));
+        assertEquals(tinkerBell.nextVisibleChange(t) - t, delay);
+        assertTrue(delay >= FRAME_MS);
+
+        // Falling flowers change every frame, long after the input is forgotten.
+        simple.reportTouch(0, 0.5f, frustum, t);
+        scheduler.reportInput(t);
+        t += HOLD_MS;
+        for (long end = t + 200; t < end; t += FRAME_MS) {
+            scene.update(t);
+            for (int i = 0; i < scene.getBatchCount(); ++i) scene.getBatchAt(i).clear();
+        }
+        assertEquals(RenderScheduler.CONTINUOUS,
+                scheduler.getFrameDelay(t, scene.nextVisibleChange(t)));
+    }
+}
@@ -0,0 +1,108 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Replays frame-time series through the resolution controller: fixed series, and a fill-bound GPU
+ * whose frame time follows the scale the controller picks.
+ */
+public class ResolutionControllerTest {
+    private static final float TARGET_MS = 18.0f;
+    private static final float VSYNC_MS = 1000.0f / 60;
+
+    /** Feeds a series of frame times to a controller.
+     * @return The scale after each frame.
+     */
+    private static float[] replay(ResolutionController controller, float[] frameMs) {
+        float scales[] = new float[frameMs.length];
+        for (int i = 0; i < frameMs.length; ++i) {
+            controller.update(frameMs[i]);
+            scales[i] = controller.getScale();
+        }
+        return scales;
+    }
+
+    /** A fill-bound GPU behind vsync: a fixed cost plus a cost proportional to the pixels drawn,
+     rounded up to whole vsync periods. */
+    private static float gpuFrameMs(float fixedMs, float fullFillMs, float scale) {
+        float ms = fixedMs + fullFillMs * scale * scale;
+        return (float)Math.ceil(ms / VSYNC_MS - 1e-3) * VSYNC_MS;
+    }
+
+    @Test
+    public void steadyFramesKeepFullResolution() {
+        XorShiftRandom random = new XorShiftRandom(3);
+        float series[] = new float[1200];
+        for (int i = 0; i < series.length; ++i) {
+            series[i] = VSYNC_MS + (random.nextFloat() - 0.5f);
+        }
+        ResolutionController controller = new ResolutionController(TARGET_MS);
+        float scales[] = replay(controller, series);
+        assertEquals(1.0f, scales[scales.length - 1], 0.0f);
+        assertEquals(0, controller.getChangeCount());
+    }
+
+    @Test
+    public void jitterAndHitchesDoNotChangeTheScale() {
+        // Frames alternating on either side of the target, and a 100 ms hitch (e.g., a GC).
+        float series[] = new float[600];
+        for (int i = 0; i < series.length; ++i) {
+            series[i] = i % 2 == 0 ? VSYNC_MS : 20.0f;
+        }
+        series[300] = 100.0f;
+        ResolutionController controller = new ResolutionController(TARGET_MS);
+        replay(controller, series);
+        assertEquals(0, controller.getChangeCount());
+    }
+
+    @Test
+    public void sustainedOverloadStepsDown() {
+        // Frames drop to 30 Hz and stay there: the scale steps down all the way, quickly.
+        float series[] = new float[400];
+        for (int i = 0; i < series.length; ++i) {
+            series[i] = 2 * VSYNC_MS;
+        }
+        ResolutionController controller = new ResolutionController(TARGET_MS);
+        float scales[] = replay(controller, series);
+        assertEquals(1.0f, scales[20], 0.0f);
+        assertEquals(0.85f, scales[40], 0.0f);
+        assertEquals(0.5f, scales[series.length - 1], 0.0f);
+        assertEquals(ResolutionController.DEFAULT_SCALES.length - 1, controller.getChangeCount());
+    }
+
+    @Test
+    public void fillBoundLoadSettlesWithoutFlapping() {
+        ResolutionController controller = new ResolutionController(TARGET_MS);
+        // The frame misses vsync above a scale of 0.7, and makes it at 0.6.
+        int frames = 3600;
+        int overBudget = 0;
+        int changesInSecondHalf = 0;
+        for (int i = 0; i < frames; ++i) {
+            float ms = gpuFrameMs(6.0f, 22.0f, controller.getScale());
+            if (ms > TARGET_MS) ++overBudget;
+            if (controller.update(ms) && i >= frames / 2) ++changesInSecondHalf;
+        }
+        assertEquals(0.6f, controller.getScale(), 0.0f);
+        // Probing a step up costs a few frames, and probes grow rarer as they fail.
+        assertTrue("Over budget for " + overBudget + " frames", overBudget < frames / 10);
+        assertTrue("Changed " + changesInSecondHalf + " times", changesInSecondHalf <= 4);
+        assertTrue(controller.getUpFrames() > 90);
+    }
+
+    @Test
+    public void lighterLoadRestoresFullResolution() {
+        ResolutionController controller = new ResolutionController(TARGET_MS);
+        for (int i = 0; i < 600; ++i) {
+            controller.update(gpuFrameMs(6.0f, 22.0f, controller.getScale()));
+        }
+        assertTrue(controller.getScale() < 1.0f);
+        // The heavy effect ends: full resolution fits again.
+        for (int i = 0; i < 1200; ++i) {
+            controller.update(gpuFrameMs(4.0f, 8.0f, controller.getScale()));
+        }
+        assertEquals(1.0f, controller.getScale(), 0.0f);
+    }
+}
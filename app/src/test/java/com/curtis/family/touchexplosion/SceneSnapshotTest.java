@@ -0,0 +1,94 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+/**
+ * Verifies that a scene saved to a snapshot and restored later -- into a new scene, as after the
+ * process is killed -- continues exactly where it was paused, and that a snapshot of a different
+ * scene is refused.
+ */
+public class SceneSnapshotTest {
+    private static final long T0 = 10000;
+    private static final long FRAME_MS = 16;
+    /** The time between the save and the restore (in milliseconds). */
+    private static final long PAUSE_MS = 60000;
+    /** The time the fairy's trail spans (in milliseconds). */
+    private static final long TRAIL_MS = 400;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static Scene makeScene() {
+        Scene scene = new Scene();
+        scene.add(new SimpleParticleSystem(5), 2000, 4.0f);
+        scene.add(new TinkerBellSystem(T0, 3), 300, 4.0f);
+        scene.setFrustum(new Frustum(new Vector3(0, 0, 3), new Vector3(0, 0, -1),
+                -1, 1, 0.5f, 7.0f, -1, 1));
+        return scene;
+    }
+
+    /** Draws a frame, leaving its sprites in the batches. */
+    private static void drawFrame(Scene scene, long t) {
+        for (int i = 0; i < scene.getBatchCount(); ++i) {
+            scene.getBatchAt(i).clear();
+        }
+        scene.update(t);
+    }
+
+    @Test
+    public void restoredSceneContinuesAfterThePause() throws Exception {
+        Scene original = makeScene();
+        long t = T0;
+        for (int i = 0; i < 20; ++i, t += FRAME_MS) {
+            if (i % 7 == 0) original.reportTouch(i * 0.05f - 0.3f, 0.2f, t);
+            drawFrame(original, t);
+        }
+        File file = mFolder.newFile("snapshot");
+        SceneSnapshot.save(original, file, t);
+
+        Scene restored = makeScene();
+        drawFrame(restored, t + PAUSE_MS);
+        assertTrue(SceneSnapshot.restore(restored, file, t + PAUSE_MS));
+        long resumed = t;
+        for (int i = 0; i < 40; ++i, t += FRAME_MS) {
+            drawFrame(original, t);
+            drawFrame(restored, t + PAUSE_MS);
+            assertEquals(original.getBatchCount(), restored.getBatchCount());
+            for (int b = 0; b < original.getBatchCount(); ++b) {
+                SpriteBatch expected = original.getBatchAt(b), actual = restored.getBatchAt(b);
+                // The fairy's trail isn't stored but sampled afresh from her path, which doesn't
+                // reach back before the snapshot: it matches once it has been resampled whole.
+                if (expected.getMaterial().getShading() == Material.SHADE_RIBBON
+                        && t - resumed < TRAIL_MS) {
+                    continue;
+                }
+                assertEquals("Batch " + b + " at frame " + i, expected.getCount(),
+                        actual.getCount());
+                float e[] = expected.getData(), a[] = actual.getData();
+                for (int f = 0; f < expected.getCount() * expected.getFloatsPerSprite(); ++f) {
+                    assertEquals("Batch " + b + " at frame " + i, e[f], a[f], 1e-5f);
+                }
+            }
+        }
+        assertTrue(original.getSystem(0).getParticleCount() > 0);
+    }
+
+    @Test
+    public void snapshotOfAnotherSceneIsRefused() throws Exception {
+        File file = mFolder.newFile("snapshot");
+        Scene fairyOnly = new Scene();
+        fairyOnly.add(new TinkerBellSystem(T0, 3), 300, 4.0f);
+        SceneSnapshot.save(fairyOnly, file, T0);
+        assertFalse(SceneSnapshot.restore(makeScene(), file, T0));
+        assertFalse(SceneSnapshot.restore(makeScene(), new File(mFolder.getRoot(), "missing"),
+                T0));
+    }
+}
@@ -0,0 +1,258 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Verifies that culling the simple particle system's bursts as a whole keeps exactly the particles
+ * that testing each particle would, and that a storm of taps is built over several frames without
+ * changing the particles. Also times the worst frame of a storm built at once and built in slices
+ * (see BenchmarkHarness).
+ */
+public class SimpleParticleSystemTest {
+    private static final long T0 = 10000;
+    private static final long FRAME_MS = 16;
+    private static final float HALF_GRAVITY = -4.9e-6f;
+    private static final float CULL_MARGIN = 1.0f;
+
+    private Frustum mFrustum;
+    private SimpleParticleSystem mSystem;
+    private Scene mScene;
+
+    @Before
+    public void setUp() {
+        mFrustum = new Frustum(new Vector3(0, 0, 3), new Vector3(0, 0, -1),
+                -1, 1, 0.5f, 7.0f, -1, 1);
+        mSystem = new SimpleParticleSystem(5);
+        mScene = new Scene();
+        mScene.add(mSystem, 2000, 4.0f);
+        mScene.setFrustum(mFrustum);
+    }
+
+    /** Draws a frame and empties the batches. */
+    private void drawFrame(long t) {
+        mScene.update(t);
+        for (int i = 0; i < mScene.getBatchCount(); ++i) {
+            mScene.getBatchAt(i).clear();
+        }
+    }
+
+    @Test
+    public void burstsInsideTheFrustumAreNotTestedPerParticle() {
+        mSystem.reportTouch(0, 0, mFrustum, T0);
+        mSystem.reportTouch(0.2f, 0.1f, mFrustum, T0 + 101);
+        drawFrame(T0 + 150);
+        assertEquals(2, mSystem.getBurstCount());
+        assertEquals(20, mSystem.getParticleCount());
+        assertEquals(0, mSystem.getParticleTests());
+    }
+
+    @Test
+    public void touchesRespectTheParticleBudget() {
+        // The scene throttles the system to a burst and a half.
+        mSystem.setParticleBudget(15);
+        mSystem.reportTouch(0, 0, mFrustum, T0);
+        mSystem.reportTouch(0.2f, 0.1f, mFrustum, T0 + 101);
+        drawFrame(T0 + 150);
+        assertEquals(1, mSystem.getBurstCount());
+        assertEquals(10, mSystem.getParticleCount());
+        // A touch made under a larger budget but built under a smaller one is dropped.
+        mSystem.setParticleBudget(2000);
+        mSystem.reportTouch(0.2f, 0.1f, mFrustum, T0 + 252);
+        mSystem.setParticleBudget(15);
+        drawFrame(T0 + 270);
+        assertEquals(10, mSystem.getParticleCount());
+    }
+
+    @Test
+    public void burstCullingMatchesParticleCulling() {
+        // A fast drag across the view and back, spawned before the first frame so the state can
+        // be read back before any particle is culled.
+        mSystem.mSpawnPeriod = 0;
+        long t = T0;
+        for (int i = 0; i < 25; ++i, ++t) {
+            float x = i < 13 ? i * 0.15f - 0.9f : (24 - i) * 0.15f - 0.9f;
+            mSystem.reportTouch(x, (i % 3) * 0.2f, mFrustum, t);
+        }
+        Reference reference = new Reference(mSystem);
+        assertEquals(250, reference.mCount);
+
+        long particleFrames = 0;
+        long tests = 0;
+        for (; mSystem.getParticleCount() > 0; t += FRAME_MS) {
+            particleFrames += mSystem.getParticleCount();
+            drawFrame(t);
+            tests += mSystem.getParticleTests();
+            assertEquals("Particles at " + t, reference.cull(mFrustum, t),
+                    mSystem.getParticleCount());
+            assertTrue(mSystem.getBurstCount() <= 25);
+        }
+        assertEquals(0, mSystem.getBurstCount());
+        // Young bursts are accepted whole; the bursts spread across the view within half a second,
+        // so about a fifth of the tests are saved over the particles' lives.
+        assertTrue("Tested " + tests + " of " + particleFrames, tests * 10 < particleFrames * 9);
+    }
+
+    /** Creates a scene holding a seeded system which spawns the given number of particles per
+     tap, with no limit on the taps' rate. */
+    private Scene makeStormScene(int particles, int perTap, float sliceMs) {
+        SimpleParticleSystem system = new SimpleParticleSystem(7);
+        system.mSpawnPeriod = 0;
+        system.mSpawnCount = perTap;
+        system.setSpawnSlice(sliceMs);
+        Scene scene = new Scene();
+        scene.add(system, particles, 1000.0f);
+        scene.setFrustum(mFrustum);
+        return scene;
+    }
+
+    /** The scene's flower batch. */
+    private static SpriteBatch flowers(Scene scene) {
+        return scene.getBatch(scene.getMaterial(Material.SHADE_MASKED, R.raw.flower,
+                R.raw.flower_mask), 0);
+    }
+
+    /** Taps the given number of times, a millisecond apart, around the middle of the view.
+     * @return The time of the last tap.
+     */
+    private static long tapStorm(Scene scene, int taps, long t) {
+        for (int i = 0; i < taps; ++i, ++t) {
+            scene.reportTouch((i % 8) * 0.05f - 0.2f, (i / 8) * 0.05f - 0.2f, t);
+        }
+        return t - 1;
+    }
+
+    @Test
+    public void lateBurstsMatchImmediateOnes() {
+        // One burst per frame, against every burst in the first frame.
+        Scene sliced = makeStormScene(2000, 250, 0);
+        Scene immediate = makeStormScene(2000, 250, Float.MAX_VALUE);
+        SimpleParticleSystem system = (SimpleParticleSystem)sliced.getSystem(0);
+        long t = tapStorm(sliced, 8, T0);
+        tapStorm(immediate, 8, T0);
+        assertEquals(8, system.getSpawnBacklog());
+        assertEquals(t, system.nextVisibleChange(t));
+        for (int frame = 1; frame <= 8; ++frame, t += FRAME_MS) {
+            sliced.update(t);
+            immediate.update(t);
+            assertEquals(8 - frame, system.getSpawnBacklog());
+            assertEquals(frame * 250, system.getParticleCount());
+            SpriteBatch slicedBatch = flowers(sliced), immediateBatch = flowers(immediate);
+            if (frame == 8) {
+                // Every burst is built, at its tap's time: the frames are the same.
+                assertEquals(immediateBatch.getCount(), slicedBatch.getCount());
+                float expected[] = immediateBatch.getData(), actual[] = slicedBatch.getData();
+                for (int f = 0; f < slicedBatch.getCount() * slicedBatch.getFloatsPerSprite();
+                     ++f) {
+                    assertEquals(expected[f], actual[f], 1e-5f);
+                }
+            }
+            slicedBatch.clear();
+            immediateBatch.clear();
+        }
+    }
+
+    /** Times the worst frame of a storm of taps, through the touches and the scene's frames, with
+     its bursts built at once and in slices. The app's system takes a tap at most every
+     mSpawnPeriod, so the storm lifts that limit; each round is a fresh storm. */
+    @Test
+    public void benchmarkTapStorm() throws IOException {
+        BenchmarkHarness harness = new BenchmarkHarness();
+        int taps = 64, perTap = 300;
+        float slices[] = {Float.MAX_VALUE, 0.25f};
+        BenchmarkHarness.Result results[] = new BenchmarkHarness.Result[slices.length];
+        for (int s = 0; s < slices.length; ++s) {
+            long worst = Long.MAX_VALUE;
+            // The best of several storms, after the first few warm up the JIT.
+            for (int round = 0; round < 8; ++round) {
+                Scene scene = makeStormScene(taps * perTap, perTap, slices[s]);
+                SimpleParticleSystem system = (SimpleParticleSystem)scene.getSystem(0);
+                long t = tapStorm(scene, taps, T0);
+                long roundWorst = 0;
+                for (int frames = 0; system.getSpawnBacklog() > 0 || frames < 2; ++frames) {
+                    long start = System.nanoTime();
+                    scene.update(t);
+                    roundWorst = Math.max(roundWorst, System.nanoTime() - start);
+                    flowers(scene).clear();
+                    t += FRAME_MS;
+                }
+                worst = Math.min(worst, roundWorst);
+            }
+            results[s] = new BenchmarkHarness.Result(String.format("%d x %d, %s, worst frame",
+                    taps, perTap, s == 0 ? "built at once" : "sliced"), 1, worst);
+        }
+        harness.write("TapStorm", results);
+    }
+
+    /** The particles read back from a system's state, culled one by one. */
+    private static class Reference {
+        int mCount;
+        float mX0[], mY0[], mZ0[];
+        float mVelocity[];
+        long mBirth[];
+        boolean mAlive[];
+
+        Reference(SimpleParticleSystem system) {
+            system.flushSpawns();
+            ByteBuffer state = ByteBuffer.allocate(system.getStateSize());
+            state.order(ByteOrder.nativeOrder());
+            system.writeState(state);
+            state.flip();
+            mCount = state.getInt();
+            int bursts = state.getInt();
+            state.getLong();
+            state.getLong();
+            float origin[] = new float[bursts * 3];
+            int size[] = new int[bursts];
+            long birth[] = new long[bursts];
+            state.asFloatBuffer().get(origin);
+            // Skip the bursts' bounding velocities and speeds.
+            state.position(state.position() + bursts * (3 + 3 + 1) * 4);
+            state.asIntBuffer().get(size);
+            state.position(state.position() + bursts * 4);
+            state.asLongBuffer().get(birth);
+            state.position(state.position() + bursts * 8);
+            mVelocity = new float[mCount * 3];
+            state.asFloatBuffer().get(mVelocity);
+
+            mX0 = new float[mCount];
+            mY0 = new float[mCount];
+            mZ0 = new float[mCount];
+            mBirth = new long[mCount];
+            mAlive = new boolean[mCount];
+            int i = 0;
+            for (int b = 0; b < bursts; ++b) {
+                for (int k = 0; k < size[b]; ++k, ++i) {
+                    mX0[i] = origin[b * 3];
+                    mY0[i] = origin[b * 3 + 1];
+                    mZ0[i] = origin[b * 3 + 2];
+                    mBirth[i] = birth[b];
+                    mAlive[i] = true;
+                }
+            }
+        }
+
+        /** Retires the particles outside the frustum at the given time; returns the number left. */
+        int cull(Frustum frustum, long globalT) {
+            Vector3 p = new Vector3();
+            int alive = 0;
+            for (int i = 0; i < mCount; ++i) {
+                if (!mAlive[i]) continue;
+                float t = globalT - mBirth[i];
+                p.set(mX0[i] + mVelocity[i * 3] * t,
+                        mY0[i] + (mVelocity[i * 3 + 1] + HALF_GRAVITY * t) * t,
+                        mZ0[i] + mVelocity[i * 3 + 2] * t);
+                mAlive[i] = frustum.farthestOut(p, CULL_MARGIN) <= CULL_MARGIN;
+                if (mAlive[i]) ++alive;
+            }
+            return alive;
+        }
+    }
+}
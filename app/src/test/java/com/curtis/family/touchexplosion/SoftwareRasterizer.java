@@ -0,0 +1,581 @@
+package com.curtis.family.touchexplosion;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A CPU rendering backend for a Scene. It runs the same sprite pipeline as the GL programs in
+ * Material -- the vertex shader's depth-based alpha; the tint, masked, spark and ribbon fragment
+ * shaders; premultiplied ONE / ONE_MINUS_SRC_ALPHA blending with per-sprite additivity -- into an
+ * ARGB framebuffer, so frames can be rendered and compared on machines without a GPU.
+ *
+ * Rendering has two stages. The vertex stage (serial) projects the vertices of every sprite onto
+ * the screen and bins the sprite into each tile its bounds overlap. The raster stage hands out
+ * whole tiles to worker threads; a worker draws its tile's sprites in the order they were
+ * submitted, so the blending order, and therefore the image, does not depend on the number of
+ * threads.
+ *
+ * Textures are premultiplied when they are set, as Scene loads the GL textures, and sampled the
+ * way Scene configures them: repeating, linear when magnified and nearest when minified. Textures
+ * which have not been set sample as opaque black, as an unbound GL texture does. A sprite with a
+ * vertex behind the eye is dropped rather than clipped.
+ *
+ * Every covered fragment is counted in the overdraw buffer, as a measure of fill rate.
+ */
+public class SoftwareRasterizer {
+    /** The width and height of a tile (in pixels). */
+    public static final int TILE_SIZE = 32;
+    /** The number of floats per sprite produced by the vertex stage: (x, y, alpha) per vertex. */
+    private static final int SCREEN_FLOATS = SpriteShape.MAX_VERTICES * 3;
+
+    /** An image in premultiplied ARGB, row by row from the top. */
+    private static class Texture {
+        final int mWidth;
+        final int mHeight;
+        final int[] mPixels;
+
+        Texture(int width, int height, int[] pixels) {
+            mWidth = width;
+            mHeight = height;
+            mPixels = pixels;
+        }
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mTilesX;
+    private final int mTilesY;
+    /** The framebuffer, in ARGB, row by row from the top: the blended values, as GL stores
+     them. */
+    private final int[] mPixels;
+    /** The number of fragments drawn to each pixel in the last frame. */
+    private final int[] mOverdraw;
+    private final HashMap<Integer, Texture> mTextures;
+    private final float mClearColor[];
+
+    private final ExecutorService mExecutor;
+    private final ArrayList<TileWorker> mWorkers;
+    /** The next tile to be claimed by a worker. */
+    private final AtomicInteger mNextTile;
+
+    // The output of the vertex stage for the current frame.
+    /** The batches of the frame, in draw order. */
+    private SpriteBatch mBatches[];
+    /** The textures and shading of each batch. */
+    private Texture mBatchTex0[];
+    private Texture mBatchTex1[];
+    private int mBatchShading[];
+    /** The triangles each batch's sprites are drawn as (see SpriteShape). */
+    private short mBatchTriangles[][];
+    /** For each projected sprite: its batch and its index within the batch. */
+    private int mSpriteBatch[];
+    private int mSpriteIndex[];
+    /** For each projected sprite: the screen position and alpha of each vertex. */
+    private float mScreen[];
+    /** For each projected sprite: its extent on the screen per unit of u and of v. */
+    private float mSpanU[];
+    private float mSpanV[];
+    private int mSpriteCount;
+    /** For each tile: the projected sprites which overlap it, in draw order. */
+    private final int mBins[][];
+    private final int mBinCounts[];
+
+    /** Constructor.
+     * @param width     The width of the framebuffer (in pixels).
+     * @param height    The height of the framebuffer (in pixels).
+     * @param threads   The number of threads which rasterize tiles.
+     */
+    public SoftwareRasterizer(int width, int height, int threads) {
+        mWidth = width;
+        mHeight = height;
+        mTilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        mTilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        mPixels = new int[width * height];
+        mOverdraw = new int[width * height];
+        mTextures = new HashMap<>();
+        mClearColor = new float[3];
+        mNextTile = new AtomicInteger();
+        mWorkers = new ArrayList<>();
+        for (int i = 0; i < threads; ++i) {
+            mWorkers.add(new TileWorker());
+        }
+        mExecutor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        mBins = new int[mTilesX * mTilesY][];
+        mBinCounts = new int[mTilesX * mTilesY];
+        for (int i = 0; i < mBins.length; ++i) {
+            mBins[i] = new int[16];
+        }
+        mBatches = new SpriteBatch[0];
+        mSpriteBatch = new int[0];
+        mSpriteIndex = new int[0];
+        mScreen = new float[0];
+        mSpanU = new float[0];
+        mSpanV = new float[0];
+    }
+
+    /** Sets the image of a texture.
+     * @param resource  The raw resource id the materials refer to the texture by.
+     * @param width     The width of the image (in pixels).
+     * @param height    The height of the image (in pixels).
+     * @param argb      The pixels, row by row from the top, as (non-premultiplied) ARGB.
+     */
+    public void setTexture(int resource, int width, int height, int[] argb) {
+        int premultiplied[] = new int[argb.length];
+        for (int i = 0; i < argb.length; ++i) {
+            int a = argb[i] >>> 24;
+            float scale = a / 255.0f / 255.0f;
+            premultiplied[i] = pack(((argb[i] >> 16) & 0xff) * scale,
+                    ((argb[i] >> 8) & 0xff) * scale, (argb[i] & 0xff) * scale, a / 255.0f);
+        }
+        mTextures.put(resource, new Texture(width, height, premultiplied));
+    }
+
+    /** Sets the color the framebuffer is cleared to (r, g, b); it is cleared with zero alpha, as
+     the renderer clears the GL framebuffer. */
+    public void setClearColor(float[] rgb) {
+        System.arraycopy(rgb, 0, mClearColor, 0, 3);
+    }
+
+    /** Draws all of the scene's systems at the given time, as Scene.drawGL() would. */
+    public void draw(Scene scene, long globalT, float[] mvpMatrix) {
+        scene.update(globalT);
+        scene.getLod().apply(scene, mvpMatrix, mWidth, mHeight);
+        clear();
+        prepareBatches(scene);
+        mSpriteCount = 0;
+        Arrays.fill(mBinCounts, 0);
+        for (int b = 0; b < mBatches.length; ++b) {
+            int count = mBatches[b].getCount();
+            for (int s = 0; s < count; ++s) {
+                project(b, s, mvpMatrix);
+            }
+        }
+        rasterize();
+        for (SpriteBatch batch : mBatches) {
+            batch.clear();
+        }
+    }
+
+    /** Stops the worker threads. */
+    public void shutdown() {
+        if (mExecutor != null) mExecutor.shutdown();
+    }
+
+    public int getWidth() { return mWidth; }
+
+    public int getHeight() { return mHeight; }
+
+    /** Returns the framebuffer, in ARGB, row by row from the top. */
+    public int[] getPixels() { return mPixels; }
+
+    /** Returns the number of fragments drawn to each pixel in the last frame. */
+    public int[] getOverdraw() { return mOverdraw; }
+
+    /** Reports the total number of fragments drawn in the last frame. */
+    public long getFragmentCount() {
+        long count = 0;
+        for (int c : mOverdraw) count += c;
+        return count;
+    }
+
+    /** Reports the largest number of fragments drawn to any one pixel in the last frame. */
+    public int getMaxOverdraw() {
+        int max = 0;
+        for (int c : mOverdraw) max = Math.max(max, c);
+        return max;
+    }
+
+    /** Writes the framebuffer as a PNG. */
+    public void writePng(OutputStream out) throws IOException {
+        PngWriter.write(out, mPixels, mWidth, mHeight);
+    }
+
+    private void clear() {
+        int clear = pack(mClearColor[0], mClearColor[1], mClearColor[2], 0);
+        Arrays.fill(mPixels, clear);
+        Arrays.fill(mOverdraw, 0);
+    }
+
+    private void prepareBatches(Scene scene) {
+        int count = scene.getBatchCount();
+        if (mBatches.length != count) {
+            mBatches = new SpriteBatch[count];
+            mBatchTex0 = new Texture[count];
+            mBatchTex1 = new Texture[count];
+            mBatchShading = new int[count];
+            mBatchTriangles = new short[count][];
+        }
+        for (int b = 0; b < count; ++b) {
+            SpriteBatch batch = scene.getBatchAt(b);
+            Material m = batch.getMaterial();
+            mBatches[b] = batch;
+            mBatchTex0[b] = mTextures.get(m.mTexture0);
+            mBatchTex1[b] = mTextures.get(m.mTexture1);
+            mBatchShading[b] = m.getShading();
+            mBatchTriangles[b] = m.getShape().getTriangles();
+        }
+    }
+
+    /** The vertex stage for one sprite: projects its vertices and bins it. */
+    private void project(int batch, int sprite, float[] m) {
+        float data[] = mBatches[batch].getData();
+        int vertices = mBatches[batch].getVerticesPerSprite();
+        int floats = mBatches[batch].getFloatsPerSprite();
+        if (mSpriteCount == mSpriteBatch.length) {
+            int capacity = Math.max(64, mSpriteCount * 2);
+            mSpriteBatch = Arrays.copyOf(mSpriteBatch, capacity);
+            mSpriteIndex = Arrays.copyOf(mSpriteIndex, capacity);
+            mScreen = Arrays.copyOf(mScreen, capacity * SCREEN_FLOATS);
+            mSpanU = Arrays.copyOf(mSpanU, capacity);
+            mSpanV = Arrays.copyOf(mSpanV, capacity);
+        }
+        int out = mSpriteCount * SCREEN_FLOATS;
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (int v = 0; v < vertices; ++v) {
+            int i = sprite * floats + v * SpriteBatch.FLOATS_PER_VERTEX;
+            float x = data[i];
+            float y = data[i + 1];
+            float z = data[i + 2];
+            // Android matrices are column-major.
+            float cx = m[0] * x + m[4] * y + m[8] * z + m[12];
+            float cy = m[1] * x + m[5] * y + m[9] * z + m[13];
+            float cz = m[2] * x + m[6] * y + m[10] * z + m[14];
+            float cw = m[3] * x + m[7] * y + m[11] * z + m[15];
+            if (cw <= 0) return;
+            float sx = (cx / cw + 1) * 0.5f * mWidth;
+            float sy = (1 - cy / cw) * 0.5f * mHeight;
+            // As Material.VERTEX_SHADER.
+            float dist = 0.125f + 1.0f - (cz / Scene.FAR_LIMIT) * 0.825f;
+            mScreen[out + v * 3] = sx;
+            mScreen[out + v * 3 + 1] = sy;
+            mScreen[out + v * 3 + 2] = (float)Math.sqrt(Math.max(0.0f, dist));
+            minX = Math.min(minX, sx);
+            maxX = Math.max(maxX, sx);
+            minY = Math.min(minY, sy);
+            maxY = Math.max(maxY, sy);
+        }
+        if (maxX < 0 || maxY < 0 || minX >= mWidth || minY >= mHeight) return;
+        int tx0 = Math.max(0, (int)minX / TILE_SIZE);
+        int ty0 = Math.max(0, (int)minY / TILE_SIZE);
+        int tx1 = Math.min(mTilesX - 1, (int)maxX / TILE_SIZE);
+        int ty1 = Math.min(mTilesY - 1, (int)maxY / TILE_SIZE);
+        int g = mSpriteCount++;
+        mSpriteBatch[g] = batch;
+        mSpriteIndex[g] = sprite;
+        measureSpans(g, data, sprite * floats);
+        for (int ty = ty0; ty <= ty1; ++ty) {
+            for (int tx = tx0; tx <= tx1; ++tx) {
+                int tile = ty * mTilesX + tx;
+                if (mBinCounts[tile] == mBins[tile].length) {
+                    mBins[tile] = Arrays.copyOf(mBins[tile], mBins[tile].length * 2);
+                }
+                mBins[tile][mBinCounts[tile]++] = g;
+            }
+        }
+    }
+
+    /** Finds a projected sprite's extent on the screen per unit of u and of v, from the affine
+     map of its first three vertices' texture coordinates to their screen positions. */
+    private void measureSpans(int g, float[] data, int base) {
+        int s = g * SCREEN_FLOATS;
+        int v1 = base + SpriteBatch.FLOATS_PER_VERTEX, v2 = v1 + SpriteBatch.FLOATS_PER_VERTEX;
+        float du1 = data[v1 + 3] - data[base + 3], dv1 = data[v1 + 4] - data[base + 4];
+        float du2 = data[v2 + 3] - data[base + 3], dv2 = data[v2 + 4] - data[base + 4];
+        float x1 = mScreen[s + 3] - mScreen[s], y1 = mScreen[s + 4] - mScreen[s + 1];
+        float x2 = mScreen[s + 6] - mScreen[s], y2 = mScreen[s + 7] - mScreen[s + 1];
+        float det = du1 * dv2 - du2 * dv1;
+        if (det == 0) {
+            mSpanU[g] = 0;
+            mSpanV[g] = 0;
+            return;
+        }
+        mSpanU[g] = length(x1 * dv2 - x2 * dv1, y1 * dv2 - y2 * dv1) / Math.abs(det);
+        mSpanV[g] = length(x2 * du1 - x1 * du2, y2 * du1 - y1 * du2) / Math.abs(det);
+    }
+
+    /** The raster stage: the workers claim tiles until there are none left. */
+    private void rasterize() {
+        mNextTile.set(0);
+        if (mExecutor == null) {
+            mWorkers.get(0).call();
+            return;
+        }
+        try {
+            for (Future<Void> f : mExecutor.invokeAll(mWorkers)) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            // A partial frame must not pass for a whole one.
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while rasterizing", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /** Draws tiles; each worker has its own scratch space. */
+    private class TileWorker implements Callable<Void> {
+        private final float mTexel[] = new float[4];
+        private final float mTexel2[] = new float[4];
+
+        @Override
+        public Void call() {
+            int tiles = mTilesX * mTilesY;
+            for (int tile = mNextTile.getAndIncrement(); tile < tiles;
+                 tile = mNextTile.getAndIncrement()) {
+                int x0 = (tile % mTilesX) * TILE_SIZE;
+                int y0 = (tile / mTilesX) * TILE_SIZE;
+                int x1 = Math.min(mWidth, x0 + TILE_SIZE);
+                int y1 = Math.min(mHeight, y0 + TILE_SIZE);
+                int count = mBinCounts[tile];
+                int bin[] = mBins[tile];
+                for (int i = 0; i < count; ++i) {
+                    // The sprite's triangles, in the order the GL index buffer draws them.
+                    short triangles[] = mBatchTriangles[mSpriteBatch[bin[i]]];
+                    for (int t = 0; t < triangles.length; t += 3) {
+                        drawTriangle(bin[i], triangles[t], triangles[t + 1], triangles[t + 2],
+                                x0, y0, x1, y1);
+                    }
+                }
+            }
+            return null;
+        }
+
+        /** Draws the given triangle of a projected sprite within the given pixel bounds. */
+        private void drawTriangle(int g, int a, int b, int c, int x0, int y0, int x1, int y1) {
+            int batch = mSpriteBatch[g];
+            float data[] = mBatches[batch].getData();
+            int base = mSpriteIndex[g] * mBatches[batch].getFloatsPerSprite();
+            int s = g * SCREEN_FLOATS;
+            float ax = mScreen[s + a * 3], ay = mScreen[s + a * 3 + 1];
+            float bx = mScreen[s + b * 3], by = mScreen[s + b * 3 + 1];
+            float cx = mScreen[s + c * 3], cy = mScreen[s + c * 3 + 1];
+            float area = (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+            if (area == 0) return;
+            if (area < 0) {
+                // Make the winding consistent by swapping b and c.
+                int t = b; b = c; c = t;
+                float tx = bx; bx = cx; cx = tx;
+                float ty = by; by = cy; cy = ty;
+                area = -area;
+            }
+            int px0 = Math.max(x0, (int)Math.floor(Math.min(ax, Math.min(bx, cx))));
+            int px1 = Math.min(x1 - 1, (int)Math.ceil(Math.max(ax, Math.max(bx, cx))));
+            int py0 = Math.max(y0, (int)Math.floor(Math.min(ay, Math.min(by, cy))));
+            int py1 = Math.min(y1 - 1, (int)Math.ceil(Math.max(ay, Math.max(by, cy))));
+            if (px0 > px1 || py0 > py1) return;
+
+            // Per-vertex attributes.
+            int va = base + a * SpriteBatch.FLOATS_PER_VERTEX;
+            int vb = base + b * SpriteBatch.FLOATS_PER_VERTEX;
+            int vc = base + c * SpriteBatch.FLOATS_PER_VERTEX;
+            float ua = data[va + 3], ub = data[vb + 3], uc = data[vc + 3];
+            float wa = data[va + 4], wb = data[vb + 4], wc = data[vc + 4];
+            float alphaA = mScreen[s + a * 3 + 2];
+            float alphaB = mScreen[s + b * 3 + 2];
+            float alphaC = mScreen[s + c * 3 + 2];
+            int shading = mBatchShading[batch];
+            Texture tex0 = mBatchTex0[batch];
+            Texture tex1 = mBatchTex1[batch];
+            // GL minifies when a texel covers less than a pixel: compare the sprite's extent on
+            // the screen per unit of u and of v (from its first three vertices) with the
+            // texture's.
+            float spanU = mSpanU[g];
+            float spanV = mSpanV[g];
+            boolean linear0 = tex0 == null || (tex0.mWidth <= spanU && tex0.mHeight <= spanV);
+            boolean linear1 = tex1 == null || (tex1.mWidth <= spanU && tex1.mHeight <= spanV);
+
+            // Edge functions at the first pixel center and their steps. Pixels exactly on an edge
+            // belong to the triangle only for "top-left" edges, so the edges shared by the sprite's
+            // triangles are
+            // drawn once.
+            float px = px0 + 0.5f;
+            float py = py0 + 0.5f;
+            float eA = edge(bx, by, cx, cy, px, py);
+            float eB = edge(cx, cy, ax, ay, px, py);
+            float eC = edge(ax, ay, bx, by, px, py);
+            float dxA = -(cy - by), dyA = cx - bx;
+            float dxB = -(ay - cy), dyB = ax - cx;
+            float dxC = -(by - ay), dyC = bx - ax;
+            boolean tlA = isTopLeft(bx, by, cx, cy);
+            boolean tlB = isTopLeft(cx, cy, ax, ay);
+            boolean tlC = isTopLeft(ax, ay, bx, by);
+            float inv = 1.0f / area;
+
+            for (int y = py0; y <= py1; ++y) {
+                float rowA = eA, rowB = eB, rowC = eC;
+                for (int x = px0; x <= px1; ++x) {
+                    if (covers(rowA, tlA) && covers(rowB, tlB) && covers(rowC, tlC)) {
+                        float la = rowA * inv, lb = rowB * inv, lc = rowC * inv;
+                        float u = la * ua + lb * ub + lc * uc;
+                        float v = la * wa + lb * wb + lc * wc;
+                        float alpha = la * alphaA + lb * alphaB + lc * alphaC;
+                        int p = y * mWidth + x;
+                        shade(shading, data, va, tex0, linear0, tex1, linear1, u, v, alpha, p);
+                        ++mOverdraw[p];
+                    }
+                    rowA += dxA;
+                    rowB += dxB;
+                    rowC += dxC;
+                }
+                eA += dyA;
+                eB += dyB;
+                eC += dyC;
+            }
+        }
+
+        /** Runs the material's fragment shader and blends the result into pixel p. */
+        private void shade(int shading, float[] data, int vertex, Texture tex0, boolean linear0,
+                           Texture tex1, boolean linear1, float u, float v, float alpha, int p) {
+            float c[] = mTexel;
+            // The colors are the same at every corner (a ribbon's too; see Trails); read them from
+            // the first.
+            int color = vertex + 5;
+            int color2 = vertex + 9;
+            sample(tex0, linear0, u, v, c);
+            // The fragment, premultiplied (as the texels are), into c.
+            float fade = Math.min(alpha, 1.0f);
+            switch (shading) {
+                case Material.SHADE_MASKED: {
+                    float mask[] = mTexel2;
+                    sample(tex1, linear1, u, v, mask);
+                    int tint = mask[0] < 0.75f ? color2 : color;
+                    c[0] *= data[tint] * fade;
+                    c[1] *= data[tint + 1] * fade;
+                    c[2] *= data[tint + 2] * fade;
+                    c[3] *= fade;
+                    break;
+                }
+                case Material.SHADE_SPARK: {
+                    float cos = data[color2];
+                    float sin = data[color2 + 1];
+                    float lu = u - 0.5f;
+                    float lv = v - 0.5f;
+                    float u2 = lu * sin + lv * cos + 0.5f;
+                    float v2 = -lu * cos + lv * sin + 0.5f;
+                    float overflow = (u2 > 1 || u2 < 0 || v2 > 1 || v2 < 0) ? 0 : 1;
+                    float rotated[] = mTexel2;
+                    sample(tex0, linear0, u2, v2, rotated);
+                    fade *= data[color + 3] * overflow;
+                    for (int i = 0; i < 3; ++i) {
+                        c[i] = (c[i] * 0.5f + rotated[i] * 0.5f) * data[color + i] * fade;
+                    }
+                    c[3] = (c[3] * 0.5f + rotated[3] * 0.5f) * fade;
+                    break;
+                }
+                case Material.SHADE_RIBBON: {
+                    fade *= data[color + 3] * (1 - Math.abs(u * 2 - 1));
+                    for (int i = 0; i < 3; ++i) {
+                        c[i] = data[color + i] * fade;
+                    }
+                    c[3] = fade;
+                    break;
+                }
+                default:
+                    fade *= data[color + 3];
+                    for (int i = 0; i < 3; ++i) {
+                        c[i] *= data[color + i] * fade;
+                    }
+                    c[3] *= fade;
+                    break;
+            }
+            // The additivity lowers only the alpha written: ONE / ONE_MINUS_SRC_ALPHA blending.
+            float a = clamp01(c[3] * (1 - data[vertex + 13]));
+            int dst = mPixels[p];
+            float keep = 1 - a;
+            float r = c[0] + ((dst >> 16) & 0xff) / 255.0f * keep;
+            float g = c[1] + ((dst >> 8) & 0xff) / 255.0f * keep;
+            float b = c[2] + (dst & 0xff) / 255.0f * keep;
+            float da = a + ((dst >>> 24) & 0xff) / 255.0f * keep;
+            mPixels[p] = pack(r, g, b, da);
+        }
+    }
+
+    /** Samples the texture at (u, v) into out (r, g, b, a), repeating the texture. */
+    private static void sample(Texture tex, boolean linear, float u, float v, float[] out) {
+        if (tex == null) {
+            out[0] = 0;
+            out[1] = 0;
+            out[2] = 0;
+            out[3] = 1;
+            return;
+        }
+        int w = tex.mWidth;
+        int h = tex.mHeight;
+        if (!linear) {
+            int x = wrap((int)Math.floor(u * w), w);
+            int y = wrap((int)Math.floor(v * h), h);
+            unpack(tex.mPixels[y * w + x], out, 1, 0);
+            return;
+        }
+        float fx = u * w - 0.5f;
+        float fy = v * h - 0.5f;
+        int x0 = (int)Math.floor(fx);
+        int y0 = (int)Math.floor(fy);
+        float tx = fx - x0;
+        float ty = fy - y0;
+        int xa = wrap(x0, w), xb = wrap(x0 + 1, w);
+        int ya = wrap(y0, h), yb = wrap(y0 + 1, h);
+        out[0] = out[1] = out[2] = out[3] = 0;
+        unpack(tex.mPixels[ya * w + xa], out, (1 - tx) * (1 - ty), 1);
+        unpack(tex.mPixels[ya * w + xb], out, tx * (1 - ty), 1);
+        unpack(tex.mPixels[yb * w + xa], out, (1 - tx) * ty, 1);
+        unpack(tex.mPixels[yb * w + xb], out, tx * ty, 1);
+    }
+
+    /** Sets out to (keep * out) + (weight * the color) with the color's channels in [0, 1]. */
+    private static void unpack(int argb, float[] out, float weight, float keep) {
+        float scale = weight / 255.0f;
+        out[0] = out[0] * keep + ((argb >> 16) & 0xff) * scale;
+        out[1] = out[1] * keep + ((argb >> 8) & 0xff) * scale;
+        out[2] = out[2] * keep + (argb & 0xff) * scale;
+        out[3] = out[3] * keep + ((argb >>> 24) & 0xff) * scale;
+    }
+
+    private static int pack(float r, float g, float b, float a) {
+        return (toByte(a) << 24) | (toByte(r) << 16) | (toByte(g) << 8) | toByte(b);
+    }
+
+    private static int toByte(float value) {
+        return (int)(clamp01(value) * 255.0f + 0.5f);
+    }
+
+    private static float clamp01(float value) {
+        return Math.max(0.0f, Math.min(1.0f, value));
+    }
+
+    private static int wrap(int i, int n) {
+        int r = i % n;
+        return r < 0 ? r + n : r;
+    }
+
+    private static float length(float x, float y) {
+        return (float)Math.sqrt(x * x + y * y);
+    }
+
+    /** The edge function of (a, b) at p: positive on the inside of a consistently wound
+     triangle. */
+    private static float edge(float ax, float ay, float bx, float by, float px, float py) {
+        return (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+    }
+
+    /** The tie-breaking rule for pixel centers exactly on an edge; a shared edge is traversed in
+     opposite directions by its two triangles, so exactly one of them claims it. */
+    private static boolean isTopLeft(float ax, float ay, float bx, float by) {
+        return ay == by ? bx < ax : by > ay;
+    }
+
+    private static boolean covers(float edge, boolean topLeft) {
+        return edge > 0 || (edge == 0 && topLeft);
+    }
+}
@@ -0,0 +1,164 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Renders the particle systems with the SoftwareRasterizer and compares the frames with golden
+ * images. The systems are seeded, so the frames are reproducible.
+ */
+public class SoftwareRasterizerTest {
+    private static final int SIZE = 256;
+    private static final long T0 = 10000;
+    private static final long FRAME_MS = 16;
+    private static final File TEXTURES = new File("src/main/res/raw");
+    /** The fill-rate budget of the particle frames: fragments per pixel. */
+    private static final float MAX_AVERAGE_OVERDRAW = 2.0f;
+
+    private GoldenImages mGoldens;
+    private Frustum mFrustum;
+    private float[] mMVPMatrix;
+    private SoftwareRasterizer mRasterizer;
+
+    @Before
+    public void setUp() throws IOException {
+        mGoldens = new GoldenImages();
+        // The renderer's camera, for a square view.
+        mFrustum = new Frustum(new Vector3(0, 0, 3), new Vector3(0, 0, -1),
+                -1, 1, 0.5f, 7.0f, -1, 1);
+        mMVPMatrix = makeMVPMatrix(mFrustum, 3);
+        mRasterizer = makeRasterizer(4);
+    }
+
+    @After
+    public void tearDown() {
+        mRasterizer.shutdown();
+    }
+
+    @Test
+    public void simpleParticleSystemMatchesGolden() throws IOException {
+        Scene scene = makeScene(new SimpleParticleSystem(1), null);
+        long t = spray(scene);
+        mRasterizer.draw(scene, t + 400, mMVPMatrix);
+        mGoldens.assertMatches("simple_particles", mRasterizer, 2, 0);
+    }
+
+    @Test
+    public void tinkerBellSystemMatchesGolden() throws IOException {
+        Scene scene = makeScene(null, new TinkerBellSystem(T0, 7));
+        scene.reportTouch(0.25f, 0.25f, T0);
+        long t = advance(scene, T0, T0 + 1500);
+        mRasterizer.draw(scene, t, mMVPMatrix);
+        mGoldens.assertMatches("tinker_bell", mRasterizer, 2, 0);
+    }
+
+    @Test
+    public void tiledRasterizationDoesNotDependOnThreads() throws IOException {
+        SoftwareRasterizer serial = makeRasterizer(1);
+        try {
+            Scene a = makeScene(new SimpleParticleSystem(3), new TinkerBellSystem(T0, 3));
+            Scene b = makeScene(new SimpleParticleSystem(3), new TinkerBellSystem(T0, 3));
+            long ta = spray(a);
+            ta = advance(a, ta, ta + 500);
+            long tb = spray(b);
+            tb = advance(b, tb, tb + 500);
+            serial.setClearColor(a.getBgColor());
+            serial.draw(a, ta, mMVPMatrix);
+            mRasterizer.draw(b, tb, mMVPMatrix);
+            assertArrayEquals(serial.getPixels(), mRasterizer.getPixels());
+            assertArrayEquals(serial.getOverdraw(), mRasterizer.getOverdraw());
+        } finally {
+            serial.shutdown();
+        }
+    }
+
+    @Test
+    public void overdrawIsWithinFillBudget() {
+        Scene scene = makeScene(new SimpleParticleSystem(1), new TinkerBellSystem(T0, 7));
+        long t = spray(scene);
+        t = advance(scene, t, t + 500);
+        mRasterizer.draw(scene, t, mMVPMatrix);
+        float average = mRasterizer.getFragmentCount() / (float)(SIZE * SIZE);
+        assertTrue("Some fragments are drawn", mRasterizer.getFragmentCount() > 0);
+        assertTrue("Average overdraw " + average + " exceeds " + MAX_AVERAGE_OVERDRAW,
+                average <= MAX_AVERAGE_OVERDRAW);
+    }
+
+    /** Creates a scene with the given systems (either may be null). */
+    private Scene makeScene(SimpleParticleSystem simple, TinkerBellSystem tinkerBell) {
+        Scene scene = new Scene();
+        if (simple != null) {
+            // Every requested burst is built in the next frame, however slow the machine, so the
+            // frames are reproducible.
+            simple.setSpawnSlice(Float.MAX_VALUE);
+            scene.add(simple, 2000, 1000.0f);
+        }
+        if (tinkerBell != null) scene.add(tinkerBell, 300, 1000.0f);
+        scene.setFrustum(mFrustum);
+        mRasterizer.setClearColor(scene.getBgColor());
+        return scene;
+    }
+
+    /** A drag across the top of the view; returns the time of the last touch. */
+    private long spray(Scene scene) {
+        long t = T0;
+        for (int i = 0; i < 10; ++i, t += 101) {
+            scene.reportTouch(-0.5f + i * 0.1f, 0.6f, t);
+        }
+        return t;
+    }
+
+    /** Runs the scene's frames (without rasterizing them) up to the given time. */
+    private static long advance(Scene scene, long from, long to) {
+        long t = from;
+        for (; t < to; t += FRAME_MS) {
+            scene.update(t);
+            for (int i = 0; i < scene.getBatchCount(); ++i) {
+                scene.getBatchAt(i).clear();
+            }
+        }
+        return t;
+    }
+
+    private SoftwareRasterizer makeRasterizer(int threads) throws IOException {
+        SoftwareRasterizer rasterizer = new SoftwareRasterizer(SIZE, SIZE, threads);
+        GoldenImages.loadTexture(rasterizer, R.raw.flower, new File(TEXTURES, "flower.png"));
+        GoldenImages.loadTexture(rasterizer, R.raw.flower_mask,
+                new File(TEXTURES, "flower_mask.png"));
+        GoldenImages.loadTexture(rasterizer, R.raw.star, new File(TEXTURES, "star.png"));
+        // The fairy's yin_yang texture is not in the tree; the target stands in for it.
+        GoldenImages.loadTexture(rasterizer, R.raw.yin_yang, new File(TEXTURES, "target.png"));
+        return rasterizer;
+    }
+
+    /** The renderer's MVP matrix (Matrix.frustumM() and Matrix.setLookAtM(), which are not
+     available off the device) for a camera on the z-axis looking down -z.
+     * @param f         The view frustum.
+     * @param eyeZ      The z-position of the eye.
+     */
+    static float[] makeMVPMatrix(Frustum f, float eyeZ) {
+        float l = f.getLeft(), r = f.getRight(), b = f.getBottom(), t = f.getTop();
+        float n = f.getNear(), far = f.getFar();
+        float m[] = new float[16];
+        m[0] = 2 * n / (r - l);
+        m[5] = 2 * n / (t - b);
+        m[8] = (r + l) / (r - l);
+        m[9] = (t + b) / (t - b);
+        m[10] = -(far + n) / (far - n);
+        m[11] = -1;
+        m[14] = -2 * far * n / (far - n);
+        // The view translates the world by -eyeZ along z.
+        m[12] = -eyeZ * m[8];
+        m[13] = -eyeZ * m[9];
+        m[14] += -eyeZ * m[10];
+        m[15] = -eyeZ * m[11];
+        return m;
+    }
+}
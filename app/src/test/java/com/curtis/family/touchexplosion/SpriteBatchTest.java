@@ -0,0 +1,198 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * Verifies the batch's sprite transform against the matrix chain it replaces (per sprite:
+ * identity, translate, rotate about z, scale, then multiply by the MVP matrix, as the
+ * android.opengl.Matrix calls did), and benchmarks the two (see BenchmarkHarness).
+ */
+public class SpriteBatchTest {
+    private static final int SPRITES = 2000;
+    private static final float[] COLOR = {1, 0.5f, 0.25f, 1};
+
+    /** Random placements: x, y, z, angle, scale per sprite, in columns. */
+    private final float mX[] = new float[SPRITES];
+    private final float mY[] = new float[SPRITES];
+    private final float mZ[] = new float[SPRITES];
+    private final float mAngle[] = new float[SPRITES];
+    private final float mScale[] = new float[SPRITES];
+    private final float mColors[] = new float[SPRITES * 8];
+
+    public SpriteBatchTest() {
+        XorShiftRandom random = new XorShiftRandom(7);
+        for (int i = 0; i < SPRITES; ++i) {
+            mX[i] = random.nextFloat() * 4 - 2;
+            mY[i] = random.nextFloat() * 4 - 2;
+            mZ[i] = random.nextFloat() * 4 - 3;
+            mAngle[i] = random.nextFloat() * 720 - 360;
+            mScale[i] = random.nextFloat() + 0.05f;
+            for (int c = 0; c < 8; ++c) mColors[i * 8 + c] = random.nextFloat();
+        }
+    }
+
+    @Test
+    public void transformMatchesTheMatrixChain() {
+        float mvp[] = makeMVP();
+        Scene scene = new Scene();
+        // The quad (expanded in closed form) and a fitted polygon.
+        int textures[] = {R.raw.yin_yang, R.raw.flower};
+        for (int texture : textures) {
+            SpriteBatch batch = scene.getBatch(
+                    scene.getMaterial(Material.SHADE_TINT, texture, 0), SPRITES);
+            SpriteShape shape = batch.getMaterial().getShape();
+            float corners[] = shape.getCorners();
+            float model[] = new float[16], chain[] = new float[16];
+            float corner[] = new float[4], expected[] = new float[4], actual[] = new float[4];
+            assertEquals(SPRITES, batch.addAll(mX, mY, mZ, mAngle, mScale, 1, mColors, 8, 4,
+                    0.25f, 0, SPRITES));
+            float data[] = batch.getData();
+            for (int i = 0; i < SPRITES; ++i) {
+                makeModel(model, mX[i], mY[i], mZ[i], mAngle[i], mScale[i]);
+                multiplyMM(chain, mvp, model);
+                for (int v = 0; v < shape.getVertexCount(); ++v) {
+                    corner[0] = corners[v * 4];
+                    corner[1] = corners[v * 4 + 1];
+                    corner[2] = 0;
+                    corner[3] = 1;
+                    multiplyMV(expected, chain, corner);
+                    int o = (i * shape.getVertexCount() + v) * SpriteBatch.FLOATS_PER_VERTEX;
+                    corner[0] = data[o];
+                    corner[1] = data[o + 1];
+                    corner[2] = data[o + 2];
+                    multiplyMV(actual, mvp, corner);
+                    for (int k = 0; k < 4; ++k) {
+                        assertEquals("Sprite " + i, expected[k], actual[k], 1e-5f);
+                    }
+                    assertEquals(corners[v * 4 + 2], data[o + 3], 0.0f);
+                    assertEquals(corners[v * 4 + 3], data[o + 4], 0.0f);
+                    for (int c = 0; c < 8; ++c) {
+                        assertEquals(mColors[i * 8 + c], data[o + 5 + c], 0.0f);
+                    }
+                    assertEquals(0.25f, data[o + 13], 0.0f);
+                }
+            }
+
+            // Adding the sprites one at a time gives the same vertices.
+            SpriteBatch single = scene.getBatch(
+                    scene.getMaterial(Material.SHADE_MASKED, texture, texture), SPRITES);
+            for (int i = 0; i < SPRITES; ++i) {
+                single.add(mX[i], mY[i], mZ[i], mAngle[i], mScale[i], mColors, i * 8, mColors,
+                        i * 8 + 4, 0.25f);
+            }
+            for (int f = 0; f < SPRITES * batch.getFloatsPerSprite(); ++f) {
+                assertEquals(data[f], single.getData()[f], 0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void batchStopsWhenFull() {
+        Scene scene = new Scene();
+        SpriteBatch batch = scene.getBatch(
+                scene.getMaterial(Material.SHADE_TINT, R.raw.yin_yang, 0), 10);
+        float shared[] = {0.5f};
+        assertEquals(6, batch.addAll(mX, mY, mZ, null, shared, 0, COLOR, 0, 0, 0, 0, 6));
+        assertEquals(4, batch.addAll(mX, mY, mZ, null, shared, 0, COLOR, 0, 0, 0, 6, 20));
+        assertEquals(0, batch.addAll(mX, mY, mZ, null, shared, 0, COLOR, 0, 0, 0, 10, 20));
+        assertEquals(10, batch.getCount());
+        // Unrotated sprites of half-width 0.5 span the center +/- 0.5.
+        float data[] = batch.getData();
+        int last = 9 * batch.getFloatsPerSprite() + 3 * SpriteBatch.FLOATS_PER_VERTEX;
+        assertEquals(mX[9] + 0.5f, data[last], 1e-6f);
+        assertEquals(mY[9] + 0.5f, data[last + 1], 1e-6f);
+        assertEquals(COLOR[3], data[last + 8], 0.0f);
+    }
+
+    /** Times a frame of SPRITES sprites through the matrix chain and through the batch. */
+    @Test
+    public void benchmarkTransform() throws IOException {
+        BenchmarkHarness harness = new BenchmarkHarness();
+        final float mvp[] = makeMVP();
+        Scene scene = new Scene();
+        final SpriteBatch batch = scene.getBatch(
+                scene.getMaterial(Material.SHADE_TINT, R.raw.yin_yang, 0), SPRITES);
+        final float corners[] = batch.getMaterial().getShape().getCorners();
+        final float model[] = new float[16], chain[] = new float[16];
+        final float corner[] = new float[4], transformed[] = new float[4];
+        BenchmarkHarness.Result chainResult = harness.measure("Matrix chain, " + SPRITES +
+                " sprites", new BenchmarkHarness.Task() {
+            @Override
+            public void run() {
+                for (int i = 0; i < SPRITES; ++i) {
+                    makeModel(model, mX[i], mY[i], mZ[i], mAngle[i], mScale[i]);
+                    multiplyMM(chain, mvp, model);
+                    for (int v = 0; v < 4; ++v) {
+                        corner[0] = corners[v * 4];
+                        corner[1] = corners[v * 4 + 1];
+                        corner[2] = 0;
+                        corner[3] = 1;
+                        multiplyMV(transformed, chain, corner);
+                    }
+                }
+            }
+        }, 10, 100);
+        BenchmarkHarness.Result batchResult = harness.measure("SpriteBatch.addAll(), " + SPRITES +
+                " sprites", new BenchmarkHarness.Task() {
+            @Override
+            public void run() {
+                batch.clear();
+                batch.addAll(mX, mY, mZ, mAngle, mScale, 1, mColors, 8, 4, 0, 0, SPRITES);
+            }
+        }, 10, 100);
+        harness.write("SpriteBatch", chainResult, batchResult);
+    }
+
+    /** The MVP matrix of SoftwareRasterizerTest's view. */
+    private static float[] makeMVP() {
+        Frustum frustum = new Frustum(new Vector3(0, 0, 3), new Vector3(0, 0, -1),
+                -1, 1, 0.5f, 7.0f, -1, 1);
+        return SoftwareRasterizerTest.makeMVPMatrix(frustum, 3);
+    }
+
+    // The android.opengl.Matrix operations the sprites were placed with (column-major).
+
+    private static final float sRotation[] = new float[16];
+    private static final float sRotated[] = new float[16];
+
+    /** setIdentityM, translateM, rotateM about z and scaleM. */
+    private static void makeModel(float[] m, float x, float y, float z, float angle, float scale) {
+        for (int i = 0; i < 16; ++i) m[i] = (i % 5 == 0) ? 1 : 0;
+        for (int i = 0; i < 4; ++i) {
+            m[12 + i] += m[i] * x + m[4 + i] * y + m[8 + i] * z;
+        }
+        double theta = Math.toRadians(angle);
+        float c = (float)Math.cos(theta), s = (float)Math.sin(theta);
+        for (int i = 0; i < 16; ++i) sRotation[i] = (i % 5 == 0) ? 1 : 0;
+        sRotation[0] = c;
+        sRotation[1] = s;
+        sRotation[4] = -s;
+        sRotation[5] = c;
+        multiplyMM(sRotated, m, sRotation);
+        System.arraycopy(sRotated, 0, m, 0, 16);
+        for (int i = 0; i < 12; ++i) m[i] *= scale;
+    }
+
+    /** result = lhs * rhs. */
+    private static void multiplyMM(float[] result, float[] lhs, float[] rhs) {
+        for (int col = 0; col < 4; ++col) {
+            for (int row = 0; row < 4; ++row) {
+                float sum = 0;
+                for (int k = 0; k < 4; ++k) sum += lhs[k * 4 + row] * rhs[col * 4 + k];
+                result[col * 4 + row] = sum;
+            }
+        }
+    }
+
+    /** result = m * v. */
+    private static void multiplyMV(float[] result, float[] m, float[] v) {
+        for (int row = 0; row < 4; ++row) {
+            result[row] = m[row] * v[0] + m[4 + row] * v[1] + m[8 + row] * v[2]
+                    + m[12 + row] * v[3];
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Verifies the level-of-detail stage's tiers on hand-placed sprites.
+ */
+public class SpriteLodTest {
+    /** The viewport: 50 pixels per meter at unit depth, so 10 per meter 5 m from the eye. */
+    private static final int SIZE = 200;
+    private static final float Z = -2;
+    private static final float[] OPAQUE = {1, 0.5f, 0.25f, 1};
+    private static final float[] FAINT = {1, 1, 1, 0.001f};
+    private static final float[] SECONDARY = {0, 0, 0, 1};
+
+    private Scene mScene;
+    private float[] mMVPMatrix;
+    private SpriteBatch mTint;
+    private SpriteBatch mMasked;
+    private SpriteBatch mMaskedLod;
+
+    @Before
+    public void setUp() {
+        Frustum frustum = new Frustum(new Vector3(0, 0, 3), new Vector3(0, 0, -1),
+                -1, 1, 0.5f, 7.0f, -1, 1);
+        mMVPMatrix = SoftwareRasterizerTest.makeMVPMatrix(frustum, 3);
+        mScene = new Scene();
+        mTint = mScene.getBatch(mScene.getMaterial(Material.SHADE_TINT, R.raw.target, 0), 8);
+        mMasked = mScene.getBatch(
+                mScene.getMaterial(Material.SHADE_MASKED, R.raw.flower, R.raw.flower_mask), 8);
+        mMaskedLod = mMasked.getLodBatch();
+        mScene.setViewport(SIZE, SIZE);
+    }
+
+    @Test
+    public void spritesAreSortedIntoTiers() {
+        mScene.getLod().setDetailPixels(8);
+        // 10 pixels across: full detail.
+        mMasked.add(0, 0, Z, 30, 0.5f, OPAQUE, SECONDARY);
+        // 6 pixels: reduced.
+        mMasked.add(0.5f, 0.25f, Z, 0, 0.3f, OPAQUE, SECONDARY);
+        // 0.4 pixels: dropped.
+        mMasked.add(1, 0, Z, 0, 0.02f, OPAQUE, SECONDARY);
+        // The masked shader ignores the color's alpha.
+        mMasked.add(-1, 0, Z, 0, 0.5f, FAINT, SECONDARY);
+        // The tint shader does not: dropped.
+        mTint.add(0, 0, Z, 0, 0.5f, FAINT, SECONDARY);
+        mTint.add(0, 1, Z, 0, 0.5f, OPAQUE, SECONDARY);
+
+        mScene.getLod().apply(mScene, mMVPMatrix, SIZE, SIZE);
+        assertEquals(3, mScene.getLod().getFullCount());
+        assertEquals(1, mScene.getLod().getReducedCount());
+        assertEquals(2, mScene.getLod().getDroppedCount());
+
+        // The kept sprites are in their original order.
+        assertEquals(2, mMasked.getCount());
+        assertEquals(0, centerX(mMasked, 0), 1e-6f);
+        assertEquals(-1, centerX(mMasked, 1), 1e-6f);
+        assertEquals(1, mTint.getCount());
+        assertEquals(1, centerY(mTint, 0), 1e-6f);
+
+        // The reduced sprite is drawn opaque with the tint shader and the mask's base texture.
+        assertEquals(1, mMaskedLod.getCount());
+        assertEquals(Material.SHADE_TINT, mMaskedLod.getMaterial().getShading());
+        assertEquals(0.5f, centerX(mMaskedLod, 0), 1e-6f);
+        assertEquals(0.25f, centerY(mMaskedLod, 0), 1e-6f);
+        for (int v = 0; v < mMaskedLod.getVerticesPerSprite(); ++v) {
+            assertEquals(1, mMaskedLod.getData()[v * SpriteBatch.FLOATS_PER_VERTEX + 8], 0.0f);
+        }
+    }
+
+    @Test
+    public void reducedSpritesTakeTheirBatchShape() {
+        SpriteBatch spark = mScene.getBatch(
+                mScene.getMaterial(Material.SHADE_SPARK, R.raw.star, 0), 8);
+        SpriteBatch lod = spark.getLodBatch();
+        // Sparks are drawn as quads, the tinted star as its fitted polygon.
+        assertEquals(4, spark.getVerticesPerSprite());
+        assertEquals(8, lod.getVerticesPerSprite());
+        mScene.getLod().setDetailPixels(8);
+        spark.add(0.5f, -0.25f, Z, 40, 0.3f, OPAQUE, SECONDARY);
+        mScene.getLod().apply(mScene, mMVPMatrix, SIZE, SIZE);
+        assertEquals(0, spark.getCount());
+        assertEquals(1, lod.getCount());
+        float placement[] = new float[5];
+        lod.measure(0, placement);
+        assertEquals(0.5f, placement[0], 1e-6f);
+        assertEquals(-0.25f, placement[1], 1e-6f);
+        assertEquals(Z, placement[2], 0.0f);
+        assertEquals(0.3f * Math.cos(Math.toRadians(40)), placement[3], 1e-6f);
+        assertEquals(0.3f * Math.sin(Math.toRadians(40)), placement[4], 1e-6f);
+        assertEquals(OPAQUE[1], lod.getData()[6], 0.0f);
+    }
+
+    @Test
+    public void reducedTierIsOffByDefault() {
+        mMasked.add(0, 0, Z, 0, 0.3f, OPAQUE, SECONDARY);
+        mScene.getLod().apply(mScene, mMVPMatrix, SIZE, SIZE);
+        assertEquals(1, mMasked.getCount());
+        assertEquals(0, mMaskedLod.getCount());
+        assertEquals(1, mScene.getLod().getFullCount());
+    }
+
+    @Test
+    public void farSpritesAreDroppedSoonerThanNearOnes() {
+        // The same sprite is 1.6 pixels across 2.5 m from the eye and 0.8 at 5 m.
+        mMasked.add(0, 0, 0.5f, 0, 0.04f, OPAQUE, SECONDARY);
+        mMasked.add(0, 0, Z, 0, 0.04f, OPAQUE, SECONDARY);
+        mMasked.add(0, 0, Z, 0, 0.04f, OPAQUE, SECONDARY);
+        mScene.getLod().apply(mScene, mMVPMatrix, SIZE, SIZE);
+        assertEquals(1, mScene.getLod().getFullCount());
+        assertEquals(2, mScene.getLod().getDroppedCount());
+        assertEquals(0.5f, mMasked.getData()[2], 0.0f);
+    }
+
+    @Test
+    public void batchesAreUntouchedWithoutAViewport() {
+        Scene scene = new Scene();
+        Material star = scene.getMaterial(Material.SHADE_TINT, R.raw.star, 0);
+        SpriteBatch batch = scene.getBatch(star, 4);
+        assertSame(null, batch.getLodBatch());
+        batch.add(0, 0, Z, 0, 0.001f, FAINT, SECONDARY);
+        scene.getLod().apply(scene, mMVPMatrix, 0, 0);
+        assertEquals(1, batch.getCount());
+        assertEquals(1, scene.getLod().getFullCount());
+    }
+
+    private static float centerX(SpriteBatch batch, int sprite) {
+        float placement[] = new float[5];
+        batch.measure(sprite, placement);
+        return placement[0];
+    }
+
+    private static float centerY(SpriteBatch batch, int sprite) {
+        float placement[] = new float[5];
+        batch.measure(sprite, placement);
+        return placement[1];
+    }
+}
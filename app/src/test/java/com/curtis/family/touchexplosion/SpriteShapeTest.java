@@ -0,0 +1,152 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Re-fits the sprite shapes to the app's textures, reports the area each saves, and verifies that
+ * the baked shapes cover every visible texel and cut the fragments drawn accordingly.
+ */
+public class SpriteShapeTest {
+    private static final File TEXTURES = new File("src/main/res/raw");
+    /** The slack for the baked shapes' rounding, in the frame of the unit quad. */
+    private static final float EPSILON = 1e-4f;
+
+    private static int[] load(String name, int[] size) throws IOException {
+        BufferedImage image = ImageIO.read(new File(TEXTURES, name + ".png"));
+        size[0] = image.getWidth();
+        size[1] = image.getHeight();
+        return image.getRGB(0, 0, size[0], size[1], null, 0, size[0]);
+    }
+
+    /** Reports if the point is inside the convex shape (within EPSILON). */
+    private static boolean contains(SpriteShape shape, float x, float y) {
+        float corners[] = shape.getCorners();
+        int n = shape.getVertexCount();
+        for (int i = 0; i < n; ++i) {
+            int j = (i + 1) % n;
+            float ex = corners[j * 4] - corners[i * 4];
+            float ey = corners[j * 4 + 1] - corners[i * 4 + 1];
+            float px = x - corners[i * 4], py = y - corners[i * 4 + 1];
+            if (ex * py - ey * px < -EPSILON * (float)Math.hypot(ex, ey)) return false;
+        }
+        return true;
+    }
+
+    @Test
+    public void bakedShapesCoverTheirTextures() throws IOException {
+        String names[] = {"flower", "star", "target"};
+        int resources[] = {R.raw.flower, R.raw.star, R.raw.target};
+        for (int t = 0; t < names.length; ++t) {
+            int size[] = new int[2];
+            int argb[] = load(names[t], size);
+            int w = size[0], h = size[1];
+            SpriteShape fitted = SpriteShape.fromAlpha(argb, w, h, 0, false);
+            SpriteShape baked = SpriteShape.forMaterial(Material.SHADE_TINT, resources[t]);
+            assertTrue(baked.getVertexCount() <= SpriteShape.MAX_VERTICES);
+            assertEquals(names[t], fitted.getArea(), baked.getArea(), 1e-3f);
+            assertTrue(names[t], baked.getAreaSaved() > 0.1f);
+            // The centers of the visible texels, and the points half a texel around them which
+            // linear filtering reads them at.
+            for (int y = 0; y < h; ++y) {
+                for (int x = 0; x < w; ++x) {
+                    if ((argb[y * w + x] >>> 24) == 0) continue;
+                    for (float dy = -1; dy <= 1; ++dy) {
+                        for (float dx = -1; dx <= 1; ++dx) {
+                            float u = Math.min(w, Math.max(0, x + 0.5f + dx));
+                            float v = Math.min(h, Math.max(0, y + 0.5f + dy));
+                            assertTrue(names[t] + " texel " + x + ", " + y,
+                                    contains(baked, u / w * 2 - 1, 1 - v / h * 2));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sparkShapeCoversRotatedStar() throws IOException {
+        int size[] = new int[2];
+        int argb[] = load("star", size);
+        // The star's halo, rotated, reaches the corners of the quad.
+        assertSame(SpriteShape.QUAD, SpriteShape.fromAlpha(argb, size[0], size[1], 0, true));
+        assertSame(SpriteShape.QUAD, SpriteShape.forMaterial(Material.SHADE_SPARK, R.raw.star));
+
+        // A small dot, rotated, sweeps a disk; its octagon contains the dot at every angle.
+        int dot[] = new int[64 * 64];
+        for (int y = 24; y < 32; ++y) {
+            for (int x = 36; x < 44; ++x) dot[y * 64 + x] = 0xff000000;
+        }
+        SpriteShape disk = SpriteShape.fromAlpha(dot, 64, 64, 0, true);
+        assertEquals(8, disk.getVertexCount());
+        for (int a = 0; a < 360; a += 5) {
+            double theta = Math.toRadians(a);
+            float x = 44.5f / 32 - 1, y = 1 - 23.5f / 32;
+            float rx = (float)(x * Math.cos(theta) - y * Math.sin(theta));
+            float ry = (float)(x * Math.sin(theta) + y * Math.cos(theta));
+            assertTrue("At " + a, contains(disk, rx, ry));
+        }
+    }
+
+    @Test
+    public void simplifyingKeepsThePolygonCovered() {
+        // A circle as a 32-gon, reduced to 8 vertices.
+        float circle[] = new float[64];
+        for (int i = 0; i < 32; ++i) {
+            double theta = i * Math.PI / 16;
+            circle[i * 2] = (float)(0.8 * Math.cos(theta));
+            circle[i * 2 + 1] = (float)(0.8 * Math.sin(theta));
+        }
+        float xy[] = SpriteShape.simplify(circle, 8);
+        assertEquals(16, xy.length);
+        SpriteShape shape = SpriteShape.polygon(xy);
+        for (int i = 0; i < 32; ++i) {
+            assertTrue(contains(shape, circle[i * 2], circle[i * 2 + 1]));
+        }
+        // The circumscribed octagon is the best an octagon can do: 8 tan(pi / 8) r^2.
+        float octagon = (float)(8 * Math.tan(Math.PI / 8) * 0.64);
+        assertEquals(octagon, shape.getArea(), octagon * 0.02f);
+
+        // A polygon which can only be reduced by leaving the quad.
+        float square[] = {-1, -0.9f, -0.9f, -1, 0.9f, -1, 1, -0.9f, 1, 0.9f, 0.9f, 1, -0.9f, 1,
+                -1, 0.9f};
+        assertEquals(null, SpriteShape.simplify(square, 3));
+    }
+
+    @Test
+    public void shapesCutTheFragmentsDrawn() {
+        Frustum frustum = new Frustum(new Vector3(0, 0, 3), new Vector3(0, 0, -1),
+                -1, 1, 0.5f, 7.0f, -1, 1);
+        float mvp[] = SoftwareRasterizerTest.makeMVPMatrix(frustum, 3);
+        Scene scene = new Scene();
+        // The fairy's texture is drawn as the full quad.
+        SpriteBatch quad = scene.getBatch(
+                scene.getMaterial(Material.SHADE_TINT, R.raw.yin_yang, 0), 1);
+        SpriteBatch flower = scene.getBatch(
+                scene.getMaterial(Material.SHADE_TINT, R.raw.flower, 0), 1);
+        float color[] = {1, 1, 1, 1};
+        // A meter from the eye, the sprites are 128 pixels across.
+        SoftwareRasterizer rasterizer = new SoftwareRasterizer(256, 256, 1);
+        try {
+            quad.add(0, 0, 2, 20, 1.0f, color, color);
+            rasterizer.draw(scene, 0, mvp);
+            long quadFragments = rasterizer.getFragmentCount();
+            flower.add(0, 0, 2, 20, 1.0f, color, color);
+            rasterizer.draw(scene, 0, mvp);
+            long flowerFragments = rasterizer.getFragmentCount();
+            float saved = 1 - flowerFragments / (float)quadFragments;
+            assertEquals(flower.getMaterial().getShape().getAreaSaved(), saved, 0.01f);
+        } finally {
+            rasterizer.shutdown();
+        }
+    }
+}
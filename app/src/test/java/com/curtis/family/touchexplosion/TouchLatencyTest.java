@@ -0,0 +1,51 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Verifies which frame each touch is stamped through to, and the latency percentiles.
+ */
+public class TouchLatencyTest {
+    private static final long DISPLAY_MS = 32;
+
+    @Test
+    public void eventsAreStampedWithTheFirstFrameAfterThem() {
+        TouchLatency latency = new TouchLatency(16, DISPLAY_MS);
+        assertEquals(-1, latency.getPercentile(0.5f));
+        latency.reportEvent(100);
+        latency.reportEvent(104);
+        latency.beginFrame();
+        // An event during the frame waits for the next one.
+        latency.reportEvent(110);
+        assertEquals(2, latency.endFrame(116));
+        assertEquals(44, latency.getPercentile(0.0f));
+        assertEquals(44, latency.getPercentile(0.5f));
+        assertEquals(48, latency.getPercentile(1.0f));
+        // The next frame takes the event during the last; a frame without events records nothing.
+        latency.beginFrame();
+        assertEquals(1, latency.endFrame(132));
+        latency.beginFrame();
+        assertEquals(0, latency.endFrame(148));
+        assertEquals(3, latency.getSampleCount());
+        assertEquals(54, latency.getPercentile(1.0f));
+    }
+
+    @Test
+    public void percentilesCoverTheLatestSamples() {
+        TouchLatency latency = new TouchLatency(100, 0);
+        // 1 to 300 ms; only the last 100 (201 to 300 ms) are kept.
+        for (int i = 1; i <= 300; ++i) {
+            latency.reportEvent(0);
+            latency.beginFrame();
+            latency.endFrame(i);
+        }
+        assertEquals(100, latency.getSampleCount());
+        assertEquals(201, latency.getPercentile(0.0f));
+        assertEquals(250, latency.getPercentile(0.5f));
+        assertEquals(290, latency.getPercentile(0.9f));
+        assertEquals(299, latency.getPercentile(0.99f));
+        assertEquals(300, latency.getPercentile(1.0f));
+    }
+}
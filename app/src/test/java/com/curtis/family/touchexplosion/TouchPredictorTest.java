@@ -0,0 +1,155 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Replays recorded gestures through the touch predictor and measures its error: how far the
+ * predicted position is from where the finger actually was at the predicted time, against the
+ * error of not predicting at all (using the latest sample).
+ *
+ * The gestures are recorded from paths in canonical space, sampled as a touch screen does: at
+ * 120 Hz with a millisecond of jitter in the time stamps, and a little noise in the positions.
+ */
+public class TouchPredictorTest {
+    /** The touch sampling interval (in milliseconds). */
+    private static final int SAMPLE_MS = 8;
+    /** The prediction's horizon: a typical touch-to-photon latency (in milliseconds). */
+    private static final int HORIZON_MS = 32;
+    /** The noise in the sampled positions (in canonical units, about a pixel). */
+    private static final float NOISE = 0.002f;
+
+    /** A finger's path: its position at a time (in milliseconds). */
+    private interface Path {
+        void at(float t, float[] out);
+    }
+
+    /** A swipe across the screen at a constant speed. */
+    private static final Path SWIPE = new Path() {
+        public void at(float t, float[] out) {
+            out[0] = -0.8f + t * 0.004f;
+            out[1] = -0.3f + t * 0.001f;
+        }
+    };
+
+    /** A circle, once around in a second. */
+    private static final Path CIRCLE = new Path() {
+        public void at(float t, float[] out) {
+            double angle = t * 2 * Math.PI / 1000;
+            out[0] = 0.5f * (float)Math.cos(angle);
+            out[1] = 0.5f * (float)Math.sin(angle);
+        }
+    };
+
+    /** A flick which decelerates to a stop. */
+    private static final Path FLICK = new Path() {
+        public void at(float t, float[] out) {
+            float s = Math.min(t, 300) / 300;
+            out[0] = -0.5f + 1.2f * (1 - (1 - s) * (1 - s));
+            out[1] = 0.2f;
+        }
+    };
+
+    /** A finger held still. */
+    private static final Path HOLD = new Path() {
+        public void at(float t, float[] out) {
+            out[0] = 0.1f;
+            out[1] = -0.4f;
+        }
+    };
+
+    /** Records a gesture: time stamps (in milliseconds), then x and y per sample. */
+    private static float[][] record(Path path, int durationMs, long seed) {
+        XorShiftRandom random = new XorShiftRandom(seed);
+        int count = durationMs / SAMPLE_MS;
+        float gesture[][] = new float[3][count];
+        float p[] = new float[2];
+        for (int i = 0; i < count; ++i) {
+            float t = i * SAMPLE_MS + Math.round(random.nextFloat() * 2 - 1);
+            path.at(t, p);
+            gesture[0][i] = t;
+            gesture[1][i] = p[0] + (random.nextFloat() * 2 - 1) * NOISE;
+            gesture[2][i] = p[1] + (random.nextFloat() * 2 - 1) * NOISE;
+        }
+        return gesture;
+    }
+
+    /** Replays a gesture, predicting HORIZON_MS past every sample.
+     * @return The mean error of the predictions and of the latest samples, against the path.
+     */
+    private static float[] replay(Path path, float[][] gesture) {
+        TouchPredictor predictor = new TouchPredictor();
+        float predicted[] = new float[2], actual[] = new float[2];
+        float predictionError = 0, sampleError = 0;
+        int count = gesture[0].length;
+        for (int i = 0; i < count; ++i) {
+            long t = (long)gesture[0][i];
+            predictor.addSample(t, gesture[1][i], gesture[2][i]);
+            assertTrue(predictor.predict(t + HORIZON_MS, predicted));
+            path.at(t + HORIZON_MS, actual);
+            predictionError += distance(predicted[0], predicted[1], actual);
+            sampleError += distance(gesture[1][i], gesture[2][i], actual);
+        }
+        return new float[]{predictionError / count, sampleError / count};
+    }
+
+    private static float distance(float x, float y, float[] p) {
+        return (float)Math.hypot(x - p[0], y - p[1]);
+    }
+
+    /** Records the path for the given duration and replays it; see replay(). */
+    private static float[] measure(Path path, int durationMs) {
+        return replay(path, record(path, durationMs, 5));
+    }
+
+    private static String describe(float[] errors) {
+        return "Predicted error " + errors[0] + ", unpredicted " + errors[1];
+    }
+
+    @Test
+    public void predictionCutsTheLagOfMovingFingers() {
+        float swipe[] = measure(SWIPE, 400);
+        float circle[] = measure(CIRCLE, 1000);
+        float flick[] = measure(FLICK, 500);
+        // A straight swipe is followed closely; the circle's curvature and the flick's
+        // deceleration leave some error, but far less than the lag.
+        assertTrue(describe(swipe), swipe[0] < swipe[1] * 0.2f);
+        assertTrue(describe(circle), circle[0] < circle[1] * 0.4f);
+        assertTrue(describe(flick), flick[0] < flick[1] * 0.6f);
+    }
+
+    @Test
+    public void stillFingerStaysPut() {
+        float hold[] = measure(HOLD, 500);
+        // The noise is extrapolated a little, but the touch doesn't wander.
+        assertTrue(describe(hold), hold[0] < 4 * NOISE);
+    }
+
+    @Test
+    public void predictionIsBounded() {
+        TouchPredictor predictor = new TouchPredictor();
+        float out[] = new float[2];
+        assertTrue(!predictor.predict(0, out));
+        predictor.addSample(0, 0, 0);
+        predictor.addSample(10, 0.1f, 0);
+        // Older and repeated samples are ignored.
+        predictor.addSample(10, 5, 5);
+        predictor.addSample(5, 5, 5);
+        assertEquals(2, predictor.getCount());
+        // Past the newest sample only; no further ahead than the cap.
+        predictor.predict(5, out);
+        assertEquals(0.1f, out[0], 1e-6f);
+        predictor.predict(1000, out);
+        assertEquals(0.1f + 0.01f * TouchPredictor.MAX_HORIZON_MS, out[0], 1e-5f);
+        assertEquals(0, out[1], 1e-6f);
+        // A finger which stopped has no velocity.
+        predictor.addSample(10 + TouchPredictor.WINDOW_MS + 1, 0.2f, 0);
+        predictor.predict(1000, out);
+        assertEquals(0.2f, out[0], 1e-6f);
+
+        predictor.reset();
+        assertEquals(0, predictor.getCount());
+    }
+}
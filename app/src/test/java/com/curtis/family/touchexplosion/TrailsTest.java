@@ -0,0 +1,116 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Verifies the trails' rings and the ribbons built from them: a trail keeps its newest positions,
+ * its strip faces the eye and tapers to nothing at the oldest end, and every trail in a scene
+ * shares a single batch.
+ */
+public class TrailsTest {
+    private static final int LENGTH = 8;
+    private static final float HALF_WIDTH = 0.1f;
+    private static final Vector3 EYE = new Vector3(0, 0, 3);
+
+    /** The scene's ribbon batch. */
+    private static SpriteBatch ribbons(Scene scene) {
+        for (int b = 0; b < scene.getBatchCount(); ++b) {
+            SpriteBatch batch = scene.getBatchAt(b);
+            if (batch.getMaterial().getShading() == Material.SHADE_RIBBON) return batch;
+        }
+        throw new AssertionError("No ribbon batch");
+    }
+
+    /** The given coordinate of a corner of a quad in the batch. */
+    private static float corner(SpriteBatch batch, int quad, int corner, int axis) {
+        return batch.getData()[quad * batch.getFloatsPerSprite()
+                + corner * SpriteBatch.FLOATS_PER_VERTEX + axis];
+    }
+
+    @Test
+    public void ringKeepsTheNewestPositions() {
+        Scene scene = new Scene();
+        Trails trails = new Trails(1, LENGTH);
+        trails.initMaterials(scene);
+        trails.setStyle(0, HALF_WIDTH, 1, 1, 1, 1);
+        assertEquals(0, trails.draw(EYE));
+        for (int i = 0; i < LENGTH + 5; ++i) {
+            trails.push(0, i * 0.1f, 0, 0);
+            assertEquals(Math.min(i + 1, LENGTH), trails.getCount(0));
+        }
+        SpriteBatch batch = ribbons(scene);
+        assertEquals(LENGTH - 1, trails.draw(EYE));
+        assertEquals(LENGTH - 1, batch.getCount());
+        // The quads run from the oldest kept position to the newest.
+        for (int q = 0; q < LENGTH - 1; ++q) {
+            float older = (q + 5) * 0.1f, newer = (q + 6) * 0.1f;
+            assertEquals(older, (corner(batch, q, 0, 0) + corner(batch, q, 1, 0)) / 2, 1e-5f);
+            assertEquals(newer, (corner(batch, q, 2, 0) + corner(batch, q, 3, 0)) / 2, 1e-5f);
+        }
+
+        trails.clear(0);
+        batch.clear();
+        assertEquals(0, trails.draw(EYE));
+        trails.push(0, 0, 0, 0);
+        trails.push(0, 1, 0, 0);
+        assertEquals(1, trails.draw(EYE));
+    }
+
+    @Test
+    public void ribbonFacesTheEyeAndTapers() {
+        Scene scene = new Scene();
+        Trails trails = new Trails(1, LENGTH);
+        trails.initMaterials(scene);
+        trails.setStyle(0, HALF_WIDTH, 1, 0.5f, 0.25f, 0.8f);
+        // A trail along x, in front of the eye: its strip lies across y, at the trail's depth.
+        for (int i = 0; i < LENGTH; ++i) trails.push(0, i * 0.1f, 0, -1);
+        trails.draw(EYE);
+        SpriteBatch batch = ribbons(scene);
+        float data[] = batch.getData();
+        for (int q = 0; q < LENGTH - 1; ++q) {
+            for (int c = 0; c < 4; ++c) {
+                assertEquals(-1, corner(batch, q, c, 2), 1e-6f);
+            }
+            // The strip's width at each end: tapered from nothing at the oldest position.
+            float older = Math.abs(corner(batch, q, 1, 1) - corner(batch, q, 0, 1));
+            float newer = Math.abs(corner(batch, q, 3, 1) - corner(batch, q, 2, 1));
+            assertEquals(2 * HALF_WIDTH * q / (LENGTH - 1), older, 1e-6f);
+            assertEquals(2 * HALF_WIDTH * (q + 1) / (LENGTH - 1), newer, 1e-6f);
+            // The same color at every corner, its alpha tapered to the quad's middle.
+            int base = q * batch.getFloatsPerSprite();
+            assertEquals(0.5f, data[base + 6], 0.0f);
+            assertEquals(0.8f * (q + 0.5f) / (LENGTH - 1), data[base + 8], 1e-6f);
+            assertEquals(data[base + 8], data[base + 3 * SpriteBatch.FLOATS_PER_VERTEX + 8], 0.0f);
+        }
+        // Consecutive quads share their corners.
+        for (int q = 0; q + 1 < LENGTH - 1; ++q) {
+            for (int axis = 0; axis < 3; ++axis) {
+                assertEquals(corner(batch, q, 2, axis), corner(batch, q + 1, 0, axis), 0.0f);
+                assertEquals(corner(batch, q, 3, axis), corner(batch, q + 1, 1, axis), 0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void everyTrailSharesOneBatch() {
+        Scene scene = new Scene();
+        Trails a = new Trails(3, LENGTH);
+        Trails b = new Trails(2, 4);
+        a.initMaterials(scene);
+        b.initMaterials(scene);
+        SpriteBatch batch = ribbons(scene);
+        assertEquals(3 * (LENGTH - 1) + 2 * 3, batch.getCapacity());
+        // Ribbons have no single-sample batch to be moved to.
+        assertSame(null, batch.getLodBatch());
+        for (int e = 0; e < 3; ++e) {
+            for (int i = 0; i < LENGTH; ++i) a.push(e, i, e, 0);
+        }
+        for (int i = 0; i < 4; ++i) b.push(1, 0, i, 0);
+        assertEquals(3 * (LENGTH - 1), a.draw(EYE));
+        assertEquals(3, b.draw(EYE));
+        assertEquals(3 * (LENGTH - 1) + 3, batch.getCount());
+    }
+}
@@ -0,0 +1,109 @@
+package com.curtis.family.touchexplosion;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * Verifies the water surface's simulation: its row bands, the spread and damping of its ripples,
+ * and its fixed time step. Also benchmarks a step of the feeding pool's grid (see
+ * BenchmarkHarness).
+ */
+public class WaterSurfaceTest {
+    private static final int SIZE = 256;
+    private static final float CELL = 0.03f;
+
+    private static WaterSurface makeSurface(int threads) {
+        return new WaterSurface(SIZE, SIZE, CELL, 0, 0, 0.001f, 0.005f, threads);
+    }
+
+    @Test
+    public void rowBandsDoNotDependOnThreads() {
+        WaterSurface serial = makeSurface(1);
+        WaterSurface parallel = makeSurface(4);
+        try {
+            for (WaterSurface w : new WaterSurface[]{serial, parallel}) {
+                w.disturb(2.0f, 3.0f, 0.2f, 0.05f);
+                w.disturb(5.5f, 1.0f, 0.3f, -0.05f);
+                for (int i = 0; i < 100; ++i) {
+                    w.step();
+                }
+            }
+            assertArrayEquals(serial.getHeights(), parallel.getHeights(), 0.0f);
+            assertEquals(serial.getPeak(), parallel.getPeak(), 0.0f);
+        } finally {
+            serial.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    @Test
+    public void ripplesSpreadAndDieAway() {
+        WaterSurface water = makeSurface(2);
+        try {
+            float cx = SIZE * CELL * 0.5f;
+            water.disturb(cx, cx, 0.2f, 0.05f);
+            assertEquals(-0.05f, water.sampleHeight(cx, cx), 1e-3f);
+            float far = cx + 1.0f;
+            assertEquals(0.0f, water.sampleHeight(far, cx), 0.0f);
+
+            boolean reached = false;
+            for (int i = 0; i < 100 && !reached; ++i) {
+                water.step();
+                reached = Math.abs(water.sampleHeight(far, cx)) > 1e-4f;
+            }
+            assertTrue("The ripple reaches 1 m away", reached);
+
+            for (int i = 0; i < 3000; ++i) {
+                water.step();
+            }
+            assertTrue("The water calms: peak " + water.getPeak(), water.getPeak() < 1e-4f);
+        } finally {
+            water.shutdown();
+        }
+    }
+
+    @Test
+    public void advanceTakesWholeBoundedSteps() {
+        WaterSurface water = makeSurface(1);
+        try {
+            assertEquals(0, water.advance(1000));
+            assertEquals(1, water.advance(1000 + WaterSurface.STEP_MS + 5));
+            assertEquals(1, water.advance(1000 + 2 * WaterSurface.STEP_MS));
+            // A long gap is not caught up with.
+            assertEquals(4, water.advance(60000));
+        } finally {
+            water.shutdown();
+        }
+    }
+
+    /** Times a step of the grid, rippled all over, on one thread and on as many as the feeding pool
+     uses. */
+    @Test
+    public void benchmarkStep() throws IOException {
+        BenchmarkHarness harness = new BenchmarkHarness();
+        int threads = Math.min(4, Runtime.getRuntime().availableProcessors());
+        int counts[] = threads > 1 ? new int[]{1, threads} : new int[]{1};
+        BenchmarkHarness.Result results[] = new BenchmarkHarness.Result[counts.length];
+        for (int c = 0; c < counts.length; ++c) {
+            final WaterSurface water = makeSurface(counts[c]);
+            try {
+                for (int i = 0; i < 16; ++i) {
+                    water.disturb(CELL * (16 + i * 14), CELL * (240 - i * 14), 0.2f, 0.05f);
+                }
+                results[c] = harness.measure(SIZE + "x" + SIZE + " step, " + counts[c] +
+                        " threads", new BenchmarkHarness.Task() {
+                    @Override
+                    public void run() { water.step(); }
+                }, 10, 100);
+            } finally {
+                water.shutdown();
+            }
+        }
+        harness.write("WaterSurface", results);
+    }
+}